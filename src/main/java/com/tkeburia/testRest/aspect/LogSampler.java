@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.aspect;
+
+import com.google.common.util.concurrent.RateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which log entries of an endpoint are written: one in every <code>sampleRate</code>, and of those at most
+ * <code>maxPerSecond</code>. Entries left out are counted as <code>logging.entries.suppressed</code> by endpoint and reason.
+ */
+@Component
+public class LogSampler {
+
+    private final LoggingProperties loggingProperties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, EndpointSampler> samplers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public LogSampler(LoggingProperties loggingProperties, MeterRegistry meterRegistry) {
+        this.loggingProperties = loggingProperties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param error whether the entry is for a failure, which is always logged when so configured
+     * @return whether the entry is to be logged
+     */
+    public boolean shouldLog(String endpoint, boolean error) {
+        if (error && loggingProperties.isAlwaysLogErrors()) return true;
+        return samplerFor(endpoint).shouldLog();
+    }
+
+    /**
+     * @return the length after which bodies of the endpoint are cut off, 0 for none
+     */
+    public int maxBodyLengthFor(String endpoint) {
+        return samplerFor(endpoint).maxBodyLength;
+    }
+
+    private EndpointSampler samplerFor(String endpoint) {
+        final EndpointSampler sampler = samplers.get(endpoint);
+        return sampler != null ? sampler : samplers.computeIfAbsent(endpoint, this::createSampler);
+    }
+
+    private EndpointSampler createSampler(String endpoint) {
+        final int maxPerSecond = loggingProperties.maxPerSecondFor(endpoint);
+        return new EndpointSampler(
+                Math.max(1, loggingProperties.sampleRateFor(endpoint)),
+                maxPerSecond > 0 ? RateLimiter.create(maxPerSecond) : null,
+                loggingProperties.maxBodyLengthFor(endpoint),
+                meterRegistry.counter("logging.entries.suppressed", "endpoint", endpoint, "reason", "sampled"),
+                meterRegistry.counter("logging.entries.suppressed", "endpoint", endpoint, "reason", "rate_limited"));
+    }
+
+    private static final class EndpointSampler {
+        private final int sampleRate;
+        private final RateLimiter rateLimiter;
+        private final int maxBodyLength;
+        private final Counter sampledOut;
+        private final Counter rateLimited;
+        private final AtomicLong seen = new AtomicLong();
+
+        private EndpointSampler(int sampleRate, RateLimiter rateLimiter, int maxBodyLength, Counter sampledOut, Counter rateLimited) {
+            this.sampleRate = sampleRate;
+            this.rateLimiter = rateLimiter;
+            this.maxBodyLength = maxBodyLength;
+            this.sampledOut = sampledOut;
+            this.rateLimited = rateLimited;
+        }
+
+        private boolean shouldLog() {
+            if (sampleRate > 1 && seen.getAndIncrement() % sampleRate != 0) {
+                sampledOut.increment();
+                return false;
+            }
+            if (rateLimiter != null && !rateLimiter.tryAcquire()) {
+                rateLimited.increment();
+                return false;
+            }
+            return true;
+        }
+    }
+}
@@ -18,102 +18,261 @@ package com.tkeburia.testRest.aspect;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
 import com.google.common.collect.ImmutableMap;
 import com.tkeburia.testRest.dto.HttpRequestAndOtherArgs;
-import org.apache.activemq.command.ActiveMQMessage;
-import org.apache.activemq.util.ByteArrayInputStream;
-import org.apache.activemq.util.ByteSequence;
-import org.apache.activemq.util.JMSExceptionSupport;
-import org.apache.activemq.util.MarshallingSupport;
+import com.tkeburia.testRest.util.HeaderFilter;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.AfterThrowing;
 import org.aspectj.lang.annotation.Aspect;
-import org.aspectj.lang.annotation.Before;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResultProcessingInterceptor;
 
-import javax.jms.JMSException;
-import javax.jms.Message;
-import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.zip.InflaterInputStream;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 
-import static com.tkeburia.testRest.util.HttpUtils.getHeaderMap;
+import static com.tkeburia.testRest.util.HttpUtils.captureHeaders;
+import static com.tkeburia.testRest.util.HttpUtils.releaseHeaders;
 import static com.tkeburia.testRest.util.HttpUtils.separateHttpRequestArgsFromOthers;
 import static java.util.Collections.singletonList;
+import static org.springframework.web.context.request.RequestAttributes.SCOPE_REQUEST;
 
+/**
+ * Logs controller requests, consumed messages are logged by the {@link MessageLogger}. Which entries of an endpoint are
+ * logged is decided by the {@link LogSampler} before anything is serialized, and bodies, parameters and results are cut
+ * off at the endpoint's maximum length.
+ * <p>
+ * Requests completing asynchronously, i.e. returning a {@link DeferredResult} or a {@link CompletionStage}, are logged once
+ * their result is set: the entry is left on the request and written by the {@link AsyncResultInterceptor}, with the result
+ * or, for failures, the error.
+ */
 @Component
 @Aspect
 public class LoggingAspect
 {
     private static final Logger LOG = LoggerFactory.getLogger(LoggingAspect.class);
 
+    private static final String CONTROLLER_METHODS = "@annotation(org.springframework.web.bind.annotation.RequestMapping)";
+    private static final String TRUNCATED = "...[truncated]";
+    private static final String PENDING_ENTRY = LoggingAspect.class.getName() + ".PENDING_ENTRY";
+
     private final ObjectMapper objectMapper;
-    private final List<String> exceptHeaders;
+    private final HeaderFilter headerFilter;
+    private final LogSampler logSampler;
 
     @Autowired
-    public LoggingAspect(ObjectMapper objectMapper, @Value("#{'${suppressed.headers}'.split(',')}") List<String> exceptHeaders) {
+    public LoggingAspect(ObjectMapper objectMapper, @Value("#{'${suppressed.headers}'.split(',')}") List<String> exceptHeaders,
+                         LogSampler logSampler) {
         this.objectMapper = objectMapper;
-        this.exceptHeaders = exceptHeaders;
+        this.headerFilter = new HeaderFilter(exceptHeaders);
+        this.logSampler = logSampler;
     }
 
     @AfterReturning(
-            pointcut = "@annotation(org.springframework.web.bind.annotation.RequestMapping)",
+            pointcut = CONTROLLER_METHODS,
             returning = "result"
     )
     public void logControllerMethod(JoinPoint point, Object result) throws JsonProcessingException
     {
-        final HttpRequestAndOtherArgs groupedArgs = separateHttpRequestArgsFromOthers(point);
+        if (result instanceof DeferredResult || result instanceof CompletionStage) {
+            final HttpRequestAndOtherArgs groupedArgs = separateHttpRequestArgsFromOthers(point);
+            groupedArgs.getHttpServletRequest().setAttribute(PENDING_ENTRY, new PendingEntry(point, groupedArgs));
+            return;
+        }
+        logResult(point, null, result);
+    }
+
+    @AfterThrowing(
+            pointcut = CONTROLLER_METHODS,
+            throwing = "e"
+    )
+    public void logControllerError(JoinPoint point, Throwable e) throws JsonProcessingException
+    {
+        logError(point, null, e);
+    }
 
-        Map map = ImmutableMap.of(
-                "method", singletonList(point.getSignature().toShortString()),
-                "params", groupedArgs.getOtherArgs(),
-                "result", singletonList(result.toString()),
-                "headers", getHeaderMap(groupedArgs.getHttpServletRequest(), exceptHeaders)
-        );
+    private void logResult(JoinPoint point, HttpRequestAndOtherArgs groupedArgs, Object result) throws JsonProcessingException {
+        final String endpoint = endpointOf(point);
+        final boolean error = result instanceof ResponseEntity && ((ResponseEntity<?>) result).getStatusCode().isError();
+        if (!LOG.isInfoEnabled() || !logSampler.shouldLog(endpoint, error)) return;
 
-        LOG.info(objectMapper.writeValueAsString(map));
+        LOG.info(describe(point, groupedArgs, endpoint, "result", String.valueOf(result)));
     }
 
+    private void logError(JoinPoint point, HttpRequestAndOtherArgs groupedArgs, Throwable e) throws JsonProcessingException {
+        final String endpoint = endpointOf(point);
+        if (!LOG.isWarnEnabled() || !logSampler.shouldLog(endpoint, true)) return;
 
-    @Before(
-            value = "@annotation(com.tkeburia.testRest.annotation.LogMethodData) && args(message)",
-            argNames = "message"
+        LOG.warn(describe(point, groupedArgs, endpoint, "error", e.toString()));
+    }
 
-    )
-    public void logMethodData(ActiveMQMessage message) throws JMSException, JsonProcessingException {
-        LOG.info(String.format("Received message on queue %s", message.getJMSDestination().toString()));
-        LOG.info(String.format("Queue Message content : %s", message.toString(ImmutableMap.of("text", decodeContent(message.getContent())))));
+    /**
+     * @param groupedArgs the arguments of the join point, or null to group them only now that the entry is written
+     */
+    private String describe(JoinPoint point, HttpRequestAndOtherArgs groupedArgs, String endpoint, String outcomeKey, String outcome)
+            throws JsonProcessingException {
+        if (groupedArgs == null) {
+            groupedArgs = separateHttpRequestArgsFromOthers(point);
+        }
+        final int maxLength = logSampler.maxBodyLengthFor(endpoint);
+
+        try {
+            Map map = ImmutableMap.of(
+                    "method", singletonList(point.getSignature().toShortString()),
+                    "params", truncate(groupedArgs.getOtherArgs(), maxLength),
+                    outcomeKey, singletonList(truncate(outcome, maxLength)),
+                    "headers", captureHeaders(groupedArgs.getHttpServletRequest(), headerFilter)
+            );
+
+            // the captured headers are only valid until the next capture on this thread
+            return objectMapper.writeValueAsString(map);
+        }
+        finally {
+            releaseHeaders();
+        }
     }
 
-    private String decodeContent(ByteSequence bodyAsBytes) throws JMSException {
-        String text = null;
-        if (bodyAsBytes != null) {
-            InputStream is = null;
+    /**
+     * Writes the entry left on the request by {@link #logControllerMethod} once the asynchronous result of the request is set,
+     * while the request, and so its headers, can still be read
+     */
+    public static class AsyncResultInterceptor implements DeferredResultProcessingInterceptor {
+        @Override
+        public <T> void postProcess(NativeWebRequest request, DeferredResult<T> deferredResult, Object concurrentResult) {
+            final Object entry = request.getAttribute(PENDING_ENTRY, SCOPE_REQUEST);
+            if (!(entry instanceof PendingEntry)) return;
+            request.removeAttribute(PENDING_ENTRY, SCOPE_REQUEST);
             try {
-                is = new ByteArrayInputStream(bodyAsBytes);
-                DataInputStream dataIn = new DataInputStream(is);
-                text = MarshallingSupport.readUTF8(dataIn);
-                dataIn.close();
-            } catch (IOException ioe) {
-                throw JMSExceptionSupport.create(ioe);
-            } finally {
-                if (is != null) {
-                    try {
-                        is.close();
-                    } catch (IOException e) {
-                        // ignore
-                    }
-                }
+                ((PendingEntry) entry).completed(concurrentResult);
+            }
+            catch (JsonProcessingException | RuntimeException e) {
+                // the request goes on with its result, whether or not it could be logged
+                LOG.warn("Could not log the result of {}: ", ((PendingEntry) entry).point.getSignature().toShortString(), e);
             }
         }
-        return text;
     }
 
+    private final class PendingEntry {
+        private final JoinPoint point;
+        private final HttpRequestAndOtherArgs groupedArgs;
+
+        private PendingEntry(JoinPoint point, HttpRequestAndOtherArgs groupedArgs) {
+            this.point = point;
+            this.groupedArgs = groupedArgs;
+        }
+
+        /**
+         * @param outcome the result of the request, or the error it failed with
+         */
+        private void completed(Object outcome) throws JsonProcessingException {
+            if (outcome instanceof CompletionException && ((CompletionException) outcome).getCause() != null) {
+                logError(point, groupedArgs, ((CompletionException) outcome).getCause());
+            }
+            else if (outcome instanceof Throwable) {
+                logError(point, groupedArgs, (Throwable) outcome);
+            }
+            else {
+                logResult(point, groupedArgs, outcome);
+            }
+        }
+    }
+
+    /**
+     * @return the method of the join point as <code>Controller.method</code>
+     */
+    private static String endpointOf(JoinPoint point) {
+        final String signature = point.getSignature().toShortString();
+        final int parameters = signature.indexOf('(');
+        return parameters > 0 ? signature.substring(0, parameters) : signature;
+    }
+
+    static String truncate(String value, int maxLength) {
+        if (maxLength <= 0 || value.length() <= maxLength) return value;
+        return value.substring(0, maxLength) + TRUNCATED;
+    }
+
+    /**
+     * Parameters other than text are serialized separately, stopping as soon as they exceed the maximum length
+     */
+    private List<Object> truncate(List<Object> params, int maxLength) throws JsonProcessingException {
+        if (maxLength <= 0) return params;
+        final List<Object> result = new ArrayList<>(params.size());
+        for (Object param : params) {
+            if (param == null || param instanceof Number || param instanceof Boolean) {
+                result.add(param);
+            }
+            else if (param instanceof CharSequence) {
+                result.add(truncate(param.toString(), maxLength));
+            }
+            else {
+                result.add(serializeBounded(param, maxLength));
+            }
+        }
+        return result;
+    }
+
+    private Object serializeBounded(Object param, int maxLength) throws JsonProcessingException {
+        final BoundedWriter writer = new BoundedWriter(maxLength);
+        try {
+            objectMapper.writeValue(writer, param);
+            return new RawValue(writer.toString());
+        }
+        catch (IOException e) {
+            if (writer.isFull()) return writer.toString() + TRUNCATED;
+            if (e instanceof JsonProcessingException) throw (JsonProcessingException) e;
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Keeps the first <code>maxLength</code> characters written and fails any write beyond them
+     */
+    private static final class BoundedWriter extends Writer {
+        private final StringBuilder content = new StringBuilder();
+        private final int maxLength;
+
+        private BoundedWriter(int maxLength) {
+            this.maxLength = maxLength;
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            final int remaining = maxLength - content.length();
+            content.append(buffer, offset, Math.min(length, remaining));
+            if (length > remaining) {
+                throw new IOException("Maximum length of " + maxLength + " reached");
+            }
+        }
+
+        private boolean isFull() {
+            return content.length() >= maxLength;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String toString() {
+            return content.toString();
+        }
+    }
 }
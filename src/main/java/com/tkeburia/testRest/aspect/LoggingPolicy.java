@@ -0,0 +1,30 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.aspect;
+
+import lombok.Data;
+
+/**
+ * Logging settings for a single endpoint, bound from <code>request.logging.endpoints[{ENDPOINT}].*</code>.
+ * Settings left unset keep the global ones.
+ */
+@Data
+public class LoggingPolicy {
+    private Integer sampleRate;
+    private Integer maxPerSecond;
+    private Integer maxBodyLength;
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.aspect;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.tkeburia.testRest.constants.Constants.REQUEST_LOGGING;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = REQUEST_LOGGING)
+public class LoggingProperties {
+    /** log one in every N requests or messages of an endpoint */
+    private int sampleRate = 1;
+    /** upper limit of entries logged per second and endpoint, 0 for no limit */
+    private int maxPerSecond = 0;
+    /** length after which bodies, parameters and results are cut off, 0 to log them in full */
+    private int maxBodyLength = 8192;
+    /** whether failed requests are logged regardless of sampling and rate limits */
+    private boolean alwaysLogErrors = true;
+    /** overrides by endpoint, controller methods as <code>Controller.method</code> and queues by name */
+    private Map<String, LoggingPolicy> endpoints = new HashMap<>();
+
+    public int sampleRateFor(String endpoint) {
+        final LoggingPolicy policy = endpoints.get(endpoint);
+        return policy != null && policy.getSampleRate() != null ? policy.getSampleRate() : sampleRate;
+    }
+
+    public int maxPerSecondFor(String endpoint) {
+        final LoggingPolicy policy = endpoints.get(endpoint);
+        return policy != null && policy.getMaxPerSecond() != null ? policy.getMaxPerSecond() : maxPerSecond;
+    }
+
+    public int maxBodyLengthFor(String endpoint) {
+        final LoggingPolicy policy = endpoints.get(endpoint);
+        return policy != null && policy.getMaxBodyLength() != null ? policy.getMaxBodyLength() : maxBodyLength;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.aspect;
+
+import com.google.common.collect.ImmutableMap;
+import com.tkeburia.testRest.queues.MessageBody;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import static com.tkeburia.testRest.aspect.LoggingAspect.truncate;
+
+/**
+ * Logs consumed messages, sampled and truncated by destination like the requests logged by the {@link LoggingAspect}. The
+ * listener hands over the body it decoded, and the content is only turned into text when the line is written.
+ */
+@Component
+public class MessageLogger {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MessageLogger.class);
+
+    private final LogSampler logSampler;
+
+    @Autowired
+    public MessageLogger(LogSampler logSampler) {
+        this.logSampler = logSampler;
+    }
+
+    /**
+     * @param body the decoded body of the message, null if its type is not supported
+     */
+    public void received(ActiveMQMessage message, MessageBody body) {
+        if (!LOG.isInfoEnabled()) return;
+        final ActiveMQDestination destination = message.getDestination();
+        final String endpoint = destination == null ? String.valueOf(destination) : destination.getPhysicalName();
+        if (!logSampler.shouldLog(endpoint, false)) return;
+
+        LOG.info("Received message on queue {}", destination);
+        LOG.info("Queue Message content : {}", new Content(message, body, logSampler.maxBodyLengthFor(endpoint)));
+    }
+
+    private static final class Content {
+        private final ActiveMQMessage message;
+        private final MessageBody body;
+        private final int maxLength;
+
+        private Content(ActiveMQMessage message, MessageBody body, int maxLength) {
+            this.message = message;
+            this.body = body;
+            this.maxLength = maxLength;
+        }
+
+        @Override
+        public String toString() {
+            final String text = body == null ? null : body.getText();
+            return text == null ? message.toString() : message.toString(ImmutableMap.of("text", truncate(text, maxLength)));
+        }
+    }
+}
@@ -18,10 +18,15 @@ package com.tkeburia.testRest.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
-import org.apache.activemq.jms.pool.PooledConnectionFactory;
+import com.tkeburia.testRest.aspect.LoggingAspect;
+import com.tkeburia.testRest.util.SchemaUtils;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import springfox.documentation.builders.PathSelectors;
 import springfox.documentation.builders.RequestHandlerSelectors;
 import springfox.documentation.spi.DocumentationType;
@@ -41,8 +46,18 @@ public class AppConfig {
     }
 
     @Bean
-    public PooledConnectionFactory pooledConnectionFactory() {
-        return new PooledConnectionFactory();
+    public MeterBinder schemaCacheMetrics() {
+        return meterRegistry -> Gauge.builder("schema.cache.size", SchemaUtils.class, c -> SchemaUtils.cachedSchemaCount()).register(meterRegistry);
+    }
+
+    @Bean
+    public WebMvcConfigurer asyncResultLogging() {
+        return new WebMvcConfigurer() {
+            @Override
+            public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+                configurer.registerDeferredResultInterceptors(new LoggingAspect.AsyncResultInterceptor());
+            }
+        };
     }
 
     @Bean
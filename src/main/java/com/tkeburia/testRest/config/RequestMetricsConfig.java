@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.config;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.config.MeterFilterReply;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.web.servlet.DefaultWebMvcTagsProvider;
+import org.springframework.boot.actuate.metrics.web.servlet.WebMvcTagsProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.Arrays.stream;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Tags the <code>http.server.requests</code> timer of Spring Boot, which times asynchronous requests until they complete and
+ * tags them with their actual status and exception, with the <code>responseFile</code>, <code>schemaFile</code> and
+ * <code>giveMe</code> request parameters, which are <code>none</code> when absent.
+ * <p>
+ * Parameter values come from the requests, so every parameter tag keeps at most <code>request.metrics.maxTagValues</code>
+ * distinct values and the timer at most <code>request.metrics.maxSeries</code> series. Requests that would go beyond either
+ * limit are not recorded.
+ */
+@Configuration
+public class RequestMetricsConfig {
+
+    static final String REQUESTS = "http.server.requests";
+    static final String[] PARAMETER_TAGS = {"responseFile", "schemaFile", "giveMe"};
+
+    private static final String NONE = "none";
+
+    @Bean
+    public WebMvcTagsProvider webMvcTagsProvider() {
+        return new ParameterTagsProvider();
+    }
+
+    @Bean
+    public MeterFilter requestTagLimits(@Value("${request.metrics.maxTagValues:100}") int maxTagValues,
+                                        @Value("${request.metrics.maxSeries:1000}") int maxSeries) {
+        final List<MeterFilter> limits = stream(PARAMETER_TAGS)
+                .map(tag -> MeterFilter.maximumAllowableTags(REQUESTS, tag, maxTagValues, MeterFilter.deny()))
+                .collect(toList());
+        limits.add(maximumSeries(maxSeries));
+        return new MeterFilter() {
+            // one request at a time, as the limits check and record values separately
+            @Override
+            public synchronized MeterFilterReply accept(Meter.Id id) {
+                for (MeterFilter limit : limits) {
+                    final MeterFilterReply reply = limit.accept(id);
+                    if (reply != MeterFilterReply.NEUTRAL) return reply;
+                }
+                return MeterFilterReply.NEUTRAL;
+            }
+        };
+    }
+
+    /**
+     * Denies series of the requests timer beyond the first <code>maxSeries</code>. Unlike
+     * {@link MeterFilter#maximumAllowableMetrics}, which applies to every meter of the registry, it leaves other meters alone.
+     * It is not thread safe on its own and is only applied by the filter returned from {@link #requestTagLimits}
+     */
+    private static MeterFilter maximumSeries(int maxSeries) {
+        final Set<Meter.Id> series = new HashSet<>();
+        return new MeterFilter() {
+            @Override
+            public MeterFilterReply accept(Meter.Id id) {
+                if (!REQUESTS.equals(id.getName()) || series.contains(id)) return MeterFilterReply.NEUTRAL;
+                if (series.size() >= maxSeries) return MeterFilterReply.DENY;
+                series.add(id);
+                return MeterFilterReply.NEUTRAL;
+            }
+        };
+    }
+
+    static class ParameterTagsProvider extends DefaultWebMvcTagsProvider {
+        @Override
+        public Iterable<Tag> getTags(HttpServletRequest request, HttpServletResponse response, Object handler, Throwable exception) {
+            Tags tags = Tags.of(super.getTags(request, response, handler, exception));
+            for (String parameter : PARAMETER_TAGS) {
+                final String value = request.getParameter(parameter);
+                tags = tags.and(parameter, value == null ? NONE : value);
+            }
+            return tags;
+        }
+    }
+}
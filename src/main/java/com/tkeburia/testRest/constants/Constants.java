@@ -27,4 +27,15 @@ public final class Constants {
     public static final String URIS_PROPERTY_NAME = ".uris.";
     public static final String USER_NAMES_PROPERTY_NAME = ".userNames.";
     public static final String PASSWORDS_PROPERTY_NAME = ".passwords.";
+    public static final String TUNING_PROPERTY_NAME = ".tuning.";
+    public static final String RESPONSE_SCRIPT = "response.script";
+    public static final String CONSUMER_PIPELINE = "consumer.pipeline";
+    public static final String CONSUMER_DEDUP = "consumer.dedup";
+    public static final String REQUEST_REPLY = "request.reply";
+    public static final String EMBEDDED_BROKER = "activemq.embedded";
+    public static final String PUBLISH_SCHEDULE = "publish.schedule";
+    public static final String QUEUE_CAPTURE = "queue.capture";
+    public static final String RESPONSE_FANOUT = "queue.response.fanout";
+    public static final String QUEUE_BROWSE = "queue.browse";
+    public static final String REQUEST_LOGGING = "request.logging";
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.controller;
+
+import com.tkeburia.testRest.dto.ConsumerRegistrationRequest;
+import com.tkeburia.testRest.exception.ConsumerConflictException;
+import com.tkeburia.testRest.exception.MissingPropertyException;
+import com.tkeburia.testRest.exception.ScriptCompilationException;
+import com.tkeburia.testRest.queues.consumer.ConsumerAdminService;
+import com.tkeburia.testRest.queues.consumer.ConsumerRegistration;
+import com.tkeburia.testRest.queues.consumer.ConsumerService;
+import io.swagger.annotations.ApiOperation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.jms.JMSException;
+import java.util.Collection;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.CONFLICT;
+import static org.springframework.http.HttpStatus.CREATED;
+import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.web.bind.annotation.RequestMethod.DELETE;
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
+import static org.springframework.web.bind.annotation.RequestMethod.POST;
+
+@RestController
+@RequestMapping("/test-rest/consumers")
+@ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
+public class ConsumerController {
+
+    private final ConsumerService consumerService;
+    private final ConsumerAdminService consumerAdminService;
+
+    @Autowired
+    public ConsumerController(ConsumerService consumerService, ConsumerAdminService consumerAdminService) {
+        this.consumerService = consumerService;
+        this.consumerAdminService = consumerAdminService;
+    }
+
+    @ApiOperation(
+            value = "List queue consumers",
+            httpMethod = "GET",
+            notes = "Lists the consumers of every broker and destination with their state")
+    @RequestMapping(method = GET, produces = "application/json")
+    public ResponseEntity<Collection<ConsumerRegistration>> getConsumers() {
+        return new ResponseEntity<>(consumerService.getRegistrations(), OK);
+    }
+
+    @ApiOperation(
+            value = "Register a new queue consumer",
+            httpMethod = "POST",
+            notes = "Starts consuming the given destination of a configured consumer broker with the given number of sessions, " +
+                    "optionally mapping a schema file, response script and response broker to it")
+    @RequestMapping(method = POST, produces = "application/json")
+    public ResponseEntity<ConsumerRegistration> registerConsumer(@RequestBody ConsumerRegistrationRequest request) throws JMSException {
+        return new ResponseEntity<>(consumerAdminService.register(request), CREATED);
+    }
+
+    @ApiOperation(
+            value = "Pause a queue consumer",
+            httpMethod = "POST",
+            notes = "Stops delivering messages of the destination until the consumer is resumed")
+    @RequestMapping(value = "/pause", method = POST)
+    public ResponseEntity<?> pauseConsumer(@RequestParam String brokerName, @RequestParam String destination) throws JMSException {
+        final ConsumerRegistration registration = consumerService.getRegistration(brokerName, destination);
+        if (registration == null) return new ResponseEntity<>(NOT_FOUND);
+        consumerService.pause(registration);
+        return new ResponseEntity<>(OK);
+    }
+
+    @ApiOperation(
+            value = "Resume a paused queue consumer",
+            httpMethod = "POST",
+            notes = "Resumes delivering messages of the destination")
+    @RequestMapping(value = "/resume", method = POST)
+    public ResponseEntity<?> resumeConsumer(@RequestParam String brokerName, @RequestParam String destination) throws JMSException {
+        final ConsumerRegistration registration = consumerService.getRegistration(brokerName, destination);
+        if (registration == null) return new ResponseEntity<>(NOT_FOUND);
+        consumerService.resume(registration);
+        return new ResponseEntity<>(OK);
+    }
+
+    @ApiOperation(
+            value = "Drain and stop a queue consumer",
+            httpMethod = "DELETE",
+            notes = "Lets messages being processed complete and closes the consumers of the destination, " +
+                    "messages not yet processed stay on the queue")
+    @RequestMapping(method = DELETE)
+    public ResponseEntity<?> stopConsumer(@RequestParam String brokerName, @RequestParam String destination) throws JMSException {
+        final ConsumerRegistration registration = consumerService.getRegistration(brokerName, destination);
+        if (registration == null) return new ResponseEntity<>(NOT_FOUND);
+        consumerService.stop(registration);
+        return new ResponseEntity<>(OK);
+    }
+
+    @ExceptionHandler({IllegalArgumentException.class, MissingPropertyException.class, ScriptCompilationException.class})
+    public ResponseEntity<String> handleBadRequest(RuntimeException e) {
+        return new ResponseEntity<>(e.getMessage(), BAD_REQUEST);
+    }
+
+    @ExceptionHandler(ConsumerConflictException.class)
+    public ResponseEntity<String> handleConflict(ConsumerConflictException e) {
+        return new ResponseEntity<>(e.getMessage(), CONFLICT);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.controller;
+
+import com.tkeburia.testRest.exception.MissingPropertyException;
+import com.tkeburia.testRest.queues.browse.QueueBrowseService;
+import io.swagger.annotations.ApiOperation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jms.InvalidSelectorException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.web.bind.annotation.RequestMethod.DELETE;
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
+
+@RestController
+@RequestMapping("/test-rest/queues/messages")
+@ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
+public class QueueBrowseController {
+
+    private final QueueBrowseService queueBrowseService;
+
+    @Autowired
+    public QueueBrowseController(QueueBrowseService queueBrowseService) {
+        this.queueBrowseService = queueBrowseService;
+    }
+
+    @ApiOperation(
+            value = "Browse the messages of a queue",
+            httpMethod = "GET",
+            notes = "Streams up to `maxCount` messages of a queue of the given broker as newline delimited JSON without consuming them. " +
+                    "Messages come from the first queue configured for the broker unless a destination is given, and can be filtered " +
+                    "with a JMS `selector`. The next page starts after the message whose id is given as `after`, the `messageId` of the " +
+                    "last message of the previous page")
+    @RequestMapping(method = GET, produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> browse(
+            @RequestParam String brokerName,
+            @RequestParam(required = false) String destination,
+            @RequestParam(required = false) String selector,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "100") int maxCount
+    ){
+        final QueueBrowseService.Page page = queueBrowseService.page(brokerName, destination, selector, after, maxCount);
+        return new ResponseEntity<>(page::writeTo, OK);
+    }
+
+    @ApiOperation(
+            value = "Count the messages of a queue",
+            httpMethod = "GET",
+            notes = "Returns the number of messages on a queue of the given broker, or of the ones matching a JMS `selector`. " +
+                    "Messages matching a selector are counted by browsing, which sees the broker's `maxBrowsePageSize` messages at most")
+    @RequestMapping(value = "/count", method = GET, produces = "application/json")
+    public ResponseEntity<Long> count(
+            @RequestParam String brokerName,
+            @RequestParam(required = false) String destination,
+            @RequestParam(required = false) String selector
+    ){
+        return new ResponseEntity<>(queueBrowseService.count(brokerName, destination, selector), OK);
+    }
+
+    @ApiOperation(
+            value = "Purge a queue",
+            httpMethod = "DELETE",
+            notes = "Removes all messages, or the ones matching a JMS `selector`, from a queue of the given broker and returns their number")
+    @RequestMapping(method = DELETE, produces = "application/json")
+    public ResponseEntity<Integer> purge(
+            @RequestParam String brokerName,
+            @RequestParam(required = false) String destination,
+            @RequestParam(required = false) String selector
+    ){
+        return new ResponseEntity<>(queueBrowseService.purge(brokerName, destination, selector), OK);
+    }
+
+    @ExceptionHandler({IllegalArgumentException.class, MissingPropertyException.class, InvalidSelectorException.class})
+    public ResponseEntity<String> handleBadRequest(RuntimeException e) {
+        return new ResponseEntity<>(e.getMessage(), BAD_REQUEST);
+    }
+}
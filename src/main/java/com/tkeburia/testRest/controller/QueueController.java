@@ -16,19 +16,34 @@
 
 package com.tkeburia.testRest.controller;
 
+import com.tkeburia.testRest.exception.ProducerBackpressureException;
 import com.tkeburia.testRest.queues.producer.ProducerService;
+import com.tkeburia.testRest.queues.reply.RequestReplyService;
+import com.tkeburia.testRest.queues.schedule.PublishScheduler;
 import io.swagger.annotations.ApiOperation;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
 
+import static com.tkeburia.testRest.util.FileUtils.readFileToBytes;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.springframework.http.HttpStatus.ACCEPTED;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.NOT_FOUND;
 import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
 import static org.springframework.web.bind.annotation.RequestMethod.POST;
 
 @RestController
@@ -37,22 +52,93 @@ import static org.springframework.web.bind.annotation.RequestMethod.POST;
 public class QueueController {
 
     private final ProducerService producerService;
+    private final RequestReplyService requestReplyService;
+    private final PublishScheduler publishScheduler;
+
+    private final String responseDir;
+    private final int maxTimes;
 
     @Autowired
-    public QueueController(ProducerService producerService) {
+    public QueueController(ProducerService producerService, RequestReplyService requestReplyService, PublishScheduler publishScheduler,
+                           @Value("${sample.response.directory}") String responseDir,
+                           @Value("${sample.response.maxTimes:1000}") int maxTimes) {
         this.producerService = producerService;
+        this.requestReplyService = requestReplyService;
+        this.publishScheduler = publishScheduler;
+        this.responseDir = responseDir;
+        this.maxTimes = maxTimes;
     }
 
     @ApiOperation(
             value = "Adds the given payload to the given queue",
             httpMethod = "POST",
-            notes = "This operation takes the payload from the request and puts it to a queue with the given name")
+            notes = "This operation takes the payload from the request and puts it to a queue with the given name. " +
+                    "The message goes to the first queue configured for the broker unless a destination is given. " +
+                    "For brokers configured for asynchronous sends the request completes once the broker acknowledges the message, " +
+                    "without holding a request thread, or fails with 503 while too many messages wait for acknowledgement. When a delay is given the message is published later and the request " +
+                    "completes with 202 right away")
     @RequestMapping(method = POST)
-    public ResponseEntity<?> putMessageToQueue(
+    public CompletableFuture<ResponseEntity<?>> putMessageToQueue(
             @RequestBody HashMap params,
-            @RequestParam String brokerName
+            @RequestParam String brokerName,
+            @RequestParam(required = false) String destination,
+            @RequestParam(required = false) Long delayMillis
     ){
-        producerService.sendToQueue(brokerName, params);
-        return new ResponseEntity<>(OK);
+        if (delayMillis != null && delayMillis > 0) {
+            publishScheduler.schedule(brokerName, destination, params, null, delayMillis);
+            return completedFuture(new ResponseEntity<>(ACCEPTED));
+        }
+        return producerService.sendToQueueAsync(brokerName, destination, params, null).thenApply(sent -> new ResponseEntity<>(OK));
+    }
+
+    @ApiOperation(
+            value = "Adds the content of a sample response file to the given queue",
+            httpMethod = "POST",
+            notes = "Puts the content of the sample response file with the given name as is to a queue of the given broker, as a bytes " +
+                    "message or as a text message when `text` is set. The message is sent `times` times, the file is read once. " +
+                    "`times` has to be between 1 and `sample.response.maxTimes`. " +
+                    "The message goes to the first queue configured for the broker unless a destination is given")
+    @RequestMapping(value = "/responseFile", method = POST)
+    public CompletableFuture<ResponseEntity<?>> putResponseFileToQueue(
+            @RequestParam String fileName,
+            @RequestParam String brokerName,
+            @RequestParam(required = false) String destination,
+            @RequestParam(defaultValue = "1") int times,
+            @RequestParam(defaultValue = "false") boolean text
+    ) throws IOException {
+        if (times < 1 || times > maxTimes) {
+            throw new IllegalArgumentException(String.format("times has to be between 1 and %d", maxTimes));
+        }
+        final byte[] content = readFileToBytes(responseDir, fileName);
+        return producerService.sendContentToQueue(brokerName, destination, content, text, times).thenApply(sent -> new ResponseEntity<>(OK));
+    }
+
+    @ApiOperation(
+            value = "Adds the given payload to the given queue and returns the reply",
+            httpMethod = "POST",
+            notes = "This operation puts the payload from the request to a queue with the given name and responds with the correlated reply " +
+                    "read from the request/reply queue, or with 504 if no reply arrives in time")
+    @RequestMapping(value = "/request-reply", method = POST)
+    public DeferredResult<ResponseEntity<?>> requestReply(
+            @RequestBody HashMap params,
+            @RequestParam String brokerName,
+            @RequestParam(required = false) Long timeoutMillis
+    ){
+        return requestReplyService.request(brokerName, params, timeoutMillis);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleBadRequest(IllegalArgumentException e) {
+        return new ResponseEntity<>(e.getMessage(), BAD_REQUEST);
+    }
+
+    @ExceptionHandler(ProducerBackpressureException.class)
+    public ResponseEntity<String> handleBackpressure(ProducerBackpressureException e) {
+        return new ResponseEntity<>(e.getMessage(), SERVICE_UNAVAILABLE);
+    }
+
+    @ExceptionHandler(NoSuchFileException.class)
+    public ResponseEntity<String> handleMissingFile(NoSuchFileException e) {
+        return new ResponseEntity<>(String.format("No sample response file %s", e.getFile()), NOT_FOUND);
     }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.controller;
+
+import com.tkeburia.testRest.exception.MissingPropertyException;
+import com.tkeburia.testRest.queues.capture.Replay;
+import com.tkeburia.testRest.queues.capture.ReplayService;
+import io.swagger.annotations.ApiOperation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Collection;
+
+import static org.springframework.http.HttpStatus.ACCEPTED;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.web.bind.annotation.RequestMethod.DELETE;
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
+import static org.springframework.web.bind.annotation.RequestMethod.POST;
+
+@RestController
+@RequestMapping("/test-rest/queues/replays")
+@ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
+public class ReplayController {
+
+    private final ReplayService replayService;
+
+    @Autowired
+    public ReplayController(ReplayService replayService) {
+        this.replayService = replayService;
+    }
+
+    @ApiOperation(
+            value = "List replays of captured messages",
+            httpMethod = "GET",
+            notes = "Lists running and finished replays with the number of messages sent so far")
+    @RequestMapping(method = GET, produces = "application/json")
+    public ResponseEntity<Collection<Replay>> getReplays() {
+        return new ResponseEntity<>(replayService.getReplays(), OK);
+    }
+
+    @ApiOperation(
+            value = "Replay captured messages to the given broker",
+            httpMethod = "POST",
+            notes = "Re-publishes the messages captured between `from` and `to` (epoch millis) to a queue of the given broker in the " +
+                    "background. A `speed` of 1 keeps the captured time between messages, N sends them N times as fast and 0 as fast as " +
+                    "possible. Messages go to the first queue configured for the broker unless a destination is given, " +
+                    "`sourceDestination` limits the replay to messages captured from one queue")
+    @RequestMapping(method = POST, produces = "application/json")
+    public ResponseEntity<Replay> replay(
+            @RequestParam String brokerName,
+            @RequestParam(required = false) String destination,
+            @RequestParam(required = false) String sourceDestination,
+            @RequestParam(defaultValue = "0") long from,
+            @RequestParam(defaultValue = "" + Long.MAX_VALUE) long to,
+            @RequestParam(defaultValue = "1") double speed
+    ){
+        return new ResponseEntity<>(replayService.replay(brokerName, destination, sourceDestination, from, to, speed), ACCEPTED);
+    }
+
+    @ApiOperation(
+            value = "Cancel a replay",
+            httpMethod = "DELETE",
+            notes = "Stops the replay with the given id if it is still running and removes it from the list")
+    @RequestMapping(value = "/{id}", method = DELETE)
+    public ResponseEntity<?> cancel(@PathVariable String id) {
+        return new ResponseEntity<>(replayService.cancel(id) ? OK : NOT_FOUND);
+    }
+
+    @ExceptionHandler({IllegalArgumentException.class, MissingPropertyException.class})
+    public ResponseEntity<String> handleBadRequest(RuntimeException e) {
+        return new ResponseEntity<>(e.getMessage(), BAD_REQUEST);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.controller;
+
+import com.tkeburia.testRest.exception.MissingPropertyException;
+import com.tkeburia.testRest.queues.schedule.PublishScheduler;
+import com.tkeburia.testRest.queues.schedule.RecurringPublication;
+import io.swagger.annotations.ApiOperation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Collection;
+import java.util.HashMap;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.CREATED;
+import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.web.bind.annotation.RequestMethod.DELETE;
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
+import static org.springframework.web.bind.annotation.RequestMethod.POST;
+
+@RestController
+@RequestMapping("/test-rest/queues/schedules")
+@ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
+public class ScheduleController {
+
+    private final PublishScheduler publishScheduler;
+
+    @Autowired
+    public ScheduleController(PublishScheduler publishScheduler) {
+        this.publishScheduler = publishScheduler;
+    }
+
+    @ApiOperation(
+            value = "List recurring publications",
+            httpMethod = "GET",
+            notes = "Lists the payloads published on a cron schedule with the time of their next publication")
+    @RequestMapping(method = GET, produces = "application/json")
+    public ResponseEntity<Collection<RecurringPublication>> getSchedules() {
+        return new ResponseEntity<>(publishScheduler.getRecurringPublications(), OK);
+    }
+
+    @ApiOperation(
+            value = "Publish the given payload on a cron schedule",
+            httpMethod = "POST",
+            notes = "Puts the payload from the request to a queue of the given broker on every match of the cron expression, " +
+                    "e.g. '0 */5 * * * *' for every five minutes. The message goes to the first queue configured for the broker " +
+                    "unless a destination is given")
+    @RequestMapping(method = POST, produces = "application/json")
+    public ResponseEntity<RecurringPublication> schedule(
+            @RequestBody HashMap params,
+            @RequestParam String brokerName,
+            @RequestParam(required = false) String destination,
+            @RequestParam String cron
+    ){
+        return new ResponseEntity<>(publishScheduler.scheduleRecurring(brokerName, destination, params, cron), CREATED);
+    }
+
+    @ApiOperation(
+            value = "Cancel a recurring publication",
+            httpMethod = "DELETE",
+            notes = "Stops publishing the payload of the schedule with the given id")
+    @RequestMapping(value = "/{id}", method = DELETE)
+    public ResponseEntity<?> cancel(@PathVariable String id) {
+        return new ResponseEntity<>(publishScheduler.cancelRecurring(id) ? OK : NOT_FOUND);
+    }
+
+    @ExceptionHandler({IllegalArgumentException.class, MissingPropertyException.class})
+    public ResponseEntity<String> handleBadRequest(RuntimeException e) {
+        return new ResponseEntity<>(e.getMessage(), BAD_REQUEST);
+    }
+}
@@ -14,15 +14,11 @@
  * limitations under the License.
  */
 
-package com.tkeburia.testRest.annotation;
 
-import java.lang.annotation.*;
+package com.tkeburia.testRest.exception;
 
-import static java.lang.annotation.ElementType.METHOD;
-import static java.lang.annotation.RetentionPolicy.RUNTIME;
-
-@Documented
-@Retention(RUNTIME)
-@Target(METHOD)
-public @interface LogMethodData {
+public class InvalidPropertyException extends RuntimeException {
+    public InvalidPropertyException(String message) {
+        super(message);
+    }
 }
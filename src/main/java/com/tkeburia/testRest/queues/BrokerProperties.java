@@ -16,25 +16,72 @@
 
 package com.tkeburia.testRest.queues;
 
+import com.google.common.base.Splitter;
 import lombok.Data;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.filter.DestinationFilter;
 
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Stream;
 
+import static com.google.common.base.Strings.nullToEmpty;
 import static java.util.Collections.emptySet;
 
 @Data
 public abstract class BrokerProperties {
+    private static final Splitter NAME_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
     private Map<String, String> uris;
     private Map<String, String> userNames;
     private Map<String, String> passwords;
     private Map<String, String> queueNames;
+    private Map<String, BrokerTuning> tuning = new HashMap<>();
 
     public Set<String> getIds() {
         return Stream.of(uris, userNames, passwords, queueNames).filter(Objects::nonNull).map(Map::keySet).findFirst().orElse(
                 emptySet());
     }
+
+    /**
+     * @return the comma separated queue names configured for the broker, which may include wildcards
+     */
+    public List<String> queueNamesFor(String brokerName) {
+        return splitNames(queueNames == null ? null : queueNames.get(brokerName));
+    }
+
+    /**
+     * @return whether the queue is one of the queues configured for the broker, or matched by one of its wildcards
+     */
+    public boolean hasQueue(String brokerName, String queueName) {
+        final ActiveMQQueue queue = new ActiveMQQueue(queueName);
+        return queueNamesFor(brokerName).stream().anyMatch(name -> DestinationFilter.parseFilter(new ActiveMQQueue(name)).matches(queue));
+    }
+
+    /**
+     * @return the ids of the brokers with destinations to use, every broker needs at least one
+     */
+    public Set<String> destinationIds() {
+        return queueNames == null ? emptySet() : queueNames.keySet();
+    }
+
+    /**
+     * @return the first queue configured for the broker, used when no destination is given explicitly
+     */
+    public String defaultQueueNameFor(String brokerName) {
+        final List<String> names = queueNamesFor(brokerName);
+        return names.isEmpty() ? null : names.get(0);
+    }
+
+    public BrokerTuning tuningFor(String brokerName) {
+        return tuning.getOrDefault(brokerName, new BrokerTuning());
+    }
+
+    protected static List<String> splitNames(String names) {
+        return NAME_SPLITTER.splitToList(nullToEmpty(names));
+    }
 }
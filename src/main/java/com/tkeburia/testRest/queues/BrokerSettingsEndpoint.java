@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues;
+
+import com.tkeburia.testRest.queues.consumer.ConsumerProperties;
+import org.apache.activemq.ActiveMQConnection;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.jms.pool.PooledConnection;
+import org.apache.activemq.jms.pool.PooledConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.tkeburia.testRest.util.QueueUtils.describeConnection;
+import static com.tkeburia.testRest.util.QueueUtils.describeConnectionFactory;
+import static java.util.Collections.singletonMap;
+
+/**
+ * Reports the connection settings every configured broker is actually running with on <code>/brokers</code>, read
+ * from the open consumer connections and the connection factories of the producer templates
+ */
+@Component
+@Endpoint(id = "brokers")
+@ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
+public class BrokerSettingsEndpoint {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BrokerSettingsEndpoint.class);
+
+    private final ConsumerProperties consumerProperties;
+    private final Map<String, Connection> consumerConnectionMap;
+    private final Map<String, JmsTemplate> jmsTemplateMap;
+
+    @Autowired
+    public BrokerSettingsEndpoint(
+            ConsumerProperties consumerProperties,
+            @Qualifier("consumerConnectionMap") Map<String, Connection> consumerConnectionMap,
+            @Qualifier("jmsTemplateMap") Map<String, JmsTemplate> jmsTemplateMap
+    ) {
+        this.consumerProperties = consumerProperties;
+        this.consumerConnectionMap = consumerConnectionMap;
+        this.jmsTemplateMap = jmsTemplateMap;
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Map<String, Object>>> brokers() {
+        final Map<String, Map<String, Map<String, Object>>> result = new LinkedHashMap<>();
+        final Map<String, Map<String, Object>> consumers = new TreeMap<>();
+        consumerConnectionMap.forEach((id, connection) -> {
+            final Map<String, Object> settings = describe(connection);
+            settings.put("ackMode", consumerProperties.ackModeFor(id));
+            consumers.put(id, settings);
+        });
+        result.put("consumer", consumers);
+        final Map<String, Map<String, Object>> producers = new TreeMap<>();
+        jmsTemplateMap.forEach((id, template) -> producers.put(id, describe(template.getConnectionFactory())));
+        result.put("producer", producers);
+        return result;
+    }
+
+    private static Map<String, Object> describe(Connection connection) {
+        try {
+            final Connection target = connection instanceof PooledConnection ? ((PooledConnection) connection).getConnection() : connection;
+            if (target instanceof ActiveMQConnection) {
+                return describeConnection((ActiveMQConnection) target);
+            }
+        }
+        catch (JMSException e) {
+            LOG.warn("Could not read the settings of consumer connection {}: ", connection, e);
+        }
+        return new LinkedHashMap<>(singletonMap("connection", connection.getClass().getName()));
+    }
+
+    private static Map<String, Object> describe(ConnectionFactory connectionFactory) {
+        final Object target = connectionFactory instanceof PooledConnectionFactory
+                ? ((PooledConnectionFactory) connectionFactory).getConnectionFactory()
+                : connectionFactory;
+        return target instanceof ActiveMQConnectionFactory
+                ? describeConnectionFactory((ActiveMQConnectionFactory) target)
+                : new LinkedHashMap<>(singletonMap("connectionFactory", String.valueOf(target)));
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Connection factory tuning for a single broker, bound from <code>{PREFIX}.tuning.{BROKER}.*</code>.
+ * Settings left unset keep the ActiveMQ client defaults.
+ */
+@Data
+@NoArgsConstructor
+public class BrokerTuning {
+    private Integer queuePrefetch;
+    private Integer topicPrefetch;
+    private Boolean optimizeAcknowledge;
+    private Boolean dispatchAsync;
+    private Boolean useCompression;
+    private Integer producerWindowSize;
+    private Integer maximumRedeliveries;
+    private Long initialRedeliveryDelay;
+    private Long redeliveryDelay;
+    private Boolean useExponentialBackOff;
+    private Double backOffMultiplier;
+    private Long maximumRedeliveryDelay;
+
+    public BrokerTuning(BrokerTuning other) {
+        this.queuePrefetch = other.queuePrefetch;
+        this.topicPrefetch = other.topicPrefetch;
+        this.optimizeAcknowledge = other.optimizeAcknowledge;
+        this.dispatchAsync = other.dispatchAsync;
+        this.useCompression = other.useCompression;
+        this.producerWindowSize = other.producerWindowSize;
+        this.maximumRedeliveries = other.maximumRedeliveries;
+        this.initialRedeliveryDelay = other.initialRedeliveryDelay;
+        this.redeliveryDelay = other.redeliveryDelay;
+        this.useExponentialBackOff = other.useExponentialBackOff;
+        this.backOffMultiplier = other.backOffMultiplier;
+        this.maximumRedeliveryDelay = other.maximumRedeliveryDelay;
+    }
+}
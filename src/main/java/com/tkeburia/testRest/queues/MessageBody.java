@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues;
+
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.command.ActiveMQMapMessage;
+import org.apache.activemq.command.ActiveMQObjectMessage;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.util.ByteSequence;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.Serializable;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The body of a received text, bytes, map or object message, decoded once and shared by logging, schema validation and
+ * the response script. Bytes message content is read in place, JSON is parsed straight from it and it is only turned into
+ * a <code>String</code> when the text is asked for.
+ */
+public final class MessageBody {
+
+    public enum Type { TEXT, BYTES, MAP, OBJECT }
+
+    private final Type type;
+    private final ByteSequence bytes;
+    private final Map<String, Object> map;
+    private volatile String text;
+
+    private MessageBody(Type type, ByteSequence bytes, Map<String, Object> map, String text) {
+        this.type = type;
+        this.bytes = bytes;
+        this.map = map;
+        this.text = text;
+    }
+
+    /**
+     * @return the decoded body of the message, or null if its type is not supported
+     */
+    @SuppressWarnings("unchecked")
+    public static MessageBody of(Message message) throws JMSException {
+        if (message instanceof ActiveMQTextMessage) {
+            return new MessageBody(Type.TEXT, null, null, ((ActiveMQTextMessage) message).getText());
+        }
+        if (message instanceof ActiveMQBytesMessage) {
+            return new MessageBody(Type.BYTES, contentOf((ActiveMQBytesMessage) message), null, null);
+        }
+        if (message instanceof ActiveMQMapMessage) {
+            return new MessageBody(Type.MAP, null, ((ActiveMQMapMessage) message).getContentMap(), null);
+        }
+        if (message instanceof ActiveMQObjectMessage) {
+            final Serializable object = ((ActiveMQObjectMessage) message).getObject();
+            if (object instanceof Map) {
+                return new MessageBody(Type.MAP, null, (Map<String, Object>) object, null);
+            }
+            return new MessageBody(Type.OBJECT, null, null, object == null ? null : object.toString());
+        }
+        return null;
+    }
+
+    /**
+     * Uncompressed content is used as it is, compressed content has to be inflated into a new array first
+     */
+    private static ByteSequence contentOf(ActiveMQBytesMessage message) throws JMSException {
+        if (!message.isCompressed()) {
+            final ByteSequence content = message.getContent();
+            return content != null ? content : new ByteSequence(new byte[0]);
+        }
+        final byte[] data = new byte[(int) message.getBodyLength()];
+        message.readBytes(data);
+        message.reset();
+        return new ByteSequence(data);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the content of a bytes message, null for other types
+     */
+    public ByteSequence getBytes() {
+        return bytes;
+    }
+
+    public String getText() {
+        String result = text;
+        if (result == null && (bytes != null || map != null)) {
+            result = bytes != null ? new String(bytes.getData(), bytes.getOffset(), bytes.getLength(), UTF_8) : new JSONObject(map).toString();
+            text = result;
+        }
+        return result;
+    }
+
+    /**
+     * Parses the body as a JSON object, reading bytes content directly and converting map content without serializing it
+     */
+    public JSONObject toJson() {
+        if (map != null) {
+            return new JSONObject(map);
+        }
+        if (bytes != null && text == null) {
+            return new JSONObject(new JSONTokener(new InputStreamReader(
+                    new ByteArrayInputStream(bytes.getData(), bytes.getOffset(), bytes.getLength()), UTF_8)));
+        }
+        return new JSONObject(getText());
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.queues.browse;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import static com.tkeburia.testRest.constants.Constants.QUEUE_BROWSE;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = QUEUE_BROWSE)
+public class BrowseProperties {
+    /** upper limit of the number of messages returned by a single browse request */
+    private int maxCount = 10000;
+    /** time to wait for another message before a purge considers the queue empty */
+    private long purgeReceiveTimeoutMillis = 500;
+    /** upper limit of the time a purge keeps consuming, e.g. while a producer keeps sending to the queue */
+    private long purgeTimeoutMillis = 60000;
+    /** time to wait for the statistics plugin of the broker to report the size of a queue */
+    private long statisticsTimeoutMillis = 1000;
+}
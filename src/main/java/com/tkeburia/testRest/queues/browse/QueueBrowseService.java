@@ -0,0 +1,278 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.queues.browse;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tkeburia.testRest.queues.MessageBody;
+import com.tkeburia.testRest.queues.producer.ProducerService;
+import org.apache.activemq.util.ByteSequence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.TemporaryQueue;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Looks at the messages sitting on a queue of a producer broker without consuming them, and empties queues.
+ * <p>
+ * Browsed messages are written out as JSON lines while they are enumerated, so a page is never held in memory. A JMS browser
+ * always starts at the head of the queue, so the next page skips the messages up to and including the cursor, the id of the
+ * last message of the previous page. A cursor that is no longer on the queue, e.g. because it was consumed meanwhile, gives
+ * an empty page. The broker only lets a browser see the first <code>maxBrowsePageSize</code> messages of a queue (400 by
+ * default), so messages further down the queue can neither be browsed nor counted by browsing.
+ * <p>
+ * Queues are therefore counted with the statistics plugin of the broker when no selector is given, falling back to browsing
+ * when the broker does not answer. A message that can not be read is written as a record with its id and an error instead.
+ */
+@Service
+@ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
+public class QueueBrowseService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QueueBrowseService.class);
+
+    /** prefix of the destinations the statistics broker plugin answers with the statistics of a queue */
+    static final String STATISTICS_DESTINATION_PREFIX = "ActiveMQ.Statistics.Destination.";
+
+    /**
+     * Messages of a queue ready to be written, nothing is read from the broker before {@link #writeTo} is called
+     */
+    @FunctionalInterface
+    public interface Page {
+        /**
+         * @return the number of messages written
+         */
+        int writeTo(OutputStream out) throws IOException;
+    }
+
+    private final ProducerService producerService;
+    private final BrowseProperties browseProperties;
+    private final JsonFactory jsonFactory;
+
+    @Autowired
+    public QueueBrowseService(ProducerService producerService, BrowseProperties browseProperties, ObjectMapper objectMapper) {
+        this.producerService = producerService;
+        this.browseProperties = browseProperties;
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * Checks the arguments right away, so that they can be rejected before anything is written
+     * @param destination queue to browse, or null for the first queue configured for the broker
+     * @param selector JMS message selector, or null for all messages
+     * @param after id of the message after which the page starts, or null to start at the head of the queue
+     */
+    public Page page(String brokerName, String destination, String selector, String after, int maxCount) {
+        if (maxCount < 1 || maxCount > browseProperties.getMaxCount()) {
+            throw new IllegalArgumentException(String.format("The number of messages must be between 1 and %d", browseProperties.getMaxCount()));
+        }
+        final String queueName = producerService.queueNameFor(brokerName, destination);
+        return out -> {
+            try {
+                return producerService.browse(brokerName, queueName, selector, (session, browser) -> {
+                    final Enumeration<?> messages = browser.getEnumeration();
+                    if (after != null && !skipPast(messages, after)) return 0;
+                    return write(messages, maxCount, out);
+                });
+            }
+            catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+    }
+
+    /**
+     * Asks the statistics plugin of the broker for the size of the queue when there is no selector, otherwise or when the
+     * broker does not answer counts the messages by browsing them, which sees <code>maxBrowsePageSize</code> messages at most
+     */
+    public long count(String brokerName, String destination, String selector) {
+        final String queueName = producerService.queueNameFor(brokerName, destination);
+        if (selector == null) {
+            final Long size = queueSize(brokerName, queueName);
+            if (size != null) return size;
+            LOG.debug("Broker {} did not report statistics of {}, counting its messages by browsing", brokerName, queueName);
+        }
+        return producerService.browse(brokerName, queueName, selector, (session, browser) -> {
+            final Enumeration<?> messages = browser.getEnumeration();
+            long count = 0;
+            for (; messages.hasMoreElements(); messages.nextElement()) {
+                count++;
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Consumes messages until none arrives for the configured receive timeout. A purge without selector stops after the
+     * number of messages the queue held when it started, if the broker reports it, and every purge stops after the purge
+     * timeout, so that producers sending to the queue meanwhile can't keep it going.
+     * @return the number of messages removed from the queue
+     */
+    public int purge(String brokerName, String destination, String selector) {
+        final String queueName = producerService.queueNameFor(brokerName, destination);
+        final Long initialSize = selector == null ? queueSize(brokerName, queueName) : null;
+        final long deadline = System.currentTimeMillis() + browseProperties.getPurgeTimeoutMillis();
+        final int purged = producerService.execute(brokerName, session -> {
+            final MessageConsumer consumer = session.createConsumer(session.createQueue(queueName), selector);
+            try {
+                int count = 0;
+                while ((initialSize == null || count < initialSize) && System.currentTimeMillis() < deadline
+                        && consumer.receive(browseProperties.getPurgeReceiveTimeoutMillis()) != null) {
+                    count++;
+                }
+                return count;
+            }
+            finally {
+                consumer.close();
+            }
+        });
+        if (System.currentTimeMillis() >= deadline) {
+            LOG.warn("Purge of {} of broker {} stopped after {} ms, messages may be left on the queue", queueName, brokerName,
+                    browseProperties.getPurgeTimeoutMillis());
+        }
+        LOG.info("Purged {} messages from {} of broker {}", purged, queueName, brokerName);
+        return purged;
+    }
+
+    /**
+     * @return the number of messages on the queue reported by the statistics plugin, or null if the broker doesn't answer
+     */
+    private Long queueSize(String brokerName, String queueName) {
+        return producerService.execute(brokerName, session -> {
+            final TemporaryQueue replyTo = session.createTemporaryQueue();
+            final MessageConsumer consumer = session.createConsumer(replyTo);
+            final MessageProducer producer = session.createProducer(session.createQueue(STATISTICS_DESTINATION_PREFIX + queueName));
+            try {
+                final Message query = session.createMessage();
+                query.setJMSReplyTo(replyTo);
+                // the query is left on the statistics queue of brokers without the plugin, where it must not pile up
+                producer.setTimeToLive(browseProperties.getStatisticsTimeoutMillis());
+                producer.send(query);
+                final Message reply = consumer.receive(browseProperties.getStatisticsTimeoutMillis());
+                return reply instanceof MapMessage && ((MapMessage) reply).itemExists("size") ? ((MapMessage) reply).getLong("size") : null;
+            }
+            finally {
+                producer.close();
+                consumer.close();
+                replyTo.delete();
+            }
+        });
+    }
+
+    private static boolean skipPast(Enumeration<?> messages, String messageId) throws JMSException {
+        while (messages.hasMoreElements()) {
+            if (messageId.equals(((Message) messages.nextElement()).getJMSMessageID())) return true;
+        }
+        return false;
+    }
+
+    private int write(Enumeration<?> messages, int maxCount, OutputStream out) throws JMSException {
+        int written = 0;
+        try (JsonGenerator json = jsonFactory.createGenerator(out)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.setPrettyPrinter(new MinimalPrettyPrinter(""));
+            while (written < maxCount && messages.hasMoreElements()) {
+                write((Message) messages.nextElement(), json);
+                written++;
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return written;
+    }
+
+    /**
+     * Everything that can fail is read before the record is started, a message that can't be read is written as a record
+     * with its id and the error, so that the other messages of the page are still written
+     */
+    private static void write(Message message, JsonGenerator json) throws JMSException, IOException {
+        final String messageId = message.getJMSMessageID();
+        final Map<String, Object> properties = new LinkedHashMap<>();
+        final MessageBody body;
+        try {
+            final Enumeration<?> propertyNames = message.getPropertyNames();
+            while (propertyNames.hasMoreElements()) {
+                final String name = (String) propertyNames.nextElement();
+                properties.put(name, message.getObjectProperty(name));
+            }
+            body = MessageBody.of(message);
+        }
+        catch (JMSException | RuntimeException e) {
+            LOG.warn("Could not read browsed message {}: ", messageId, e);
+            json.writeStartObject();
+            json.writeStringField("messageId", messageId);
+            json.writeStringField("error", String.valueOf(e.getMessage()));
+            json.writeEndObject();
+            json.writeRaw('\n');
+            return;
+        }
+        json.writeStartObject();
+        json.writeStringField("messageId", messageId);
+        if (message.getJMSCorrelationID() != null) {
+            json.writeStringField("correlationId", message.getJMSCorrelationID());
+        }
+        json.writeNumberField("timestamp", message.getJMSTimestamp());
+        json.writeBooleanField("redelivered", message.getJMSRedelivered());
+        if (!properties.isEmpty()) {
+            json.writeObjectFieldStart("properties");
+            for (Map.Entry<String, Object> property : properties.entrySet()) {
+                json.writeObjectField(property.getKey(), property.getValue());
+            }
+            json.writeEndObject();
+        }
+        writeBody(body, json);
+        json.writeEndObject();
+        json.writeRaw('\n');
+    }
+
+    /**
+     * Bytes bodies are written base64 encoded, map bodies as JSON objects
+     */
+    private static void writeBody(MessageBody body, JsonGenerator json) throws IOException {
+        if (body == null) return;
+        json.writeStringField("type", body.getType().name());
+        switch (body.getType()) {
+            case BYTES:
+                final ByteSequence bytes = body.getBytes();
+                json.writeFieldName("body");
+                json.writeBinary(bytes.getData(), bytes.getOffset(), bytes.getLength());
+                break;
+            case MAP:
+                json.writeFieldName("body");
+                json.writeRawValue(body.getText());
+                break;
+            default:
+                json.writeStringField("body", body.getText());
+        }
+    }
+}
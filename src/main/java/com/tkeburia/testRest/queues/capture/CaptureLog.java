@@ -0,0 +1,421 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.capture;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.tkeburia.testRest.queues.MessageBody;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.util.ByteArrayOutputStream;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.MarshallingSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.jms.JMSException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Appends the messages consumed by the application to a log of segment files on local disk, so that they can be replayed
+ * later. Segment files are named after the capture time of their first message and a new one is started once the current
+ * one reaches <code>segmentBytes</code>. Consumer threads only encode the record and queue it, a single writer thread
+ * appends queued records to the segment file and flushes it every <code>flushIntervalMillis</code>. Records that do not fit
+ * into the <code>queueCapacity</code> of the queue are dropped and counted, so a slow disk never holds up consumers.
+ * <p>
+ * A record is the length of the rest of the record followed by the capture time, the destination, whether the body is
+ * bytes, the correlation id and type, the properties marshalled the way ActiveMQ marshals them and the body. Bodies of
+ * text, map and object messages are stored as the UTF-8 of their text.
+ */
+@Component
+@ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
+public class CaptureLog {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CaptureLog.class);
+
+    static final String SEGMENT_SUFFIX = ".capture";
+    private static final int TIMESTAMP_DIGITS = 20;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final int INITIAL_RECORD_SIZE = 1024;
+    private static final int MAX_RETAINED_RECORD_SIZE = 1024 * 1024;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private final CaptureProperties captureProperties;
+    private final File directory;
+    private final ThreadLocal<ByteArrayOutputStream> records = ThreadLocal.withInitial(() -> new ByteArrayOutputStream(INITIAL_RECORD_SIZE));
+    private final BlockingQueue<QueuedRecord> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private final ExecutorService writer;
+
+    // only used by the writer thread, and by shutdown once the writer has stopped
+    private DataOutputStream segment;
+    private long segmentSize;
+    private int sequence;
+    private long reportedDropped;
+
+    @Autowired
+    public CaptureLog(CaptureProperties captureProperties) {
+        this.captureProperties = captureProperties;
+        this.directory = new File(captureProperties.getDirectory());
+        if (!captureProperties.isEnabled()) {
+            this.queue = null;
+            this.writer = null;
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException(String.format("Could not create capture directory %s", directory.getAbsolutePath()));
+        }
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, captureProperties.getQueueCapacity()));
+        this.writer = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("capture-writer-%d").setDaemon(true).build());
+        writer.execute(this::writeQueued);
+    }
+
+    public boolean isEnabled() {
+        return captureProperties.isEnabled();
+    }
+
+    /**
+     * Queues the message for appending when capturing is enabled, failures are only logged
+     */
+    public void capture(String destination, ActiveMQMessage message, MessageBody body) {
+        if (!captureProperties.isEnabled()) return;
+        final ByteArrayOutputStream record = records.get();
+        try {
+            record.reset();
+            final long timestamp = System.currentTimeMillis();
+            writeRecord(new DataOutputStream(record), timestamp, destination, message, body);
+            final ByteSequence encoded = record.toByteSequence();
+            if (!queue.offer(new QueuedRecord(timestamp, Arrays.copyOfRange(encoded.getData(), encoded.getOffset(), encoded.getOffset() + encoded.getLength())))) {
+                dropped.incrementAndGet();
+            }
+        }
+        catch (IOException | JMSException e) {
+            LOG.error("Could not capture message from {}: ", destination, e);
+        }
+        finally {
+            if (record.toByteSequence().getData().length > MAX_RETAINED_RECORD_SIZE) {
+                records.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the number of messages that were not captured because the writer could not keep up
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Reads the messages captured within the time window in the order they were captured, until the handler returns false.
+     * Messages captured before the call are written first.
+     * @param destination only read messages captured from this destination, or null for all
+     */
+    public void read(long fromMillis, long toMillis, String destination, Predicate<CapturedMessage> handler) {
+        awaitWritten();
+        for (File file : segmentsWithin(fromMillis, toMillis)) {
+            if (!readSegment(file, fromMillis, toMillis, destination, handler)) return;
+        }
+    }
+
+    /**
+     * Stops the writer and appends whatever it left in the queue
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (writer == null) return;
+        writer.shutdownNow();
+        try {
+            if (!writer.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, SECONDS)) {
+                LOG.warn("Capture writer did not stop in time, queued messages are not written");
+                return;
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        final List<QueuedRecord> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        remaining.forEach(this::writeQuietly);
+        closeSegment();
+    }
+
+    /**
+     * The writer thread: appends queued records as they arrive and flushes the segment every flush interval
+     */
+    private void writeQueued() {
+        final long interval = MILLISECONDS.toNanos(Math.max(1, captureProperties.getFlushIntervalMillis()));
+        long nextFlush = System.nanoTime() + interval;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final QueuedRecord record = queue.poll(Math.max(0, nextFlush - System.nanoTime()), NANOSECONDS);
+                if (record != null) {
+                    writeQuietly(record);
+                }
+                if (System.nanoTime() - nextFlush >= 0) {
+                    flushQuietly();
+                    nextFlush = System.nanoTime() + interval;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            // shutting down
+        }
+        flushQuietly();
+    }
+
+    /**
+     * Waits until the writer has written and flushed the records queued so far
+     */
+    private void awaitWritten() {
+        if (writer == null || writer.isShutdown()) return;
+        final CountDownLatch written = new CountDownLatch(1);
+        try {
+            if (!queue.offer(new QueuedRecord(written), SHUTDOWN_TIMEOUT_SECONDS, SECONDS)
+                    || !written.await(SHUTDOWN_TIMEOUT_SECONDS, SECONDS)) {
+                LOG.warn("Capture writer did not catch up in time, the latest messages may not be read");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeQuietly(QueuedRecord record) {
+        if (record.written != null) {
+            flushQuietly();
+            record.written.countDown();
+            return;
+        }
+        final long droppedSoFar = dropped.get();
+        if (droppedSoFar > reportedDropped) {
+            LOG.warn("{} messages were not captured because the capture writer could not keep up", droppedSoFar - reportedDropped);
+            reportedDropped = droppedSoFar;
+        }
+        try {
+            append(record.timestamp, record.record);
+        }
+        catch (IOException e) {
+            LOG.error("Could not write captured message: ", e);
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, long timestamp, String destination, ActiveMQMessage message, MessageBody body)
+            throws IOException, JMSException {
+        out.writeLong(timestamp);
+        out.writeUTF(destination);
+        out.writeBoolean(body.getType() == MessageBody.Type.BYTES);
+        writeNullable(message.getJMSCorrelationID(), out);
+        writeNullable(message.getJMSType(), out);
+        final ByteSequence properties = message.getMarshalledProperties();
+        if (properties != null) {
+            out.write(properties.getData(), properties.getOffset(), properties.getLength());
+        }
+        else {
+            MarshallingSupport.marshalPrimitiveMap(message.getProperties(), out);
+        }
+        final ByteSequence bytes = body.getBytes();
+        if (bytes != null) {
+            out.writeInt(bytes.getLength());
+            out.write(bytes.getData(), bytes.getOffset(), bytes.getLength());
+            return;
+        }
+        final byte[] text = body.getText() == null ? new byte[0] : body.getText().getBytes(UTF_8);
+        out.writeInt(text.length);
+        out.write(text);
+    }
+
+    private void append(long timestamp, byte[] record) throws IOException {
+        if (segment == null || segmentSize >= captureProperties.getSegmentBytes()) {
+            rollSegment(timestamp);
+        }
+        segment.writeInt(record.length);
+        segment.write(record);
+        segmentSize += Integer.BYTES + record.length;
+    }
+
+    private void rollSegment(long timestamp) throws IOException {
+        closeSegment();
+        final File file = new File(directory, String.format("%0" + TIMESTAMP_DIGITS + "d-%06d%s", timestamp, sequence++, SEGMENT_SUFFIX));
+        segment = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), WRITE_BUFFER_SIZE));
+        segmentSize = 0;
+        deleteOldSegments();
+    }
+
+    private void closeSegment() {
+        if (segment == null) return;
+        try {
+            segment.close();
+        }
+        catch (IOException e) {
+            LOG.warn("Could not close capture segment: ", e);
+        }
+        segment = null;
+    }
+
+    private void deleteOldSegments() {
+        final int maxSegments = captureProperties.getMaxSegments();
+        if (maxSegments <= 0) return;
+        final List<File> segments = segments();
+        for (File file : segments.subList(0, Math.max(0, segments.size() - maxSegments))) {
+            if (!file.delete()) {
+                LOG.warn("Could not delete capture segment {}", file.getAbsolutePath());
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        if (segment == null) return;
+        try {
+            segment.flush();
+        }
+        catch (IOException e) {
+            LOG.error("Could not write captured messages: ", e);
+        }
+    }
+
+    /**
+     * A segment holds the messages captured from its start until the start of the next one
+     */
+    private List<File> segmentsWithin(long fromMillis, long toMillis) {
+        final List<File> segments = segments();
+        final List<File> within = new ArrayList<>();
+        for (int i = 0; i < segments.size(); i++) {
+            if (startOf(segments.get(i)) <= toMillis && (i == segments.size() - 1 || startOf(segments.get(i + 1)) >= fromMillis)) {
+                within.add(segments.get(i));
+            }
+        }
+        return within;
+    }
+
+    private List<File> segments() {
+        final File[] files = directory.listFiles((dir, fileName) -> fileName.endsWith(SEGMENT_SUFFIX));
+        if (files == null) return Collections.emptyList();
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    private static long startOf(File segment) {
+        return Long.parseLong(segment.getName().substring(0, TIMESTAMP_DIGITS));
+    }
+
+    /**
+     * @return false if the handler asked to stop
+     */
+    private static boolean readSegment(File file, long fromMillis, long toMillis, String destination, Predicate<CapturedMessage> handler) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), WRITE_BUFFER_SIZE))) {
+            while (true) {
+                final byte[] record;
+                try {
+                    record = new byte[in.readInt()];
+                    in.readFully(record);
+                }
+                catch (EOFException e) {
+                    // end of the segment, or of what has been written of the current one
+                    return true;
+                }
+                final DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record));
+                final long timestamp = recordIn.readLong();
+                // messages captured at the same time by different consumers can be appended slightly out of order
+                if (timestamp < fromMillis || timestamp > toMillis) continue;
+                final String recordDestination = recordIn.readUTF();
+                if (destination != null && !destination.equals(recordDestination)) continue;
+                if (!handler.test(readMessage(timestamp, recordDestination, recordIn))) return false;
+            }
+        }
+        catch (FileNotFoundException e) {
+            // deleted since it was listed
+            return true;
+        }
+        catch (IOException e) {
+            LOG.error("Could not read capture segment {}: ", file.getAbsolutePath(), e);
+            return true;
+        }
+    }
+
+    private static CapturedMessage readMessage(long timestamp, String destination, DataInputStream in) throws IOException {
+        final boolean bytes = in.readBoolean();
+        final String correlationId = readNullable(in);
+        final String type = readNullable(in);
+        final Map<String, Object> properties = MarshallingSupport.unmarshalPrimitiveMap(in, true);
+        final byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+        return new CapturedMessage(timestamp, destination, bytes, correlationId, type,
+                properties == null ? Collections.emptyMap() : properties, body);
+    }
+
+    private static void writeNullable(String value, DataOutputStream out) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * An encoded record, or a request to be told once everything queued before it is written
+     */
+    private static final class QueuedRecord {
+        private final long timestamp;
+        private final byte[] record;
+        private final CountDownLatch written;
+
+        private QueuedRecord(long timestamp, byte[] record) {
+            this.timestamp = timestamp;
+            this.record = record;
+            this.written = null;
+        }
+
+        private QueuedRecord(CountDownLatch written) {
+            this.timestamp = 0;
+            this.record = null;
+            this.written = written;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.capture;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import static com.tkeburia.testRest.constants.Constants.QUEUE_CAPTURE;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = QUEUE_CAPTURE)
+public class CaptureProperties {
+    private boolean enabled = false;
+    private String directory = "/tmp/test-rest/capture";
+    /** size in bytes after which a new segment file is started */
+    private long segmentBytes = 64 * 1024 * 1024;
+    /** number of segment files kept, older ones are deleted, 0 to keep all */
+    private int maxSegments = 32;
+    /** interval of writing buffered messages to the current segment file */
+    private long flushIntervalMillis = 1000;
+    /** number of messages waiting for the writer after which further messages are not captured */
+    private int queueCapacity = 10000;
+    /** time for which finished replays are kept and listed */
+    private long replayRetentionMillis = 60 * 60 * 1000;
+}
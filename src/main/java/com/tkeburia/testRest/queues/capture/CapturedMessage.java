@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.capture;
+
+import java.util.Map;
+
+/**
+ * A message read back from the {@link CaptureLog}
+ */
+public class CapturedMessage {
+
+    private final long timestamp;
+    private final String destination;
+    private final boolean bytes;
+    private final String correlationId;
+    private final String type;
+    private final Map<String, Object> properties;
+    private final byte[] body;
+
+    CapturedMessage(long timestamp, String destination, boolean bytes, String correlationId, String type, Map<String, Object> properties, byte[] body) {
+        this.timestamp = timestamp;
+        this.destination = destination;
+        this.bytes = bytes;
+        this.correlationId = correlationId;
+        this.type = type;
+        this.properties = properties;
+        this.body = body;
+    }
+
+    /**
+     * @return epoch millis of when the message was consumed
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    /**
+     * @return whether the message was a bytes message, all other messages are replayed as text messages
+     */
+    public boolean isBytes() {
+        return bytes;
+    }
+
+    public String getCorrelationId() {
+        return correlationId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Map<String, Object> getProperties() {
+        return properties;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.capture;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A replay of captured messages to a producer broker, started by the {@link ReplayService}
+ */
+public class Replay {
+
+    public enum State { RUNNING, COMPLETED, CANCELLED, FAILED }
+
+    private final String id;
+    private final String brokerName;
+    private final String destination;
+    private final String sourceDestination;
+    private final long fromMillis;
+    private final long toMillis;
+    private final double speed;
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile State state = State.RUNNING;
+    private volatile long finishedAt;
+    private int pending;
+
+    public Replay(String id, String brokerName, String destination, String sourceDestination, long fromMillis, long toMillis, double speed) {
+        this.id = id;
+        this.brokerName = brokerName;
+        this.destination = destination;
+        this.sourceDestination = sourceDestination;
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        this.speed = speed;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getBrokerName() {
+        return brokerName;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public String getSourceDestination() {
+        return sourceDestination;
+    }
+
+    public long getFromMillis() {
+        return fromMillis;
+    }
+
+    public long getToMillis() {
+        return toMillis;
+    }
+
+    /**
+     * @return how many times faster than captured the messages are sent, 0 for as fast as possible
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    boolean isCancelled() {
+        return state == State.CANCELLED;
+    }
+
+    synchronized void sending() {
+        pending++;
+    }
+
+    void sent() {
+        sent.incrementAndGet();
+        completed();
+    }
+
+    void failed() {
+        failed.incrementAndGet();
+        completed();
+    }
+
+    /**
+     * Waits until the messages that are being sent are acknowledged or failed, or the replay is cancelled
+     */
+    synchronized void awaitPending() throws InterruptedException {
+        while (pending > 0 && !isCancelled()) {
+            wait(100);
+        }
+    }
+
+    /**
+     * Only a running replay changes state
+     */
+    synchronized void finish(State state) {
+        if (this.state == State.RUNNING) {
+            this.state = state;
+            this.finishedAt = System.currentTimeMillis();
+            notifyAll();
+        }
+    }
+
+    boolean finishedBefore(long millis) {
+        return state != State.RUNNING && finishedAt < millis;
+    }
+
+    private synchronized void completed() {
+        pending--;
+        notifyAll();
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.capture;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.tkeburia.testRest.exception.MissingPropertyException;
+import com.tkeburia.testRest.exception.ProducerBackpressureException;
+import com.tkeburia.testRest.queues.producer.ProducerService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jms.core.MessageCreator;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.jms.Message;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.tkeburia.testRest.util.QueueUtils.createBytesMessage;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.unmodifiableCollection;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Re-publishes messages of the {@link CaptureLog} to a producer broker, keeping the captured time between messages or a
+ * fraction of it. A replay that falls behind, e.g. because of a slow broker, sends the late messages right away to catch up.
+ * Sends rejected because too many are waiting for acknowledgement are retried, and a replay completes once every message
+ * it sent is acknowledged or failed. Finished replays are forgotten after <code>capture.replayRetentionMillis</code>.
+ */
+@Service
+@ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
+public class ReplayService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReplayService.class);
+
+    private final CaptureLog captureLog;
+    private final ProducerService producerService;
+    private final long retentionMillis;
+    private final ExecutorService replayExecutor = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("capture-replay-%d").setDaemon(true).build());
+    private final Map<String, Replay> replays = new ConcurrentSkipListMap<>();
+
+    @Autowired
+    public ReplayService(CaptureLog captureLog, ProducerService producerService, CaptureProperties captureProperties) {
+        this.captureLog = captureLog;
+        this.producerService = producerService;
+        this.retentionMillis = captureProperties.getReplayRetentionMillis();
+    }
+
+    /**
+     * Starts replaying the messages captured within the time window in the background
+     * @param destination queue to send to, or null for the first queue configured for the broker
+     * @param sourceDestination only replay messages captured from this destination, or null for all
+     * @param speed 1 to keep the captured time between messages, N to send N times as fast, 0 to send as fast as possible
+     */
+    public Replay replay(String brokerName, String destination, String sourceDestination, long fromMillis, long toMillis, double speed) {
+        if (!producerService.isConfigured(brokerName)) {
+            throw new MissingPropertyException(String.format("No configuration found for queue with id '%s'", brokerName));
+        }
+        if (!(speed >= 0) || Double.isInfinite(speed)) {
+            throw new IllegalArgumentException("Replay speed must be 0 or a positive number");
+        }
+        if (fromMillis > toMillis) {
+            throw new IllegalArgumentException("Replay window must not end before it starts");
+        }
+        pruneFinished();
+        final Replay replay = new Replay(UUID.randomUUID().toString(), brokerName, destination, sourceDestination, fromMillis, toMillis, speed);
+        replays.put(replay.getId(), replay);
+        replayExecutor.execute(() -> run(replay));
+        LOG.info("Started replay {} of messages captured between {} and {} to broker {}", replay.getId(), fromMillis, toMillis, brokerName);
+        return replay;
+    }
+
+    public Collection<Replay> getReplays() {
+        pruneFinished();
+        return unmodifiableCollection(replays.values());
+    }
+
+    /**
+     * Stops the replay if it is still running and forgets it
+     * @return false if there is no replay with the id
+     */
+    public boolean cancel(String id) {
+        final Replay replay = replays.remove(id);
+        if (replay == null) return false;
+        replay.finish(Replay.State.CANCELLED);
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        replays.values().forEach(replay -> replay.finish(Replay.State.CANCELLED));
+        replayExecutor.shutdown();
+    }
+
+    private void run(Replay replay) {
+        final long startNanos = System.nanoTime();
+        final long[] firstTimestamp = {-1};
+        try {
+            captureLog.read(replay.getFromMillis(), replay.getToMillis(), replay.getSourceDestination(), message -> {
+                if (replay.isCancelled()) return false;
+                if (firstTimestamp[0] < 0) {
+                    firstTimestamp[0] = message.getTimestamp();
+                }
+                if (replay.getSpeed() > 0 && !awaitDue(replay, startNanos + (long) (MILLISECONDS.toNanos(message.getTimestamp() - firstTimestamp[0]) / replay.getSpeed()))) {
+                    return false;
+                }
+                final CompletableFuture<Void> sent = send(replay, message);
+                if (sent == null) return false;
+                replay.sending();
+                sent.whenComplete((ignored, e) -> {
+                    if (e == null) replay.sent();
+                    else replay.failed();
+                });
+                return true;
+            });
+            replay.awaitPending();
+            replay.finish(Replay.State.COMPLETED);
+            LOG.info("Replay {} finished after sending {} messages", replay.getId(), replay.getSent());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            replay.finish(Replay.State.CANCELLED);
+        }
+        catch (RuntimeException e) {
+            replay.finish(Replay.State.FAILED);
+            LOG.error("Replay {} failed: ", replay.getId(), e);
+        }
+    }
+
+    /**
+     * Sends the message, retrying while the producer has too many messages waiting for acknowledgement
+     * @return null if the replay was cancelled while retrying
+     */
+    private CompletableFuture<Void> send(Replay replay, CapturedMessage message) {
+        while (!replay.isCancelled()) {
+            final CompletableFuture<Void> sent = producerService.sendMessageToQueue(replay.getBrokerName(), replay.getDestination(), messageCreatorFor(message));
+            if (!isBackpressure(sent)) return sent;
+            LockSupport.parkNanos(MILLISECONDS.toNanos(1));
+        }
+        return null;
+    }
+
+    private static boolean isBackpressure(CompletableFuture<Void> sent) {
+        if (!sent.isCompletedExceptionally()) return false;
+        try {
+            sent.join();
+            return false;
+        }
+        catch (CompletionException e) {
+            return e.getCause() instanceof ProducerBackpressureException;
+        }
+    }
+
+    private void pruneFinished() {
+        final long before = System.currentTimeMillis() - retentionMillis;
+        replays.values().removeIf(replay -> replay.finishedBefore(before));
+    }
+
+    /**
+     * @return false if the replay was cancelled while waiting
+     */
+    private static boolean awaitDue(Replay replay, long dueNanos) {
+        for (long wait = dueNanos - System.nanoTime(); wait > 0; wait = dueNanos - System.nanoTime()) {
+            if (replay.isCancelled()) return false;
+            LockSupport.parkNanos(Math.min(wait, MILLISECONDS.toNanos(100)));
+        }
+        return !replay.isCancelled();
+    }
+
+    private static MessageCreator messageCreatorFor(CapturedMessage captured) {
+        return session -> {
+            final Message message = captured.isBytes()
+                    ? createBytesMessage(session, captured.getBody())
+                    : session.createTextMessage(new String(captured.getBody(), UTF_8));
+            message.setJMSCorrelationID(captured.getCorrelationId());
+            message.setJMSType(captured.getType());
+            for (Map.Entry<String, Object> property : captured.getProperties().entrySet()) {
+                message.setObjectProperty(property.getKey(), property.getValue());
+            }
+            return message;
+        };
+    }
+}
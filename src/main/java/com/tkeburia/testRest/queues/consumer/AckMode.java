@@ -0,0 +1,52 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.queues.consumer;
+
+import static javax.jms.Session.AUTO_ACKNOWLEDGE;
+import static javax.jms.Session.CLIENT_ACKNOWLEDGE;
+import static javax.jms.Session.DUPS_OK_ACKNOWLEDGE;
+import static javax.jms.Session.SESSION_TRANSACTED;
+
+/**
+ * Acknowledgement modes that can be configured per consumer broker with <code>broker.consumer.ackModes.{BROKER}</code>
+ */
+public enum AckMode {
+    /** every message is acknowledged individually once the listener returns */
+    AUTO(AUTO_ACKNOWLEDGE),
+    /** acknowledgements are sent lazily, messages may be redelivered after a failure */
+    DUPS_OK(DUPS_OK_ACKNOWLEDGE),
+    /** messages are acknowledged in batches, see {@link BatchAcknowledgingListener} */
+    CLIENT(CLIENT_ACKNOWLEDGE),
+    /** auto acknowledgement with ActiveMQ's optimizeAcknowledge enabled, acknowledging in bulk on the connection */
+    OPTIMIZED(AUTO_ACKNOWLEDGE),
+    /** messages are received and processed in batches within a local transaction, see {@link TransactedBatchConsumer} */
+    TRANSACTED(SESSION_TRANSACTED);
+
+    private final int sessionMode;
+
+    AckMode(int sessionMode) {
+        this.sessionMode = sessionMode;
+    }
+
+    public int getSessionMode() {
+        return sessionMode;
+    }
+
+    public boolean isTransacted() {
+        return sessionMode == SESSION_TRANSACTED;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.queues.consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+/**
+ * Wraps the listener of a {@link javax.jms.Session#CLIENT_ACKNOWLEDGE} session and acknowledges successfully processed
+ * messages in batches, once every <code>batchSize</code> messages or when <code>intervalMillis</code> have passed since
+ * the last acknowledgement, whichever comes first. Acknowledging a message in client mode acknowledges every message
+ * consumed by the session so far, so a single acknowledgement covers the whole batch.
+ * <p>
+ * A batch is only acknowledged or recovered once every message of it has completed. When the delegate is a
+ * {@link TrackedMessageListener} that hands messages over to other threads, the delivery thread waits for them before
+ * completing the batch, so no message is acknowledged before its response has been sent.
+ * <p>
+ * If processing of any message of the batch fails, the session is recovered: none of the unacknowledged messages of
+ * the batch are acknowledged and all of them are redelivered by the broker. Messages whose response had already been
+ * sent are remembered until the batch is finally acknowledged, so their redeliveries are not answered again and only
+ * the failed and not yet processed messages are processed again. A message that keeps failing is moved to the dead
+ * letter queue by the broker's redelivery policy.
+ */
+public class BatchAcknowledgingListener implements MessageListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchAcknowledgingListener.class);
+
+    private final MessageListener delegate;
+    private final Session session;
+    private final int batchSize;
+    private final long intervalMillis;
+    private final List<CompletableFuture<Void>> inFlight = new ArrayList<>();
+    private final Set<String> answered = ConcurrentHashMap.newKeySet();
+
+    private Message lastMessage;
+    private int pending;
+    private boolean failed;
+    private long lastAcknowledged = System.currentTimeMillis();
+
+    public BatchAcknowledgingListener(MessageListener delegate, Session session, int batchSize, long intervalMillis) {
+        this.delegate = delegate;
+        this.session = session;
+        this.batchSize = batchSize;
+        this.intervalMillis = intervalMillis;
+    }
+
+    @Override
+    public synchronized void onMessage(Message message) {
+        final String messageId = messageIdOf(message);
+        if (messageId != null && answered.contains(messageId)) {
+            LOG.debug("Message {} was redelivered after its response had been sent, it will only be acknowledged", messageId);
+        }
+        else {
+            try {
+                inFlight.add(process(message).thenRun(() -> {
+                    if (messageId != null) answered.add(messageId);
+                }));
+            }
+            catch (RuntimeException e) {
+                LOG.error("Error processing message, recovering session to redeliver {} unacknowledged messages: ", pending + 1, e);
+                failed = true;
+            }
+        }
+        lastMessage = message;
+        pending++;
+        if (failed || pending >= batchSize || System.currentTimeMillis() - lastAcknowledged >= intervalMillis) {
+            complete();
+        }
+    }
+
+    /**
+     * Acknowledges pending messages if the batch interval has passed. Called periodically so that the tail of a batch
+     * is not left unacknowledged when no further messages arrive
+     */
+    public synchronized void flushIfDue() {
+        if (pending > 0 && System.currentTimeMillis() - lastAcknowledged >= intervalMillis) {
+            complete();
+        }
+    }
+
+    /**
+     * Acknowledges all pending messages once they have completed, e.g. before the consumer is stopped
+     */
+    public synchronized void flush() {
+        if (pending > 0) {
+            complete();
+        }
+    }
+
+    public synchronized int getPending() {
+        return pending;
+    }
+
+    private CompletableFuture<Void> process(Message message) {
+        if (delegate instanceof TrackedMessageListener) {
+            return ((TrackedMessageListener) delegate).process(message);
+        }
+        delegate.onMessage(message);
+        return completedFuture(null);
+    }
+
+    private void complete() {
+        for (CompletableFuture<Void> processing : inFlight) {
+            try {
+                processing.join();
+            }
+            catch (CompletionException e) {
+                LOG.error("Error processing message, recovering session to redeliver {} unacknowledged messages: ", pending, e.getCause());
+                failed = true;
+            }
+        }
+        if (failed) {
+            recover();
+        }
+        else {
+            acknowledge();
+        }
+    }
+
+    private void acknowledge() {
+        try {
+            lastMessage.acknowledge();
+            answered.clear();
+        }
+        catch (JMSException e) {
+            LOG.error("Error acknowledging {} messages, they will be redelivered: ", pending, e);
+        }
+        reset();
+    }
+
+    private void recover() {
+        try {
+            session.recover();
+        }
+        catch (JMSException e) {
+            LOG.error("Error recovering session: ", e);
+        }
+        reset();
+    }
+
+    private void reset() {
+        inFlight.clear();
+        lastMessage = null;
+        pending = 0;
+        failed = false;
+        lastAcknowledged = System.currentTimeMillis();
+    }
+
+    private static String messageIdOf(Message message) {
+        try {
+            return message.getJMSMessageID();
+        }
+        catch (JMSException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.consumer;
+
+import com.tkeburia.testRest.queues.MessageBody;
+import com.tkeburia.testRest.queues.capture.CaptureLog;
+import com.tkeburia.testRest.exception.ScriptExecutionException;
+import com.tkeburia.testRest.queues.producer.ProducerProperties;
+import com.tkeburia.testRest.script.ScriptExecutionService;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.tkeburia.testRest.queues.consumer.ConsumerMetrics.Stage.DECODE;
+import static com.tkeburia.testRest.queues.consumer.ConsumerMetrics.Stage.SCRIPT;
+import static com.tkeburia.testRest.queues.consumer.ConsumerMetrics.Stage.SEND;
+import static com.tkeburia.testRest.queues.consumer.ConsumerMetrics.Stage.VALIDATE;
+import static com.tkeburia.testRest.util.QueueUtils.correlationIdFor;
+import static com.tkeburia.testRest.util.SchemaUtils.validateAgainstSchema;
+
+/**
+ * Validates and builds responses for a batch of messages received by a {@link TransactedBatchConsumer}, validating the
+ * messages and running their response scripts in parallel on the script executor. A message that is invalid or a script
+ * that fails or times out fails the batch. Replies to JMSReplyTo destinations and responses for the broker the batch was
+ * read from are sent through the batch's session, so they are committed together with the consumed messages; delayed
+ * responses, responses fanned out to several brokers or messages and responses for other brokers can not be part of the
+ * transaction and go through the {@link ConsumerResponseService} once the batch is committed, so a batch that is rolled
+ * back and redelivered does not send them twice.
+ */
+@Component
+@ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
+public class BatchMessageProcessor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchMessageProcessor.class);
+
+    /** key of the session's anonymous producer, used for JMSReplyTo destinations, in the producers map */
+    private static final String REPLY_PRODUCER = "";
+
+    private final String schemaDir;
+    private final Map<String, String> queueSchemaFileMappings;
+    private final ConsumerResponseService consumerResponseService;
+    private final ProducerProperties producerProperties;
+    private final ConsumerMetrics consumerMetrics;
+    private final DuplicateDetector duplicateDetector;
+    private final CaptureLog captureLog;
+
+    @Autowired
+    public BatchMessageProcessor(
+            @Value("${schema.file.directory}") String schemaDir,
+            Map<String, String> queueSchemaFileMappings,
+            ConsumerResponseService consumerResponseService,
+            ProducerProperties producerProperties,
+            ConsumerMetrics consumerMetrics,
+            DuplicateDetector duplicateDetector,
+            CaptureLog captureLog) {
+        this.schemaDir = schemaDir;
+        this.queueSchemaFileMappings = queueSchemaFileMappings;
+        this.consumerResponseService = consumerResponseService;
+        this.producerProperties = producerProperties;
+        this.consumerMetrics = consumerMetrics;
+        this.duplicateDetector = duplicateDetector;
+        this.captureLog = captureLog;
+    }
+
+    /**
+     * @param producers producers of the session keyed by queue name, reused between batches of the same session
+     * @return sends the responses that can not be part of the batch's transaction and captures the messages of the batch
+     * that were not duplicates, to be run once the batch is committed
+     */
+    public Runnable process(Session session, String brokerUri, List<Message> messages, Map<String, MessageProducer> producers) throws JMSException {
+        final List<BatchMessage> batch = new ArrayList<>();
+        try {
+            for (Message message : messages) {
+                final long start = System.nanoTime();
+                final MessageBody body = message instanceof ActiveMQMessage ? MessageBody.of(message) : null;
+                if (body == null) {
+                    LOG.warn(String.format(ConsumerListener.UNSUPPORTED_MESSAGE, message.getClass().getName()));
+                    continue;
+                }
+                final ActiveMQMessage request = (ActiveMQMessage) message;
+                final String destination = request.getDestination().getPhysicalName();
+                consumerMetrics.received(destination, request.getJMSTimestamp());
+                consumerMetrics.recordStage(destination, DECODE, start);
+                if (duplicateDetector.isDuplicate(destination, request)) {
+                    consumerMetrics.duplicate(destination);
+                    LOG.debug("Ignoring duplicate message {} from {}", request.getJMSMessageID(), destination);
+                    continue;
+                }
+                batch.add(new BatchMessage(request, destination, body));
+            }
+
+            // the whole batch is validated and its scripts run in parallel on the script executor
+            for (BatchMessage message : batch) {
+                startResponse(message);
+            }
+            final List<Runnable> afterCommit = new ArrayList<>();
+            for (BatchMessage message : batch) {
+                final Object response = awaitResponse(message);
+                final long start = System.nanoTime();
+                try {
+                    sendResponse(session, brokerUri, message, response, producers, afterCommit);
+                }
+                finally {
+                    consumerMetrics.recordStage(message.destination, SEND, start);
+                }
+            }
+            return () -> {
+                afterCommit.forEach(Runnable::run);
+                batch.forEach(message -> captureLog.capture(message.destination, message.request, message.body));
+            };
+        }
+        catch (JMSException | RuntimeException e) {
+            batch.forEach(message -> {
+                if (message.response != null) message.response.cancel();
+                // the batch is rolled back and redelivered, which must not be mistaken for duplicates
+                duplicateDetector.forget(message.destination, message.request);
+            });
+            throw e;
+        }
+    }
+
+    private void sendResponse(Session session, String brokerUri, BatchMessage message, Object response, Map<String, MessageProducer> producers,
+                              List<Runnable> afterCommit) throws JMSException {
+        final Destination replyTo = message.request.getJMSReplyTo();
+        final String localQueue = replyTo == null ? localResponseQueue(message.destination, brokerUri) : null;
+        // delayed responses and responses of several messages can not be part of the batch's transaction
+        if (response == null || (replyTo == null && localQueue == null) || consumerResponseService.hasResponseDelay(message.destination)
+                || consumerResponseService.isFanOut(message.destination, response)) {
+            afterCommit.add(() -> sendCommittedResponse(message, response));
+            return;
+        }
+        final Message reply = consumerResponseService.messageConverterFor(message.destination).toMessage(response, session);
+        reply.setJMSCorrelationID(correlationIdFor(message.request));
+        if (replyTo != null) {
+            producers.computeIfAbsent(REPLY_PRODUCER, key -> createProducer(session, null)).send(replyTo, reply);
+        }
+        else {
+            producers.computeIfAbsent(localQueue, queue -> createProducer(session, queue)).send(reply);
+        }
+    }
+
+    /**
+     * The batch is already committed, so a response that can not be sent is only logged
+     */
+    private void sendCommittedResponse(BatchMessage message, Object response) {
+        try {
+            consumerResponseService.sendResponse(message.request, message.destination, response);
+        }
+        catch (RuntimeException e) {
+            consumerMetrics.error(message.destination, e);
+            LOG.error("Could not send the response to message from {} after its batch was committed: ", message.destination, e);
+        }
+    }
+
+    private void startResponse(BatchMessage message) {
+        try {
+            message.response = consumerResponseService.startBuildingResponse(message.body.getText(), message.destination, () -> validate(message));
+        }
+        catch (RuntimeException e) {
+            consumerMetrics.error(message.destination, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Runs on the script executor, before the script of the message
+     */
+    private void validate(BatchMessage message) {
+        final long start = System.nanoTime();
+        try {
+            validateAgainstSchema(message.body, schemaDir, queueSchemaFileMappings.get(message.destination));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        message.scriptStart = consumerMetrics.recordStage(message.destination, VALIDATE, start);
+    }
+
+    /**
+     * @throws ScriptExecutionException if the script failed or timed out, which rolls back the batch, as does the exception
+     * of a message that failed validation
+     */
+    private Object awaitResponse(BatchMessage message) {
+        try {
+            final Object response = message.response.get();
+            consumerMetrics.recordStage(message.destination, SCRIPT, message.scriptStart);
+            return response;
+        }
+        catch (RuntimeException e) {
+            consumerMetrics.error(message.destination, e);
+            throw e;
+        }
+    }
+
+    private String localResponseQueue(String destination, String brokerUri) {
+        final String responseBroker = consumerResponseService.responseBrokerFor(destination);
+        if (responseBroker == null || !Objects.equals(producerProperties.getUris().get(responseBroker), brokerUri)) {
+            return null;
+        }
+        return producerProperties.defaultQueueNameFor(responseBroker);
+    }
+
+    private static MessageProducer createProducer(Session session, String queueName) {
+        try {
+            return session.createProducer(queueName == null ? null : session.createQueue(queueName));
+        }
+        catch (JMSException e) {
+            throw new IllegalStateException(String.format("Could not create a producer for queue %s", queueName), e);
+        }
+    }
+
+    private static final class BatchMessage {
+        private final ActiveMQMessage request;
+        private final String destination;
+        private final MessageBody body;
+        private long scriptStart;
+        private ScriptExecutionService.Execution response;
+
+        private BatchMessage(ActiveMQMessage request, String destination, MessageBody body) {
+            this.request = request;
+            this.destination = destination;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.queues.consumer;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+
+/**
+ * A message consumer together with the session it was created on, the destination it reads and the broker config it was created for
+ */
+@Data
+@AllArgsConstructor
+public class BrokerConsumer {
+    private String brokerName;
+    private String destination;
+    private Session session;
+    private MessageConsumer consumer;
+    private AckMode ackMode;
+
+    /**
+     * Creates a consumer for the destination on a new session of the connection
+     */
+    public static BrokerConsumer create(Connection connection, String brokerName, String destinationName, boolean topic, AckMode ackMode) throws JMSException {
+        final Session session = connection.createSession(ackMode.isTransacted(), ackMode.getSessionMode());
+        final Destination destination = topic ? session.createTopic(destinationName) : session.createQueue(destinationName);
+        return new BrokerConsumer(brokerName, destinationName, session, session.createConsumer(destination), ackMode);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.consumer;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Bloom filter of strings that can be written by several threads at once without locking, bits are set with
+ * compare-and-set on an {@link AtomicLongArray}. Guava's BloomFilter only became safe for concurrent writes in version 23.
+ */
+class ConcurrentBloomFilter {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    ConcurrentBloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException(String.format("False positive rate must be between 0 and 1 but was %s", falsePositiveRate));
+        }
+        final long n = Math.max(1, expectedInsertions);
+        final long m = Math.max(64, (long) (-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+        this.bits = new AtomicLongArray((int) ((m + 63) >>> 6));
+        this.bitCount = (long) bits.length() << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+    }
+
+    boolean mightContain(String value) {
+        final HashCode hash = HASH_FUNCTION.hashString(value, UTF_8);
+        final long hash1 = hash.asLong();
+        final long hash2 = secondHalf(hash);
+        for (int i = 1; i <= hashCount; i++) {
+            final long index = ((hash1 + i * hash2) & Long.MAX_VALUE) % bitCount;
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) return false;
+        }
+        return true;
+    }
+
+    void put(String value) {
+        final HashCode hash = HASH_FUNCTION.hashString(value, UTF_8);
+        final long hash1 = hash.asLong();
+        final long hash2 = secondHalf(hash);
+        for (int i = 1; i <= hashCount; i++) {
+            final long index = ((hash1 + i * hash2) & Long.MAX_VALUE) % bitCount;
+            final long mask = 1L << index;
+            bits.getAndAccumulate((int) (index >>> 6), mask, (word, bit) -> word | bit);
+        }
+    }
+
+    private static long secondHalf(HashCode hash) {
+        final byte[] bytes = hash.asBytes();
+        long result = 0;
+        for (int i = 15; i >= 8; i--) {
+            result = (result << 8) | (bytes[i] & 0xFF);
+        }
+        return result;
+    }
+}
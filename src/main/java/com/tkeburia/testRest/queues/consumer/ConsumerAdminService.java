@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.consumer;
+
+import com.tkeburia.testRest.dto.ConsumerRegistrationRequest;
+import com.tkeburia.testRest.exception.ConsumerConflictException;
+import com.tkeburia.testRest.script.ScriptExecutionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import javax.jms.JMSException;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Registers consumers at runtime together with the schema, response script and response broker of their destination
+ */
+@Service
+@ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
+public class ConsumerAdminService {
+
+    private final ConsumerService consumerService;
+    private final ScriptExecutionService scriptExecutionService;
+    private final Map<String, String> queueSchemaFileMappings;
+    private final Map<String, String> queueResponseScriptMappings;
+    private final Map<String, String> queueResponseDestinationMappings;
+
+    @Autowired
+    public ConsumerAdminService(
+            ConsumerService consumerService,
+            ScriptExecutionService scriptExecutionService,
+            Map<String, String> queueSchemaFileMappings,
+            Map<String, String> queueResponseScriptMappings,
+            Map<String, String> queueResponseDestinationMappings) {
+        this.consumerService = consumerService;
+        this.scriptExecutionService = scriptExecutionService;
+        this.queueSchemaFileMappings = queueSchemaFileMappings;
+        this.queueResponseScriptMappings = queueResponseScriptMappings;
+        this.queueResponseDestinationMappings = queueResponseDestinationMappings;
+    }
+
+    /**
+     * The schema, response script and response broker are mapped to the destination, whatever broker it is consumed
+     * from, once the consumers are created and before they receive any message. They are left as they are if the
+     * registration fails.
+     * @throws ConsumerConflictException if the destination is already consumed from the broker, or consumed from another
+     * broker with different mappings
+     */
+    public ConsumerRegistration register(ConsumerRegistrationRequest request) throws JMSException {
+        if (request.getBrokerName() == null || request.getDestination() == null) {
+            throw new IllegalArgumentException("brokerName and destination are required to register a consumer");
+        }
+        final String destination = request.getDestination();
+        final boolean consumedFromOtherBroker = consumerService.getRegistrations().stream().anyMatch(
+                registration -> registration.getDestination().equals(destination) && !registration.getBrokerName().equals(request.getBrokerName()));
+        if (consumedFromOtherBroker && !hasMappings(request)) {
+            throw new ConsumerConflictException(String.format(
+                    "%s is consumed from another broker with a different schema file, response script or response broker", destination));
+        }
+        return consumerService.register(request.getBrokerName(), destination, request.isTopic(), request.getConcurrency(), () -> {
+            scriptExecutionService.replaceScript(destination, request.getResponseScript());
+            updateMapping(queueSchemaFileMappings, destination, request.getSchemaFile());
+            updateMapping(queueResponseScriptMappings, destination, request.getResponseScript());
+            updateMapping(queueResponseDestinationMappings, destination, request.getResponseBroker());
+        });
+    }
+
+    /**
+     * @return whether the destination is already mapped to the schema file, response script and response broker of the request
+     */
+    private boolean hasMappings(ConsumerRegistrationRequest request) {
+        final String destination = request.getDestination();
+        return Objects.equals(queueSchemaFileMappings.get(destination), request.getSchemaFile())
+                && Objects.equals(queueResponseScriptMappings.get(destination), request.getResponseScript())
+                && Objects.equals(queueResponseDestinationMappings.get(destination), request.getResponseBroker());
+    }
+
+    private static void updateMapping(Map<String, String> mappings, String destination, String value) {
+        if (value == null) {
+            mappings.remove(destination);
+        }
+        else {
+            mappings.put(destination, value);
+        }
+    }
+}
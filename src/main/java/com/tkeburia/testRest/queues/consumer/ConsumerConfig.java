@@ -16,39 +16,45 @@
 
 package com.tkeburia.testRest.queues.consumer;
 
+import com.tkeburia.testRest.queues.embedded.EmbeddedBroker;
 import org.apache.activemq.jms.pool.PooledConnectionFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import javax.annotation.PreDestroy;
 import javax.jms.*;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static com.tkeburia.testRest.constants.Constants.BROKER_CONSUMER;
 import static com.tkeburia.testRest.util.QueueUtils.buildConnectionFactory;
 import static com.tkeburia.testRest.util.QueueUtils.verifyProperties;
-import static javax.jms.Session.AUTO_ACKNOWLEDGE;
 
 @Configuration
 public class ConsumerConfig {
 
     private final ConsumerProperties consumerProperties;
-    private final PooledConnectionFactory pooledConnectionFactory;
+    private final ObjectProvider<EmbeddedBroker> embeddedBroker;
+    private final List<PooledConnectionFactory> connectionFactories = new CopyOnWriteArrayList<>();
 
     @Autowired
-    public ConsumerConfig(ConsumerProperties consumerProperties, PooledConnectionFactory pooledConnectionFactory) {
+    public ConsumerConfig(ConsumerProperties consumerProperties, ObjectProvider<EmbeddedBroker> embeddedBroker) {
         this.consumerProperties = consumerProperties;
-        this.pooledConnectionFactory = pooledConnectionFactory;
+        this.embeddedBroker = embeddedBroker;
     }
 
     @Bean
     @ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
     public Map<String, Connection> consumerConnectionMap() throws JMSException {
+        embeddedBroker.ifAvailable(broker -> broker.applyDefaults(consumerProperties));
         verifyProperties(consumerProperties, BROKER_CONSUMER);
         Map<String, Connection> result = new HashMap<>();
         for (String id : consumerProperties.getIds()) {
@@ -59,10 +65,18 @@ public class ConsumerConfig {
 
     @Bean
     @ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
-    public List<MessageConsumer> messageConsumerList() throws JMSException {
-        List<MessageConsumer> result = new ArrayList<>();
+    public List<BrokerConsumer> messageConsumerList() throws JMSException {
+        List<BrokerConsumer> result = new ArrayList<>();
+        final Map<String, Connection> connections = consumerConnectionMap();
         for (String id : consumerProperties.getIds()) {
-            result.add(createConsumer(id));
+            for (String queueName : consumerProperties.queueNamesFor(id)) {
+                for (int i = 0; i < consumerProperties.sessionsFor(id); i++) {
+                    result.add(createConsumer(connections.get(id), id, queueName, false));
+                }
+            }
+            for (String topicName : consumerProperties.topicNamesFor(id)) {
+                result.add(createConsumer(connections.get(id), id, topicName, true));
+            }
         }
         return result;
     }
@@ -70,32 +84,42 @@ public class ConsumerConfig {
     @Bean
     @ConfigurationProperties(prefix = "queue.schema.files.names")
     public Map<String, String> queueSchemaFileMappings() {
-        return new HashMap<>();
+        return new ConcurrentHashMap<>();
     }
 
     @Bean
     @ConfigurationProperties(prefix = "queue.response.script.names")
     public Map<String, String> queueResponseScriptMappings() {
-        return new HashMap<>();
+        return new ConcurrentHashMap<>();
     }
 
     @Bean
     @ConfigurationProperties(prefix = "queue.response.brokers")
     public Map<String, String> queueResponseDestinationMappings() {
-        return new HashMap<>();
+        return new ConcurrentHashMap<>();
     }
 
-    private MessageConsumer createConsumer(String brokerName) throws JMSException {
-        final Session consumerSession = consumerConnectionMap().get(brokerName).createSession(false, AUTO_ACKNOWLEDGE);
-        final Destination consumerDestination = consumerSession.createQueue(consumerProperties.getQueueNames().get(brokerName));
-        return consumerSession.createConsumer(consumerDestination);
+    private BrokerConsumer createConsumer(Connection connection, String brokerName, String destinationName, boolean topic) throws JMSException {
+        return BrokerConsumer.create(connection, brokerName, destinationName, topic,
+                consumerProperties.ackModeFor(brokerName));
     }
 
+    /**
+     * Every broker gets its own pool, as a pool hands out the connections it already has regardless of its target factory
+     */
     private Connection createConnection(String brokerName) throws JMSException {
-        String uri = consumerProperties.getUris().get(brokerName);
-        String userName = consumerProperties.getUserNames().get(brokerName);
-        String password = consumerProperties.getPasswords().get(brokerName);
-        pooledConnectionFactory.setConnectionFactory(buildConnectionFactory(uri, userName, password));
-        return pooledConnectionFactory.createConnection();
+        final PooledConnectionFactory connectionFactory = newPooledConnectionFactory();
+        connectionFactory.setConnectionFactory(buildConnectionFactory(consumerProperties, brokerName));
+        connectionFactories.add(connectionFactory);
+        return connectionFactory.createConnection();
+    }
+
+    PooledConnectionFactory newPooledConnectionFactory() {
+        return new PooledConnectionFactory();
+    }
+
+    @PreDestroy
+    public void stopConnectionFactories() {
+        connectionFactories.forEach(PooledConnectionFactory::stop);
     }
 }
@@ -16,8 +16,11 @@
 
 package com.tkeburia.testRest.queues.consumer;
 
-import com.tkeburia.testRest.annotation.LogMethodData;
-import org.apache.activemq.command.ActiveMQTextMessage;
+import com.tkeburia.testRest.aspect.MessageLogger;
+import com.tkeburia.testRest.exception.ScriptExecutionException;
+import com.tkeburia.testRest.queues.MessageBody;
+import com.tkeburia.testRest.queues.capture.CaptureLog;
+import org.apache.activemq.command.ActiveMQMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -27,53 +30,149 @@ import org.springframework.stereotype.Component;
 
 import javax.jms.JMSException;
 import javax.jms.Message;
-import javax.jms.MessageListener;
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
+import static com.tkeburia.testRest.queues.consumer.ConsumerMetrics.Stage.DECODE;
+import static com.tkeburia.testRest.queues.consumer.ConsumerMetrics.Stage.SCRIPT;
+import static com.tkeburia.testRest.queues.consumer.ConsumerMetrics.Stage.SEND;
+import static com.tkeburia.testRest.queues.consumer.ConsumerMetrics.Stage.VALIDATE;
 import static com.tkeburia.testRest.util.SchemaUtils.validateAgainstSchema;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 
 @Component
 @ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
-public class ConsumerListener implements MessageListener {
+public class ConsumerListener implements TrackedMessageListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(ConsumerListener.class);
 
+    static final String UNSUPPORTED_MESSAGE = "Expected an ActiveMQ text, bytes, map or object message but got %s";
+
     private final String schemaDir;
     private final Map<String, String> queueSchemaFileMappings;
     private final ConsumerResponseService consumerResponseService;
+    private final ConsumerPipeline consumerPipeline;
+    private final ConsumerMetrics consumerMetrics;
+    private final DuplicateDetector duplicateDetector;
+    private final CaptureLog captureLog;
+    private final MessageLogger messageLogger;
 
     @Autowired
     public ConsumerListener(
             @Value("${schema.file.directory}") String schemaDir,
             Map<String, String> queueSchemaFileMappings,
-            ConsumerResponseService consumerResponseService) {
+            ConsumerResponseService consumerResponseService,
+            ConsumerPipeline consumerPipeline,
+            ConsumerMetrics consumerMetrics,
+            DuplicateDetector duplicateDetector,
+            CaptureLog captureLog,
+            MessageLogger messageLogger) {
         this.schemaDir = schemaDir;
         this.queueSchemaFileMappings = queueSchemaFileMappings;
         this.consumerResponseService = consumerResponseService;
+        this.consumerPipeline = consumerPipeline;
+        this.consumerMetrics = consumerMetrics;
+        this.duplicateDetector = duplicateDetector;
+        this.captureLog = captureLog;
+        this.messageLogger = messageLogger;
     }
 
-    @LogMethodData
     @Override
     public void onMessage(Message message) {
-        if (!(message instanceof ActiveMQTextMessage)) {
-            LOG.warn(String.format("Expected message of class ActiveMQTextMessage but got %s", message.getClass().getName()));
-            return;
+        process(message);
+    }
+
+    @Override
+    public CompletableFuture<Void> process(Message message) {
+        if (!(message instanceof ActiveMQMessage)) {
+            LOG.warn(String.format(UNSUPPORTED_MESSAGE, message.getClass().getName()));
+            return completedFuture(null);
         }
-        ActiveMQTextMessage messageToUse = (ActiveMQTextMessage) message;
+        ActiveMQMessage messageToUse = (ActiveMQMessage) message;
+        long start = System.nanoTime();
+        String destination = messageToUse.getDestination().getPhysicalName();
         try {
-            String messageString = messageToUse.getText();
-            String destination = messageToUse.getDestination().getPhysicalName();
+            final MessageBody body = MessageBody.of(messageToUse);
+            messageLogger.received(messageToUse, body);
+            if (body == null) {
+                LOG.warn(String.format(UNSUPPORTED_MESSAGE, message.getClass().getName()));
+                return completedFuture(null);
+            }
+            consumerMetrics.received(destination, messageToUse.getJMSTimestamp());
+            start = consumerMetrics.recordStage(destination, DECODE, start);
+            if (duplicateDetector.isDuplicate(destination, messageToUse)) {
+                consumerMetrics.duplicate(destination);
+                LOG.debug("Ignoring duplicate message {} from {}", messageToUse.getJMSMessageID(), destination);
+                return completedFuture(null);
+            }
+            captureLog.capture(destination, messageToUse, body);
             final String schemaFileName = queueSchemaFileMappings.get(destination);
-            validateAgainstSchema(messageString, schemaDir, schemaFileName);
-            consumerResponseService.respondToQueueMessage(messageToUse, destination);
+            if (consumerPipeline.isEnabled()) {
+                final CompletableFuture<Void> completion = consumerPipeline.submit(
+                        destination,
+                        () -> consumerMetrics.timed(destination, VALIDATE, () -> {
+                            validateAgainstSchema(body, schemaDir, schemaFileName);
+                            return null;
+                        }),
+                        () -> consumerMetrics.timed(destination, SCRIPT, () -> responseFor(body, destination)),
+                        response -> {
+                            try {
+                                sendResponse(messageToUse, destination, response, System.nanoTime());
+                            }
+                            catch (RuntimeException e) {
+                                consumerMetrics.error(destination, e);
+                                throw e;
+                            }
+                        });
+                return completion.whenComplete((ignored, e) -> {
+                    if (e != null) duplicateDetector.forget(destination, messageToUse);
+                });
+            }
+            validateAgainstSchema(body, schemaDir, schemaFileName);
+            start = consumerMetrics.recordStage(destination, VALIDATE, start);
+            final Object response = responseFor(body, destination);
+            start = consumerMetrics.recordStage(destination, SCRIPT, start);
+            sendResponse(messageToUse, destination, response, start);
         }
         catch (IOException e) {
+            consumerMetrics.error(destination, e);
+            duplicateDetector.forget(destination, messageToUse);
             LOG.error("Error processing message:", e);
         }
         catch (JMSException e) {
+            consumerMetrics.error(destination, e);
+            duplicateDetector.forget(destination, messageToUse);
             LOG.error("Error reading message content: ", e);
         }
+        catch (RuntimeException e) {
+            consumerMetrics.error(destination, e);
+            duplicateDetector.forget(destination, messageToUse);
+            throw e;
+        }
+        return completedFuture(null);
+    }
+
+    /**
+     * A failed script leaves the message unanswered, as it always has for listener consumers. The failure has been logged
+     * and counted by the script execution service
+     */
+    private Object responseFor(MessageBody body, String destination) {
+        try {
+            return consumerResponseService.buildResponse(body.getText(), destination);
+        }
+        catch (ScriptExecutionException e) {
+            return null;
+        }
+    }
+
+    private void sendResponse(ActiveMQMessage message, String destination, Object response, long start) {
+        try {
+            consumerResponseService.sendResponse(message, destination, response);
+        }
+        finally {
+            consumerMetrics.recordStage(destination, SEND, start);
+        }
     }
 }
 
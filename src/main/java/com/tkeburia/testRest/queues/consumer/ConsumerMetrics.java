@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.consumer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Per destination consumer metrics: received and duplicate messages, processing time of every stage, errors by exception type and the
+ * end to end latency from the time the message was sent (<code>JMSTimestamp</code>) until it was received.
+ * <p>
+ * Meters of a destination are created on its first message and looked up from a concurrent map afterwards, recording
+ * itself is done by the lock free Micrometer counters and timers.
+ */
+@Component
+@ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
+public class ConsumerMetrics {
+
+    public enum Stage {
+        DECODE, VALIDATE, SCRIPT, SEND;
+
+        private final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, DestinationMeters> destinationMeters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ConsumerMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Counts a received message and records its end to end latency
+     * @param jmsTimestamp the <code>JMSTimestamp</code> of the message, 0 when the producer disabled timestamps
+     */
+    public void received(String destination, long jmsTimestamp) {
+        final DestinationMeters meters = metersFor(destination);
+        meters.received.increment();
+        if (jmsTimestamp > 0) {
+            meters.endToEnd.record(Math.max(0, System.currentTimeMillis() - jmsTimestamp), MILLISECONDS);
+        }
+    }
+
+    /**
+     * Records the time spent in a stage since <code>startNanos</code>
+     * @return the current {@link System#nanoTime()}, to be used as the start of the next stage
+     */
+    public long recordStage(String destination, Stage stage, long startNanos) {
+        final long now = System.nanoTime();
+        metersFor(destination).stages[stage.ordinal()].record(now - startNanos, NANOSECONDS);
+        return now;
+    }
+
+    /**
+     * Runs the stage and records its time, or counts its error when it fails
+     */
+    public <T> T timed(String destination, Stage stage, Callable<T> task) throws Exception {
+        final long start = System.nanoTime();
+        try {
+            return task.call();
+        }
+        catch (Exception e) {
+            error(destination, e);
+            throw e;
+        }
+        finally {
+            recordStage(destination, stage, start);
+        }
+    }
+
+    public void duplicate(String destination) {
+        metersFor(destination).duplicates.increment();
+    }
+
+    public void error(String destination, Throwable error) {
+        meterRegistry.counter("consumer.errors", "destination", destination, "type", error.getClass().getSimpleName()).increment();
+    }
+
+    private DestinationMeters metersFor(String destination) {
+        final DestinationMeters meters = destinationMeters.get(destination);
+        return meters != null ? meters : destinationMeters.computeIfAbsent(destination, d -> new DestinationMeters(d, meterRegistry));
+    }
+
+    private static final class DestinationMeters {
+        private final Counter received;
+        private final Counter duplicates;
+        private final Timer endToEnd;
+        private final Timer[] stages = new Timer[Stage.values().length];
+
+        private DestinationMeters(String destination, MeterRegistry meterRegistry) {
+            this.received = Counter.builder("consumer.messages.received").tag("destination", destination).register(meterRegistry);
+            this.duplicates = Counter.builder("consumer.messages.duplicate").tag("destination", destination).register(meterRegistry);
+            this.endToEnd = Timer.builder("consumer.latency.endToEnd").tag("destination", destination)
+                                 .publishPercentileHistogram().register(meterRegistry);
+            for (Stage stage : Stage.values()) {
+                stages[stage.ordinal()] = Timer.builder("consumer.processing").tag("destination", destination).tag("stage", stage.tag)
+                                               .publishPercentileHistogram().register(meterRegistry);
+            }
+        }
+    }
+}
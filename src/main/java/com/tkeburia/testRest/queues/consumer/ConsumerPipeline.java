@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.queues.consumer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Processes consumed messages in stages (validate -> transform -> publish) on separate worker pools connected by
+ * bounded queues, so the JMS delivery thread only has to receive the message and hand it over. When the validate
+ * stage is full the delivery thread blocks, which stops the session from taking further messages off its prefetch
+ * buffer, and once that buffer is full the broker stops dispatching to the consumer.
+ * <p>
+ * The pipeline is only used when <code>consumer.pipeline.enabled</code> is true, otherwise messages are processed
+ * synchronously by {@link ConsumerListener}.
+ */
+@Component
+@ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
+public class ConsumerPipeline {
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+    private final boolean enabled;
+    private final Timer receiveTimer;
+    private final PipelineStage validateStage;
+    private final PipelineStage transformStage;
+    private final PipelineStage publishStage;
+
+    @Autowired
+    public ConsumerPipeline(PipelineProperties pipelineProperties, MeterRegistry meterRegistry) {
+        this.enabled = pipelineProperties.isEnabled();
+        final int capacity = pipelineProperties.getQueueCapacity();
+        this.receiveTimer = Timer.builder("consumer.pipeline.stage.processing").tag("stage", "receive").register(meterRegistry);
+        this.validateStage = new PipelineStage("validate", pipelineProperties.getValidateThreads(), capacity, meterRegistry);
+        this.transformStage = new PipelineStage("transform", pipelineProperties.getTransformThreads(), capacity, meterRegistry);
+        this.publishStage = new PipelineStage("publish", pipelineProperties.getPublishThreads(), capacity, meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Hands a received message over to the pipeline. Blocks only while the validate stage queue is full
+     * @param destination queue the message was read from
+     * @param validation validates the message, any exception stops further processing of the message
+     * @param transformation builds the response for the message
+     * @param publication sends the built response
+     * @return completes once the response has been published, or exceptionally with the failure of any stage
+     */
+    public CompletableFuture<Void> submit(String destination, Callable<?> validation, Callable<Object> transformation, Consumer<Object> publication) {
+        final long start = System.nanoTime();
+        final CompletableFuture<Void> completion = new CompletableFuture<>();
+        validateStage.submit(destination, failing(completion, () -> {
+            validation.call();
+            transformStage.submit(destination, failing(completion, () -> {
+                final Object response = transformation.call();
+                publishStage.submit(destination, failing(completion, () -> {
+                    publication.accept(response);
+                    completion.complete(null);
+                    return null;
+                }));
+                return null;
+            }));
+            return null;
+        }));
+        receiveTimer.record(System.nanoTime() - start, NANOSECONDS);
+        return completion;
+    }
+
+    private static Callable<?> failing(CompletableFuture<Void> completion, Callable<?> task) {
+        return () -> {
+            try {
+                return task.call();
+            }
+            catch (Exception e) {
+                completion.completeExceptionally(e);
+                throw e;
+            }
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        validateStage.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+        transformStage.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+        publishStage.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+    }
+}
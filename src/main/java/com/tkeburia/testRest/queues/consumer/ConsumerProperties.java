@@ -17,12 +17,76 @@
 package com.tkeburia.testRest.queues.consumer;
 
 import com.tkeburia.testRest.queues.BrokerProperties;
+import com.tkeburia.testRest.queues.BrokerTuning;
+import com.google.common.collect.Sets;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import static com.tkeburia.testRest.constants.Constants.BROKER_CONSUMER;
 
+@Data
+@EqualsAndHashCode(callSuper = true)
 @Configuration
 @ConfigurationProperties(prefix = BROKER_CONSUMER)
 public class ConsumerProperties extends BrokerProperties{
+    private static final int DEFAULT_ACK_BATCH_SIZE = 100;
+    private static final long DEFAULT_ACK_BATCH_INTERVAL = 1000;
+
+    private Map<String, AckMode> ackModes = new HashMap<>();
+    private Map<String, Integer> ackBatchSizes = new HashMap<>();
+    private Map<String, Long> ackBatchIntervals = new HashMap<>();
+    private Map<String, String> topicNames = new HashMap<>();
+    private Map<String, Integer> sessions = new HashMap<>();
+
+    public List<String> topicNamesFor(String brokerName) {
+        return splitNames(topicNames.get(brokerName));
+    }
+
+    /**
+     * Consumer brokers may have topics only, without queues
+     */
+    @Override
+    public Set<String> destinationIds() {
+        return Sets.union(super.destinationIds(), topicNames.keySet());
+    }
+
+    /**
+     * @return the number of sessions, each with its own consumer, created for every queue of the broker
+     */
+    public int sessionsFor(String brokerName) {
+        return Math.max(1, sessions.getOrDefault(brokerName, 1));
+    }
+
+    public AckMode ackModeFor(String brokerName) {
+        return ackModes.getOrDefault(brokerName, AckMode.AUTO);
+    }
+
+    public int ackBatchSizeFor(String brokerName) {
+        return ackBatchSizes.getOrDefault(brokerName, DEFAULT_ACK_BATCH_SIZE);
+    }
+
+    public long ackBatchIntervalFor(String brokerName) {
+        return ackBatchIntervals.getOrDefault(brokerName, DEFAULT_ACK_BATCH_INTERVAL);
+    }
+
+    /**
+     * {@link AckMode#OPTIMIZED} brokers always get optimizeAcknowledge, whatever the tuning block says
+     */
+    @Override
+    public BrokerTuning tuningFor(String brokerName) {
+        final BrokerTuning tuning = super.tuningFor(brokerName);
+        if (ackModeFor(brokerName) != AckMode.OPTIMIZED) {
+            return tuning;
+        }
+        final BrokerTuning effective = new BrokerTuning(tuning);
+        effective.setOptimizeAcknowledge(true);
+        return effective;
+    }
 }
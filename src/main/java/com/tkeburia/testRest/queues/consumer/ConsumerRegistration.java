@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.consumer;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.jms.JMSException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The consumers of one destination of a broker, managed together by the {@link ConsumerService}
+ */
+@JsonAutoDetect(getterVisibility = JsonAutoDetect.Visibility.NONE, isGetterVisibility = JsonAutoDetect.Visibility.NONE)
+public class ConsumerRegistration {
+
+    public enum State {
+        RUNNING, PAUSED, STOPPED
+    }
+
+    private final String brokerName;
+    private final String destination;
+    private final List<ManagedConsumer> consumers = new CopyOnWriteArrayList<>();
+    private volatile State state = State.RUNNING;
+
+    ConsumerRegistration(String brokerName, String destination) {
+        this.brokerName = brokerName;
+        this.destination = destination;
+    }
+
+    public static String idOf(String brokerName, String destination) {
+        return brokerName + ":" + destination;
+    }
+
+    @JsonProperty
+    public String getId() {
+        return idOf(brokerName, destination);
+    }
+
+    @JsonProperty
+    public String getBrokerName() {
+        return brokerName;
+    }
+
+    @JsonProperty
+    public String getDestination() {
+        return destination;
+    }
+
+    @JsonProperty
+    public State getState() {
+        return state;
+    }
+
+    @JsonProperty
+    public int getConsumerCount() {
+        return consumers.size();
+    }
+
+    void add(ManagedConsumer consumer) {
+        consumers.add(consumer);
+    }
+
+    void start() throws JMSException {
+        for (ManagedConsumer consumer : consumers) {
+            consumer.start();
+        }
+    }
+
+    /**
+     * Asks the consumers to stop without waiting for them, used on shutdown
+     */
+    void signalStop() {
+        consumers.forEach(ManagedConsumer::signalStop);
+    }
+
+    synchronized void pause() throws JMSException {
+        if (state != State.RUNNING) return;
+        for (ManagedConsumer consumer : consumers) {
+            consumer.pause();
+        }
+        state = State.PAUSED;
+    }
+
+    synchronized void resume() throws JMSException {
+        if (state != State.PAUSED) return;
+        for (ManagedConsumer consumer : consumers) {
+            consumer.resume();
+        }
+        state = State.RUNNING;
+    }
+
+    synchronized void stop(long timeoutMillis) throws JMSException {
+        if (state == State.STOPPED) return;
+        state = State.STOPPED;
+        for (ManagedConsumer consumer : consumers) {
+            consumer.stop(timeoutMillis);
+        }
+    }
+}
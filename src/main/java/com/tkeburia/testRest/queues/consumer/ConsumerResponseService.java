@@ -16,53 +16,235 @@
 
 package com.tkeburia.testRest.queues.consumer;
 
+import com.google.common.base.Splitter;
+import com.tkeburia.testRest.exception.MissingPropertyException;
+import com.tkeburia.testRest.exception.ScriptExecutionException;
 import com.tkeburia.testRest.queues.producer.ProducerService;
-import org.apache.activemq.command.ActiveMQTextMessage;
+import com.tkeburia.testRest.queues.schedule.PublishScheduler;
+import com.tkeburia.testRest.script.ScriptExecutionService;
+import org.apache.activemq.command.ActiveMQMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import javax.jms.Connection;
+import javax.jms.Destination;
 import javax.jms.JMSException;
-import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
-import static com.tkeburia.testRest.util.SchemaUtils.buildQueueResponseForMessage;
+import static com.google.common.base.Strings.nullToEmpty;
+import static com.tkeburia.testRest.util.QueueUtils.correlationIdFor;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
 
 @Component
 @ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
 public class ConsumerResponseService {
 
     private static final Logger LOG = LoggerFactory.getLogger(ConsumerResponseService.class);
+    private static final Splitter BROKER_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+    private static final MessageConverter SIMPLE_CONVERTER = new SimpleMessageConverter();
 
-    private final String scriptDir;
+    private final ScriptExecutionService scriptExecutionService;
     private final Map<String, String> queueResponseScriptMappings;
     private final Map<String, String> queueResponseDestinationMappings;
     private final ProducerService producerService;
+    private final PublishScheduler publishScheduler;
+    private final ResponseFanOut responseFanOut;
+    private final Map<Connection, Queue<ReplyProducer>> idleReplyProducers = new ConcurrentHashMap<>();
 
     @Autowired
     public ConsumerResponseService(
-            @Value("${response.script.directory}") String scriptDir,
+            ScriptExecutionService scriptExecutionService,
             Map<String, String> queueResponseScriptMappings,
             Map<String, String> queueResponseDestinationMappings,
-            ProducerService producerService
+            ProducerService producerService,
+            PublishScheduler publishScheduler,
+            ResponseFanOut responseFanOut
     ) {
-        this.scriptDir = scriptDir;
+        this.scriptExecutionService = scriptExecutionService;
         this.queueResponseScriptMappings = queueResponseScriptMappings;
         this.queueResponseDestinationMappings = queueResponseDestinationMappings;
         this.producerService = producerService;
+        this.publishScheduler = publishScheduler;
+        this.responseFanOut = responseFanOut;
     }
 
-    public void respondToQueueMessage(ActiveMQTextMessage mqTextMessage, String destination) throws JMSException, IOException {
+    /**
+     * @return the response built by the script of the destination, which may be null
+     * @throws ScriptExecutionException if the script failed, timed out or could not be run
+     */
+    public Object buildResponse(String messageText, String destination) {
         final String responseScript = queueResponseScriptMappings.get(destination);
-        final Object o = buildQueueResponseForMessage(mqTextMessage.getText(), scriptDir, responseScript);
-        final String responseDestination = queueResponseDestinationMappings.get(destination);
-        if (o == null) {
+        return scriptExecutionService.execute(destination, responseScript, messageText);
+    }
+
+    /**
+     * Starts building the response on the script executor without waiting for it, after running the given validation of
+     * the message on the executor as well
+     * @throws ScriptExecutionException if the script could not be run
+     */
+    public ScriptExecutionService.Execution startBuildingResponse(String messageText, String destination, Runnable validation) {
+        final String responseScript = queueResponseScriptMappings.get(destination);
+        return scriptExecutionService.submit(destination, responseScript, messageText, validation);
+    }
+
+    /**
+     * @return the first broker responses to messages consumed from the destination are sent to, or null if there is none
+     */
+    public String responseBrokerFor(String destination) {
+        final List<String> brokerNames = responseBrokersFor(destination);
+        return brokerNames.isEmpty() ? null : brokerNames.get(0);
+    }
+
+    /**
+     * @return the comma separated brokers responses to messages consumed from the destination are sent to
+     */
+    public List<String> responseBrokersFor(String destination) {
+        return BROKER_SPLITTER.splitToList(nullToEmpty(queueResponseDestinationMappings.get(destination)));
+    }
+
+    /**
+     * @return the converter responses to messages consumed from the destination are turned into messages with: the one of
+     * the format configured for its response broker, or a simple converter if it has none
+     */
+    public MessageConverter messageConverterFor(String destination) {
+        final String brokerName = responseBrokerFor(destination);
+        return brokerName != null && producerService.isConfigured(brokerName) ? producerService.messageConverterFor(brokerName) : SIMPLE_CONVERTER;
+    }
+
+    /**
+     * @return whether the response goes to several brokers or, being a collection, consists of several messages
+     */
+    public boolean isFanOut(String destination, Object response) {
+        return response instanceof Collection || responseBrokersFor(destination).size() > 1;
+    }
+
+    public boolean hasResponseDelay(String destination) {
+        return publishScheduler.hasResponseDelay(destination);
+    }
+
+    /**
+     * Sends the response to the request's JMSReplyTo destination when it has one, or to the broker mapped to the destination otherwise.
+     * Either way the response carries the request's correlation id, or its message id when it has none. Responses are published
+     * later when a response delay is configured for the destination. A collection is sent as one message per element, and
+     * responses for several brokers are sent to all of them.
+     */
+    public void sendResponse(ActiveMQMessage request, String destination, Object response) {
+        if (response == null) {
             LOG.warn("Queue response script returned a null value and will be ignored");
             return;
         }
-        producerService.sendToQueue(responseDestination, o);
+        try {
+            final Destination replyTo = request.getJMSReplyTo();
+            final String correlationId = correlationIdFor(request);
+            final long delay = publishScheduler.responseDelayFor(destination);
+            if (replyTo == null || request.getConnection() == null) {
+                if (isFanOut(destination, response)) {
+                    fanOut(destination, response, correlationId);
+                }
+                else if (delay > 0) {
+                    publishScheduler.schedule(responseBrokerFor(destination), null, response, correlationId, delay);
+                }
+                else {
+                    producerService.sendToQueue(responseBrokerFor(destination), null, response, correlationId);
+                }
+                return;
+            }
+            if (delay > 0) {
+                final Connection connection = request.getConnection();
+                publishScheduler.schedule(() -> sendReplyUnchecked(connection, destination, replyTo, response, correlationId), delay);
+                return;
+            }
+            for (Object reply : responsesOf(response)) {
+                sendReply(request.getConnection(), destination, replyTo, reply, correlationId);
+            }
+        }
+        catch (JMSException e) {
+            throw JmsUtils.convertJmsAccessException(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        idleReplyProducers.values().forEach(idle -> idle.forEach(this::closeQuietly));
+        idleReplyProducers.clear();
+    }
+
+    /**
+     * Sends the reply on an idle reply producer of the connection, creating one when all of them are in use, so concurrent
+     * consumer threads each get their own session instead of queueing on a shared one. The reply is written in the format
+     * of the destination's response broker
+     */
+    private void sendReply(Connection connection, String destination, Destination replyTo, Object response, String correlationId)
+            throws JMSException {
+        final Queue<ReplyProducer> idle = idleReplyProducers.computeIfAbsent(connection, c -> new ConcurrentLinkedQueue<>());
+        ReplyProducer replyProducer = idle.poll();
+        if (replyProducer == null) {
+            replyProducer = new ReplyProducer(connection);
+        }
+        try {
+            replyProducer.send(replyTo, response, correlationId, messageConverterFor(destination));
+        }
+        catch (JMSException e) {
+            closeQuietly(replyProducer);
+            throw e;
+        }
+        idle.offer(replyProducer);
+    }
+
+    private void sendReplyUnchecked(Connection connection, String destination, Destination replyTo, Object response, String correlationId) {
+        try {
+            for (Object reply : responsesOf(response)) {
+                sendReply(connection, destination, replyTo, reply, correlationId);
+            }
+        }
+        catch (JMSException e) {
+            throw JmsUtils.convertJmsAccessException(e);
+        }
+    }
+
+    private void fanOut(String destination, Object response, String correlationId) {
+        final List<String> brokerNames = responseBrokersFor(destination);
+        if (brokerNames.isEmpty()) {
+            throw new MissingPropertyException(String.format("No response broker configured for queue '%s'", destination));
+        }
+        final List<?> responses = responsesOf(response);
+        final long delay = publishScheduler.responseDelayFor(destination);
+        if (delay > 0) {
+            brokerNames.forEach(brokerName -> responses.forEach(
+                    each -> publishScheduler.schedule(brokerName, null, each, correlationId, delay)));
+            return;
+        }
+        responseFanOut.send(destination, brokerNames, responses, correlationId);
+    }
+
+    /**
+     * Null elements of a collection are skipped like null responses are
+     */
+    private static List<?> responsesOf(Object response) {
+        if (!(response instanceof Collection)) return singletonList(response);
+        return ((Collection<?>) response).stream().filter(Objects::nonNull).collect(toList());
+    }
+
+    private void closeQuietly(ReplyProducer replyProducer) {
+        try {
+            replyProducer.close();
+        }
+        catch (JMSException e) {
+            LOG.warn("Could not close reply producer: ", e);
+        }
     }
 }
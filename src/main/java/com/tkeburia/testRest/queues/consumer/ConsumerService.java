@@ -14,8 +14,12 @@
  * limitations under the License.
  */
 
+
 package com.tkeburia.testRest.queues.consumer;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.tkeburia.testRest.exception.ConsumerConflictException;
+import com.tkeburia.testRest.exception.MissingPropertyException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,37 +27,69 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import javax.jms.Connection;
 import javax.jms.JMSException;
-import javax.jms.MessageConsumer;
 import javax.jms.MessageListener;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.tkeburia.testRest.queues.consumer.ConsumerRegistration.idOf;
+import static java.util.Collections.unmodifiableCollection;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
+/**
+ * Starts the consumers configured at startup and keeps a registry of all running consumers by broker and destination,
+ * so that consumers can be added, paused, resumed and stopped at runtime
+ */
 @Service
 @ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
 public class ConsumerService {
     private static final Logger LOG = LoggerFactory.getLogger(ConsumerService.class);
 
+    private static final long STOP_TIMEOUT_MILLIS = 30000;
+
     private final MessageListener messageListener;
     private final Map<String, Connection> consumerConnectionMap;
-    private final List<MessageConsumer> messageConsumerList;
+    private final List<BrokerConsumer> messageConsumerList;
+    private final ConsumerProperties consumerProperties;
+    private final BatchMessageProcessor batchMessageProcessor;
+    private final ScheduledExecutorService ackFlushScheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("ack-flush-%d").setDaemon(true).build());
+    private final ExecutorService batchConsumerExecutor = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("batch-consumer-%d").setDaemon(true).build());
+    private final Map<String, ConsumerRegistration> registrations = new ConcurrentSkipListMap<>();
+    private final AtomicBoolean started = new AtomicBoolean();
 
     @Autowired
     public ConsumerService(
             MessageListener messageListener,
             @Qualifier("consumerConnectionMap") Map<String, Connection> consumerConnectionMap,
-            @Qualifier("messageConsumerList") List<MessageConsumer> messageConsumerList
+            @Qualifier("messageConsumerList") List<BrokerConsumer> messageConsumerList,
+            ConsumerProperties consumerProperties,
+            BatchMessageProcessor batchMessageProcessor
     ) {
         this.messageListener = messageListener;
         this.consumerConnectionMap = consumerConnectionMap;
         this.messageConsumerList = messageConsumerList;
+        this.consumerProperties = consumerProperties;
+        this.batchMessageProcessor = batchMessageProcessor;
     }
 
     public void consume(){
+        if (!started.compareAndSet(false, true)) return;
         try {
-            for (MessageConsumer consumer : messageConsumerList){
-                consumer.setMessageListener(messageListener);
+            for (BrokerConsumer consumer : messageConsumerList){
+                registrations.computeIfAbsent(idOf(consumer.getBrokerName(), consumer.getDestination()),
+                        id -> new ConsumerRegistration(consumer.getBrokerName(), consumer.getDestination()))
+                             .add(start(consumer));
             }
             for (Connection connection : consumerConnectionMap.values()) {
                 connection.start();
@@ -63,4 +99,102 @@ public class ConsumerService {
             LOG.error("Queue consumer error : ", e);
         }
     }
+
+    /**
+     * Starts consuming a destination of a configured consumer broker with <code>concurrency</code> sessions, topics always get a single session
+     * @param beforeStart run once the consumers are created but before they receive any message, the registration is
+     *                    undone if it fails
+     * @throws ConsumerConflictException if a consumer for the destination of the broker is already registered
+     */
+    public ConsumerRegistration register(String brokerName, String destination, boolean topic, int concurrency, Runnable beforeStart) throws JMSException {
+        final Connection connection = consumerConnectionMap.get(brokerName);
+        if (connection == null) {
+            throw new MissingPropertyException(String.format("No consumer configuration found for broker with id '%s'", brokerName));
+        }
+        final ConsumerRegistration registration = new ConsumerRegistration(brokerName, destination);
+        if (registrations.putIfAbsent(registration.getId(), registration) != null) {
+            throw new ConsumerConflictException(String.format("A consumer for %s is already registered", registration.getId()));
+        }
+        final AckMode ackMode = consumerProperties.ackModeFor(brokerName);
+        try {
+            for (int i = 0; i < (topic ? 1 : Math.max(1, concurrency)); i++) {
+                registration.add(managedConsumerFor(BrokerConsumer.create(connection, brokerName, destination, topic, ackMode)));
+            }
+            beforeStart.run();
+            registration.start();
+        }
+        catch (JMSException | RuntimeException e) {
+            registrations.remove(registration.getId());
+            registration.stop(STOP_TIMEOUT_MILLIS);
+            throw e;
+        }
+        LOG.info("Registered consumer {} with {} sessions", registration.getId(), registration.getConsumerCount());
+        return registration;
+    }
+
+    public Collection<ConsumerRegistration> getRegistrations() {
+        return unmodifiableCollection(registrations.values());
+    }
+
+    /**
+     * @return the registration for the destination of the broker, or null if there is none
+     */
+    public ConsumerRegistration getRegistration(String brokerName, String destination) {
+        return registrations.get(idOf(brokerName, destination));
+    }
+
+    public void pause(ConsumerRegistration registration) throws JMSException {
+        registration.pause();
+        LOG.info("Paused consumer {}", registration.getId());
+    }
+
+    public void resume(ConsumerRegistration registration) throws JMSException {
+        registration.resume();
+        LOG.info("Resumed consumer {}", registration.getId());
+    }
+
+    /**
+     * Lets messages being processed complete, closes the consumers and removes the registration
+     */
+    public void stop(ConsumerRegistration registration) throws JMSException {
+        registrations.remove(registration.getId(), registration);
+        registration.stop(STOP_TIMEOUT_MILLIS);
+        LOG.info("Stopped consumer {}", registration.getId());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ackFlushScheduler.shutdownNow();
+        registrations.values().forEach(ConsumerRegistration::signalStop);
+        batchConsumerExecutor.shutdown();
+    }
+
+    private ManagedConsumer start(BrokerConsumer consumer) throws JMSException {
+        final ManagedConsumer managedConsumer = managedConsumerFor(consumer);
+        managedConsumer.start();
+        return managedConsumer;
+    }
+
+    private ManagedConsumer managedConsumerFor(BrokerConsumer consumer) {
+        return consumer.getAckMode().isTransacted() ? batchConsumerFor(consumer) : listeningConsumerFor(consumer);
+    }
+
+    private ManagedConsumer batchConsumerFor(BrokerConsumer consumer) {
+        final String brokerName = consumer.getBrokerName();
+        final TransactedBatchConsumer batchConsumer = new TransactedBatchConsumer(
+                consumer, consumerProperties.getUris().get(brokerName), consumerProperties.ackBatchSizeFor(brokerName),
+                consumerProperties.ackBatchIntervalFor(brokerName), batchMessageProcessor);
+        return new ManagedConsumer.Batch(consumer, batchConsumer, batchConsumerExecutor);
+    }
+
+    private ManagedConsumer listeningConsumerFor(BrokerConsumer consumer) {
+        if (consumer.getAckMode() != AckMode.CLIENT) return new ManagedConsumer.Listening(consumer, messageListener, null);
+
+        final String brokerName = consumer.getBrokerName();
+        final long interval = consumerProperties.ackBatchIntervalFor(brokerName);
+        final BatchAcknowledgingListener listener = new BatchAcknowledgingListener(
+                messageListener, consumer.getSession(), consumerProperties.ackBatchSizeFor(brokerName), interval);
+        final ScheduledFuture<?> flushTask = ackFlushScheduler.scheduleWithFixedDelay(listener::flushIfDue, interval, interval, MILLISECONDS);
+        return new ManagedConsumer.Listening(consumer, listener, flushTask);
+    }
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.consumer;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.tkeburia.testRest.constants.Constants.CONSUMER_DEDUP;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = CONSUMER_DEDUP)
+public class DedupProperties {
+    private Map<String, Long> windowMillis = new HashMap<>();
+    private Map<String, String> keyProperties = new HashMap<>();
+    private long expectedMessages = 1_000_000;
+    private double falsePositiveRate = 0.001;
+    private long maxExactEntries = 100_000;
+
+    public long windowFor(String queueName) {
+        return windowMillis.getOrDefault(queueName, 0L);
+    }
+
+    public String keyPropertyFor(String queueName) {
+        return keyProperties.get(queueName);
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.consumer;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Opt-in, per queue detection of messages consumed again within a time window, e.g. redelivered after a broker failover.
+ * Only queues with a positive window in {@link DedupProperties#getWindowMillis()} are checked. Messages are identified
+ * by their <code>JMSMessageID</code>, or by the string property configured in {@link DedupProperties#getKeyProperties()}.
+ * <p>
+ * Every queue keeps an exact set of its most recent keys, bounded by <code>maxExactEntries</code> and expiring after the
+ * window, and two generations of bloom filters that are rotated every window. As long as no key was evicted from the
+ * full exact set within the window, a key missing from it is new. After such an eviction, a key found only by the bloom
+ * filters is reported as a duplicate, which wrongly drops about <code>falsePositiveRate</code> of the new messages.
+ * Bloom filters can not remove keys, so forgotten keys are remembered in a set of the same bound, which overrides the
+ * bloom filters until the key is recorded again. Memory use stays bounded either way, and checks and updates take
+ * constant time without locking, apart from the rare rotation.
+ */
+@Component
+@ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
+public class DuplicateDetector {
+
+    private final DedupProperties dedupProperties;
+    private final Ticker ticker;
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    @Autowired
+    public DuplicateDetector(DedupProperties dedupProperties) {
+        this(dedupProperties, Ticker.systemTicker());
+    }
+
+    DuplicateDetector(DedupProperties dedupProperties, Ticker ticker) {
+        this.dedupProperties = dedupProperties;
+        this.ticker = ticker;
+    }
+
+    /**
+     * Records the message as seen
+     * @return true if the message was already seen on the destination within its window
+     */
+    public boolean isDuplicate(String destination, Message message) throws JMSException {
+        final Window window = windowFor(destination);
+        if (window == null) return false;
+        final String key = keyFor(destination, message);
+        return key != null && window.checkAndRecord(key);
+    }
+
+    /**
+     * Forgets a message that failed processing, so that its redelivery is not reported as a duplicate
+     */
+    public void forget(String destination, Message message) {
+        final Window window = windows.get(destination);
+        if (window == null) return;
+        try {
+            final String key = keyFor(destination, message);
+            if (key != null) window.forget(key);
+        }
+        catch (JMSException e) {
+            // the key could not have been read when the message was recorded either
+        }
+    }
+
+    private Window windowFor(String destination) {
+        final long windowMillis = dedupProperties.windowFor(destination);
+        if (windowMillis <= 0) return null;
+        final Window window = windows.get(destination);
+        return window != null ? window : windows.computeIfAbsent(destination, d -> new Window(windowMillis));
+    }
+
+    private String keyFor(String destination, Message message) throws JMSException {
+        final String keyProperty = dedupProperties.keyPropertyFor(destination);
+        final String key = keyProperty == null ? null : message.getStringProperty(keyProperty);
+        return key != null ? key : message.getJMSMessageID();
+    }
+
+    private final class Window {
+        private final long windowNanos;
+        private final long maxExactEntries;
+        private final Cache<String, Boolean> recentKeys;
+        private final Cache<String, Boolean> forgottenKeys;
+        private volatile Generation current;
+        private volatile Generation previous;
+        private volatile long lastEvictedAt;
+
+        private Window(long windowMillis) {
+            this.windowNanos = MILLISECONDS.toNanos(windowMillis);
+            this.maxExactEntries = dedupProperties.getMaxExactEntries();
+            this.recentKeys = CacheBuilder.newBuilder()
+                                          .maximumSize(maxExactEntries)
+                                          .expireAfterWrite(windowMillis, MILLISECONDS)
+                                          .ticker(ticker)
+                                          .removalListener(this::onRemoval)
+                                          .build();
+            // a forgotten key stays in the bloom filters for up to two windows
+            this.forgottenKeys = CacheBuilder.newBuilder()
+                                             .maximumSize(maxExactEntries)
+                                             .expireAfterWrite(2 * windowMillis, MILLISECONDS)
+                                             .ticker(ticker)
+                                             .build();
+            final long now = ticker.read();
+            this.current = newGeneration(now);
+            this.lastEvictedAt = now - windowNanos;
+        }
+
+        private boolean checkAndRecord(String key) {
+            final long now = ticker.read();
+            rotateIfDue(now);
+            final Generation generation = current;
+            if (recentKeys.asMap().putIfAbsent(key, Boolean.TRUE) != null) return true;
+            // only keys evicted from the exact set within the window can be duplicates missing from it
+            final boolean evicted = now - lastEvictedAt < windowNanos;
+            final Generation previousGeneration = previous;
+            final boolean seen = evicted && (generation.filter.mightContain(key)
+                    || (previousGeneration != null && previousGeneration.filter.mightContain(key)));
+            final boolean forgotten = forgottenKeys.asMap().remove(key) != null;
+            generation.filter.put(key);
+            return seen && !forgotten;
+        }
+
+        private void forget(String key) {
+            recentKeys.invalidate(key);
+            forgottenKeys.put(key, Boolean.TRUE);
+        }
+
+        private void onRemoval(RemovalNotification<String, Boolean> notification) {
+            if (notification.getCause() == RemovalCause.SIZE) {
+                lastEvictedAt = ticker.read();
+            }
+        }
+
+        private void rotateIfDue(long now) {
+            if (now - current.startedAt < windowNanos) return;
+            synchronized (this) {
+                if (now - current.startedAt < windowNanos) return;
+                previous = now - current.startedAt < 2 * windowNanos ? current : null;
+                current = newGeneration(now);
+            }
+        }
+
+        private Generation newGeneration(long startedAt) {
+            return new Generation(startedAt, new ConcurrentBloomFilter(dedupProperties.getExpectedMessages(), dedupProperties.getFalsePositiveRate()));
+        }
+    }
+
+    private static final class Generation {
+        private final long startedAt;
+        private final ConcurrentBloomFilter filter;
+
+        private Generation(long startedAt, ConcurrentBloomFilter filter) {
+            this.startedAt = startedAt;
+            this.filter = filter;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.consumer;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.tkeburia.testRest.constants.Constants.RESPONSE_FANOUT;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = RESPONSE_FANOUT)
+public class FanOutProperties {
+    /** threads sending responses to several brokers in parallel */
+    private int threads = 8;
+    /** whether responses to messages consumed from a queue are only committed once they were sent to all brokers, by queue name */
+    private Map<String, Boolean> transactional = new HashMap<>();
+
+    public boolean isTransactional(String queueName) {
+        return transactional.getOrDefault(queueName, false);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.JMSException;
+import javax.jms.MessageListener;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * A {@link BrokerConsumer} started by the {@link ConsumerService}, either through a message listener or a
+ * {@link TransactedBatchConsumer}, that can be paused, resumed and stopped at runtime
+ */
+abstract class ManagedConsumer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ManagedConsumer.class);
+
+    protected final BrokerConsumer consumer;
+
+    ManagedConsumer(BrokerConsumer consumer) {
+        this.consumer = consumer;
+    }
+
+    abstract void start() throws JMSException;
+
+    abstract void pause() throws JMSException;
+
+    abstract void resume() throws JMSException;
+
+    /**
+     * Stops receiving messages, waits up to <code>timeoutMillis</code> for messages being processed to complete and
+     * closes the consumer and its session. Messages prefetched but not yet processed are redelivered by the broker.
+     */
+    abstract void stop(long timeoutMillis) throws JMSException;
+
+    /**
+     * Asks the consumer to stop without waiting for it, consumers closed along with their connection need not do anything
+     */
+    void signalStop() {
+    }
+
+    protected void closeSession() throws JMSException {
+        consumer.getSession().close();
+    }
+
+    static class Listening extends ManagedConsumer {
+        private final MessageListener listener;
+        private final ScheduledFuture<?> flushTask;
+
+        Listening(BrokerConsumer consumer, MessageListener listener, ScheduledFuture<?> flushTask) {
+            super(consumer);
+            this.listener = listener;
+            this.flushTask = flushTask;
+        }
+
+        @Override
+        void start() throws JMSException {
+            consumer.getConsumer().setMessageListener(listener);
+        }
+
+        @Override
+        void pause() throws JMSException {
+            consumer.getConsumer().setMessageListener(null);
+        }
+
+        @Override
+        void resume() throws JMSException {
+            consumer.getConsumer().setMessageListener(listener);
+        }
+
+        @Override
+        void stop(long timeoutMillis) throws JMSException {
+            consumer.getConsumer().setMessageListener(null);
+            if (flushTask != null) {
+                flushTask.cancel(false);
+            }
+            // acknowledged before closing, as closing the consumer has the broker redeliver unacknowledged messages
+            if (listener instanceof BatchAcknowledgingListener) {
+                ((BatchAcknowledgingListener) listener).flush();
+            }
+            consumer.getConsumer().close();
+            closeSession();
+        }
+    }
+
+    static class Batch extends ManagedConsumer {
+        private final TransactedBatchConsumer batchConsumer;
+        private final ExecutorService executor;
+        private volatile Future<?> task;
+
+        Batch(BrokerConsumer consumer, TransactedBatchConsumer batchConsumer, ExecutorService executor) {
+            super(consumer);
+            this.batchConsumer = batchConsumer;
+            this.executor = executor;
+        }
+
+        @Override
+        void start() {
+            task = executor.submit(batchConsumer);
+        }
+
+        @Override
+        void pause() {
+            batchConsumer.pause();
+        }
+
+        @Override
+        void resume() {
+            batchConsumer.resume();
+        }
+
+        @Override
+        void signalStop() {
+            batchConsumer.stop();
+        }
+
+        @Override
+        void stop(long timeoutMillis) throws JMSException {
+            batchConsumer.stop();
+            try {
+                if (task != null) {
+                    task.get(timeoutMillis, MILLISECONDS);
+                }
+            }
+            catch (TimeoutException e) {
+                LOG.warn("Batch consumer of broker {} did not stop within {} ms", consumer.getBrokerName(), timeoutMillis);
+                task.cancel(true);
+            }
+            catch (ExecutionException e) {
+                LOG.error("Batch consumer of broker {} failed: ", consumer.getBrokerName(), e.getCause());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            consumer.getConsumer().close();
+            closeSession();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.queues.consumer;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import static com.tkeburia.testRest.constants.Constants.CONSUMER_PIPELINE;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = CONSUMER_PIPELINE)
+public class PipelineProperties {
+    private boolean enabled = false;
+    private int validateThreads = 2;
+    private int transformThreads = 4;
+    private int publishThreads = 2;
+    private int queueCapacity = 1000;
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.queues.consumer;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.*;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * A single stage of the {@link ConsumerPipeline}: a fixed size worker pool fed by a bounded queue. Submitting to a
+ * stage whose queue is full blocks the submitting thread until there is room, which propagates backpressure to the
+ * upstream stage and ultimately to the JMS delivery thread.
+ */
+public class PipelineStage {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PipelineStage.class);
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final Timer waitTimer;
+    private final Timer processingTimer;
+    private final Counter errorCounter;
+
+    public PipelineStage(String name, int threads, int queueCapacity, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.executor = new ThreadPoolExecutor(
+                threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new ThreadFactoryBuilder().setNameFormat("pipeline-" + name + "-%d").setDaemon(true).build(),
+                PipelineStage::blockUntilQueued);
+        this.waitTimer = Timer.builder("consumer.pipeline.stage.wait").tag("stage", name).register(meterRegistry);
+        this.processingTimer = Timer.builder("consumer.pipeline.stage.processing").tag("stage", name).register(meterRegistry);
+        this.errorCounter = Counter.builder("consumer.pipeline.stage.errors").tag("stage", name).register(meterRegistry);
+        Gauge.builder("consumer.pipeline.stage.depth", executor, e -> e.getQueue().size()).tag("stage", name).register(meterRegistry);
+    }
+
+    /**
+     * Queues the task for execution, blocking while the stage queue is full. Exceptions thrown by the task are logged
+     * and counted, they do not propagate to the submitter
+     * @param destination queue the processed message was read from, used for logging
+     * @param task the work to run on this stage
+     */
+    public void submit(String destination, Callable<?> task) {
+        final long queuedAt = System.nanoTime();
+        executor.execute(() -> {
+            final long startedAt = System.nanoTime();
+            waitTimer.record(startedAt - queuedAt, NANOSECONDS);
+            try {
+                task.call();
+            }
+            catch (Exception e) {
+                errorCounter.increment();
+                LOG.error("Error in {} stage processing message from {}: ", name, destination, e);
+            }
+            finally {
+                processingTimer.record(System.nanoTime() - startedAt, NANOSECONDS);
+            }
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getDepth() {
+        return executor.getQueue().size();
+    }
+
+    public void shutdown(long timeoutMillis) throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            LOG.warn("{} stage did not finish processing within {} ms, {} tasks dropped", name, timeoutMillis, executor.shutdownNow().size());
+        }
+    }
+
+    private static void blockUntilQueued(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Pipeline stage has been shut down");
+        }
+        try {
+            executor.getQueue().put(task);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for room in the pipeline stage queue", e);
+        }
+    }
+}
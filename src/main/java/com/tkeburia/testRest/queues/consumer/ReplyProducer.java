@@ -0,0 +1,57 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.consumer;
+
+import org.springframework.jms.support.converter.MessageConverter;
+
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import static javax.jms.Session.AUTO_ACKNOWLEDGE;
+
+/**
+ * A session with an anonymous producer on a consumer connection, used to send replies to any JMSReplyTo destination of
+ * that connection's broker, including temporary queues. Sessions are not thread safe, so a reply producer is only used by
+ * one thread at a time.
+ */
+class ReplyProducer {
+
+    private final Session session;
+    private final MessageProducer producer;
+
+    ReplyProducer(Connection connection) throws JMSException {
+        this.session = connection.createSession(false, AUTO_ACKNOWLEDGE);
+        this.producer = session.createProducer(null);
+    }
+
+    void send(Destination destination, Object payload, String correlationId, MessageConverter messageConverter) throws JMSException {
+        final Message message = messageConverter.toMessage(payload, session);
+        if (correlationId != null) {
+            message.setJMSCorrelationID(correlationId);
+        }
+        producer.send(destination, message);
+    }
+
+    void close() throws JMSException {
+        session.close();
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.consumer;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.tkeburia.testRest.queues.producer.ProducerService;
+import com.tkeburia.testRest.queues.producer.ProducerTransaction;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.util.Collections.emptyList;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+
+/**
+ * Sends the responses to a consumed message to several response brokers in parallel, each send on its own pooled session.
+ * The last send runs on the calling thread, which waits for all of them and rethrows the first failure.
+ * <p>
+ * For queues configured as transactional every broker gets its responses in a local transaction, and the transactions are
+ * only committed once all brokers took their responses, otherwise all of them are rolled back. A broker failing to commit
+ * after others already committed can not be undone, that is logged as a partial delivery.
+ */
+@Component
+@ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
+public class ResponseFanOut implements MeterBinder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResponseFanOut.class);
+
+    private final ProducerService producerService;
+    private final FanOutProperties fanOutProperties;
+    private final ExecutorService sendExecutor;
+
+    @Autowired
+    public ResponseFanOut(ProducerService producerService, FanOutProperties fanOutProperties) {
+        this.producerService = producerService;
+        this.fanOutProperties = fanOutProperties;
+        this.sendExecutor = Executors.newFixedThreadPool(Math.max(1, fanOutProperties.getThreads()),
+                new ThreadFactoryBuilder().setNameFormat("response-fanout-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Sends every response to the default queue of every broker
+     * @param destination the queue the message being responded to was consumed from
+     * @param correlationId JMSCorrelationID of the responses, or null for none
+     */
+    public void send(String destination, List<String> brokerNames, List<?> responses, String correlationId) {
+        if (fanOutProperties.isTransactional(destination)) {
+            sendTransacted(brokerNames, responses, correlationId);
+            return;
+        }
+        final List<Runnable> sends = new ArrayList<>();
+        for (String brokerName : brokerNames) {
+            for (Object response : responses) {
+                sends.add(() -> producerService.sendToQueue(brokerName, null, response, correlationId));
+            }
+        }
+        if (sends.isEmpty()) return;
+        final List<CompletableFuture<Void>> forked = new ArrayList<>();
+        for (Runnable send : sends.subList(0, sends.size() - 1)) {
+            forked.add(CompletableFuture.runAsync(send, sendExecutor));
+        }
+        RuntimeException failure = null;
+        try {
+            sends.get(sends.size() - 1).run();
+        }
+        catch (RuntimeException e) {
+            failure = e;
+        }
+        for (CompletableFuture<Void> send : forked) {
+            try {
+                send.join();
+            }
+            catch (CompletionException e) {
+                if (failure == null) failure = unwrap(e);
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Publishes the usage of the send pool
+     */
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+        new ExecutorServiceMetrics(sendExecutor, "response-fanout", emptyList()).bindTo(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sendExecutor.shutdown();
+    }
+
+    private void sendTransacted(List<String> brokerNames, List<?> responses, String correlationId) {
+        final List<CompletableFuture<ProducerTransaction>> prepared = new ArrayList<>();
+        for (String brokerName : brokerNames) {
+            prepared.add(supplyAsync(() -> prepare(brokerName, responses, correlationId), sendExecutor));
+        }
+        final List<ProducerTransaction> transactions = new ArrayList<>();
+        RuntimeException failure = null;
+        for (CompletableFuture<ProducerTransaction> transaction : prepared) {
+            try {
+                transactions.add(transaction.join());
+            }
+            catch (CompletionException e) {
+                if (failure == null) failure = unwrap(e);
+            }
+        }
+        try {
+            if (failure != null) {
+                transactions.forEach(ProducerTransaction::rollback);
+                throw failure;
+            }
+            commit(transactions);
+        }
+        finally {
+            transactions.forEach(ProducerTransaction::close);
+        }
+    }
+
+    private ProducerTransaction prepare(String brokerName, List<?> responses, String correlationId) {
+        final ProducerTransaction transaction = producerService.beginTransaction(brokerName);
+        try {
+            for (Object response : responses) {
+                transaction.send(null, response, correlationId);
+            }
+            return transaction;
+        }
+        catch (RuntimeException e) {
+            transaction.rollback();
+            transaction.close();
+            throw e;
+        }
+    }
+
+    private static void commit(List<ProducerTransaction> transactions) {
+        for (int i = 0; i < transactions.size(); i++) {
+            try {
+                transactions.get(i).commit();
+            }
+            catch (RuntimeException e) {
+                if (i > 0) {
+                    LOG.error("Responses were only delivered to {} of {} brokers, {} failed to commit",
+                            i, transactions.size(), transactions.get(i).getBrokerName());
+                }
+                transactions.subList(i + 1, transactions.size()).forEach(ProducerTransaction::rollback);
+                throw e;
+            }
+        }
+    }
+
+    private static RuntimeException unwrap(CompletionException e) {
+        return e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.consumer;
+
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link MessageListener} that reports when the processing of a message has completed, also when the processing was
+ * handed over to other threads, e.g. the stages of the {@link ConsumerPipeline}
+ */
+public interface TrackedMessageListener extends MessageListener {
+
+    /**
+     * Processes the message like {@link #onMessage(Message)}, failures of synchronous processing are thrown
+     * @return completes once the response of the message has been sent, or exceptionally if its processing failed
+     */
+    CompletableFuture<Void> process(Message message);
+}
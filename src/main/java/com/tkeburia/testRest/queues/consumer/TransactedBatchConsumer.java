@@ -0,0 +1,163 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Receives up to <code>batchSize</code> messages, or whatever arrived within <code>batchTimeoutMillis</code> of the first one,
+ * hands them to the {@link BatchMessageProcessor} and commits the session once per batch. If processing any message of the
+ * batch fails, the whole batch is rolled back and redelivered by the broker.
+ */
+public class TransactedBatchConsumer implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactedBatchConsumer.class);
+
+    private final BrokerConsumer consumer;
+    private final String brokerUri;
+    private final int batchSize;
+    private final long batchTimeoutMillis;
+    private final BatchMessageProcessor batchMessageProcessor;
+    private final Map<String, MessageProducer> producers = new HashMap<>();
+    private volatile boolean running = true;
+    private volatile boolean paused;
+
+    public TransactedBatchConsumer(BrokerConsumer consumer, String brokerUri, int batchSize, long batchTimeoutMillis,
+                                   BatchMessageProcessor batchMessageProcessor) {
+        this.consumer = consumer;
+        this.brokerUri = brokerUri;
+        this.batchSize = batchSize;
+        this.batchTimeoutMillis = batchTimeoutMillis;
+        this.batchMessageProcessor = batchMessageProcessor;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            if (paused) {
+                backOff();
+                continue;
+            }
+            processNextBatch();
+        }
+        closeProducers();
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Stops receiving new batches until resumed, a batch in progress is completed
+     */
+    public void pause() {
+        paused = true;
+    }
+
+    public void resume() {
+        paused = false;
+    }
+
+    /**
+     * @return the number of messages received in the batch
+     */
+    public int processNextBatch() {
+        final List<Message> batch;
+        try {
+            batch = receiveBatch();
+        }
+        catch (JMSException e) {
+            if (running) {
+                LOG.error("Error receiving messages from broker {}: ", consumer.getBrokerName(), e);
+                backOff();
+            }
+            return 0;
+        }
+        if (batch.isEmpty()) return 0;
+
+        final Session session = consumer.getSession();
+        try {
+            final Runnable afterCommit = batchMessageProcessor.process(session, brokerUri, batch, producers);
+            session.commit();
+            afterCommit.run();
+        }
+        catch (JMSException | RuntimeException e) {
+            LOG.error("Batch of {} messages from broker {} failed and will be rolled back: ", batch.size(), consumer.getBrokerName(), e);
+            rollback(session);
+        }
+        return batch.size();
+    }
+
+    private List<Message> receiveBatch() throws JMSException {
+        final List<Message> batch = new ArrayList<>(batchSize);
+        final Message first = consumer.getConsumer().receive(batchTimeoutMillis);
+        if (first == null) return batch;
+        batch.add(first);
+
+        final long deadline = System.currentTimeMillis() + batchTimeoutMillis;
+        while (batch.size() < batchSize) {
+            final long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) break;
+            final Message next = consumer.getConsumer().receive(remaining);
+            if (next == null) break;
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private void rollback(Session session) {
+        try {
+            session.rollback();
+        }
+        catch (JMSException e) {
+            LOG.error("Could not roll back session of broker {}: ", consumer.getBrokerName(), e);
+        }
+    }
+
+    private void backOff() {
+        try {
+            Thread.sleep(batchTimeoutMillis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private void closeProducers() {
+        for (MessageProducer producer : producers.values()) {
+            try {
+                producer.close();
+            }
+            catch (JMSException e) {
+                LOG.warn("Could not close producer of broker {}", consumer.getBrokerName(), e);
+            }
+        }
+        producers.clear();
+    }
+}
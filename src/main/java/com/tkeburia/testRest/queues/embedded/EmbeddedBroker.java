@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.embedded;
+
+import com.tkeburia.testRest.queues.BrokerProperties;
+import org.apache.activemq.broker.BrokerPlugin;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.plugin.StatisticsBrokerPlugin;
+import org.apache.activemq.store.kahadb.KahaDBPersistenceAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static com.tkeburia.testRest.queues.embedded.EmbeddedBrokerProperties.Persistence.KAHADB;
+
+/**
+ * ActiveMQ broker running inside the application's JVM, reached over the <code>vm://</code> transport so that messages
+ * never leave the process. Consumer and producer brokers configured without a uri use it automatically. The statistics
+ * plugin is installed, so that queue sizes can be asked for.
+ */
+@Component
+@ConditionalOnProperty(name="activemq.embedded.enabled", havingValue="true")
+public class EmbeddedBroker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddedBroker.class);
+
+    private final EmbeddedBrokerProperties properties;
+    private BrokerService brokerService;
+
+    @Autowired
+    public EmbeddedBroker(EmbeddedBrokerProperties properties) {
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    public void start() throws Exception {
+        brokerService = new BrokerService();
+        brokerService.setBrokerName(properties.getBrokerName());
+        brokerService.setUseJmx(properties.isUseJmx());
+        brokerService.setUseShutdownHook(false);
+        brokerService.setDataDirectory(properties.getDataDirectory());
+        brokerService.setPlugins(new BrokerPlugin[]{new StatisticsBrokerPlugin()});
+        if (properties.getPersistence() == KAHADB) {
+            final KahaDBPersistenceAdapter persistenceAdapter = new KahaDBPersistenceAdapter();
+            persistenceAdapter.setDirectory(new File(properties.getDataDirectory(), "kahadb"));
+            brokerService.setPersistenceAdapter(persistenceAdapter);
+        }
+        else {
+            brokerService.setPersistent(false);
+        }
+        if (properties.getConnectorUri() != null) {
+            brokerService.addConnector(properties.getConnectorUri());
+        }
+        brokerService.start();
+        brokerService.waitUntilStarted();
+        LOG.info("Started embedded broker {} with {} persistence", getVmUri(), properties.getPersistence());
+    }
+
+    /**
+     * @return uri of the broker, which does not create a new broker when this one is not running
+     */
+    public String getVmUri() {
+        return "vm://" + properties.getBrokerName() + "?create=false";
+    }
+
+    /**
+     * Points every broker of the properties that has no uri to the embedded broker, without credentials
+     */
+    public void applyDefaults(BrokerProperties brokerProperties) {
+        final Set<String> ids = brokerProperties.destinationIds().isEmpty() ? brokerProperties.getIds() : brokerProperties.destinationIds();
+        brokerProperties.setUris(withDefault(brokerProperties.getUris(), ids, getVmUri()));
+        brokerProperties.setUserNames(withDefault(brokerProperties.getUserNames(), ids, ""));
+        brokerProperties.setPasswords(withDefault(brokerProperties.getPasswords(), ids, ""));
+    }
+
+    public boolean isStarted() {
+        return brokerService != null && brokerService.isStarted();
+    }
+
+    @PreDestroy
+    public void stop() throws Exception {
+        if (brokerService == null) return;
+        brokerService.stop();
+        brokerService.waitUntilStopped();
+    }
+
+    private static Map<String, String> withDefault(Map<String, String> values, Set<String> ids, String defaultValue) {
+        final Map<String, String> result = values == null ? new HashMap<>() : new HashMap<>(values);
+        ids.forEach(id -> result.putIfAbsent(id, defaultValue));
+        return result;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.embedded;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import static com.tkeburia.testRest.constants.Constants.EMBEDDED_BROKER;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = EMBEDDED_BROKER)
+public class EmbeddedBrokerProperties {
+
+    public enum Persistence {
+        NONE, KAHADB
+    }
+
+    private boolean enabled = false;
+    private String brokerName = "test-rest";
+    private Persistence persistence = Persistence.NONE;
+    /** KahaDB and temporary storage directory of the broker */
+    private String dataDirectory = "/tmp/test-rest/activemq-data";
+    /** optional transport connector, e.g. tcp://0.0.0.0:61616, to let external clients connect to the embedded broker */
+    private String connectorUri;
+    private boolean useJmx = false;
+}
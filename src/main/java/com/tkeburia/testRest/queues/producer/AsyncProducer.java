@@ -0,0 +1,203 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.producer;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.tkeburia.testRest.exception.ProducerBackpressureException;
+import org.apache.activemq.ActiveMQConnection;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.ActiveMQMessageProducer;
+import org.apache.activemq.AsyncCallback;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jms.core.MessageCreator;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static javax.jms.Session.AUTO_ACKNOWLEDGE;
+
+/**
+ * Sends messages to a producer broker without waiting for the broker to acknowledge them, through a dedicated connection
+ * with a single session and anonymous producer. Acknowledgements complete the futures returned by {@link #send}. At most
+ * <code>maxInFlight</code> messages can be unacknowledged, further sends fail with a {@link ProducerBackpressureException}
+ * until the broker catches up. A message that is not acknowledged within <code>ackTimeoutMillis</code> fails and frees its
+ * place. Sessions are not thread safe, so sends are serialized, but a send only takes as long as writing the message to the
+ * transport.
+ */
+class AsyncProducer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncProducer.class);
+
+    private final ActiveMQConnectionFactory connectionFactory;
+    private final MessageConverter messageConverter;
+    private final int deliveryMode;
+    private final long timeToLive;
+    private final int maxInFlight;
+    private final long ackTimeoutMillis;
+    private final Semaphore window;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ScheduledExecutorService ackTimeouts = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("async-producer-timeout-%d").setDaemon(true).build());
+
+    private ActiveMQConnection connection;
+    private Session session;
+    private ActiveMQMessageProducer producer;
+
+    AsyncProducer(ActiveMQConnectionFactory connectionFactory, MessageConverter messageConverter, int maxInFlight, long ackTimeoutMillis,
+                  int deliveryMode, long timeToLive) {
+        this.connectionFactory = connectionFactory;
+        this.messageConverter = messageConverter;
+        this.deliveryMode = deliveryMode;
+        this.timeToLive = timeToLive;
+        this.maxInFlight = maxInFlight;
+        this.ackTimeoutMillis = ackTimeoutMillis;
+        this.window = new Semaphore(maxInFlight);
+    }
+
+    CompletableFuture<Void> send(String queueName, Object payload, String correlationId) {
+        return send(queueName, session -> {
+            final Message message = messageConverter.toMessage(payload, session);
+            if (correlationId != null) {
+                message.setJMSCorrelationID(correlationId);
+            }
+            return message;
+        });
+    }
+
+    /**
+     * Sends the message created by the given creator, bypassing the message converter
+     */
+    CompletableFuture<Void> send(String queueName, MessageCreator messageCreator) {
+        if (!window.tryAcquire()) {
+            final CompletableFuture<Void> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new ProducerBackpressureException(
+                    String.format("%d messages are already waiting for the broker's acknowledgement", maxInFlight)));
+            return rejected;
+        }
+        inFlight.incrementAndGet();
+        final PendingSend pending = new PendingSend();
+        pending.timeout = ackTimeouts.schedule(() -> pending.fail(new TimeoutException(
+                String.format("Message to %s not acknowledged within %d ms", queueName, ackTimeoutMillis))), ackTimeoutMillis, MILLISECONDS);
+        try {
+            send(queueName, messageCreator, pending);
+        }
+        catch (JMSException | RuntimeException e) {
+            pending.fail(e);
+        }
+        return pending.result;
+    }
+
+    /**
+     * @return the number of messages sent but not yet acknowledged by the broker
+     */
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    void shutdown() {
+        close();
+        ackTimeouts.shutdownNow();
+    }
+
+    synchronized void close() {
+        if (connection == null) return;
+        try {
+            connection.close();
+        }
+        catch (JMSException e) {
+            LOG.warn("Could not close async producer connection: ", e);
+        }
+        connection = null;
+        session = null;
+        producer = null;
+    }
+
+    private synchronized void send(String queueName, MessageCreator messageCreator, AsyncCallback callback) throws JMSException {
+        if (producer == null) {
+            open();
+        }
+        final Message message = messageCreator.createMessage(session);
+        try {
+            producer.send(new ActiveMQQueue(queueName), message, deliveryMode, Message.DEFAULT_PRIORITY, timeToLive, callback);
+        }
+        catch (JMSException e) {
+            // the connection is most likely broken, the next send opens a new one
+            close();
+            throw e;
+        }
+    }
+
+    private void open() throws JMSException {
+        connection = (ActiveMQConnection) connectionFactory.createConnection();
+        try {
+            connection.start();
+            session = connection.createSession(false, AUTO_ACKNOWLEDGE);
+            producer = (ActiveMQMessageProducer) session.createProducer(null);
+        }
+        catch (JMSException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Completes once, on whichever comes first of the acknowledgement, the failure and the timeout, freeing the message's
+     * place in the window
+     */
+    private final class PendingSend implements AsyncCallback {
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile ScheduledFuture<?> timeout;
+
+        @Override
+        public void onSuccess() {
+            if (finish()) result.complete(null);
+        }
+
+        @Override
+        public void onException(JMSException e) {
+            fail(e);
+        }
+
+        private void fail(Exception e) {
+            if (finish()) result.completeExceptionally(e);
+        }
+
+        private boolean finish() {
+            if (!done.compareAndSet(false, true)) return false;
+            final ScheduledFuture<?> scheduled = timeout;
+            if (scheduled != null) scheduled.cancel(false);
+            inFlight.decrementAndGet();
+            window.release();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.producer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.activemq.util.ByteArrayOutputStream;
+import org.apache.activemq.util.ByteSequence;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+import java.io.IOException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes payloads with Jackson, either as json text messages or as bytes messages in the format of the mapper's factory.
+ * Strings are taken to be json already: they are sent as they are, or re-encoded for binary formats. Byte arrays are always
+ * sent as they are. Bytes are encoded into a per-thread buffer instead of an array of their own per message, which
+ * <code>BytesMessage.writeBytes</code> then copies into the message body.
+ */
+public class JacksonMessageConverter implements MessageConverter {
+
+    /** string property carrying the content type of the message body */
+    public static final String CONTENT_TYPE_PROPERTY = "contentType";
+
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+    private static final ObjectReader JSON_READER = new ObjectMapper().reader();
+
+    private final ObjectMapper objectMapper;
+    private final boolean text;
+    private final boolean json;
+    private final String contentType;
+    private final MessageConverter fallback = new SimpleMessageConverter();
+    private final ThreadLocal<ByteArrayOutputStream> buffers = ThreadLocal.withInitial(() -> new ByteArrayOutputStream(INITIAL_BUFFER_SIZE));
+
+    /**
+     * @param text whether to send text messages, only possible for json
+     */
+    public JacksonMessageConverter(ObjectMapper objectMapper, boolean text, String contentType) {
+        this.objectMapper = objectMapper;
+        this.json = JsonFactory.FORMAT_NAME_JSON.equals(objectMapper.getFactory().getFormatName());
+        if (text && !json) {
+            throw new IllegalArgumentException(String.format("%s can not be sent as text", objectMapper.getFactory().getFormatName()));
+        }
+        this.text = text;
+        this.contentType = contentType;
+    }
+
+    @Override
+    public Message toMessage(Object object, Session session) throws JMSException {
+        final Message message = text ? toTextMessage(object, session) : toBytesMessage(object, session);
+        message.setStringProperty(CONTENT_TYPE_PROPERTY, contentType);
+        return message;
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws JMSException {
+        if (!(message instanceof BytesMessage)) {
+            return fallback.fromMessage(message);
+        }
+        final BytesMessage bytesMessage = (BytesMessage) message;
+        final byte[] data = new byte[(int) bytesMessage.getBodyLength()];
+        bytesMessage.readBytes(data);
+        try {
+            return objectMapper.readValue(data, Object.class);
+        }
+        catch (IOException e) {
+            throw new MessageConversionException("Could not read message body", e);
+        }
+    }
+
+    private Message toTextMessage(Object object, Session session) throws JMSException {
+        if (object instanceof String) {
+            return session.createTextMessage((String) object);
+        }
+        try {
+            return session.createTextMessage(objectMapper.writeValueAsString(object));
+        }
+        catch (JsonProcessingException e) {
+            throw new MessageConversionException(String.format("Could not write %s as json", object.getClass().getName()), e);
+        }
+    }
+
+    private Message toBytesMessage(Object object, Session session) throws JMSException {
+        final BytesMessage message = session.createBytesMessage();
+        if (object instanceof byte[]) {
+            message.writeBytes((byte[]) object);
+            return message;
+        }
+        if (object instanceof String && json) {
+            message.writeBytes(((String) object).getBytes(UTF_8));
+            return message;
+        }
+        final ByteArrayOutputStream buffer = buffers.get();
+        buffer.reset();
+        try {
+            objectMapper.writeValue(buffer, object instanceof String ? JSON_READER.readTree((String) object) : object);
+            final ByteSequence encoded = buffer.toByteSequence();
+            message.writeBytes(encoded.getData(), encoded.getOffset(), encoded.getLength());
+            return message;
+        }
+        catch (IOException e) {
+            throw new MessageConversionException(String.format("Could not encode %s", object.getClass().getName()), e);
+        }
+        finally {
+            if (buffer.toByteSequence().getData().length > MAX_RETAINED_BUFFER_SIZE) {
+                buffers.remove();
+            }
+        }
+    }
+}
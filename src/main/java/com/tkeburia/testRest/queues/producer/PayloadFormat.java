@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.producer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+
+/**
+ * How payloads sent to a producer broker are turned into messages, configured per broker with
+ * <code>{PREFIX}.formats.{BROKER}</code>
+ */
+public enum PayloadFormat {
+    /** text, bytes, map or serialized object messages depending on the type of the payload */
+    SIMPLE,
+    /** json text messages */
+    JSON,
+    /** json encoded bytes messages */
+    BYTES,
+    /** Smile encoded bytes messages */
+    SMILE,
+    /** CBOR encoded bytes messages */
+    CBOR;
+
+    public MessageConverter createConverter() {
+        switch (this) {
+            case JSON:
+                return new JacksonMessageConverter(new ObjectMapper(), true, "application/json");
+            case BYTES:
+                return new JacksonMessageConverter(new ObjectMapper(), false, "application/json");
+            case SMILE:
+                return new JacksonMessageConverter(new ObjectMapper(new SmileFactory()), false, "application/x-jackson-smile");
+            case CBOR:
+                return new JacksonMessageConverter(new ObjectMapper(new CBORFactory()), false, "application/cbor");
+            default:
+                return new SimpleMessageConverter();
+        }
+    }
+}
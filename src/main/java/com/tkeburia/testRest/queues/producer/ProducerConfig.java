@@ -16,13 +16,22 @@
 
 package com.tkeburia.testRest.queues.producer;
 
+import com.tkeburia.testRest.queues.embedded.EmbeddedBroker;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.activemq.jms.pool.PooledConnectionFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jms.core.JmsTemplate;
 
+import javax.annotation.PreDestroy;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 import static com.tkeburia.testRest.constants.Constants.BROKER_PRODUCER;
@@ -34,27 +43,55 @@ import static java.util.function.Function.identity;
 public class ProducerConfig {
 
     private final ProducerProperties producerProperties;
+    private final ObjectProvider<EmbeddedBroker> embeddedBroker;
+    private final List<PooledConnectionFactory> connectionFactories = new CopyOnWriteArrayList<>();
 
     @Autowired
-    public ProducerConfig(ProducerProperties producerProperties) {
+    public ProducerConfig(ProducerProperties producerProperties, ObjectProvider<EmbeddedBroker> embeddedBroker) {
         this.producerProperties = producerProperties;
+        this.embeddedBroker = embeddedBroker;
     }
 
     @Bean
     @ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
     public Map<String, JmsTemplate> jmsTemplateMap() {
+        embeddedBroker.ifAvailable(broker -> broker.applyDefaults(producerProperties));
         verifyProperties(producerProperties, BROKER_PRODUCER);
         return producerProperties.getIds().stream().collect(Collectors.toMap(identity(), this::templateForBroker));
     }
 
+    /**
+     * Publishes the number of pooled connections of every producer broker
+     */
+    @Bean
+    @ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
+    public MeterBinder producerPoolMetrics(@Qualifier("jmsTemplateMap") Map<String, JmsTemplate> jmsTemplateMap) {
+        return meterRegistry -> jmsTemplateMap.forEach((brokerName, template) -> {
+            final PooledConnectionFactory connectionFactory = (PooledConnectionFactory) template.getConnectionFactory();
+            Gauge.builder("producer.pool.connections", connectionFactory, PooledConnectionFactory::getNumConnections)
+                 .tag("broker", brokerName).register(meterRegistry);
+            Gauge.builder("producer.pool.connections.max", connectionFactory, PooledConnectionFactory::getMaxConnections)
+                 .tag("broker", brokerName).register(meterRegistry);
+        });
+    }
+
     private JmsTemplate templateForBroker(String brokerName) {
         JmsTemplate template = new JmsTemplate();
-        final String uri = producerProperties.getUris().get(brokerName);
-        final String userName = producerProperties.getUserNames().get(brokerName);
-        final String password = producerProperties.getPasswords().get(brokerName);
-        template.setConnectionFactory(buildConnectionFactory(uri, userName, password));
-        template.setDefaultDestinationName(producerProperties.getQueueNames().get(brokerName));
+        final PooledConnectionFactory connectionFactory = new PooledConnectionFactory();
+        connectionFactory.setConnectionFactory(buildConnectionFactory(producerProperties, brokerName));
+        connectionFactories.add(connectionFactory);
+        template.setConnectionFactory(connectionFactory);
+        template.setDefaultDestinationName(producerProperties.defaultQueueNameFor(brokerName));
+        template.setMessageConverter(producerProperties.formatFor(brokerName).createConverter());
+        template.setExplicitQosEnabled(true);
+        template.setDeliveryPersistent(producerProperties.persistentDeliveryFor(brokerName));
+        template.setTimeToLive(producerProperties.timeToLiveFor(brokerName));
         return template;
     }
+
+    @PreDestroy
+    public void stopConnectionFactories() {
+        connectionFactories.forEach(PooledConnectionFactory::stop);
+    }
 }
 
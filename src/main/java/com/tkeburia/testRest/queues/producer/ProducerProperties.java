@@ -17,12 +17,61 @@
 package com.tkeburia.testRest.queues.producer;
 
 import com.tkeburia.testRest.queues.BrokerProperties;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import static com.tkeburia.testRest.constants.Constants.BROKER_PRODUCER;
 
+@Data
+@EqualsAndHashCode(callSuper = true)
 @Configuration
 @ConfigurationProperties(prefix = BROKER_PRODUCER)
 public class ProducerProperties extends BrokerProperties{
+    private static final int DEFAULT_MAX_IN_FLIGHT = 1000;
+    private static final long DEFAULT_ACK_TIMEOUT = 30000;
+
+    private Map<String, PayloadFormat> formats = new HashMap<>();
+    private Map<String, Boolean> asyncSends = new HashMap<>();
+    private Map<String, Integer> maxInFlight = new HashMap<>();
+    private Map<String, Long> ackTimeout = new HashMap<>();
+    private Map<String, Boolean> persistentDelivery = new HashMap<>();
+    private Map<String, Long> timeToLive = new HashMap<>();
+
+    public PayloadFormat formatFor(String brokerName) {
+        return formats.getOrDefault(brokerName, PayloadFormat.SIMPLE);
+    }
+
+    public boolean asyncSendFor(String brokerName) {
+        return asyncSends.getOrDefault(brokerName, false);
+    }
+
+    /**
+     * @return the number of asynchronous sends that can wait for the broker's acknowledgement before further sends are rejected
+     */
+    public int maxInFlightFor(String brokerName) {
+        return Math.max(1, maxInFlight.getOrDefault(brokerName, DEFAULT_MAX_IN_FLIGHT));
+    }
+
+    /**
+     * @return milliseconds after which an asynchronous send that was not acknowledged fails
+     */
+    public long ackTimeoutFor(String brokerName) {
+        return Math.max(1, ackTimeout.getOrDefault(brokerName, DEFAULT_ACK_TIMEOUT));
+    }
+
+    public boolean persistentDeliveryFor(String brokerName) {
+        return persistentDelivery.getOrDefault(brokerName, true);
+    }
+
+    /**
+     * @return time to live of sent messages in milliseconds, 0 for messages that never expire
+     */
+    public long timeToLiveFor(String brokerName) {
+        return timeToLive.getOrDefault(brokerName, 0L);
+    }
 }
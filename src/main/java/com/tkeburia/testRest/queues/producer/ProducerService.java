@@ -17,31 +17,279 @@
 package com.tkeburia.testRest.queues.producer;
 
 import com.tkeburia.testRest.exception.MissingPropertyException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jms.core.BrowserCallback;
 import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.MessageCreator;
+import org.springframework.jms.core.SessionCallback;
+import org.springframework.jms.support.converter.MessageConverter;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.tkeburia.testRest.util.QueueUtils.buildConnectionFactory;
+import static com.tkeburia.testRest.util.QueueUtils.createBytesMessage;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 @Service
 @ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
 public class ProducerService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(ProducerService.class);
+
     private final Map<String, JmsTemplate> jmsTemplateMap;
     private final ProducerProperties producerProperties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, AsyncProducer> asyncProducers = new ConcurrentHashMap<>();
 
     @Autowired
-    public ProducerService(@Qualifier("jmsTemplateMap") Map<String, JmsTemplate> jmsTemplateMap, ProducerProperties producerProperties) {
+    public ProducerService(@Qualifier("jmsTemplateMap") Map<String, JmsTemplate> jmsTemplateMap, ProducerProperties producerProperties,
+                           MeterRegistry meterRegistry) {
         this.jmsTemplateMap = jmsTemplateMap;
         this.producerProperties = producerProperties;
+        this.meterRegistry = meterRegistry;
     }
 
     public void sendToQueue(String brokerName, Object payload) {
+        sendToQueue(brokerName, null, payload, null);
+    }
+
+    public void sendToQueue(String brokerName, String destination, Object payload) {
+        sendToQueue(brokerName, destination, payload, null);
+    }
+
+    /**
+     * Sends without waiting for the broker's acknowledgement when the broker is configured for asynchronous sends, failures
+     * are then only logged and counted
+     * @param destination queue to send to, or null for the first queue configured for the broker
+     * @param correlationId JMSCorrelationID of the message, or null for none
+     */
+    public void sendToQueue(String brokerName, String destination, Object payload, String correlationId) {
+        final JmsTemplate template = templateFor(brokerName);
+        final String queueName = queueNameFor(brokerName, destination);
+        if (producerProperties.asyncSendFor(brokerName)) {
+            sendAsync(brokerName, queueName, payload, correlationId).whenComplete((ignored, e) -> {
+                if (e != null) LOG.error("Asynchronous send to {} of broker {} failed: ", queueName, brokerName, e);
+            });
+            return;
+        }
+        if (correlationId == null) {
+            template.convertAndSend(queueName, payload);
+            return;
+        }
+        template.convertAndSend(queueName, payload, message -> {
+            message.setJMSCorrelationID(correlationId);
+            return message;
+        });
+    }
+
+    /**
+     * Completes once the broker has acknowledged the message. Only brokers configured for asynchronous sends return before
+     * that, for other brokers the message is sent on the calling thread and the returned future is already complete.
+     * @param destination queue to send to, or null for the first queue configured for the broker
+     * @param correlationId JMSCorrelationID of the message, or null for none
+     */
+    public CompletableFuture<Void> sendToQueueAsync(String brokerName, String destination, Object payload, String correlationId) {
+        final String queueName = queueNameFor(brokerName, destination);
+        if (producerProperties.asyncSendFor(brokerName)) {
+            return sendAsync(brokerName, queueName, payload, correlationId);
+        }
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        try {
+            sendToQueue(brokerName, queueName, payload, correlationId);
+            result.complete(null);
+        }
+        catch (RuntimeException e) {
+            meterRegistry.counter("producer.sends.failed", "broker", brokerName).increment();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Sends the content as the body of <code>times</code> bytes messages, or text messages when <code>text</code> is set, without
+     * going through the broker's message converter. All messages share the same content, the array must not be changed afterwards.
+     * @param destination queue to send to, or null for the first queue configured for the broker
+     * @return completes once all messages are sent, like {@link #sendToQueueAsync}
+     */
+    public CompletableFuture<Void> sendContentToQueue(String brokerName, String destination, byte[] content, boolean text, int times) {
+        if (times < 1) {
+            throw new IllegalArgumentException("The number of messages to send must be positive");
+        }
+        return send(brokerName, destination, contentMessageCreator(content, text), times);
+    }
+
+    /**
+     * Sends the message created by the given creator, without going through the broker's message converter
+     * @param destination queue to send to, or null for the first queue configured for the broker
+     * @return completes once the message is sent, like {@link #sendToQueueAsync}
+     */
+    public CompletableFuture<Void> sendMessageToQueue(String brokerName, String destination, MessageCreator messageCreator) {
+        return send(brokerName, destination, messageCreator, 1);
+    }
+
+    /**
+     * Starts a local transaction on the broker, the caller has to close it
+     */
+    public ProducerTransaction beginTransaction(String brokerName) {
+        return new ProducerTransaction(brokerName, templateFor(brokerName), producerProperties.defaultQueueNameFor(brokerName));
+    }
+
+    /**
+     * Runs the callback on a browser of the queue, messages stay on the queue
+     * @param queueName queue to browse, see {@link #queueNameFor}
+     * @param selector JMS message selector, or null for all messages
+     */
+    public <T> T browse(String brokerName, String queueName, String selector, BrowserCallback<T> callback) {
+        final JmsTemplate template = templateFor(brokerName);
+        return selector == null ? template.browse(queueName, callback) : template.browseSelected(queueName, selector, callback);
+    }
+
+    /**
+     * Runs the action on a session of the broker, with the connection started so that messages can be received
+     */
+    public <T> T execute(String brokerName, SessionCallback<T> action) {
+        return templateFor(brokerName).execute(action, true);
+    }
+
+    /**
+     * @param destination a queue name, or null for the first queue configured for the broker
+     * @return the queue messages for the destination of the broker go to
+     * @throws IllegalArgumentException if the destination is not one of the queues configured for the broker, or matched
+     * by one of its wildcards
+     */
+    public String queueNameFor(String brokerName, String destination) {
+        templateFor(brokerName);
+        if (destination == null) {
+            return producerProperties.defaultQueueNameFor(brokerName);
+        }
+        if (!producerProperties.hasQueue(brokerName, destination)) {
+            throw new IllegalArgumentException(String.format("Queue '%s' is not configured for broker '%s'", destination, brokerName));
+        }
+        return destination;
+    }
+
+    public void sendRequest(String brokerName, Object payload, String correlationId, Destination replyTo) {
+        templateFor(brokerName).convertAndSend(producerProperties.defaultQueueNameFor(brokerName), payload, message -> {
+            message.setJMSCorrelationID(correlationId);
+            message.setJMSReplyTo(replyTo);
+            return message;
+        });
+    }
+
+    /**
+     * @return the converter payloads sent to the broker are turned into messages with, as configured by its format
+     */
+    public MessageConverter messageConverterFor(String brokerName) {
+        return templateFor(brokerName).getMessageConverter();
+    }
+
+    /**
+     * @return a new connection to the broker, which the caller has to start and close
+     */
+    public Connection createConnection(String brokerName) throws JMSException {
+        return templateFor(brokerName).getConnectionFactory().createConnection();
+    }
+
+    public boolean isConfigured(String brokerName) {
+        return jmsTemplateMap.containsKey(brokerName);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        asyncProducers.values().forEach(AsyncProducer::shutdown);
+    }
+
+    private CompletableFuture<Void> sendAsync(String brokerName, String queueName, Object payload, String correlationId) {
+        return countFailures(brokerName, asyncProducers.computeIfAbsent(brokerName, this::createAsyncProducer).send(queueName, payload, correlationId));
+    }
+
+    private CompletableFuture<Void> send(String brokerName, String destination, MessageCreator messageCreator, int times) {
+        final JmsTemplate template = templateFor(brokerName);
+        final String queueName = queueNameFor(brokerName, destination);
+        if (producerProperties.asyncSendFor(brokerName)) {
+            final AsyncProducer asyncProducer = asyncProducers.computeIfAbsent(brokerName, this::createAsyncProducer);
+            if (times == 1) {
+                return countFailures(brokerName, asyncProducer.send(queueName, messageCreator));
+            }
+            final CompletableFuture<?>[] sends = new CompletableFuture<?>[times];
+            for (int i = 0; i < times; i++) {
+                sends[i] = countFailures(brokerName, asyncProducer.send(queueName, messageCreator));
+            }
+            return CompletableFuture.allOf(sends);
+        }
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        try {
+            // a single session and producer for all the messages
+            template.execute(queueName, (session, producer) -> {
+                for (int i = 0; i < times; i++) {
+                    final Message message = messageCreator.createMessage(session);
+                    if (template.isExplicitQosEnabled()) {
+                        producer.send(message, template.getDeliveryMode(), template.getPriority(), template.getTimeToLive());
+                    }
+                    else {
+                        producer.send(message);
+                    }
+                }
+                return null;
+            });
+            result.complete(null);
+        }
+        catch (RuntimeException e) {
+            meterRegistry.counter("producer.sends.failed", "broker", brokerName).increment();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private CompletableFuture<Void> countFailures(String brokerName, CompletableFuture<Void> send) {
+        send.whenComplete((ignored, e) -> {
+            if (e != null) meterRegistry.counter("producer.sends.failed", "broker", brokerName).increment();
+        });
+        return send;
+    }
+
+    /**
+     * Text is decoded once for all messages
+     */
+    private static MessageCreator contentMessageCreator(byte[] content, boolean text) {
+        if (text) {
+            final String decoded = new String(content, UTF_8);
+            return session -> session.createTextMessage(decoded);
+        }
+        return session -> createBytesMessage(session, content);
+    }
+
+    private AsyncProducer createAsyncProducer(String brokerName) {
+        final AsyncProducer asyncProducer = new AsyncProducer(
+                buildConnectionFactory(producerProperties, brokerName),
+                templateFor(brokerName).getMessageConverter(),
+                producerProperties.maxInFlightFor(brokerName),
+                producerProperties.ackTimeoutFor(brokerName),
+                producerProperties.persistentDeliveryFor(brokerName) ? DeliveryMode.PERSISTENT : DeliveryMode.NON_PERSISTENT,
+                producerProperties.timeToLiveFor(brokerName));
+        Gauge.builder("producer.sends.inflight", asyncProducer, AsyncProducer::getInFlight).tag("broker", brokerName).register(meterRegistry);
+        return asyncProducer;
+    }
+
+    private JmsTemplate templateFor(String brokerName) {
         if (!jmsTemplateMap.keySet().contains(brokerName)) {
             throw new MissingPropertyException(String.format("No configuration found for queue with id '%s'", brokerName));
         }
-        jmsTemplateMap.get(brokerName).convertAndSend(producerProperties.getQueueNames().get(brokerName), payload);
+        return jmsTemplateMap.get(brokerName);
     }
 }
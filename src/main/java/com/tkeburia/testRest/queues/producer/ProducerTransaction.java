@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.producer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.support.JmsUtils;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+/**
+ * Sends messages to a producer broker in a local transaction on a session of the broker's connection pool, none of them
+ * are delivered before {@link #commit()}. Like sessions, a transaction must only be used by one thread at a time.
+ */
+public class ProducerTransaction implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProducerTransaction.class);
+
+    private final String brokerName;
+    private final JmsTemplate template;
+    private final String defaultQueueName;
+    private final Connection connection;
+    private final Session session;
+    private final MessageProducer producer;
+
+    ProducerTransaction(String brokerName, JmsTemplate template, String defaultQueueName) {
+        this.brokerName = brokerName;
+        this.template = template;
+        this.defaultQueueName = defaultQueueName;
+        Connection createdConnection = null;
+        try {
+            createdConnection = template.getConnectionFactory().createConnection();
+            this.session = createdConnection.createSession(true, Session.SESSION_TRANSACTED);
+            this.producer = session.createProducer(null);
+            this.connection = createdConnection;
+        }
+        catch (JMSException e) {
+            JmsUtils.closeConnection(createdConnection);
+            throw JmsUtils.convertJmsAccessException(e);
+        }
+    }
+
+    public String getBrokerName() {
+        return brokerName;
+    }
+
+    /**
+     * @param destination queue to send to, or null for the first queue configured for the broker
+     * @param correlationId JMSCorrelationID of the message, or null for none
+     */
+    public void send(String destination, Object payload, String correlationId) {
+        try {
+            final Message message = template.getMessageConverter().toMessage(payload, session);
+            if (correlationId != null) {
+                message.setJMSCorrelationID(correlationId);
+            }
+            producer.send(session.createQueue(destination != null ? destination : defaultQueueName), message, template.getDeliveryMode(), template.getPriority(), template.getTimeToLive());
+        }
+        catch (JMSException e) {
+            throw JmsUtils.convertJmsAccessException(e);
+        }
+    }
+
+    public void commit() {
+        try {
+            session.commit();
+        }
+        catch (JMSException e) {
+            throw JmsUtils.convertJmsAccessException(e);
+        }
+    }
+
+    /**
+     * Failures are only logged, the broker discards uncommitted messages of a closed session anyway
+     */
+    public void rollback() {
+        try {
+            session.rollback();
+        }
+        catch (JMSException e) {
+            LOG.warn("Could not roll back transaction of broker {}: ", brokerName, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        JmsUtils.closeMessageProducer(producer);
+        JmsUtils.closeSession(session);
+        JmsUtils.closeConnection(connection);
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.reply;
+
+import com.tkeburia.testRest.exception.MissingPropertyException;
+import com.tkeburia.testRest.queues.producer.ProducerService;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+import static com.tkeburia.testRest.constants.Constants.REQUEST_REPLY;
+import static javax.jms.Session.AUTO_ACKNOWLEDGE;
+import static org.springframework.http.HttpStatus.GATEWAY_TIMEOUT;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+/**
+ * Sends requests to a producer broker and completes the matching {@link DeferredResult} when a reply with the same
+ * correlation id arrives on the reply queue of that broker. Replies are read by one consumer per producer broker, created on
+ * the first request to it, as the replies of a broker's requests are sent to the reply queue on that broker. No thread
+ * waits for a reply, timeouts are handled by the async request.
+ */
+@Service
+@ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
+public class RequestReplyService implements MessageListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RequestReplyService.class);
+
+    private final ProducerService producerService;
+    private final RequestReplyProperties properties;
+    private final Map<String, DeferredResult<ResponseEntity<?>>> pendingReplies = new ConcurrentHashMap<>();
+    private final Map<String, Connection> replyConnections = new ConcurrentHashMap<>();
+    private final MessageConverter messageConverter = new SimpleMessageConverter();
+    private Destination replyDestination;
+    private Semaphore inFlight;
+
+    @Autowired
+    public RequestReplyService(ProducerService producerService, RequestReplyProperties properties) {
+        this.producerService = producerService;
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (properties.getQueueName() == null) {
+            LOG.info("No {}.queueName configured, request/reply is disabled", REQUEST_REPLY);
+            return;
+        }
+        replyDestination = new ActiveMQQueue(properties.getQueueName());
+        inFlight = new Semaphore(properties.getMaxInFlight());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        replyConnections.values().forEach(JmsUtils::closeConnection);
+        replyConnections.clear();
+    }
+
+    public DeferredResult<ResponseEntity<?>> request(String brokerName, Object payload, Long timeoutMillis) {
+        if (replyDestination == null) {
+            throw new MissingPropertyException(String.format("%s.queueName must be configured to use request/reply", REQUEST_REPLY));
+        }
+        replyConnections.computeIfAbsent(brokerName, this::startReplyConsumer);
+        final DeferredResult<ResponseEntity<?>> result = new DeferredResult<>(
+                timeoutMillis != null ? timeoutMillis : properties.getTimeoutMillis(), new ResponseEntity<>(GATEWAY_TIMEOUT));
+        if (!inFlight.tryAcquire()) {
+            result.setResult(new ResponseEntity<>(SERVICE_UNAVAILABLE));
+            return result;
+        }
+
+        final String correlationId = UUID.randomUUID().toString();
+        pendingReplies.put(correlationId, result);
+        result.onCompletion(() -> removePending(correlationId));
+        try {
+            producerService.sendRequest(brokerName, payload, correlationId, replyDestination);
+        }
+        catch (RuntimeException e) {
+            removePending(correlationId);
+            throw e;
+        }
+        return result;
+    }
+
+    @Override
+    public void onMessage(Message message) {
+        try {
+            final DeferredResult<ResponseEntity<?>> result = removePending(message.getJMSCorrelationID());
+            if (result == null) {
+                LOG.warn("Ignoring reply with unknown or expired correlation id {}", message.getJMSCorrelationID());
+                return;
+            }
+            result.setResult(ResponseEntity.ok(messageConverter.fromMessage(message)));
+        }
+        catch (JMSException e) {
+            LOG.error("Error reading reply message: ", e);
+        }
+    }
+
+    public int getPendingCount() {
+        return pendingReplies.size();
+    }
+
+    /**
+     * The in-flight permit of a request is released by whoever removes it first, the reply, the completion of the async
+     * request or a failed send
+     */
+    private DeferredResult<ResponseEntity<?>> removePending(String correlationId) {
+        final DeferredResult<ResponseEntity<?>> result = correlationId == null ? null : pendingReplies.remove(correlationId);
+        if (result != null) {
+            inFlight.release();
+        }
+        return result;
+    }
+
+    private Connection startReplyConsumer(String brokerName) {
+        Connection connection = null;
+        try {
+            connection = producerService.createConnection(brokerName);
+            final Session session = connection.createSession(false, AUTO_ACKNOWLEDGE);
+            session.createConsumer(replyDestination).setMessageListener(this);
+            connection.start();
+            return connection;
+        }
+        catch (JMSException e) {
+            JmsUtils.closeConnection(connection);
+            throw JmsUtils.convertJmsAccessException(e);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.schedule;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.tkeburia.testRest.exception.MissingPropertyException;
+import com.tkeburia.testRest.queues.producer.ProducerService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableCollection;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Publishes messages through the {@link ProducerService} after a delay or on a cron schedule. Pending sends are kept in a
+ * {@link TimerWheel}, which spills them to disk once there are too many, and are published by a small pool of threads.
+ */
+@Service
+@ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
+public class PublishScheduler implements MeterBinder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PublishScheduler.class);
+
+    private final ProducerService producerService;
+    private final ScheduleProperties scheduleProperties;
+    private final TimerWheel<ScheduledSend> timerWheel;
+    private final ExecutorService publishExecutor;
+    private final Map<String, RecurringPublication> recurringPublications = new ConcurrentSkipListMap<>();
+
+    @Autowired
+    public PublishScheduler(ProducerService producerService, ScheduleProperties scheduleProperties) {
+        this.producerService = producerService;
+        this.scheduleProperties = scheduleProperties;
+        this.publishExecutor = Executors.newFixedThreadPool(Math.max(1, scheduleProperties.getPublishThreads()),
+                new ThreadFactoryBuilder().setNameFormat("scheduled-publish-%d").setDaemon(true).build());
+        this.timerWheel = new TimerWheel<>("publish-schedule", scheduleProperties.getTickMillis(), scheduleProperties.getWheelSize(),
+                this::publish, new SendCodec(),
+                scheduleProperties.getMaxInMemory() > 0 ? new File(scheduleProperties.getSpillDirectory()) : null,
+                scheduleProperties.getMaxInMemory());
+    }
+
+    /**
+     * Publishes the usage of the publish pool and the number of pending and spilled sends
+     */
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+        new ExecutorServiceMetrics(publishExecutor, "scheduled-publish", emptyList()).bindTo(meterRegistry);
+        Gauge.builder("publish.scheduled.pending", timerWheel, TimerWheel::getPending).register(meterRegistry);
+        Gauge.builder("publish.scheduled.spilled", timerWheel, TimerWheel::getSpilled).register(meterRegistry);
+    }
+
+    /**
+     * Sends right away when the delay is not positive
+     * @param destination queue to send to, or null for the first queue configured for the broker
+     * @param correlationId JMSCorrelationID of the message, or null for none
+     */
+    public void schedule(String brokerName, String destination, Object payload, String correlationId, long delayMillis) {
+        if (delayMillis <= 0) {
+            producerService.sendToQueue(brokerName, destination, payload, correlationId);
+            return;
+        }
+        checkDestination(brokerName, destination);
+        timerWheel.schedule(ScheduledSend.of(brokerName, destination, payload, correlationId), delayMillis, MILLISECONDS);
+    }
+
+    /**
+     * Runs the send after the delay, it is always kept in memory
+     */
+    public void schedule(Runnable send, long delayMillis) {
+        if (delayMillis <= 0) {
+            send.run();
+            return;
+        }
+        timerWheel.schedule(ScheduledSend.action(send), delayMillis, MILLISECONDS);
+    }
+
+    public RecurringPublication scheduleRecurring(String brokerName, String destination, Object payload, String cron) {
+        checkDestination(brokerName, destination);
+        final RecurringPublication publication = new RecurringPublication(UUID.randomUUID().toString(), brokerName, destination, payload, cron);
+        recurringPublications.put(publication.getId(), publication);
+        scheduleNextRun(publication);
+        LOG.info("Scheduled publication {} to broker {} with cron '{}'", publication.getId(), brokerName, cron);
+        return publication;
+    }
+
+    public Collection<RecurringPublication> getRecurringPublications() {
+        return unmodifiableCollection(recurringPublications.values());
+    }
+
+    /**
+     * @return false if there is no recurring publication with the id
+     */
+    public boolean cancelRecurring(String id) {
+        return recurringPublications.remove(id) != null;
+    }
+
+    /**
+     * @return whether responses to messages consumed from the queue are delayed
+     */
+    public boolean hasResponseDelay(String queueName) {
+        return scheduleProperties.hasResponseDelay(queueName);
+    }
+
+    public long responseDelayFor(String queueName) {
+        return scheduleProperties.responseDelayFor(queueName);
+    }
+
+    public long getPendingCount() {
+        return timerWheel.getPending();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        final long dropped = timerWheel.stop();
+        if (dropped > 0) {
+            LOG.warn("Dropped {} scheduled messages that were not yet published", dropped);
+        }
+        publishExecutor.shutdown();
+    }
+
+    private void scheduleNextRun(RecurringPublication publication) {
+        final long now = System.currentTimeMillis();
+        timerWheel.schedule(ScheduledSend.recurring(publication.getId()), publication.advance(now) - now, MILLISECONDS);
+    }
+
+    /**
+     * Fails before scheduling rather than when the message is due
+     */
+    private void checkDestination(String brokerName, String destination) {
+        if (!producerService.isConfigured(brokerName)) {
+            throw new MissingPropertyException(String.format("No configuration found for queue with id '%s'", brokerName));
+        }
+        producerService.queueNameFor(brokerName, destination);
+    }
+
+    private void publish(ScheduledSend send) {
+        publishExecutor.execute(() -> {
+            try {
+                if (send.action != null) {
+                    send.action.run();
+                }
+                else if (send.recurringId != null) {
+                    publishRecurring(send.recurringId);
+                }
+                else {
+                    producerService.sendToQueue(send.brokerName, send.destination, send.payload, send.correlationId);
+                }
+            }
+            catch (RuntimeException e) {
+                LOG.error("Error publishing scheduled message: ", e);
+            }
+        });
+    }
+
+    private void publishRecurring(String id) {
+        final RecurringPublication publication = recurringPublications.get(id);
+        if (publication == null) return;
+        scheduleNextRun(publication);
+        producerService.sendToQueue(publication.getBrokerName(), publication.getDestination(), publication.getPayload());
+    }
+
+    /**
+     * Writes strings, which most payloads are, as UTF-8 and other payloads with java serialization. Actions are not written.
+     */
+    private static final class SendCodec implements TimerWheel.Codec<ScheduledSend> {
+        private static final byte RECURRING = 0;
+        private static final byte STRING_PAYLOAD = 1;
+        private static final byte OBJECT_PAYLOAD = 2;
+
+        @Override
+        public void write(ScheduledSend send, DataOutput out) throws IOException {
+            if (send.action != null) {
+                throw new NotSerializableException("Actions can not be spilled");
+            }
+            if (send.recurringId != null) {
+                out.writeByte(RECURRING);
+                out.writeUTF(send.recurringId);
+                return;
+            }
+            if (send.payload instanceof String) {
+                out.writeByte(STRING_PAYLOAD);
+                writeBytes(((String) send.payload).getBytes(UTF_8), out);
+            }
+            else if (send.payload instanceof Serializable) {
+                out.writeByte(OBJECT_PAYLOAD);
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+                    objectOut.writeObject(send.payload);
+                }
+                writeBytes(bytes.toByteArray(), out);
+            }
+            else {
+                throw new NotSerializableException(send.payload.getClass().getName());
+            }
+            out.writeUTF(send.brokerName);
+            writeNullable(send.destination, out);
+            writeNullable(send.correlationId, out);
+        }
+
+        @Override
+        public ScheduledSend read(DataInput in) throws IOException {
+            final byte type = in.readByte();
+            if (type == RECURRING) {
+                return ScheduledSend.recurring(in.readUTF());
+            }
+            final byte[] bytes = readBytes(in);
+            final Object payload;
+            if (type == STRING_PAYLOAD) {
+                payload = new String(bytes, UTF_8);
+            }
+            else {
+                try (ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    payload = objectIn.readObject();
+                }
+                catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                }
+            }
+            return ScheduledSend.of(in.readUTF(), readNullable(in), payload, readNullable(in));
+        }
+
+        private static void writeBytes(byte[] bytes, DataOutput out) throws IOException {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static byte[] readBytes(DataInput in) throws IOException {
+            final byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return bytes;
+        }
+
+        private static void writeNullable(String value, DataOutput out) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) out.writeUTF(value);
+        }
+
+        private static String readNullable(DataInput in) throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.schedule;
+
+import org.springframework.scheduling.support.CronSequenceGenerator;
+
+import java.util.Date;
+
+/**
+ * A payload published to a queue of a producer broker on every match of a cron expression, see {@link CronSequenceGenerator}
+ * for the format
+ */
+public class RecurringPublication {
+
+    private final String id;
+    private final String brokerName;
+    private final String destination;
+    private final Object payload;
+    private final String cron;
+    private final CronSequenceGenerator sequence;
+    private volatile long nextRun;
+
+    public RecurringPublication(String id, String brokerName, String destination, Object payload, String cron) {
+        this.id = id;
+        this.brokerName = brokerName;
+        this.destination = destination;
+        this.payload = payload;
+        this.cron = cron;
+        this.sequence = new CronSequenceGenerator(cron);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getBrokerName() {
+        return brokerName;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public Object getPayload() {
+        return payload;
+    }
+
+    public String getCron() {
+        return cron;
+    }
+
+    /**
+     * @return epoch millis of the next publication
+     */
+    public long getNextRun() {
+        return nextRun;
+    }
+
+    /**
+     * Moves to the first match of the cron expression after the given time
+     * @return epoch millis of the next publication
+     */
+    long advance(long afterMillis) {
+        nextRun = sequence.next(new Date(afterMillis)).getTime();
+        return nextRun;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.schedule;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.tkeburia.testRest.constants.Constants.PUBLISH_SCHEDULE;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = PUBLISH_SCHEDULE)
+public class ScheduleProperties {
+    /** resolution of the timer wheel, delays are rounded up to whole ticks */
+    private long tickMillis = 10;
+    /** number of buckets of the timer wheel, rounded up to a power of two */
+    private int wheelSize = 512;
+    /** pending sends held in memory before sends due after the current wheel rotation are spilled to disk, 0 to never spill */
+    private long maxInMemory = 1_000_000;
+    private String spillDirectory = "/tmp/test-rest/schedule-spill";
+    private int publishThreads = 4;
+    /** delay of responses to messages consumed from a queue, by queue name */
+    private Map<String, Long> responseDelays = new HashMap<>();
+    /** upper bound of a random delay added to the response delay of a queue, by queue name */
+    private Map<String, Long> responseJitters = new HashMap<>();
+
+    public boolean hasResponseDelay(String queueName) {
+        return responseDelays.getOrDefault(queueName, 0L) > 0 || responseJitters.getOrDefault(queueName, 0L) > 0;
+    }
+
+    /**
+     * @return the delay in milliseconds of the next response to a message consumed from the queue, jitter included
+     */
+    public long responseDelayFor(String queueName) {
+        final long delay = responseDelays.getOrDefault(queueName, 0L);
+        final long jitter = responseJitters.getOrDefault(queueName, 0L);
+        return jitter > 0 ? delay + ThreadLocalRandom.current().nextLong(jitter + 1) : delay;
+    }
+}
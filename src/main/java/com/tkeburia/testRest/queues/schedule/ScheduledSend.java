@@ -0,0 +1,52 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.schedule;
+
+/**
+ * A send waiting in the {@link TimerWheel} of the {@link PublishScheduler}: a payload for a queue of a producer broker, the
+ * next run of a recurring publication, or an action that can only be kept in memory
+ */
+final class ScheduledSend {
+    final String brokerName;
+    final String destination;
+    final Object payload;
+    final String correlationId;
+    final String recurringId;
+    final Runnable action;
+
+    private ScheduledSend(String brokerName, String destination, Object payload, String correlationId, String recurringId, Runnable action) {
+        this.brokerName = brokerName;
+        this.destination = destination;
+        this.payload = payload;
+        this.correlationId = correlationId;
+        this.recurringId = recurringId;
+        this.action = action;
+    }
+
+    static ScheduledSend of(String brokerName, String destination, Object payload, String correlationId) {
+        return new ScheduledSend(brokerName, destination, payload, correlationId, null, null);
+    }
+
+    static ScheduledSend recurring(String recurringId) {
+        return new ScheduledSend(null, null, null, null, recurringId, null);
+    }
+
+    static ScheduledSend action(Runnable action) {
+        return new ScheduledSend(null, null, null, null, null, action);
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.schedule;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * A hashed timer wheel. Pending tasks are linked into the buckets of an array that a single worker thread walks, one bucket
+ * per tick, handing the tasks of the current bucket that are due to the handler. Tasks due after more than one rotation of
+ * the wheel stay in their bucket with a count of the rotations left. Scheduling only queues the task for the worker, it never
+ * blocks, and a pending task costs a single small entry object.
+ * <p>
+ * Once <code>maxInMemory</code> tasks are pending, tasks due after the next rotation are appended to a spill file of the
+ * rotation they are due in, as long as the codec can write them, and read back when the wheel starts the rotation before.
+ * Pending tasks are not kept over restarts, spill files left over from a previous run are deleted.
+ */
+public class TimerWheel<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimerWheel.class);
+
+    private static final int MAX_OPEN_SPILL_FILES = 16;
+    private static final String SPILL_FILE_SUFFIX = ".spill";
+
+    public interface Codec<T> {
+        /**
+         * @throws IOException if the task can not be written, it is then kept in memory
+         */
+        void write(T task, DataOutput out) throws IOException;
+
+        T read(DataInput in) throws IOException;
+    }
+
+    private final long tickNanos;
+    private final int mask;
+    private final Entry<T>[] buckets;
+    private final Consumer<T> handler;
+    private final Codec<T> codec;
+    private final File spillDirectory;
+    private final long maxInMemory;
+    private final Queue<Entry<T>> additions = new ConcurrentLinkedQueue<>();
+    private final AtomicLong inMemory = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final Object spillLock = new Object();
+    private final Map<Long, DataOutputStream> spillFiles = new LinkedHashMap<>();
+    private final long startTime = System.nanoTime();
+    private final Thread worker;
+    private volatile long tick;
+    private volatile boolean running = true;
+    private long loadedRotation;
+
+    /**
+     * @param wheelSize number of buckets, rounded up to a power of two
+     * @param spillDirectory directory of spill files, or null to keep all tasks in memory
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(String name, long tickMillis, int wheelSize, Consumer<T> handler, Codec<T> codec, File spillDirectory, long maxInMemory) {
+        if (tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Timer wheel tick and size must be positive");
+        }
+        final int size = wheelSize == 1 ? 1 : Integer.highestOneBit(wheelSize - 1) << 1;
+        this.tickNanos = MILLISECONDS.toNanos(tickMillis);
+        this.mask = size - 1;
+        this.buckets = new Entry[size];
+        this.handler = handler;
+        this.codec = codec;
+        this.spillDirectory = codec != null ? spillDirectory : null;
+        this.maxInMemory = maxInMemory;
+        if (this.spillDirectory != null) {
+            prepareSpillDirectory();
+        }
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public void schedule(T task, long delay, TimeUnit unit) {
+        if (!running) {
+            throw new IllegalStateException("Timer wheel has been stopped");
+        }
+        final long deadline = System.nanoTime() - startTime + Math.max(0, unit.toNanos(delay));
+        if (shouldSpill(deadline) && spill(task, deadline)) {
+            return;
+        }
+        inMemory.incrementAndGet();
+        additions.add(new Entry<>(task, deadline));
+    }
+
+    /**
+     * @return the number of tasks not yet handed to the handler, in memory and spilled
+     */
+    public long getPending() {
+        return inMemory.get() + spilled.get();
+    }
+
+    public long getSpilled() {
+        return spilled.get();
+    }
+
+    /**
+     * Stops the worker, pending tasks are dropped
+     * @return the number of tasks that were dropped
+     */
+    public long stop() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(1));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (spillDirectory != null) {
+            synchronized (spillLock) {
+                spillFiles.values().forEach(TimerWheel::closeQuietly);
+                spillFiles.clear();
+            }
+            prepareSpillDirectory();
+        }
+        return getPending();
+    }
+
+    private void run() {
+        while (running) {
+            final long sleepNanos = tickNanos * (tick + 1) - (System.nanoTime() - startTime);
+            if (sleepNanos > 0) {
+                try {
+                    NANOSECONDS.sleep(sleepNanos);
+                }
+                catch (InterruptedException e) {
+                    continue;
+                }
+            }
+            if ((tick & mask) == 0 && spillDirectory != null) {
+                loadSpilled(tick / buckets.length + 1);
+            }
+            for (Entry<T> entry; (entry = additions.poll()) != null; ) {
+                place(entry);
+            }
+            expire((int) (tick & mask));
+            tick++;
+        }
+    }
+
+    private void place(Entry<T> entry) {
+        final long dueTick = entry.deadline / tickNanos;
+        entry.rounds = Math.max(0, (dueTick - tick) / buckets.length);
+        final int index = (int) (Math.max(dueTick, tick) & mask);
+        entry.next = buckets[index];
+        buckets[index] = entry;
+    }
+
+    private void expire(int index) {
+        Entry<T> previous = null;
+        Entry<T> entry = buckets[index];
+        while (entry != null) {
+            final Entry<T> next = entry.next;
+            if (entry.rounds > 0) {
+                entry.rounds--;
+                previous = entry;
+            }
+            else {
+                if (previous == null) {
+                    buckets[index] = next;
+                }
+                else {
+                    previous.next = next;
+                }
+                inMemory.decrementAndGet();
+                handle(entry.task);
+            }
+            entry = next;
+        }
+    }
+
+    private void handle(T task) {
+        try {
+            handler.accept(task);
+        }
+        catch (RuntimeException e) {
+            LOG.error("Error handling scheduled task: ", e);
+        }
+    }
+
+    private boolean shouldSpill(long deadline) {
+        return spillDirectory != null && inMemory.get() >= maxInMemory && rotationOf(deadline) > tick / buckets.length + 1;
+    }
+
+    private long rotationOf(long deadline) {
+        return deadline / tickNanos / buckets.length;
+    }
+
+    private boolean spill(T task, long deadline) {
+        final ByteArrayOutputStream record = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(record)) {
+            out.writeLong(deadline);
+            codec.write(task, out);
+        }
+        catch (IOException e) {
+            return false;
+        }
+        final long rotation = rotationOf(deadline);
+        synchronized (spillLock) {
+            // the rotation may have been loaded since the check, its tasks have to go to the wheel directly
+            if (rotation <= loadedRotation) {
+                return false;
+            }
+            try {
+                final DataOutputStream out = spillFileFor(rotation);
+                out.writeInt(record.size());
+                record.writeTo(out);
+            }
+            catch (IOException e) {
+                LOG.warn("Could not spill scheduled task, keeping it in memory: ", e);
+                return false;
+            }
+            spilled.incrementAndGet();
+        }
+        return true;
+    }
+
+    private DataOutputStream spillFileFor(long rotation) throws IOException {
+        DataOutputStream out = spillFiles.get(rotation);
+        if (out == null) {
+            if (spillFiles.size() >= MAX_OPEN_SPILL_FILES) {
+                final Iterator<DataOutputStream> eldest = spillFiles.values().iterator();
+                closeQuietly(eldest.next());
+                eldest.remove();
+            }
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile(rotation), true)));
+            spillFiles.put(rotation, out);
+        }
+        return out;
+    }
+
+    private void loadSpilled(long rotation) {
+        final File file = spillFile(rotation);
+        synchronized (spillLock) {
+            loadedRotation = rotation;
+            final DataOutputStream out = spillFiles.remove(rotation);
+            if (out != null) {
+                closeQuietly(out);
+            }
+        }
+        if (!file.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                final byte[] record;
+                try {
+                    record = new byte[in.readInt()];
+                }
+                catch (EOFException e) {
+                    break;
+                }
+                in.readFully(record);
+                final DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record));
+                final long deadline = recordIn.readLong();
+                final Entry<T> entry = new Entry<>(codec.read(recordIn), deadline);
+                spilled.decrementAndGet();
+                inMemory.incrementAndGet();
+                place(entry);
+            }
+        }
+        catch (IOException e) {
+            LOG.error("Could not read spilled tasks from {}: ", file.getAbsolutePath(), e);
+        }
+        if (!file.delete()) {
+            LOG.warn("Could not delete spill file {}", file.getAbsolutePath());
+        }
+    }
+
+    private File spillFile(long rotation) {
+        return new File(spillDirectory, rotation + SPILL_FILE_SUFFIX);
+    }
+
+    private void prepareSpillDirectory() {
+        if (!spillDirectory.isDirectory() && !spillDirectory.mkdirs()) {
+            throw new IllegalStateException(String.format("Could not create spill directory %s", spillDirectory.getAbsolutePath()));
+        }
+        final File[] stale = spillDirectory.listFiles((dir, fileName) -> fileName.endsWith(SPILL_FILE_SUFFIX));
+        if (stale == null) return;
+        for (File file : stale) {
+            if (!file.delete()) {
+                LOG.warn("Could not delete spill file {}", file.getAbsolutePath());
+            }
+        }
+    }
+
+    private static void closeQuietly(DataOutputStream out) {
+        try {
+            out.close();
+        }
+        catch (IOException e) {
+            LOG.warn("Could not close spill file: ", e);
+        }
+    }
+
+    private static final class Entry<T> {
+        private final T task;
+        private final long deadline;
+        private long rounds;
+        private Entry<T> next;
+
+        private Entry(T task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+    }
+}
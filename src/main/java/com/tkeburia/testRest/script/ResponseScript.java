@@ -0,0 +1,32 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.script;
+
+import groovy.lang.Script;
+
+/**
+ * Base class of all compiled response scripts. Exposing the message payload as a typed property rather than an
+ * untyped binding variable is what allows scripts referencing <code>inputMessage</code> to be statically compiled.
+ */
+public abstract class ResponseScript extends Script {
+
+    public static final String INPUT_MESSAGE = "inputMessage";
+
+    public String getInputMessage() {
+        return (String) getBinding().getVariable(INPUT_MESSAGE);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.script;
+
+import com.tkeburia.testRest.exception.ScriptCompilationException;
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyCodeSource;
+import groovy.lang.Script;
+import groovy.transform.CompileStatic;
+import groovy.transform.ThreadInterrupt;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+import java.io.File;
+import java.io.IOException;
+
+import static com.tkeburia.testRest.script.ResponseScript.INPUT_MESSAGE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compiles response scripts once so that running them for a message only requires instantiating the compiled class.
+ * All scripts extend {@link ResponseScript} and are compiled with {@link ThreadInterrupt}; scripts compiled in static
+ * mode additionally get {@link CompileStatic} applied, trading groovy's dynamic dispatch for plain method calls.
+ */
+public class ScriptCompiler {
+
+    private final GroovyClassLoader dynamicClassLoader;
+    private final GroovyClassLoader staticClassLoader;
+
+    public ScriptCompiler() {
+        this.dynamicClassLoader = new GroovyClassLoader(getClass().getClassLoader(), compilerConfiguration(false));
+        this.staticClassLoader = new GroovyClassLoader(getClass().getClassLoader(), compilerConfiguration(true));
+    }
+
+    /**
+     * @param scriptFile groovy script to compile
+     * @param compileStatic whether static type checking and compilation should be applied
+     * @return compiled script class
+     * @throws ScriptCompilationException if the script can not be read or compiled
+     */
+    @SuppressWarnings("unchecked")
+    public Class<? extends Script> compile(File scriptFile, boolean compileStatic) {
+        final String mode = compileStatic ? "statically" : "dynamically";
+        try {
+            // not cached by file name, so that a script changed on disk is actually recompiled
+            return (Class<? extends Script>) (compileStatic ? staticClassLoader : dynamicClassLoader)
+                    .parseClass(new GroovyCodeSource(scriptFile, UTF_8.name()), false);
+        }
+        catch (CompilationFailedException e) {
+            throw new ScriptCompilationException(String.format("Script %s could not be %s compiled: %s", scriptFile.getAbsolutePath(), mode, e.getMessage()), e);
+        }
+        catch (IOException e) {
+            throw new ScriptCompilationException(String.format("Script %s could not be read: %s", scriptFile.getAbsolutePath(), e.getMessage()), e);
+        }
+    }
+
+    public static Object run(Class<? extends Script> scriptClass, String inputMessage) {
+        final Binding binding = new Binding();
+        binding.setVariable(INPUT_MESSAGE, inputMessage);
+        return InvokerHelper.createScript(scriptClass, binding).run();
+    }
+
+    private static CompilerConfiguration compilerConfiguration(boolean compileStatic) {
+        final CompilerConfiguration configuration = new CompilerConfiguration();
+        configuration.setScriptBaseClass(ResponseScript.class.getName());
+        configuration.addCompilationCustomizers(new ASTTransformationCustomizer(ThreadInterrupt.class));
+        if (compileStatic) {
+            configuration.addCompilationCustomizers(new ASTTransformationCustomizer(CompileStatic.class));
+        }
+        return configuration;
+    }
+}
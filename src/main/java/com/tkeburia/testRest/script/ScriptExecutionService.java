@@ -0,0 +1,361 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.script;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.tkeburia.testRest.exception.ScriptCompilationException;
+import com.tkeburia.testRest.exception.ScriptExecutionException;
+import groovy.lang.Script;
+import groovy.transform.ThreadInterrupt;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Collections.emptyList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Runs queue response scripts on a dedicated bounded executor so that a slow or looping script can not block the
+ * thread that delivered the message. Every execution is limited by the timeout configured for its queue, and the
+ * number of concurrent executions of the script mapped to a queue is capped. Scripts are compiled with
+ * {@link ThreadInterrupt} so that cancelling a timed out execution actually stops it.
+ * <p>
+ * All scripts in <code>queue.response.script.names</code> are compiled when the service starts, so a script that
+ * fails to compile (e.g. in static compilation mode) prevents the application from starting. A script edited on disk
+ * afterwards is recompiled the next time it runs.
+ */
+@Service
+@ConditionalOnProperty(name="activemq.connections.enabled", havingValue="true")
+public class ScriptExecutionService implements MeterBinder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScriptExecutionService.class);
+
+    private final String scriptDir;
+    private final ScriptProperties scriptProperties;
+    private final Map<String, String> queueResponseScriptMappings;
+    private final ThreadPoolExecutor executor;
+    private final ScriptCompiler scriptCompiler = new ScriptCompiler();
+    private final Map<String, CompiledScript> compiledScripts = new ConcurrentHashMap<>();
+    private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+    private final ScriptResultCache resultCache;
+
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+
+    @Autowired
+    public ScriptExecutionService(
+            @Value("${response.script.directory}") String scriptDir,
+            ScriptProperties scriptProperties,
+            Map<String, String> queueResponseScriptMappings
+    ) {
+        this.scriptDir = scriptDir;
+        this.scriptProperties = scriptProperties;
+        this.queueResponseScriptMappings = queueResponseScriptMappings;
+        this.executor = new ThreadPoolExecutor(
+                scriptProperties.getExecutorThreads(),
+                scriptProperties.getExecutorThreads(),
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(scriptProperties.getExecutorQueueCapacity()),
+                new ThreadFactoryBuilder().setNameFormat("response-script-%d").setDaemon(true).build());
+        this.resultCache = new ScriptResultCache(scriptProperties);
+    }
+
+    @PostConstruct
+    public void compileMappedScripts() {
+        queueResponseScriptMappings.forEach(this::compiledScript);
+    }
+
+    /**
+     * Runs the script configured for the given queue against the message payload and waits for its result
+     * @param queueName name of the queue the message was read from, used to look up timeout and concurrency settings
+     * @param responseScript file name of the script inside the configured script directory
+     * @param inputMessage message payload made available to the script as <code>inputMessage</code>
+     * @return the value returned by the script, which may be null
+     * @throws ScriptExecutionException if the script failed, timed out or could not be scheduled
+     */
+    public Object execute(String queueName, String responseScript, String inputMessage) {
+        return submit(queueName, responseScript, inputMessage).get();
+    }
+
+    /**
+     * Starts the script configured for the given queue on the script executor without waiting for its result, so that the
+     * scripts of several messages can run in parallel. Blocks only while the concurrency limit of the queue is reached
+     * @return the running execution, {@link Execution#get()} waits for its result within the timeout of the queue
+     * @throws ScriptExecutionException if the script could not be compiled or scheduled
+     */
+    public Execution submit(String queueName, String responseScript, String inputMessage) {
+        return submit(queueName, responseScript, inputMessage, null);
+    }
+
+    /**
+     * Like {@link #submit(String, String, String)}, but first runs the given check of the input on the script executor, so
+     * that the checks of several messages run in parallel as well. The check runs for cached results too, and an exception
+     * it throws fails the execution with that exception instead of running the script
+     * @param inputCheck check of the input, e.g. schema validation, or null if there is none
+     */
+    public Execution submit(String queueName, String responseScript, String inputMessage, Runnable inputCheck) {
+        final File scriptFile = new File(scriptDir, responseScript);
+        final CompiledScript script;
+        try {
+            script = compiledScript(queueName, responseScript);
+        }
+        catch (ScriptCompilationException e) {
+            failureCount.increment();
+            LOG.error(e.getMessage(), e);
+            throw new ScriptExecutionException(e.getMessage(), e);
+        }
+        final Object cached = resultCache.getIfPresent(queueName, responseScript, script.lastModified, script.length, inputMessage);
+        if (cached != null && inputCheck == null) {
+            return new Execution(queueName, responseScript, script, inputMessage, 0, 0, completedFuture(cached), new AtomicBoolean(true), null);
+        }
+        if (cached != null) {
+            return new Execution(queueName, responseScript, script, inputMessage, scriptProperties.timeoutFor(queueName), System.nanoTime(),
+                    submitToExecutor(scriptFile, () -> {
+                        checkInput(inputCheck);
+                        return cached;
+                    }, null), new AtomicBoolean(true), null);
+        }
+        final long timeout = scriptProperties.timeoutFor(queueName);
+        final Semaphore scriptPermits = permits.computeIfAbsent(queueName, q -> new Semaphore(scriptProperties.concurrencyFor(q)));
+
+        final long start = System.nanoTime();
+        try {
+            if (!scriptPermits.tryAcquire(timeout, MILLISECONDS)) {
+                rejectedCount.increment();
+                LOG.warn("Concurrency limit reached for script {}, message will not be processed", scriptFile.getAbsolutePath());
+                throw new ScriptExecutionException(String.format("Concurrency limit reached for script %s", scriptFile.getAbsolutePath()));
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ScriptExecutionException(String.format("Interrupted while waiting to run script %s", scriptFile.getAbsolutePath()), e);
+        }
+
+        // claimed by whichever comes first, the executor starting the script or the caller giving up on it, so that
+        // the permit of a script cancelled before it started is released by the caller and released exactly once
+        final AtomicBoolean claimed = new AtomicBoolean();
+        final Future<Object> future = submitToExecutor(scriptFile, () -> {
+            if (!claimed.compareAndSet(false, true)) return null;
+            try {
+                checkInput(inputCheck);
+                return ScriptCompiler.run(script.scriptClass, inputMessage);
+            }
+            finally {
+                scriptPermits.release();
+            }
+        }, scriptPermits);
+        return new Execution(queueName, responseScript, script, inputMessage, timeout, start, future, claimed, scriptPermits);
+    }
+
+    private Future<Object> submitToExecutor(File scriptFile, Callable<Object> task, Semaphore scriptPermits) {
+        try {
+            return executor.submit(task);
+        }
+        catch (RejectedExecutionException e) {
+            if (scriptPermits != null) scriptPermits.release();
+            rejectedCount.increment();
+            LOG.warn("Script executor queue is full, script {} will not be run", scriptFile.getAbsolutePath());
+            throw new ScriptExecutionException(String.format("Script executor queue is full, script %s was not run", scriptFile.getAbsolutePath()), e);
+        }
+    }
+
+    private static void checkInput(Runnable inputCheck) {
+        if (inputCheck == null) return;
+        try {
+            inputCheck.run();
+        }
+        catch (RuntimeException e) {
+            throw new InputCheckFailure(e);
+        }
+    }
+
+    /**
+     * Drops the cached results of the queue and compiles the given script, if any, so that a script that does not
+     * compile is refused before the queue is mapped to it. Used when the script of a queue is changed at runtime
+     * @throws ScriptCompilationException if the script does not compile
+     */
+    public void replaceScript(String queueName, String responseScript) {
+        resultCache.invalidate(queueName);
+        if (responseScript != null) {
+            compiledScript(queueName, responseScript);
+        }
+    }
+
+    /**
+     * Compiled scripts are shared by every queue mapped to the same file in the same mode, and recompiled when the file
+     * on disk changes
+     */
+    private CompiledScript compiledScript(String queueName, String responseScript) {
+        final File scriptFile = new File(scriptDir, responseScript);
+        final boolean compileStatic = scriptProperties.compileStaticFor(queueName);
+        final long lastModified = scriptFile.lastModified();
+        final long length = scriptFile.length();
+        return compiledScripts.compute(scriptFile.getAbsolutePath() + (compileStatic ? ":static" : ":dynamic"), (key, cached) ->
+                cached != null && cached.lastModified == lastModified && cached.length == length
+                        ? cached
+                        : new CompiledScript(lastModified, length, scriptCompiler.compile(scriptFile, compileStatic))
+        );
+    }
+
+    public ScriptResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * Publishes the usage of the script pool, the number of failed executions and the size of the result cache of every cached queue
+     */
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+        new ExecutorServiceMetrics(executor, "response-script", emptyList()).bindTo(meterRegistry);
+        FunctionCounter.builder("script.executions.timedout", this, ScriptExecutionService::getTimeoutCount).register(meterRegistry);
+        FunctionCounter.builder("script.executions.failed", this, ScriptExecutionService::getFailureCount).register(meterRegistry);
+        FunctionCounter.builder("script.executions.rejected", this, ScriptExecutionService::getRejectedCount).register(meterRegistry);
+        Gauge.builder("script.compiled", compiledScripts, Map::size).register(meterRegistry);
+        resultCache.bindTo(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * A script started by {@link #submit(String, String, String)}
+     */
+    public class Execution {
+        private final String queueName;
+        private final String responseScript;
+        private final CompiledScript script;
+        private final String inputMessage;
+        private final long timeout;
+        private final long start;
+        private final Future<Object> future;
+        private final AtomicBoolean claimed;
+        private final Semaphore scriptPermits;
+
+        private Execution(String queueName, String responseScript, CompiledScript script, String inputMessage, long timeout,
+                          long start, Future<Object> future, AtomicBoolean claimed, Semaphore scriptPermits) {
+            this.queueName = queueName;
+            this.responseScript = responseScript;
+            this.script = script;
+            this.inputMessage = inputMessage;
+            this.timeout = timeout;
+            this.start = start;
+            this.future = future;
+            this.claimed = claimed;
+            this.scriptPermits = scriptPermits;
+        }
+
+        /**
+         * Waits for the script for what is left of the queue's timeout, counted from when it was submitted, and cancels it
+         * if it does not complete in time
+         * @return the value returned by the script, which may be null
+         * @throws ScriptExecutionException if the script failed or timed out
+         */
+        public Object get() {
+            final File scriptFile = new File(scriptDir, responseScript);
+            final long remaining = timeout - MILLISECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            try {
+                final Object result = future.get(Math.max(remaining, 0), MILLISECONDS);
+                resultCache.put(queueName, responseScript, script.lastModified, script.length, inputMessage, result);
+                return result;
+            }
+            catch (TimeoutException e) {
+                cancel();
+                timeoutCount.increment();
+                LOG.error("Script {} did not complete within {} ms and was cancelled", scriptFile.getAbsolutePath(), timeout);
+                throw new ScriptExecutionException(String.format("Script %s did not complete within %d ms", scriptFile.getAbsolutePath(), timeout), e);
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof InputCheckFailure) {
+                    throw (RuntimeException) e.getCause().getCause();
+                }
+                failureCount.increment();
+                LOG.error("Error executing script {}: ", scriptFile.getAbsolutePath(), e.getCause());
+                throw new ScriptExecutionException(String.format("Error executing script %s", scriptFile.getAbsolutePath()), e.getCause());
+            }
+            catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new ScriptExecutionException(String.format("Interrupted while waiting for script %s", scriptFile.getAbsolutePath()), e);
+            }
+        }
+
+        /**
+         * Cancels the script, interrupting it if it is already running
+         */
+        public void cancel() {
+            future.cancel(true);
+            if (claimed.compareAndSet(false, true)) {
+                // never started, drop it from the executor queue as well
+                executor.remove((Runnable) future);
+                scriptPermits.release();
+            }
+        }
+    }
+
+    /**
+     * Tells a failed input check apart from a failure of the script itself
+     */
+    private static final class InputCheckFailure extends RuntimeException {
+        private InputCheckFailure(RuntimeException cause) {
+            super(cause);
+        }
+    }
+
+    private static final class CompiledScript {
+        private final long lastModified;
+        private final long length;
+        private final Class<? extends Script> scriptClass;
+
+        private CompiledScript(long lastModified, long length, Class<? extends Script> scriptClass) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.scriptClass = scriptClass;
+        }
+    }
+}
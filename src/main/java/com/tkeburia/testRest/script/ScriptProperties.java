@@ -0,0 +1,53 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.script;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.tkeburia.testRest.constants.Constants.RESPONSE_SCRIPT;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = RESPONSE_SCRIPT)
+public class ScriptProperties {
+    private long timeoutMillis = 5000;
+    private int maxConcurrency = 4;
+    private int executorThreads = 8;
+    private int executorQueueCapacity = 1000;
+    private Map<String, Long> timeouts = new HashMap<>();
+    private Map<String, Integer> concurrency = new HashMap<>();
+    private Map<String, Long> cacheSizes = new HashMap<>();
+    private boolean compileStatic = false;
+    private Map<String, Boolean> compileStaticQueues = new HashMap<>();
+
+    public long timeoutFor(String queueName) {
+        return timeouts.getOrDefault(queueName, timeoutMillis);
+    }
+
+    public int concurrencyFor(String queueName) {
+        return concurrency.getOrDefault(queueName, maxConcurrency);
+    }
+
+    public boolean compileStaticFor(String queueName) {
+        return compileStaticQueues.getOrDefault(queueName, compileStatic);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.script;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Opt-in, per queue cache of response script results keyed by a 128 bit hash of the script file name, its last modified
+ * time and length, and the input message, so results of a script the queue is no longer mapped to, or of a script that has
+ * since been edited, are never served. Only queues
+ * with a positive size in {@link ScriptProperties#getCacheSizes()} are cached, and only non-null results are stored,
+ * so failed or timed out executions are retried on the next message.
+ */
+public class ScriptResultCache implements MeterBinder {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final ScriptProperties scriptProperties;
+    private final Map<String, Cache<HashCode, Object>> caches = new ConcurrentHashMap<>();
+    private volatile MeterRegistry meterRegistry;
+
+    public ScriptResultCache(ScriptProperties scriptProperties) {
+        this.scriptProperties = scriptProperties;
+    }
+
+    /**
+     * @return the cached result of the script for the message, or null if there is none or the queue is not cached
+     */
+    public Object getIfPresent(String queueName, String responseScript, long lastModified, long length, String inputMessage) {
+        final Cache<HashCode, Object> cache = cacheFor(queueName, inputMessage);
+        return cache == null ? null : cache.getIfPresent(keyOf(responseScript, lastModified, length, inputMessage));
+    }
+
+    /**
+     * Caches a non-null result of the script for the message, if the queue is cached
+     */
+    public void put(String queueName, String responseScript, long lastModified, long length, String inputMessage, Object result) {
+        final Cache<HashCode, Object> cache = cacheFor(queueName, inputMessage);
+        if (cache != null && result != null) cache.put(keyOf(responseScript, lastModified, length, inputMessage), result);
+    }
+
+    /**
+     * @return hit/miss statistics per cached queue
+     */
+    public Map<String, CacheStats> getStats() {
+        final Map<String, CacheStats> result = new ConcurrentHashMap<>();
+        caches.forEach((queue, cache) -> result.put(queue, cache.stats()));
+        return result;
+    }
+
+    public long size(String queueName) {
+        final Cache<HashCode, Object> cache = caches.get(queueName);
+        return cache == null ? 0 : cache.size();
+    }
+
+    public void invalidate(String queueName) {
+        caches.remove(queueName);
+    }
+
+    /**
+     * Publishes the size of the cache of every configured queue, and of queues cached later, e.g. consumers registered at
+     * runtime, once their cache is created
+     */
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        scriptProperties.getCacheSizes().forEach((queueName, size) -> {
+            if (size > 0) registerSizeGauge(queueName);
+        });
+        caches.keySet().forEach(this::registerSizeGauge);
+    }
+
+    private Cache<HashCode, Object> cacheFor(String queueName, String inputMessage) {
+        final Long size = scriptProperties.getCacheSizes().get(queueName);
+        if (size == null || size <= 0 || inputMessage == null) return null;
+
+        final Cache<HashCode, Object> cache = caches.get(queueName);
+        if (cache != null) return cache;
+        final Cache<HashCode, Object> created = caches.computeIfAbsent(queueName, q -> CacheBuilder.newBuilder()
+                                                                                                   .maximumSize(size)
+                                                                                                   .recordStats()
+                                                                                                   .build());
+        registerSizeGauge(queueName);
+        return created;
+    }
+
+    /**
+     * Registering the gauge of a queue again returns the one already registered
+     */
+    private void registerSizeGauge(String queueName) {
+        final MeterRegistry registry = meterRegistry;
+        if (registry == null) return;
+        Gauge.builder("script.cache.size", this, cache -> cache.size(queueName)).tag("queue", queueName).register(registry);
+    }
+
+    private static HashCode keyOf(String responseScript, long lastModified, long length, String inputMessage) {
+        return HASH_FUNCTION.newHasher()
+                            .putString(responseScript, UTF_8)
+                            .putByte((byte) 0)
+                            .putLong(lastModified)
+                            .putLong(length)
+                            .putString(inputMessage, UTF_8)
+                            .hash();
+    }
+}
@@ -23,16 +23,25 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
 import static org.apache.commons.io.FileUtils.listFiles;
 import static org.apache.commons.io.FileUtils.readFileToString;
 
 public final class FileUtils {
     private static final Logger LOG = LoggerFactory.getLogger(FileUtils.class);
 
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final ThreadLocal<ByteBuffer> READ_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(READ_BUFFER_SIZE));
+
     private FileUtils() {
     }
 
@@ -59,4 +68,38 @@ public final class FileUtils {
         if (fileName == null) return "";
         return readFileToString(new File(dirPath, fileName), UTF_8);
     }
+
+    /**
+     * Reads a file of the directory into an array of the file's size, through a direct buffer reused by the calling thread.
+     * Reading straight into a heap buffer would make the JDK cache a temporary direct buffer as large as the largest file read
+     * on every request thread.
+     * @throws IllegalArgumentException if the file name points outside of the directory
+     */
+    public static byte[] readFileToBytes(String dirPath, String fileName) throws IOException {
+        final Path dir = Paths.get(dirPath).toAbsolutePath().normalize();
+        final Path file = dir.resolve(fileName).normalize();
+        if (!file.startsWith(dir) || file.equals(dir)) {
+            throw new IllegalArgumentException(String.format("'%s' is not a file in %s", fileName, dirPath));
+        }
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException(String.format("File %s is too large to read into memory", file));
+            }
+            final byte[] content = new byte[(int) size];
+            final ByteBuffer buffer = READ_BUFFER.get();
+            int position = 0;
+            while (position < content.length) {
+                buffer.clear();
+                buffer.limit(Math.min(buffer.capacity(), content.length - position));
+                final int read = channel.read(buffer);
+                if (read < 0) break;
+                buffer.flip();
+                buffer.get(content, position, read);
+                position += read;
+            }
+            // the file may have been truncated while reading
+            return position == content.length ? content : Arrays.copyOf(content, position);
+        }
+    }
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.util;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Headers left out of logged requests, looked up by name regardless of case and without allocating
+ */
+public final class HeaderFilter {
+
+    private final Set<String> suppressedHeaders = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    public HeaderFilter(Collection<String> suppressedHeaders) {
+        for (String header : suppressedHeaders) {
+            final String name = header.trim();
+            if (!name.isEmpty()) this.suppressedHeaders.add(name);
+        }
+    }
+
+    public boolean isSuppressed(String headerName) {
+        return suppressedHeaders.contains(headerName);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The headers of a request as a read only map, backed by arrays that are reused by the next capture on the same thread.
+ * Basic authorization credentials are only decoded when the header is read, e.g. when the map is serialized.
+ */
+public final class HeaderSnapshot extends AbstractMap<String, String> {
+
+    private static final String AUTHORIZATION_HEADER_NAME = "authorization";
+    private static final String BASIC_PREFIX = "Basic ";
+
+    private String[] names = new String[16];
+    private String[] values = new String[16];
+    private int size;
+    private final Set<Entry<String, String>> entrySet = new EntrySet();
+
+    HeaderSnapshot() {
+    }
+
+    /**
+     * Drops the captured headers, without holding on to them until the next capture
+     */
+    void reset() {
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+    }
+
+    void add(String name, String value) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        names[size] = name;
+        values[size] = value;
+        size++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String get(Object key) {
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(key)) return valueAt(i);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(key)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return entrySet;
+    }
+
+    private String valueAt(int index) {
+        final String value = values[index];
+        if (value == null || !AUTHORIZATION_HEADER_NAME.equalsIgnoreCase(names[index]) || !value.startsWith(BASIC_PREFIX)) {
+            return value;
+        }
+        try {
+            return value + " (" + new String(Base64.getDecoder().decode(value.substring(BASIC_PREFIX.length()).trim()), UTF_8) + ")";
+        }
+        catch (IllegalArgumentException e) {
+            return value;
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<String, String>> {
+        @Override
+        public Iterator<Entry<String, String>> iterator() {
+            return new Iterator<Entry<String, String>>() {
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    return next < size;
+                }
+
+                @Override
+                public Entry<String, String> next() {
+                    if (next >= size) throw new NoSuchElementException();
+                    final int index = next++;
+                    return new SimpleImmutableEntry<>(names[index], valueAt(index));
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
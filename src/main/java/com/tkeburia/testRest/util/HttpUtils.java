@@ -26,25 +26,38 @@ import java.util.*;
 import java.util.stream.Collectors;
 
 import static java.util.Arrays.stream;
-import static java.util.Collections.list;
-import static java.util.stream.Collectors.toMap;
 
 public final class HttpUtils {
-    private static final String AUTHORIZATION_HEADER_NAME = "authorization";
+    private static final ThreadLocal<HeaderSnapshot> HEADER_SNAPSHOT = ThreadLocal.withInitial(HeaderSnapshot::new);
 
     private HttpUtils() {
 
     }
 
-    public static Map<String, String> getHeaderMap(HttpServletRequest request, List<String> suppressedHeaders) {
+    /**
+     * Captures the headers of the request into the snapshot of the calling thread. The snapshot is overwritten by the next
+     * capture on the same thread, so it has to be used, e.g. serialized, right away and then released.
+     * @return null if there is no request
+     */
+    public static HeaderSnapshot captureHeaders(HttpServletRequest request, HeaderFilter headerFilter) {
         if (request == null) return null;
+        final HeaderSnapshot snapshot = HEADER_SNAPSHOT.get();
+        snapshot.reset();
+        final Enumeration<String> headerNames = request.getHeaderNames();
+        if (headerNames == null) return snapshot;
+        while (headerNames.hasMoreElements()) {
+            final String name = headerNames.nextElement();
+            if (!headerFilter.isSuppressed(name)) snapshot.add(name, request.getHeader(name));
+        }
+        return snapshot;
+    }
 
-        final Map<String, String> headerMap = list(request.getHeaderNames())
-                .stream()
-                .filter(h -> !suppressedHeaders.contains(h))
-                .collect(toMap(k -> k, request::getHeader));
-
-        return decodeBasicAuth(headerMap);
+    /**
+     * Empties the snapshot of the calling thread, so that it does not hold on to the headers of the last request until the
+     * next capture
+     */
+    public static void releaseHeaders() {
+        HEADER_SNAPSHOT.get().reset();
     }
 
     public static HttpRequestAndOtherArgs separateHttpRequestArgsFromOthers(JoinPoint point) {
@@ -62,15 +75,4 @@ public final class HttpUtils {
         return result;
 
     }
-
-    private static Map<String, String> decodeBasicAuth(Map<String, String> headerMap) {
-        final Map<String, String> result = headerMap;
-        if (!result.containsKey(AUTHORIZATION_HEADER_NAME)
-                || !result.get(AUTHORIZATION_HEADER_NAME).startsWith("Basic ")) { return result; }
-        final String authHeader = result.get(AUTHORIZATION_HEADER_NAME);
-        final String s = authHeader.split(" ")[1];
-        final String decoded = new String(Base64.getDecoder().decode(s));
-        result.put(AUTHORIZATION_HEADER_NAME, String.format("%s (%s)", authHeader, decoded));
-        return result;
-    }
 }
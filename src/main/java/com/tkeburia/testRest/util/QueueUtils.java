@@ -16,13 +16,23 @@
 
 package com.tkeburia.testRest.util;
 
+import com.tkeburia.testRest.exception.InvalidPropertyException;
 import com.tkeburia.testRest.exception.MissingPropertyException;
 import com.tkeburia.testRest.queues.BrokerProperties;
+import com.tkeburia.testRest.queues.BrokerTuning;
+import org.apache.activemq.ActiveMQConnection;
 import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.ActiveMQPrefetchPolicy;
+import org.apache.activemq.RedeliveryPolicy;
 
-import javax.jms.ConnectionFactory;
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -38,7 +48,7 @@ public final class QueueUtils {
 
         checkForNulls(properties, propertyPrefix);
 
-        final Set<String> queueNameKeys = properties.getQueueNames().keySet();
+        final Set<String> queueNameKeys = properties.destinationIds();
         final Set<String> uriKeys = properties.getUris().keySet();
         final Set<String> userNameKeys = properties.getUserNames().keySet();
         final Set<String> passwordKeys = properties.getPasswords().keySet();
@@ -47,6 +57,40 @@ public final class QueueUtils {
                 .equals(passwordKeys))) {
             throw new MissingPropertyException(buildMissingPropertyExceptionMessage(propertyPrefix, queueNameKeys, uriKeys, userNameKeys, passwordKeys));
         }
+
+        checkTuning(properties, propertyPrefix);
+    }
+
+    private static void checkTuning(BrokerProperties properties, String prefix) {
+        List<String> invalidProperties = new ArrayList<>();
+        properties.getTuning().forEach((id, tuning) -> {
+            final String tuningPrefix = prefix + TUNING_PROPERTY_NAME + id + ".";
+            if (!properties.destinationIds().contains(id)) {
+                invalidProperties.add(tuningPrefix + "* configured for unknown broker");
+            }
+            checkNotNegative(tuning.getQueuePrefetch(), tuningPrefix + "queuePrefetch", invalidProperties);
+            checkNotNegative(tuning.getTopicPrefetch(), tuningPrefix + "topicPrefetch", invalidProperties);
+            checkNotNegative(tuning.getProducerWindowSize(), tuningPrefix + "producerWindowSize", invalidProperties);
+            checkNotNegative(tuning.getInitialRedeliveryDelay(), tuningPrefix + "initialRedeliveryDelay", invalidProperties);
+            checkNotNegative(tuning.getRedeliveryDelay(), tuningPrefix + "redeliveryDelay", invalidProperties);
+            checkNotNegative(tuning.getMaximumRedeliveryDelay(), tuningPrefix + "maximumRedeliveryDelay", invalidProperties);
+            if (tuning.getMaximumRedeliveries() != null && tuning.getMaximumRedeliveries() < RedeliveryPolicy.NO_MAXIMUM_REDELIVERIES) {
+                invalidProperties.add(tuningPrefix + "maximumRedeliveries must be -1 (unlimited) or greater");
+            }
+            if (tuning.getBackOffMultiplier() != null && tuning.getBackOffMultiplier() < 1) {
+                invalidProperties.add(tuningPrefix + "backOffMultiplier must be at least 1");
+            }
+        });
+
+        if (!invalidProperties.isEmpty()) {
+            throw new InvalidPropertyException(String.format("Broker tuning properties are invalid : %s", invalidProperties));
+        }
+    }
+
+    private static void checkNotNegative(Number value, String propertyName, List<String> invalidProperties) {
+        if (value != null && value.longValue() < 0) {
+            invalidProperties.add(propertyName + " must not be negative");
+        }
     }
 
     private static void checkForNulls(BrokerProperties properties, String prefix) {
@@ -60,7 +104,7 @@ public final class QueueUtils {
         if (properties.getPasswords() == null) {
             nullProperties.add(prefix + PASSWORDS_PROPERTY_NAME);
         }
-        if (properties.getQueueNames() == null) {
+        if (properties.destinationIds().isEmpty()) {
             nullProperties.add(prefix + QUEUE_NAMES_PROPERTY_NAME);
         }
 
@@ -85,11 +129,96 @@ public final class QueueUtils {
                         forQueueNames, forUris, forUserNames, forPasswords);
     }
 
-    public static ConnectionFactory buildConnectionFactory(String uri, String userName, String password) {
+    public static ActiveMQConnectionFactory buildConnectionFactory(String uri, String userName, String password) {
         ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory();
         connectionFactory.setBrokerURL(uri);
         connectionFactory.setUserName(userName);
         connectionFactory.setPassword(password);
         return connectionFactory;
     }
+
+    public static ActiveMQConnectionFactory buildConnectionFactory(BrokerProperties properties, String brokerName) {
+        final ActiveMQConnectionFactory connectionFactory = buildConnectionFactory(properties.getUris().get(brokerName),
+                properties.getUserNames().get(brokerName), properties.getPasswords().get(brokerName));
+        applyTuning(connectionFactory, properties.tuningFor(brokerName));
+        return connectionFactory;
+    }
+
+    public static void applyTuning(ActiveMQConnectionFactory connectionFactory, BrokerTuning tuning) {
+        final ActiveMQPrefetchPolicy prefetchPolicy = connectionFactory.getPrefetchPolicy();
+        if (tuning.getQueuePrefetch() != null) prefetchPolicy.setQueuePrefetch(tuning.getQueuePrefetch());
+        if (tuning.getTopicPrefetch() != null) prefetchPolicy.setTopicPrefetch(tuning.getTopicPrefetch());
+        if (tuning.getOptimizeAcknowledge() != null) connectionFactory.setOptimizeAcknowledge(tuning.getOptimizeAcknowledge());
+        if (tuning.getDispatchAsync() != null) connectionFactory.setDispatchAsync(tuning.getDispatchAsync());
+        if (tuning.getUseCompression() != null) connectionFactory.setUseCompression(tuning.getUseCompression());
+        if (tuning.getProducerWindowSize() != null) connectionFactory.setProducerWindowSize(tuning.getProducerWindowSize());
+
+        final RedeliveryPolicy redeliveryPolicy = connectionFactory.getRedeliveryPolicy();
+        if (tuning.getMaximumRedeliveries() != null) redeliveryPolicy.setMaximumRedeliveries(tuning.getMaximumRedeliveries());
+        if (tuning.getInitialRedeliveryDelay() != null) redeliveryPolicy.setInitialRedeliveryDelay(tuning.getInitialRedeliveryDelay());
+        if (tuning.getRedeliveryDelay() != null) redeliveryPolicy.setRedeliveryDelay(tuning.getRedeliveryDelay());
+        if (tuning.getUseExponentialBackOff() != null) redeliveryPolicy.setUseExponentialBackOff(tuning.getUseExponentialBackOff());
+        if (tuning.getBackOffMultiplier() != null) redeliveryPolicy.setBackOffMultiplier(tuning.getBackOffMultiplier());
+        if (tuning.getMaximumRedeliveryDelay() != null) redeliveryPolicy.setMaximumRedeliveryDelay(tuning.getMaximumRedeliveryDelay());
+    }
+
+    /**
+     * @return the settings a connection factory will actually use, including ActiveMQ defaults for anything not tuned
+     */
+    public static Map<String, Object> describeConnectionFactory(ActiveMQConnectionFactory connectionFactory) {
+        final Map<String, Object> result = new LinkedHashMap<>();
+        result.put("brokerUrl", connectionFactory.getBrokerURL());
+        describeSettings(result, connectionFactory.getPrefetchPolicy(), connectionFactory.isOptimizeAcknowledge(),
+                connectionFactory.isDispatchAsync(), connectionFactory.isUseCompression(),
+                connectionFactory.getProducerWindowSize(), connectionFactory.getRedeliveryPolicy());
+        return result;
+    }
+
+    /**
+     * Describes the settings an open connection actually uses, which are copied from its factory when it is created
+     */
+    public static Map<String, Object> describeConnection(ActiveMQConnection connection) throws JMSException {
+        final Map<String, Object> result = new LinkedHashMap<>();
+        result.put("remoteAddress", connection.getTransport().getRemoteAddress());
+        describeSettings(result, connection.getPrefetchPolicy(), connection.isOptimizeAcknowledge(),
+                connection.isDispatchAsync(), connection.isUseCompression(),
+                connection.getProducerWindowSize(), connection.getRedeliveryPolicy());
+        return result;
+    }
+
+    private static void describeSettings(Map<String, Object> result, ActiveMQPrefetchPolicy prefetchPolicy, boolean optimizeAcknowledge,
+                                         boolean dispatchAsync, boolean useCompression, int producerWindowSize,
+                                         RedeliveryPolicy redeliveryPolicy) {
+        result.put("queuePrefetch", prefetchPolicy.getQueuePrefetch());
+        result.put("topicPrefetch", prefetchPolicy.getTopicPrefetch());
+        result.put("optimizeAcknowledge", optimizeAcknowledge);
+        result.put("dispatchAsync", dispatchAsync);
+        result.put("useCompression", useCompression);
+        result.put("producerWindowSize", producerWindowSize);
+
+        result.put("maximumRedeliveries", redeliveryPolicy.getMaximumRedeliveries());
+        result.put("initialRedeliveryDelay", redeliveryPolicy.getInitialRedeliveryDelay());
+        result.put("redeliveryDelay", redeliveryPolicy.getRedeliveryDelay());
+        result.put("useExponentialBackOff", redeliveryPolicy.isUseExponentialBackOff());
+        result.put("backOffMultiplier", redeliveryPolicy.getBackOffMultiplier());
+        result.put("maximumRedeliveryDelay", redeliveryPolicy.getMaximumRedeliveryDelay());
+    }
+
+    /**
+     * @return the correlation id a reply to the message should carry, the message's own correlation id if it has one or its message id otherwise
+     */
+    public static String correlationIdFor(Message message) throws JMSException {
+        final String correlationId = message.getJMSCorrelationID();
+        return correlationId != null ? correlationId : message.getJMSMessageID();
+    }
+
+    /**
+     * @return a bytes message with the content as its body, written like the message converters do so that it is compressed
+     * on connections configured for compression
+     */
+    public static BytesMessage createBytesMessage(Session session, byte[] content) throws JMSException {
+        final BytesMessage message = session.createBytesMessage();
+        message.writeBytes(content);
+        return message;
+    }
 }
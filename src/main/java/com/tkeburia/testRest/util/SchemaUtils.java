@@ -16,24 +16,21 @@
 
 package com.tkeburia.testRest.util;
 
-import com.google.common.collect.ImmutableMap;
 import com.tkeburia.testRest.exception.DetailedValidationException;
-import groovy.lang.Binding;
-import groovy.lang.GroovyShell;
-import groovy.lang.Script;
+import com.tkeburia.testRest.queues.MessageBody;
 import org.apache.commons.io.FileUtils;
 import org.everit.json.schema.Schema;
 import org.everit.json.schema.ValidationException;
 import org.everit.json.schema.loader.SchemaLoader;
 import org.json.JSONObject;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.commons.io.FileUtils.readFileToString;
@@ -41,7 +38,7 @@ import static org.apache.commons.io.FileUtils.writeByteArrayToFile;
 
 public final class SchemaUtils {
 
-    private static final Logger LOG = LoggerFactory.getLogger(SchemaUtils.class);
+    private static final Map<String, CachedSchema> SCHEMA_CACHE = new ConcurrentHashMap<>();
 
     private SchemaUtils() {
 
@@ -50,12 +47,20 @@ public final class SchemaUtils {
     public static void validateAgainstSchema(String input, String schemaDir, String schemaFileName) throws IOException {
         if (schemaDir == null || schemaFileName == null) return;
 
-        File schemaFile = new File(schemaDir, schemaFileName);
+        validate(new JSONObject(input), new File(schemaDir, schemaFileName));
+    }
+
+    /**
+     * Validates a decoded message body, parsing bytes content without creating an intermediate <code>String</code>
+     */
+    public static void validateAgainstSchema(MessageBody body, String schemaDir, String schemaFileName) throws IOException {
+        if (schemaDir == null || schemaFileName == null) return;
 
-        JSONObject inputObject = new JSONObject(input);
-        JSONObject jsonSchema = new JSONObject(readFileToString(schemaFile, UTF_8));
+        validate(body.toJson(), new File(schemaDir, schemaFileName));
+    }
 
-        final Schema schema = SchemaLoader.load(jsonSchema);
+    private static void validate(JSONObject inputObject, File schemaFile) throws IOException {
+        final Schema schema = loadSchema(schemaFile);
         try {
             schema.validate(inputObject);
         }
@@ -64,23 +69,42 @@ public final class SchemaUtils {
         }
     }
 
+    /**
+     * Schemas are parsed once and reused until the modification time or size of the file on disk changes, e.g. after an upload through the schema file endpoint
+     */
+    static Schema loadSchema(File schemaFile) throws IOException {
+        final String key = schemaFile.getAbsolutePath();
+        final long lastModified = schemaFile.lastModified();
+        final long length = schemaFile.length();
+        final CachedSchema cached = SCHEMA_CACHE.get(key);
+        if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+            return cached.schema;
+        }
+        final Schema schema = SchemaLoader.load(new JSONObject(readFileToString(schemaFile, UTF_8)));
+        SCHEMA_CACHE.put(key, new CachedSchema(lastModified, length, schema));
+        return schema;
+    }
+
+    /**
+     * @return the number of parsed schemas kept for reuse
+     */
+    public static int cachedSchemaCount() {
+        return SCHEMA_CACHE.size();
+    }
+
     public static void writeBytesToFile(String filePath, byte[] input) throws IOException {
         writeByteArrayToFile(new File(filePath), input);
     }
 
-    public static Object buildQueueResponseForMessage(String inputMessage, String scriptDir, String responseScript) throws IOException {
-
-        GroovyShell groovyShell = new GroovyShell(new Binding(ImmutableMap.of("inputMessage", inputMessage)));
+    private static final class CachedSchema {
+        private final long lastModified;
+        private final long length;
+        private final Schema schema;
 
-        final File scriptFile = new File(scriptDir, responseScript);
-        try {
-            final Script script = groovyShell.parse(scriptFile);
-            return script.run();
-        }
-        catch (Exception e) {
-            LOG.error("Error executing script {}: ", scriptFile.getAbsolutePath(), e);
+        private CachedSchema(long lastModified, long length, Schema schema) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.schema = schema;
         }
-
-        return null;
     }
 }
@@ -19,8 +19,7 @@ package com.tkeburia.testRest.aspect;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableMap;
-import org.apache.activemq.command.ActiveMQMessage;
-import org.apache.activemq.util.ByteSequence;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.Signature;
 import org.junit.Before;
@@ -31,15 +30,17 @@ import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
 import uk.org.lidalia.slf4jtest.TestLogger;
 import uk.org.lidalia.slf4jtest.TestLoggerFactory;
 
-import javax.jms.Destination;
-import javax.jms.JMSException;
-import javax.jms.Message;
 import javax.servlet.http.HttpServletRequest;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.enumeration;
@@ -49,15 +50,15 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.http.HttpHeaders.ACCEPT;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.http.HttpStatus.OK;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 import static uk.org.lidalia.slf4jext.Level.INFO;
+import static uk.org.lidalia.slf4jext.Level.WARN;
 
 @RunWith(MockitoJUnitRunner.class)
 public class LoggingAspectTest {
 
-    private static final String MESSAGE_CONTENT = "message content";
-    private static final String DESTINATION = "queue1";
     private static final String METHOD_SIGNATURE = "method.signature";
     private static final String X_TEST_HEADER = "x-test-header";
     private static final String TEST_HEADER_VALUE = "test-value";
@@ -72,6 +73,10 @@ public class LoggingAspectTest {
 
     private Map<String, String> params;
 
+    private LoggingProperties loggingProperties;
+
+    private SimpleMeterRegistry meterRegistry;
+
     @Mock
     private JoinPoint joinPoint;
 
@@ -81,15 +86,11 @@ public class LoggingAspectTest {
     @Mock
     private HttpServletRequest request;
 
-    @Mock
-    private ActiveMQMessage message;
-
-    @Mock
-    private Destination destination;
-
     @Before
     public void setup() {
-        loggingAspect = new LoggingAspect(new ObjectMapper(), singletonList("Content-type"));
+        loggingProperties = new LoggingProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        loggingAspect = new LoggingAspect(new ObjectMapper(), singletonList("Content-type"), new LogSampler(loggingProperties, meterRegistry));
         params = ImmutableMap.of(PARAM_KEY, PARAM_VALUE);
         TLOG.clearAll();
     }
@@ -119,17 +120,118 @@ public class LoggingAspectTest {
     }
 
     @Test
-    public void shouldLogMethodData() throws JMSException, JsonProcessingException {
+    public void shouldLogOneInEverySampleRateRequestsAndCountTheOthers() throws JsonProcessingException {
         TLOG.setEnabledLevels(INFO);
-        when(message.getJMSDestination()).thenReturn(destination);
-        when(destination.toString()).thenReturn(DESTINATION);
-        when(message.getContent()).thenReturn(new ByteSequence(new byte[] {0, 0, 0, 4, 116, 101, 115, 116}));
-        when(message.toString(ImmutableMap.of("text", "test"))).thenReturn(MESSAGE_CONTENT);
+        loggingProperties.setSampleRate(3);
+        stubControllerCall(params);
 
-        loggingAspect.logMethodData(message);
+        for (int i = 0; i < 6; i++) {
+            loggingAspect.logControllerMethod(joinPoint, new ResponseEntity<>(OK));
+        }
 
         assertEquals(2, TLOG.getAllLoggingEvents().size());
-        assertEquals("Received message on queue " + DESTINATION, TLOG.getAllLoggingEvents().get(0).getMessage());
-        assertEquals("Queue Message content : " + MESSAGE_CONTENT, TLOG.getAllLoggingEvents().get(1).getMessage());
+        assertEquals(4.0, suppressed("sampled"), 0.0);
+    }
+
+    @Test
+    public void shouldRateLimitEntriesPerEndpoint() throws JsonProcessingException {
+        TLOG.setEnabledLevels(INFO);
+        loggingProperties.setMaxPerSecond(1);
+        stubControllerCall(params);
+
+        for (int i = 0; i < 5; i++) {
+            loggingAspect.logControllerMethod(joinPoint, new ResponseEntity<>(OK));
+        }
+
+        assertEquals(1, TLOG.getAllLoggingEvents().size());
+        assertEquals(4.0, suppressed("rate_limited"), 0.0);
+    }
+
+    @Test
+    public void shouldAlwaysLogErrorResponsesAndExceptions() throws JsonProcessingException {
+        TLOG.setEnabledLevels(INFO, WARN);
+        loggingProperties.setSampleRate(100);
+        stubControllerCall(params);
+
+        loggingAspect.logControllerMethod(joinPoint, new ResponseEntity<>(OK));
+        loggingAspect.logControllerMethod(joinPoint, new ResponseEntity<>(BAD_REQUEST));
+        loggingAspect.logControllerMethod(joinPoint, new ResponseEntity<>(BAD_REQUEST));
+        loggingAspect.logControllerError(joinPoint, new IllegalStateException("failed"));
+
+        assertEquals(4, TLOG.getAllLoggingEvents().size());
+        assertTrue(TLOG.getAllLoggingEvents().get(3).getMessage().contains("\"error\":[\"java.lang.IllegalStateException: failed\"]"));
+    }
+
+    @Test
+    public void shouldTruncateResultAndParamsPerEndpoint() throws JsonProcessingException {
+        TLOG.setEnabledLevels(INFO);
+        final LoggingPolicy policy = new LoggingPolicy();
+        policy.setMaxBodyLength(10);
+        loggingProperties.setEndpoints(ImmutableMap.of(METHOD_SIGNATURE, policy));
+        stubControllerCall(ImmutableMap.of("key", "a long parameter value"));
+
+        loggingAspect.logControllerMethod(joinPoint, "a long result value");
+
+        assertEquals("{\"method\":[\"" + METHOD_SIGNATURE + "(..)\"]," +
+                        "\"params\":[\"{\\\"key\\\":\\\"a ...[truncated]\"]," +
+                        "\"result\":[\"a long res...[truncated]\"]," +
+                        "\"headers\":{}}",
+                TLOG.getAllLoggingEvents().get(0).getMessage());
+    }
+
+    @Test
+    public void shouldLogAsyncResultOnceItIsSet() throws Exception {
+        TLOG.setEnabledLevels(INFO);
+        final MockHttpServletRequest asyncRequest = stubAsyncControllerCall();
+        final CompletableFuture<ResponseEntity<?>> result = new CompletableFuture<>();
+
+        loggingAspect.logControllerMethod(joinPoint, result);
+        assertTrue(TLOG.getAllLoggingEvents().isEmpty());
+
+        new LoggingAspect.AsyncResultInterceptor().postProcess(new ServletWebRequest(asyncRequest), new DeferredResult<>(), new ResponseEntity<>(OK));
+
+        assertEquals(1, TLOG.getAllLoggingEvents().size());
+        assertTrue(TLOG.getAllLoggingEvents().get(0).getMessage().contains("\"result\":[\"<200 OK,{}>\"]"));
+        assertTrue(TLOG.getAllLoggingEvents().get(0).getMessage().contains("\"headers\":{\"" + X_TEST_HEADER + "\":\"" + TEST_HEADER_VALUE + "\"}"));
+    }
+
+    @Test
+    public void shouldAlwaysLogFailedAsyncResults() throws Exception {
+        TLOG.setEnabledLevels(INFO, WARN);
+        loggingProperties.setSampleRate(100);
+        final MockHttpServletRequest asyncRequest = stubAsyncControllerCall();
+        loggingAspect.logControllerMethod(joinPoint, new ResponseEntity<>(OK));
+
+        loggingAspect.logControllerMethod(joinPoint, new DeferredResult<>());
+        new LoggingAspect.AsyncResultInterceptor().postProcess(new ServletWebRequest(asyncRequest), new DeferredResult<>(),
+                new CompletionException(new IllegalStateException("failed")));
+        loggingAspect.logControllerMethod(joinPoint, new DeferredResult<>());
+        new LoggingAspect.AsyncResultInterceptor().postProcess(new ServletWebRequest(asyncRequest), new DeferredResult<>(),
+                new ResponseEntity<>(BAD_REQUEST));
+
+        assertEquals(3, TLOG.getAllLoggingEvents().size());
+        assertEquals(WARN, TLOG.getAllLoggingEvents().get(1).getLevel());
+        assertTrue(TLOG.getAllLoggingEvents().get(1).getMessage().contains("\"error\":[\"java.lang.IllegalStateException: failed\"]"));
+        assertTrue(TLOG.getAllLoggingEvents().get(2).getMessage().contains("\"result\":[\"<400 Bad Request,{}>\"]"));
+    }
+
+    private MockHttpServletRequest stubAsyncControllerCall() {
+        final MockHttpServletRequest asyncRequest = new MockHttpServletRequest();
+        asyncRequest.addHeader(X_TEST_HEADER, TEST_HEADER_VALUE);
+        when(joinPoint.getSignature()).thenReturn(signature);
+        when(signature.toShortString()).thenReturn(METHOD_SIGNATURE + "(..)");
+        when(joinPoint.getArgs()).thenReturn(new Object[]{asyncRequest, params});
+        return asyncRequest;
+    }
+
+    private void stubControllerCall(Object param) {
+        when(joinPoint.getSignature()).thenReturn(signature);
+        when(signature.toShortString()).thenReturn(METHOD_SIGNATURE + "(..)");
+        when(joinPoint.getArgs()).thenReturn(new Object[]{request, param});
+        when(request.getHeaderNames()).thenReturn(enumeration(singletonList("Content-type")));
+    }
+
+    private double suppressed(String reason) {
+        return meterRegistry.get("logging.entries.suppressed").tags("endpoint", METHOD_SIGNATURE, "reason", reason).counter().count();
     }
-}
\ No newline at end of file
+}
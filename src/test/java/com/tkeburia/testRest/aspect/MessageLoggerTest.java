@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.aspect;
+
+import com.google.common.collect.ImmutableMap;
+import com.tkeburia.testRest.queues.MessageBody;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import uk.org.lidalia.slf4jtest.LoggingEvent;
+import uk.org.lidalia.slf4jtest.TestLogger;
+import uk.org.lidalia.slf4jtest.TestLoggerFactory;
+
+import javax.jms.JMSException;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+import static uk.org.lidalia.slf4jext.Level.INFO;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MessageLoggerTest {
+
+    private static final String MESSAGE_CONTENT = "message content";
+    private static final String DESTINATION = "queue1";
+
+    private TestLogger TLOG = TestLoggerFactory.getTestLogger(MessageLogger.class);
+
+    private LoggingProperties loggingProperties;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private MessageLogger messageLogger;
+
+    @Mock
+    private ActiveMQMessage message;
+
+    @Mock
+    private ActiveMQTextMessage textMessage;
+
+    @Before
+    public void setup() {
+        loggingProperties = new LoggingProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        messageLogger = new MessageLogger(new LogSampler(loggingProperties, meterRegistry));
+        TLOG.clearAll();
+    }
+
+    @Test
+    public void shouldLogReceivedMessage() throws JMSException {
+        TLOG.setEnabledLevels(INFO);
+        when(textMessage.getDestination()).thenReturn(new ActiveMQQueue(DESTINATION));
+        when(textMessage.getText()).thenReturn("test");
+        when(textMessage.toString(ImmutableMap.of("text", "test"))).thenReturn(MESSAGE_CONTENT);
+
+        messageLogger.received(textMessage, MessageBody.of(textMessage));
+
+        assertEquals(2, TLOG.getAllLoggingEvents().size());
+        assertEquals("Received message on queue queue://" + DESTINATION, formatted(0));
+        assertEquals("Queue Message content : " + MESSAGE_CONTENT, formatted(1));
+    }
+
+    @Test
+    public void shouldLogMessageWithoutContentWhenTypeIsNotSupported() {
+        TLOG.setEnabledLevels(INFO);
+        when(message.getDestination()).thenReturn(new ActiveMQQueue(DESTINATION));
+        when(message.toString()).thenReturn(MESSAGE_CONTENT);
+
+        messageLogger.received(message, null);
+
+        assertEquals("Queue Message content : " + MESSAGE_CONTENT, formatted(1));
+    }
+
+    @Test
+    public void shouldSampleAndTruncateQueueMessagesByDestination() throws JMSException {
+        TLOG.setEnabledLevels(INFO);
+        final LoggingPolicy policy = new LoggingPolicy();
+        policy.setSampleRate(2);
+        policy.setMaxBodyLength(4);
+        loggingProperties.setEndpoints(ImmutableMap.of(DESTINATION, policy));
+        when(textMessage.getDestination()).thenReturn(new ActiveMQQueue(DESTINATION));
+        when(textMessage.getText()).thenReturn("test content");
+        when(textMessage.toString(ImmutableMap.of("text", "test...[truncated]"))).thenReturn(MESSAGE_CONTENT);
+
+        final MessageBody body = MessageBody.of(textMessage);
+        messageLogger.received(textMessage, body);
+        messageLogger.received(textMessage, body);
+
+        assertEquals(2, TLOG.getAllLoggingEvents().size());
+        assertEquals("Queue Message content : " + MESSAGE_CONTENT, formatted(1));
+        assertEquals(1.0, meterRegistry.get("logging.entries.suppressed").tag("endpoint", DESTINATION).counter().count(), 0.0);
+    }
+
+    private String formatted(int index) {
+        final LoggingEvent event = TLOG.getAllLoggingEvents().get(index);
+        return event.getMessage().replace("{}", String.valueOf(event.getArguments().get(0)));
+    }
+}
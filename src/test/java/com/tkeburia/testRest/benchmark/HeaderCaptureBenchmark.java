@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.benchmark;
+
+import com.tkeburia.testRest.util.HeaderFilter;
+import com.tkeburia.testRest.util.HttpUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.Collections.list;
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * Measures capturing the headers of a request for the request log, with the previous copying implementation as a baseline.
+ * Run with the GC profiler to compare the allocation per request (<code>gc.alloc.rate.norm</code>), from the IDE or with
+ * <code>mvn test-compile exec:java -Dexec.mainClass=com.tkeburia.testRest.benchmark.HeaderCaptureBenchmark -Dexec.classpathScope=test</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderCaptureBenchmark {
+
+    private static final List<String> SUPPRESSED_HEADERS = asList("cookie", "x-postman-interceptor-id", "user-agent");
+
+    /** number of headers of the request besides the authorization and suppressed ones */
+    @Param({"5", "20"})
+    private int headers;
+
+    private HttpServletRequest request;
+    private HeaderFilter headerFilter;
+
+    @Setup
+    public void setup() {
+        final MockHttpServletRequest mockRequest = new MockHttpServletRequest();
+        for (int i = 0; i < headers; i++) {
+            mockRequest.addHeader("x-header-" + i, "value-" + i);
+        }
+        SUPPRESSED_HEADERS.forEach(header -> mockRequest.addHeader(header, "suppressed"));
+        mockRequest.addHeader("authorization", "Basic " + Base64.getEncoder().encodeToString("user:password".getBytes(UTF_8)));
+        request = mockRequest;
+        headerFilter = new HeaderFilter(SUPPRESSED_HEADERS);
+    }
+
+    @Benchmark
+    public Map<String, String> copyingBaseline() {
+        final Map<String, String> headerMap = list(request.getHeaderNames())
+                .stream()
+                .filter(h -> !SUPPRESSED_HEADERS.contains(h))
+                .collect(toMap(k -> k, request::getHeader));
+        final String authHeader = headerMap.get("authorization");
+        final String decoded = new String(Base64.getDecoder().decode(authHeader.split(" ")[1]));
+        headerMap.put("authorization", String.format("%s (%s)", authHeader, decoded));
+        return headerMap;
+    }
+
+    @Benchmark
+    public Map<String, String> capture() {
+        return HttpUtils.captureHeaders(request, headerFilter);
+    }
+
+    /**
+     * Capturing, reading every header and releasing them, as when the log line is written
+     */
+    @Benchmark
+    public void captureAndRead(Blackhole blackhole) {
+        try {
+            for (Map.Entry<String, String> header : HttpUtils.captureHeaders(request, headerFilter).entrySet()) {
+                blackhole.consume(header.getValue());
+            }
+        }
+        finally {
+            HttpUtils.releaseHeaders();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HeaderCaptureBenchmark.class.getSimpleName()).addProfiler("gc").build()).run();
+    }
+}
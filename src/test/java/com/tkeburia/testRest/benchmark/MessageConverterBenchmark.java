@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.benchmark;
+
+import com.tkeburia.testRest.queues.producer.PayloadFormat;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures turning a map payload, like the ones sent through the queue endpoint, into a message with each
+ * {@link PayloadFormat}, including marshalling the message body as it would be on send. Run from the IDE or with
+ * <code>mvn test-compile exec:java -Dexec.mainClass=com.tkeburia.testRest.benchmark.MessageConverterBenchmark -Dexec.classpathScope=test</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageConverterBenchmark {
+
+    @Param({"SIMPLE", "JSON", "BYTES", "SMILE", "CBOR"})
+    private PayloadFormat format;
+
+    /** number of entries of the payload, each holding a short string and a list of numbers */
+    @Param({"1", "10", "100", "1000"})
+    private int entries;
+
+    private Connection connection;
+    private Session session;
+    private MessageConverter converter;
+    private Map<String, Object> payload;
+
+    @Setup
+    public void setup() throws JMSException {
+        connection = new ActiveMQConnectionFactory("vm://benchmark?broker.persistent=false&broker.useJmx=false").createConnection();
+        session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        converter = format.createConverter();
+        payload = new HashMap<>();
+        for (int i = 0; i < entries; i++) {
+            final List<Object> values = new ArrayList<>();
+            for (int j = 0; j < 5; j++) {
+                values.add(i * j);
+            }
+            payload.put("key" + i, "value" + i);
+            payload.put("values" + i, values);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws JMSException {
+        connection.close();
+    }
+
+    @Benchmark
+    public ActiveMQMessage toMessage() throws JMSException {
+        final ActiveMQMessage message = (ActiveMQMessage) converter.toMessage(payload, session);
+        message.storeContent();
+        return message;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MessageConverterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
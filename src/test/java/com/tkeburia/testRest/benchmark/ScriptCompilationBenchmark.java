@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.benchmark;
+
+import com.tkeburia.testRest.script.ScriptCompiler;
+import groovy.lang.Script;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares running the bundled test scripts compiled dynamically against the same scripts compiled with
+ * <code>@CompileStatic</code>. Run from the IDE or with
+ * <code>mvn test-compile exec:java -Dexec.mainClass=com.tkeburia.testRest.benchmark.ScriptCompilationBenchmark -Dexec.classpathScope=test</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptCompilationBenchmark {
+
+    @Param({"testScript.groovy"})
+    private String scriptName;
+
+    private Class<? extends Script> dynamicScript;
+    private Class<? extends Script> staticScript;
+
+    @Setup
+    public void setup() {
+        final ScriptCompiler scriptCompiler = new ScriptCompiler();
+        final File scriptFile = new File("src/test/resources", scriptName);
+        dynamicScript = scriptCompiler.compile(scriptFile, false);
+        staticScript = scriptCompiler.compile(scriptFile, true);
+    }
+
+    @Benchmark
+    public Object dynamicCompilation() {
+        return ScriptCompiler.run(dynamicScript, "message");
+    }
+
+    @Benchmark
+    public Object staticCompilation() {
+        return ScriptCompiler.run(staticScript, "message");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ScriptCompilationBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.List;
+
+import static com.tkeburia.testRest.config.RequestMetricsConfig.REQUESTS;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.StreamSupport.stream;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RequestMetricsConfigTest {
+
+    private RequestMetricsConfig requestMetricsConfig = new RequestMetricsConfig();
+    private MeterRegistry meterRegistry;
+
+    @Before
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        meterRegistry.config().meterFilter(requestMetricsConfig.requestTagLimits(2, 3));
+    }
+
+    @Test
+    public void shouldTagRequestsWithParametersAndOutcome() {
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/testRest/sync");
+        request.setParameter("responseFile", "ok.json");
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setStatus(500);
+
+        final List<Tag> tags = stream(requestMetricsConfig.webMvcTagsProvider()
+                                                          .getTags(request, response, null, new IllegalStateException()).spliterator(), false)
+                .collect(toList());
+
+        assertTrue(tags.contains(Tag.of("responseFile", "ok.json")));
+        assertTrue(tags.contains(Tag.of("schemaFile", "none")));
+        assertTrue(tags.contains(Tag.of("giveMe", "none")));
+        assertTrue(tags.contains(Tag.of("status", "500")));
+        assertTrue(tags.contains(Tag.of("exception", "IllegalStateException")));
+    }
+
+    @Test
+    public void shouldStopRecordingNewParameterValuesBeyondLimit() {
+        record("a.json", "none");
+        record("b.json", "none");
+        record("c.json", "none");
+
+        assertEquals(2, series(REQUESTS));
+        assertNull(meterRegistry.find(REQUESTS).tag("responseFile", "c.json").timer());
+    }
+
+    @Test
+    public void shouldStopRecordingNewSeriesBeyondLimit() {
+        record("a.json", "a");
+        record("a.json", "b");
+        record("b.json", "a");
+        record("b.json", "b");
+        record("a.json", "a");
+
+        assertEquals(3, series(REQUESTS));
+        assertEquals(2, meterRegistry.get(REQUESTS).tags("responseFile", "a.json", "giveMe", "a").timer().count());
+    }
+
+    @Test
+    public void shouldLeaveOtherMetersAlone() {
+        for (int i = 0; i < 5; i++) {
+            meterRegistry.counter("other", "responseFile", "file" + i).increment();
+        }
+
+        assertEquals(5, series("other"));
+    }
+
+    private long series(String name) {
+        return meterRegistry.getMeters().stream().filter(meter -> name.equals(meter.getId().getName())).count();
+    }
+
+    private void record(String responseFile, String giveMe) {
+        meterRegistry.timer(REQUESTS, Tags.of("responseFile", responseFile, "giveMe", giveMe)).record(() -> { });
+    }
+}
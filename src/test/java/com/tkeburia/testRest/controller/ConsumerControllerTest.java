@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.controller;
+
+import com.tkeburia.testRest.dto.ConsumerRegistrationRequest;
+import com.tkeburia.testRest.exception.ConsumerConflictException;
+import com.tkeburia.testRest.queues.consumer.ConsumerAdminService;
+import com.tkeburia.testRest.queues.consumer.ConsumerRegistration;
+import com.tkeburia.testRest.queues.consumer.ConsumerService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static java.util.Collections.singletonList;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConsumerControllerTest {
+
+    private MockMvc testServer;
+
+    @Mock
+    private ConsumerService consumerService;
+
+    @Mock
+    private ConsumerAdminService consumerAdminService;
+
+    @Mock
+    private ConsumerRegistration registration;
+
+    @Before
+    public void setup() {
+        testServer = MockMvcBuilders.standaloneSetup(new ConsumerController(consumerService, consumerAdminService)).build();
+    }
+
+    @Test
+    public void shouldListRegisteredConsumers() throws Exception {
+        when(registration.getId()).thenReturn("broker1:queue1");
+        when(registration.getState()).thenReturn(ConsumerRegistration.State.RUNNING);
+        when(consumerService.getRegistrations()).thenReturn(singletonList(registration));
+
+        testServer.perform(get("/test-rest/consumers"))
+                  .andExpect(status().isOk())
+                  .andExpect(jsonPath("$[0].id").value("broker1:queue1"))
+                  .andExpect(jsonPath("$[0].state").value("RUNNING"));
+    }
+
+    @Test
+    public void shouldRegisterConsumer() throws Exception {
+        when(registration.getId()).thenReturn("broker1:queue1");
+        when(consumerAdminService.register(any(ConsumerRegistrationRequest.class))).thenReturn(registration);
+
+        testServer.perform(post("/test-rest/consumers")
+                                   .content("{ \"brokerName\" : \"broker1\", \"destination\" : \"queue1\", \"concurrency\" : 2 }")
+                                   .contentType(APPLICATION_JSON))
+                  .andExpect(status().isCreated())
+                  .andExpect(jsonPath("$.id").value("broker1:queue1"));
+
+        final ConsumerRegistrationRequest expected = new ConsumerRegistrationRequest();
+        expected.setBrokerName("broker1");
+        expected.setDestination("queue1");
+        expected.setConcurrency(2);
+        verify(consumerAdminService).register(expected);
+    }
+
+    @Test
+    public void shouldReturnConflictForAlreadyRegisteredConsumer() throws Exception {
+        when(consumerAdminService.register(any(ConsumerRegistrationRequest.class))).thenThrow(new ConsumerConflictException("registered"));
+
+        testServer.perform(post("/test-rest/consumers")
+                                   .content("{ \"brokerName\" : \"broker1\", \"destination\" : \"queue1\" }")
+                                   .contentType(APPLICATION_JSON))
+                  .andExpect(status().isConflict());
+    }
+
+    @Test
+    public void shouldReturnBadRequestForInvalidRegistration() throws Exception {
+        when(consumerAdminService.register(any(ConsumerRegistrationRequest.class))).thenThrow(new IllegalArgumentException("invalid"));
+
+        testServer.perform(post("/test-rest/consumers")
+                                   .content("{ \"destination\" : \"queue1\" }")
+                                   .contentType(APPLICATION_JSON))
+                  .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void shouldPauseResumeAndStopRegisteredConsumer() throws Exception {
+        when(consumerService.getRegistration("broker1", "queue1")).thenReturn(registration);
+
+        testServer.perform(post("/test-rest/consumers/pause?brokerName=broker1&destination=queue1")).andExpect(status().isOk());
+        testServer.perform(post("/test-rest/consumers/resume?brokerName=broker1&destination=queue1")).andExpect(status().isOk());
+        testServer.perform(delete("/test-rest/consumers?brokerName=broker1&destination=queue1")).andExpect(status().isOk());
+
+        verify(consumerService).pause(registration);
+        verify(consumerService).resume(registration);
+        verify(consumerService).stop(registration);
+    }
+
+    @Test
+    public void shouldReturnNotFoundForUnknownConsumer() throws Exception {
+        testServer.perform(post("/test-rest/consumers/pause?brokerName=broker1&destination=unknown")).andExpect(status().isNotFound());
+        testServer.perform(delete("/test-rest/consumers?brokerName=broker1&destination=unknown")).andExpect(status().isNotFound());
+
+        verify(consumerService, never()).pause(any());
+        verify(consumerService, never()).stop(any());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.controller;
+
+import com.tkeburia.testRest.exception.MissingPropertyException;
+import com.tkeburia.testRest.queues.browse.QueueBrowseService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(MockitoJUnitRunner.class)
+public class QueueBrowseControllerTest {
+
+    private MockMvc testServer;
+
+    @Mock
+    private QueueBrowseService queueBrowseService;
+
+    @Before
+    public void setup() {
+        testServer = MockMvcBuilders.standaloneSetup(new QueueBrowseController(queueBrowseService)).build();
+    }
+
+    @Test
+    public void shouldStreamPageOfMessages() throws Exception {
+        when(queueBrowseService.page("broker1", null, null, "ID:1", 100)).thenReturn(out -> {
+            out.write("{\"messageId\":\"ID:2\"}\n".getBytes(UTF_8));
+            return 1;
+        });
+
+        final MvcResult result = testServer.perform(get("/test-rest/queues/messages?brokerName=broker1&after=ID:1"))
+                                           .andExpect(request().asyncStarted())
+                                           .andReturn();
+        testServer.perform(asyncDispatch(result))
+                  .andExpect(status().isOk())
+                  .andExpect(content().string("{\"messageId\":\"ID:2\"}\n"));
+    }
+
+    @Test
+    public void shouldRejectInvalidPageBeforeStreaming() throws Exception {
+        when(queueBrowseService.page("broker1", "queue1", null, null, 0)).thenThrow(new IllegalArgumentException("invalid"));
+
+        testServer.perform(get("/test-rest/queues/messages?brokerName=broker1&destination=queue1&maxCount=0"))
+                  .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void shouldCountMessages() throws Exception {
+        when(queueBrowseService.count("broker1", null, "index > 1")).thenReturn(3L);
+
+        testServer.perform(get("/test-rest/queues/messages/count?brokerName=broker1&selector=index > 1"))
+                  .andExpect(status().isOk())
+                  .andExpect(content().string("3"));
+    }
+
+    @Test
+    public void shouldPurgeQueue() throws Exception {
+        when(queueBrowseService.purge("broker1", "queue1", null)).thenReturn(5);
+
+        testServer.perform(delete("/test-rest/queues/messages?brokerName=broker1&destination=queue1"))
+                  .andExpect(status().isOk())
+                  .andExpect(content().string("5"));
+    }
+
+    @Test
+    public void shouldReturnBadRequestForUnknownBroker() throws Exception {
+        when(queueBrowseService.purge("unknown", null, null)).thenThrow(new MissingPropertyException("unknown"));
+
+        testServer.perform(delete("/test-rest/queues/messages?brokerName=unknown")).andExpect(status().isBadRequest());
+    }
+}
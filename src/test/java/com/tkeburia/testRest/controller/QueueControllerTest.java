@@ -17,9 +17,14 @@
 package com.tkeburia.testRest.controller;
 
 import com.google.common.collect.ImmutableMap;
+import com.tkeburia.testRest.exception.ProducerBackpressureException;
 import com.tkeburia.testRest.queues.producer.ProducerService;
+import com.tkeburia.testRest.queues.reply.RequestReplyService;
+import com.tkeburia.testRest.queues.schedule.PublishScheduler;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -27,14 +32,27 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.ApplicationContext;
+import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.request.async.DeferredResult;
 
+import java.util.concurrent.CompletableFuture;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.apache.commons.io.FileUtils.writeByteArrayToFile;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
@@ -46,22 +64,153 @@ public class QueueControllerTest {
     @Mock
     ProducerService producerService;
 
+    @Mock
+    RequestReplyService requestReplyService;
+
+    @Mock
+    PublishScheduler publishScheduler;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Before
     public void setup() {
-        testServer = MockMvcBuilders.standaloneSetup(new QueueController(producerService)).build();
+        testServer = MockMvcBuilders.standaloneSetup(new QueueController(producerService, requestReplyService, publishScheduler,
+                temporaryFolder.getRoot().getPath(), 10)).build();
     }
 
     @Test
     public void shouldInvokeProducerServiceWithCorrectArguments() throws Exception {
-        testServer
+        when(producerService.sendToQueueAsync("testQueue", null, ImmutableMap.of("key", "value"), null)).thenReturn(completedFuture(null));
+
+        final MvcResult mvcResult = testServer
                 .perform(
                         post("/test-rest/queues?brokerName=testQueue")
                         .content("{ \"key\" : \"value\"}")
                         .contentType(APPLICATION_JSON)
                 )
-                .andExpect(status().isOk());
+                .andExpect(request().asyncStarted())
+                .andReturn();
 
-        verify(producerService).sendToQueue("testQueue", ImmutableMap.of("key", "value"));
+        testServer.perform(asyncDispatch(mvcResult)).andExpect(status().isOk());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldPassExplicitDestinationToProducerService() throws Exception {
+        when(producerService.sendToQueueAsync("testQueue", "otherQueue", ImmutableMap.of("key", "value"), null)).thenReturn(completedFuture(null));
+
+        final MvcResult mvcResult = testServer
+                .perform(
+                        post("/test-rest/queues?brokerName=testQueue&destination=otherQueue")
+                        .content("{ \"key\" : \"value\"}")
+                        .contentType(APPLICATION_JSON)
+                )
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        testServer.perform(asyncDispatch(mvcResult)).andExpect(status().isOk());
+    }
+
+    @Test
+    public void shouldRespondOnceAsynchronousSendCompletes() throws Exception {
+        final CompletableFuture<Void> sent = new CompletableFuture<>();
+        when(producerService.sendToQueueAsync("testQueue", null, ImmutableMap.of("key", "value"), null)).thenReturn(sent);
+
+        final MvcResult mvcResult = testServer
+                .perform(
+                        post("/test-rest/queues?brokerName=testQueue")
+                        .content("{ \"key\" : \"value\"}")
+                        .contentType(APPLICATION_JSON)
+                )
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        sent.complete(null);
+
+        testServer.perform(asyncDispatch(mvcResult)).andExpect(status().isOk());
+    }
+
+    @Test
+    public void shouldRespondWithServiceUnavailableWhenSendIsRejected() throws Exception {
+        final CompletableFuture<Void> rejected = new CompletableFuture<>();
+        rejected.completeExceptionally(new ProducerBackpressureException("too many"));
+        when(producerService.sendToQueueAsync("testQueue", null, ImmutableMap.of("key", "value"), null)).thenReturn(rejected);
+
+        final MvcResult mvcResult = testServer
+                .perform(
+                        post("/test-rest/queues?brokerName=testQueue")
+                        .content("{ \"key\" : \"value\"}")
+                        .contentType(APPLICATION_JSON)
+                )
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        testServer.perform(asyncDispatch(mvcResult)).andExpect(status().isServiceUnavailable()).andExpect(content().string("too many"));
+    }
+
+    @Test
+    public void shouldPutResponseFileContentToQueue() throws Exception {
+        final byte[] content = "{ \"key\" : \"value\"}".getBytes(UTF_8);
+        writeByteArrayToFile(temporaryFolder.newFile("response1.json"), content);
+        when(producerService.sendContentToQueue("testQueue", null, content, true, 5)).thenReturn(completedFuture(null));
+
+        final MvcResult mvcResult = testServer
+                .perform(post("/test-rest/queues/responseFile?brokerName=testQueue&fileName=response1.json&times=5&text=true"))
+                .andReturn();
+
+        testServer.perform(asyncDispatch(mvcResult)).andExpect(status().isOk());
+    }
+
+    @Test
+    public void shouldRejectResponseFileRepetitionsOutOfRange() throws Exception {
+        testServer.perform(post("/test-rest/queues/responseFile?brokerName=testQueue&fileName=response1.json&times=0"))
+                  .andExpect(status().isBadRequest());
+        testServer.perform(post("/test-rest/queues/responseFile?brokerName=testQueue&fileName=response1.json&times=11"))
+                  .andExpect(status().isBadRequest())
+                  .andExpect(content().string("times has to be between 1 and 10"));
+        verifyZeroInteractions(producerService);
+    }
+
+    @Test
+    public void shouldReturnNotFoundForMissingResponseFile() throws Exception {
+        testServer.perform(post("/test-rest/queues/responseFile?brokerName=testQueue&fileName=missing.json"))
+                  .andExpect(status().isNotFound());
+        verifyZeroInteractions(producerService);
+    }
+
+    @Test
+    public void shouldScheduleDelayedMessage() throws Exception {
+        final MvcResult mvcResult = testServer
+                .perform(
+                        post("/test-rest/queues?brokerName=testQueue&delayMillis=5000")
+                        .content("{ \"key\" : \"value\"}")
+                        .contentType(APPLICATION_JSON)
+                )
+                .andReturn();
+
+        testServer.perform(asyncDispatch(mvcResult)).andExpect(status().isAccepted());
+        verify(publishScheduler).schedule("testQueue", null, ImmutableMap.of("key", "value"), null, 5000L);
+        verifyZeroInteractions(producerService);
+    }
+
+    @Test
+    public void shouldReturnCorrelatedReplyAsynchronously() throws Exception {
+        final DeferredResult<ResponseEntity<?>> reply = new DeferredResult<>();
+        when(requestReplyService.request("testQueue", ImmutableMap.of("key", "value"), 1000L)).thenReturn(reply);
+
+        final MvcResult mvcResult = testServer
+                .perform(
+                        post("/test-rest/queues/request-reply?brokerName=testQueue&timeoutMillis=1000")
+                        .content("{ \"key\" : \"value\"}")
+                        .contentType(APPLICATION_JSON)
+                )
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        reply.setResult(ResponseEntity.ok("replyPayload"));
+
+        testServer.perform(asyncDispatch(mvcResult))
+                  .andExpect(status().isOk())
+                  .andExpect(content().string("replyPayload"));
+    }
+}
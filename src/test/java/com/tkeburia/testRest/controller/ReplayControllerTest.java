@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.controller;
+
+import com.tkeburia.testRest.exception.MissingPropertyException;
+import com.tkeburia.testRest.queues.capture.Replay;
+import com.tkeburia.testRest.queues.capture.ReplayService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static java.util.Collections.singletonList;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReplayControllerTest {
+
+    private MockMvc testServer;
+
+    @Mock
+    private ReplayService replayService;
+
+    private final Replay replay = new Replay("id1", "broker1", null, "queue1", 1000, 2000, 2);
+
+    @Before
+    public void setup() {
+        testServer = MockMvcBuilders.standaloneSetup(new ReplayController(replayService)).build();
+    }
+
+    @Test
+    public void shouldListReplays() throws Exception {
+        when(replayService.getReplays()).thenReturn(singletonList(replay));
+
+        testServer.perform(get("/test-rest/queues/replays"))
+                  .andExpect(status().isOk())
+                  .andExpect(jsonPath("$[0].id").value("id1"))
+                  .andExpect(jsonPath("$[0].state").value("RUNNING"));
+    }
+
+    @Test
+    public void shouldStartReplay() throws Exception {
+        when(replayService.replay("broker1", null, "queue1", 1000, 2000, 2)).thenReturn(replay);
+
+        testServer.perform(post("/test-rest/queues/replays?brokerName=broker1&sourceDestination=queue1&from=1000&to=2000&speed=2"))
+                  .andExpect(status().isAccepted())
+                  .andExpect(jsonPath("$.id").value("id1"))
+                  .andExpect(jsonPath("$.speed").value(2.0));
+    }
+
+    @Test
+    public void shouldReplayEverythingAtCapturedSpeedByDefault() throws Exception {
+        when(replayService.replay("broker1", null, null, 0, Long.MAX_VALUE, 1)).thenReturn(replay);
+
+        testServer.perform(post("/test-rest/queues/replays?brokerName=broker1")).andExpect(status().isAccepted());
+    }
+
+    @Test
+    public void shouldReturnBadRequestForUnknownBroker() throws Exception {
+        when(replayService.replay("unknown", null, null, 0, Long.MAX_VALUE, 1)).thenThrow(new MissingPropertyException("unknown"));
+
+        testServer.perform(post("/test-rest/queues/replays?brokerName=unknown")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void shouldCancelReplay() throws Exception {
+        when(replayService.cancel("id1")).thenReturn(true);
+
+        testServer.perform(delete("/test-rest/queues/replays/id1")).andExpect(status().isOk());
+        testServer.perform(delete("/test-rest/queues/replays/id2")).andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.controller;
+
+import com.google.common.collect.ImmutableMap;
+import com.tkeburia.testRest.exception.MissingPropertyException;
+import com.tkeburia.testRest.queues.schedule.PublishScheduler;
+import com.tkeburia.testRest.queues.schedule.RecurringPublication;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static java.util.Collections.singletonList;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.when;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ScheduleControllerTest {
+
+    private static final String EVERY_MINUTE = "0 * * * * *";
+
+    private MockMvc testServer;
+
+    @Mock
+    private PublishScheduler publishScheduler;
+
+    private final RecurringPublication publication =
+            new RecurringPublication("id1", "broker1", null, ImmutableMap.of("key", "value"), EVERY_MINUTE);
+
+    @Before
+    public void setup() {
+        testServer = MockMvcBuilders.standaloneSetup(new ScheduleController(publishScheduler)).build();
+    }
+
+    @Test
+    public void shouldListRecurringPublications() throws Exception {
+        when(publishScheduler.getRecurringPublications()).thenReturn(singletonList(publication));
+
+        testServer.perform(get("/test-rest/queues/schedules"))
+                  .andExpect(status().isOk())
+                  .andExpect(jsonPath("$[0].id").value("id1"))
+                  .andExpect(jsonPath("$[0].cron").value(EVERY_MINUTE));
+    }
+
+    @Test
+    public void shouldScheduleRecurringPublication() throws Exception {
+        when(publishScheduler.scheduleRecurring("broker1", null, ImmutableMap.of("key", "value"), EVERY_MINUTE)).thenReturn(publication);
+
+        testServer.perform(post("/test-rest/queues/schedules?brokerName=broker1&cron=" + EVERY_MINUTE)
+                                   .content("{ \"key\" : \"value\"}")
+                                   .contentType(APPLICATION_JSON))
+                  .andExpect(status().isCreated())
+                  .andExpect(jsonPath("$.id").value("id1"))
+                  .andExpect(jsonPath("$.payload.key").value("value"));
+    }
+
+    @Test
+    public void shouldReturnBadRequestForUnknownBroker() throws Exception {
+        when(publishScheduler.scheduleRecurring(eq("unknown"), isNull(), any(), anyString()))
+                .thenThrow(new MissingPropertyException("unknown"));
+
+        testServer.perform(post("/test-rest/queues/schedules?brokerName=unknown&cron=" + EVERY_MINUTE)
+                                   .content("{ \"key\" : \"value\"}")
+                                   .contentType(APPLICATION_JSON))
+                  .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void shouldCancelRecurringPublication() throws Exception {
+        when(publishScheduler.cancelRecurring("id1")).thenReturn(true);
+
+        testServer.perform(delete("/test-rest/queues/schedules/id1")).andExpect(status().isOk());
+    }
+
+    @Test
+    public void shouldReturnNotFoundForUnknownSchedule() throws Exception {
+        testServer.perform(delete("/test-rest/queues/schedules/id2")).andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues;
+
+import com.google.common.collect.ImmutableMap;
+import com.tkeburia.testRest.queues.consumer.AckMode;
+import com.tkeburia.testRest.queues.consumer.ConsumerProperties;
+import com.tkeburia.testRest.queues.producer.ProducerProperties;
+import org.apache.activemq.jms.pool.PooledConnectionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jms.core.JmsTemplate;
+
+import javax.jms.JMSException;
+import java.util.Map;
+
+import static com.tkeburia.testRest.util.QueueUtils.buildConnectionFactory;
+import static org.junit.Assert.assertEquals;
+
+public class BrokerSettingsEndpointTest {
+
+    private static final String BROKER_NAME = "broker1";
+    private static final String URI = "vm://broker-settings-test?broker.persistent=false&broker.useJmx=false";
+
+    private ConsumerProperties consumerProperties = new ConsumerProperties();
+    private ProducerProperties producerProperties = new ProducerProperties();
+    private PooledConnectionFactory consumerConnectionFactory = new PooledConnectionFactory();
+    private PooledConnectionFactory producerConnectionFactory = new PooledConnectionFactory();
+
+    @Before
+    public void setup() {
+        for (BrokerProperties properties : new BrokerProperties[]{consumerProperties, producerProperties}) {
+            properties.setUris(ImmutableMap.of(BROKER_NAME, URI));
+            properties.setUserNames(ImmutableMap.of(BROKER_NAME, "userName"));
+            properties.setPasswords(ImmutableMap.of(BROKER_NAME, "password"));
+            properties.setQueueNames(ImmutableMap.of(BROKER_NAME, "queueName"));
+        }
+    }
+
+    @After
+    public void cleanup() {
+        consumerConnectionFactory.stop();
+        producerConnectionFactory.stop();
+    }
+
+    @Test
+    public void shouldReportSettingsOfLiveConnectionsPerBroker() throws JMSException {
+        final BrokerTuning tuning = new BrokerTuning();
+        tuning.setQueuePrefetch(20);
+        consumerProperties.setTuning(ImmutableMap.of(BROKER_NAME, tuning));
+        consumerProperties.setAckModes(ImmutableMap.of(BROKER_NAME, AckMode.OPTIMIZED));
+        consumerConnectionFactory.setConnectionFactory(buildConnectionFactory(consumerProperties, BROKER_NAME));
+        producerConnectionFactory.setConnectionFactory(buildConnectionFactory(producerProperties, BROKER_NAME));
+        final BrokerSettingsEndpoint endpoint = new BrokerSettingsEndpoint(consumerProperties,
+                ImmutableMap.of(BROKER_NAME, consumerConnectionFactory.createConnection()),
+                ImmutableMap.of(BROKER_NAME, new JmsTemplate(producerConnectionFactory)));
+
+        // changes after the connections were created must not show up
+        tuning.setQueuePrefetch(5);
+
+        final Map<String, Map<String, Map<String, Object>>> brokers = endpoint.brokers();
+
+        final Map<String, Object> consumer = brokers.get("consumer").get(BROKER_NAME);
+        assertEquals(20, consumer.get("queuePrefetch"));
+        assertEquals(true, consumer.get("optimizeAcknowledge"));
+        assertEquals(AckMode.OPTIMIZED, consumer.get("ackMode"));
+
+        final Map<String, Object> producer = brokers.get("producer").get(BROKER_NAME);
+        assertEquals(URI, producer.get("brokerUrl"));
+        assertEquals(1000, producer.get("queuePrefetch"));
+        assertEquals(false, producer.get("optimizeAcknowledge"));
+    }
+}
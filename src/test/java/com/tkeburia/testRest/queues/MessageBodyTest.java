@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.command.ActiveMQMapMessage;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.ActiveMQObjectMessage;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.junit.Test;
+
+import javax.jms.JMSException;
+import java.io.IOException;
+import java.util.HashMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MessageBodyTest {
+
+    private static final String JSON = "{\"firstName\":\"Peter\"}";
+
+    @Test
+    public void shouldDecodeTextMessage() throws JMSException {
+        final ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setText(JSON);
+
+        final MessageBody body = MessageBody.of(message);
+
+        assertEquals(MessageBody.Type.TEXT, body.getType());
+        assertEquals(JSON, body.getText());
+        assertEquals("Peter", body.toJson().getString("firstName"));
+    }
+
+    @Test
+    public void shouldParseBytesMessageWithoutDecodingText() throws JMSException {
+        final ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+        message.writeBytes(JSON.getBytes(UTF_8));
+        message.reset();
+
+        final MessageBody body = MessageBody.of(message);
+
+        assertEquals(MessageBody.Type.BYTES, body.getType());
+        assertEquals("Peter", body.toJson().getString("firstName"));
+        assertEquals(JSON, body.getText());
+    }
+
+    @Test
+    public void shouldReadCompressedBytesMessage() throws JMSException, IOException {
+        final ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+        message.writeBytes(JSON.getBytes(UTF_8));
+        message.reset();
+        message.compress();
+
+        assertEquals(JSON, MessageBody.of(message).getText());
+        assertEquals(JSON.length(), message.getBodyLength());
+    }
+
+    @Test
+    public void shouldConvertMapMessageToJson() throws JMSException {
+        final ActiveMQMapMessage message = new ActiveMQMapMessage();
+        message.setString("firstName", "Peter");
+
+        final MessageBody body = MessageBody.of(message);
+
+        assertEquals(MessageBody.Type.MAP, body.getType());
+        assertEquals("Peter", body.toJson().getString("firstName"));
+        assertEquals(JSON, body.getText());
+    }
+
+    @Test
+    public void shouldTreatObjectMessageHoldingMapAsMap() throws JMSException {
+        final ActiveMQObjectMessage message = new ActiveMQObjectMessage();
+        message.setObject(new HashMap<>(ImmutableMap.of("firstName", "Peter")));
+
+        assertEquals(MessageBody.Type.MAP, MessageBody.of(message).getType());
+        assertEquals(JSON, MessageBody.of(message).getText());
+    }
+
+    @Test
+    public void shouldUseTextOfOtherObjects() throws JMSException {
+        final ActiveMQObjectMessage message = new ActiveMQObjectMessage();
+        message.setObject(JSON);
+
+        assertEquals(MessageBody.Type.OBJECT, MessageBody.of(message).getType());
+        assertEquals(JSON, MessageBody.of(message).getText());
+    }
+
+    @Test
+    public void shouldNotDecodeUnsupportedMessage() throws JMSException {
+        assertNull(MessageBody.of(new ActiveMQMessage()));
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.queues.browse;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import com.tkeburia.testRest.exception.MissingPropertyException;
+import com.tkeburia.testRest.queues.producer.ProducerProperties;
+import com.tkeburia.testRest.queues.producer.ProducerService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerPlugin;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.plugin.StatisticsBrokerPlugin;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.springframework.jms.connection.SingleConnectionFactory;
+import org.springframework.jms.core.JmsTemplate;
+
+import javax.jms.BytesMessage;
+import javax.jms.TextMessage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QueueBrowseServiceTest {
+
+    private static final String BROKER_NAME = "broker1";
+    private static final String QUEUE_NAME = "browseQueue";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BrowseProperties browseProperties = new BrowseProperties();
+    private BrokerService broker;
+    private SingleConnectionFactory connectionFactory;
+    private JmsTemplate jmsTemplate;
+    private QueueBrowseService queueBrowseService;
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    @Before
+    public void setup() throws Exception {
+        broker = new BrokerService();
+        broker.setBrokerName("queue-browse-test");
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.setPlugins(new BrokerPlugin[]{new StatisticsBrokerPlugin()});
+        broker.start();
+        connectionFactory = new SingleConnectionFactory(new ActiveMQConnectionFactory("vm://queue-browse-test?create=false"));
+        jmsTemplate = new JmsTemplate(connectionFactory);
+        final ProducerProperties producerProperties = new ProducerProperties();
+        producerProperties.setQueueNames(ImmutableMap.of(BROKER_NAME, QUEUE_NAME));
+        browseProperties.setMaxCount(10);
+        browseProperties.setPurgeReceiveTimeoutMillis(200);
+        queueBrowseService = new QueueBrowseService(new ProducerService(ImmutableMap.of(BROKER_NAME, jmsTemplate), producerProperties,
+                new SimpleMeterRegistry()), browseProperties, objectMapper);
+
+        for (int i = 0; i < 5; i++) {
+            final int index = i;
+            jmsTemplate.send(QUEUE_NAME, session -> {
+                final TextMessage message = session.createTextMessage("message" + index);
+                message.setIntProperty("index", index);
+                return message;
+            });
+        }
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        connectionFactory.destroy();
+        broker.stop();
+        broker.waitUntilStopped();
+    }
+
+    @Test
+    public void shouldBrowsePagesAfterCursorWithoutConsuming() throws IOException {
+        final List<JsonNode> first = browse(null, 2);
+        assertEquals(2, first.size());
+        assertEquals("message0", first.get(0).get("body").asText());
+        assertEquals("TEXT", first.get(0).get("type").asText());
+        assertEquals(1, first.get(1).get("properties").get("index").asInt());
+
+        final List<JsonNode> second = browse(first.get(1).get("messageId").asText(), 10);
+        assertEquals(3, second.size());
+        assertEquals("message2", second.get(0).get("body").asText());
+
+        assertEquals(5, queueBrowseService.count(BROKER_NAME, QUEUE_NAME, null));
+    }
+
+    @Test
+    public void shouldReturnEmptyPageForCursorNoLongerOnQueue() throws IOException {
+        assertTrue(browse("ID:unknown", 10).isEmpty());
+    }
+
+    @Test
+    public void shouldWriteBytesBodiesBase64Encoded() throws IOException {
+        queueBrowseService.purge(BROKER_NAME, null, null);
+        jmsTemplate.send(QUEUE_NAME, session -> {
+            final BytesMessage message = session.createBytesMessage();
+            message.writeBytes("content".getBytes(UTF_8));
+            return message;
+        });
+
+        final JsonNode message = browse(null, 1).get(0);
+
+        assertEquals("BYTES", message.get("type").asText());
+        assertEquals("content", new String(message.get("body").binaryValue(), UTF_8));
+        assertFalse(message.has("properties"));
+    }
+
+    @Test
+    public void shouldCountAndPurgeSelectedMessages() {
+        assertEquals(2, queueBrowseService.count(BROKER_NAME, null, "index >= 3"));
+
+        assertEquals(2, queueBrowseService.purge(BROKER_NAME, null, "index >= 3"));
+
+        assertEquals(3, queueBrowseService.count(BROKER_NAME, null, null));
+    }
+
+    @Test
+    public void shouldCountMessagesBeyondBrowseLimitWithStatistics() {
+        for (int i = 0; i < 500; i++) {
+            jmsTemplate.send(QUEUE_NAME, session -> session.createTextMessage("more"));
+        }
+
+        assertEquals(505, queueBrowseService.count(BROKER_NAME, null, null));
+    }
+
+    @Test
+    public void shouldStopPurgeAtSizeOfQueueWhileProducerKeepsSending() throws Exception {
+        final long start = System.currentTimeMillis();
+
+        assertTrue(purgeWhileSending(null) >= 5);
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test
+    public void shouldStopSelectedPurgeAtTimeoutWhileProducerKeepsSending() throws Exception {
+        browseProperties.setPurgeTimeoutMillis(300);
+        final long start = System.currentTimeMillis();
+
+        assertTrue(purgeWhileSending("index >= 0") >= 5);
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test
+    public void shouldWriteErrorRecordForMessageThatCanNotBeRead() throws IOException {
+        queueBrowseService.purge(BROKER_NAME, null, null);
+        jmsTemplate.send(QUEUE_NAME, session -> session.createObjectMessage(new UntrustedPayload()));
+        jmsTemplate.send(QUEUE_NAME, session -> session.createTextMessage("readable"));
+
+        final List<JsonNode> messages = browse(null, 10);
+
+        assertEquals(2, messages.size());
+        assertTrue(messages.get(0).has("messageId"));
+        assertTrue(messages.get(0).has("error"));
+        assertEquals("readable", messages.get(1).get("body").asText());
+    }
+
+    @Test
+    public void shouldRejectMaxCountAboveLimit() {
+        exception.expect(IllegalArgumentException.class);
+        queueBrowseService.page(BROKER_NAME, null, null, null, 11);
+    }
+
+    @Test
+    public void shouldRejectUnknownBrokerBeforeBrowsing() {
+        exception.expect(MissingPropertyException.class);
+        queueBrowseService.page("unknown", null, null, null, 1);
+    }
+
+    /**
+     * Keeps sending messages to the queue while it is purged
+     */
+    private int purgeWhileSending(String selector) throws Exception {
+        final AtomicBoolean sending = new AtomicBoolean(true);
+        final AtomicInteger index = new AtomicInteger(5);
+        final ExecutorService producer = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> sent = producer.submit(() -> {
+                while (sending.get()) {
+                    jmsTemplate.send(QUEUE_NAME, session -> {
+                        final TextMessage message = session.createTextMessage("live");
+                        message.setIntProperty("index", index.getAndIncrement());
+                        return message;
+                    });
+                }
+            });
+            final int purged = queueBrowseService.purge(BROKER_NAME, null, selector);
+            sending.set(false);
+            sent.get();
+            return purged;
+        }
+        finally {
+            producer.shutdownNow();
+        }
+    }
+
+    private List<JsonNode> browse(String after, int maxCount) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final int written = queueBrowseService.page(BROKER_NAME, null, null, after, maxCount).writeTo(out);
+        final List<JsonNode> messages = new ArrayList<>();
+        for (String line : out.toString(UTF_8.name()).split("\n")) {
+            if (!line.isEmpty()) messages.add(objectMapper.readTree(line));
+        }
+        assertEquals(written, messages.size());
+        return messages;
+    }
+
+    private static class UntrustedPayload implements Serializable {
+    }
+}
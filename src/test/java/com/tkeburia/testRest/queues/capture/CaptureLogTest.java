@@ -0,0 +1,189 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.capture;
+
+import com.tkeburia.testRest.queues.MessageBody;
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.jms.JMSException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CaptureLogTest {
+
+    private static final String JSON = "{\"firstName\":\"Peter\"}";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private CaptureProperties captureProperties = new CaptureProperties();
+    private CaptureLog captureLog;
+    private File directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = temporaryFolder.newFolder("capture");
+        captureProperties.setEnabled(true);
+        captureProperties.setDirectory(directory.getPath());
+    }
+
+    @After
+    public void cleanup() {
+        captureLog.shutdown();
+    }
+
+    @Test
+    public void shouldReadBackCapturedMessagesWithHeadersAndProperties() throws JMSException {
+        captureLog = new CaptureLog(captureProperties);
+        final ActiveMQTextMessage textMessage = new ActiveMQTextMessage();
+        textMessage.setText(JSON);
+        textMessage.setJMSCorrelationID("correlation1");
+        textMessage.setJMSType("person");
+        textMessage.setStringProperty("source", "test");
+        textMessage.setIntProperty("attempt", 2);
+        final ActiveMQBytesMessage bytesMessage = new ActiveMQBytesMessage();
+        bytesMessage.writeBytes(JSON.getBytes(UTF_8));
+        bytesMessage.reset();
+
+        final long start = System.currentTimeMillis();
+        capture("queue1", textMessage);
+        capture("queue2", bytesMessage);
+
+        final List<CapturedMessage> captured = readAll(null);
+        assertEquals(2, captured.size());
+
+        final CapturedMessage text = captured.get(0);
+        assertTrue(text.getTimestamp() >= start);
+        assertEquals("queue1", text.getDestination());
+        assertFalse(text.isBytes());
+        assertEquals("correlation1", text.getCorrelationId());
+        assertEquals("person", text.getType());
+        assertEquals("test", text.getProperties().get("source"));
+        assertEquals(2, text.getProperties().get("attempt"));
+        assertArrayEquals(JSON.getBytes(UTF_8), text.getBody());
+
+        final CapturedMessage bytes = captured.get(1);
+        assertEquals("queue2", bytes.getDestination());
+        assertTrue(bytes.isBytes());
+        assertNull(bytes.getCorrelationId());
+        assertTrue(bytes.getProperties().isEmpty());
+        assertArrayEquals(JSON.getBytes(UTF_8), bytes.getBody());
+    }
+
+    @Test
+    public void shouldReadMessagesOfWindowAndDestinationOnly() throws JMSException, InterruptedException {
+        captureLog = new CaptureLog(captureProperties);
+        capture("queue1", textMessage("early"));
+        Thread.sleep(20);
+        final long from = System.currentTimeMillis();
+        capture("queue1", textMessage("in window"));
+        capture("queue2", textMessage("other queue"));
+        final long to = System.currentTimeMillis();
+        Thread.sleep(20);
+        capture("queue1", textMessage("late"));
+
+        final List<String> bodies = new ArrayList<>();
+        captureLog.read(from, to, "queue1", message -> bodies.add(new String(message.getBody(), UTF_8)));
+
+        assertEquals(1, bodies.size());
+        assertEquals("in window", bodies.get(0));
+    }
+
+    @Test
+    public void shouldRollAndDeleteOldSegments() throws JMSException {
+        captureProperties.setSegmentBytes(1);
+        captureProperties.setMaxSegments(2);
+        captureLog = new CaptureLog(captureProperties);
+        for (int i = 0; i < 5; i++) {
+            capture("queue1", textMessage("message" + i));
+        }
+
+        final List<CapturedMessage> captured = readAll(null);
+        assertEquals(2, directory.listFiles((dir, name) -> name.endsWith(CaptureLog.SEGMENT_SUFFIX)).length);
+        assertEquals(2, captured.size());
+        assertArrayEquals("message4".getBytes(UTF_8), captured.get(1).getBody());
+    }
+
+    @Test
+    public void shouldWriteQueuedMessagesOnShutdown() throws JMSException {
+        captureProperties.setFlushIntervalMillis(60000);
+        final CaptureLog stopped = new CaptureLog(captureProperties);
+        for (int i = 0; i < 100; i++) {
+            stopped.capture("queue1", textMessage("message" + i), MessageBody.of(textMessage("message" + i)));
+        }
+        stopped.shutdown();
+
+        captureLog = new CaptureLog(captureProperties);
+        assertEquals(100, readAll(null).size());
+        assertEquals(0, stopped.getDropped());
+    }
+
+    @Test
+    public void shouldStopReadingWhenHandlerAsksTo() throws JMSException {
+        captureLog = new CaptureLog(captureProperties);
+        capture("queue1", textMessage("first"));
+        capture("queue1", textMessage("second"));
+
+        final List<CapturedMessage> captured = new ArrayList<>();
+        captureLog.read(0, Long.MAX_VALUE, null, message -> captured.add(message) && false);
+
+        assertEquals(1, captured.size());
+    }
+
+    @Test
+    public void shouldNotCaptureWhenDisabled() throws JMSException {
+        captureProperties.setEnabled(false);
+        captureLog = new CaptureLog(captureProperties);
+        capture("queue1", textMessage("ignored"));
+
+        assertTrue(readAll(null).isEmpty());
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    private void capture(String destination, ActiveMQMessage message) throws JMSException {
+        captureLog.capture(destination, message, MessageBody.of(message));
+    }
+
+    private List<CapturedMessage> readAll(String destination) {
+        final List<CapturedMessage> captured = new ArrayList<>();
+        captureLog.read(0, Long.MAX_VALUE, destination, captured::add);
+        return captured;
+    }
+
+    private static ActiveMQTextMessage textMessage(String text) throws JMSException {
+        final ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setText(text);
+        return message;
+    }
+}
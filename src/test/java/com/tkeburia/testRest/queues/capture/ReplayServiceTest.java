@@ -0,0 +1,243 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.capture;
+
+import com.google.common.collect.ImmutableMap;
+import com.tkeburia.testRest.exception.MissingPropertyException;
+import com.tkeburia.testRest.exception.ProducerBackpressureException;
+import com.tkeburia.testRest.queues.producer.ProducerService;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.jms.core.MessageCreator;
+
+import javax.jms.JMSException;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyMap;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReplayServiceTest {
+
+    private static final String BROKER_NAME = "broker1";
+
+    @Mock
+    private CaptureLog captureLog;
+
+    @Mock
+    private ProducerService producerService;
+
+    @Mock
+    private Session session;
+
+    private CaptureProperties captureProperties = new CaptureProperties();
+    private ReplayService replayService;
+
+    @Before
+    public void setup() {
+        replayService = new ReplayService(captureLog, producerService, captureProperties);
+    }
+
+    @After
+    public void cleanup() {
+        replayService.shutdown();
+    }
+
+    @Test
+    public void shouldReplayCapturedMessagesWithHeadersAndProperties() throws Exception {
+        captured(new CapturedMessage(1000, "queue1", false, "correlation1", "person", ImmutableMap.of("attempt", 2), "first".getBytes(UTF_8)),
+                 new CapturedMessage(1001, "queue1", false, null, null, emptyMap(), "second".getBytes(UTF_8)));
+        when(producerService.isConfigured(BROKER_NAME)).thenReturn(true);
+        when(producerService.sendMessageToQueue(eq(BROKER_NAME), eq("target"), any(MessageCreator.class))).thenReturn(completedFuture(null));
+
+        final Replay replay = replayService.replay(BROKER_NAME, "target", "queue1", 0, 5000, 0);
+        awaitFinished(replay);
+
+        assertEquals(Replay.State.COMPLETED, replay.getState());
+        assertEquals(2, replay.getSent());
+        verify(captureLog).read(eq(0L), eq(5000L), eq("queue1"), any());
+
+        final ArgumentCaptor<MessageCreator> creator = ArgumentCaptor.forClass(MessageCreator.class);
+        verify(producerService, times(2)).sendMessageToQueue(eq(BROKER_NAME), eq("target"), creator.capture());
+        when(session.createTextMessage("first")).thenReturn(textMessage("first"));
+        final TextMessage message = (TextMessage) creator.getAllValues().get(0).createMessage(session);
+        assertEquals("first", message.getText());
+        assertEquals("correlation1", message.getJMSCorrelationID());
+        assertEquals("person", message.getJMSType());
+        assertEquals(2, message.getIntProperty("attempt"));
+    }
+
+    @Test
+    public void shouldKeepCapturedTimeBetweenMessagesAtGivenSpeed() throws Exception {
+        captured(new CapturedMessage(1000, "queue1", false, null, null, emptyMap(), new byte[0]),
+                 new CapturedMessage(1400, "queue1", false, null, null, emptyMap(), new byte[0]));
+        when(producerService.isConfigured(BROKER_NAME)).thenReturn(true);
+        when(producerService.sendMessageToQueue(eq(BROKER_NAME), isNull(), any(MessageCreator.class))).thenReturn(completedFuture(null));
+
+        final long start = System.nanoTime();
+        final Replay replay = replayService.replay(BROKER_NAME, null, null, 0, Long.MAX_VALUE, 2);
+        awaitFinished(replay);
+
+        assertTrue(System.nanoTime() - start >= 200_000_000L);
+        assertEquals(2, replay.getSent());
+    }
+
+    @Test
+    public void shouldCountFailedSends() throws Exception {
+        captured(new CapturedMessage(1000, "queue1", false, null, null, emptyMap(), new byte[0]));
+        when(producerService.isConfigured(BROKER_NAME)).thenReturn(true);
+        final CompletableFuture<Void> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("failed"));
+        when(producerService.sendMessageToQueue(eq(BROKER_NAME), isNull(), any(MessageCreator.class))).thenReturn(failed);
+
+        final Replay replay = replayService.replay(BROKER_NAME, null, null, 0, Long.MAX_VALUE, 0);
+        awaitFinished(replay);
+
+        assertEquals(0, replay.getSent());
+        assertEquals(1, replay.getFailed());
+    }
+
+    @Test
+    public void shouldCompleteOnceSentMessagesAreAcknowledged() throws Exception {
+        captured(new CapturedMessage(1000, "queue1", false, null, null, emptyMap(), new byte[0]));
+        when(producerService.isConfigured(BROKER_NAME)).thenReturn(true);
+        final CompletableFuture<Void> acknowledged = new CompletableFuture<>();
+        when(producerService.sendMessageToQueue(eq(BROKER_NAME), isNull(), any(MessageCreator.class))).thenReturn(acknowledged);
+
+        final Replay replay = replayService.replay(BROKER_NAME, null, null, 0, Long.MAX_VALUE, 0);
+        Thread.sleep(200);
+        assertEquals(Replay.State.RUNNING, replay.getState());
+
+        acknowledged.complete(null);
+        awaitFinished(replay);
+        assertEquals(Replay.State.COMPLETED, replay.getState());
+        assertEquals(1, replay.getSent());
+    }
+
+    @Test
+    public void shouldRetrySendsRejectedByBackpressure() throws Exception {
+        captured(new CapturedMessage(1000, "queue1", false, null, null, emptyMap(), new byte[0]));
+        when(producerService.isConfigured(BROKER_NAME)).thenReturn(true);
+        final CompletableFuture<Void> rejected = new CompletableFuture<>();
+        rejected.completeExceptionally(new ProducerBackpressureException("full"));
+        when(producerService.sendMessageToQueue(eq(BROKER_NAME), isNull(), any(MessageCreator.class))).thenReturn(rejected).thenReturn(rejected).thenReturn(completedFuture(null));
+
+        final Replay replay = replayService.replay(BROKER_NAME, null, null, 0, Long.MAX_VALUE, 0);
+        awaitFinished(replay);
+
+        assertEquals(1, replay.getSent());
+        assertEquals(0, replay.getFailed());
+        verify(producerService, times(3)).sendMessageToQueue(eq(BROKER_NAME), isNull(), any(MessageCreator.class));
+    }
+
+    @Test
+    public void shouldForgetFinishedReplaysAfterRetention() throws Exception {
+        captureProperties.setReplayRetentionMillis(0);
+        replayService.shutdown();
+        replayService = new ReplayService(captureLog, producerService, captureProperties);
+        captured();
+        when(producerService.isConfigured(BROKER_NAME)).thenReturn(true);
+
+        final Replay replay = replayService.replay(BROKER_NAME, null, null, 0, Long.MAX_VALUE, 0);
+        awaitFinished(replay);
+        Thread.sleep(10);
+
+        assertTrue(replayService.getReplays().isEmpty());
+    }
+
+    @Test
+    public void shouldStopCancelledReplay() throws Exception {
+        captured(new CapturedMessage(1000, "queue1", false, null, null, emptyMap(), new byte[0]),
+                 new CapturedMessage(61000, "queue1", false, null, null, emptyMap(), new byte[0]));
+        when(producerService.isConfigured(BROKER_NAME)).thenReturn(true);
+        when(producerService.sendMessageToQueue(eq(BROKER_NAME), isNull(), any(MessageCreator.class))).thenReturn(completedFuture(null));
+
+        final Replay replay = replayService.replay(BROKER_NAME, null, null, 0, Long.MAX_VALUE, 1);
+        for (int i = 0; i < 100 && replay.getSent() == 0; i++) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(replayService.cancel(replay.getId()));
+        assertFalse(replayService.cancel(replay.getId()));
+        assertEquals(Replay.State.CANCELLED, replay.getState());
+        assertTrue(replayService.getReplays().isEmpty());
+        Thread.sleep(200);
+        assertEquals(1, replay.getSent());
+    }
+
+    @Test(expected = MissingPropertyException.class)
+    public void shouldNotReplayToUnknownBroker() {
+        replayService.replay("unknown", null, null, 0, Long.MAX_VALUE, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNegativeSpeed() {
+        when(producerService.isConfigured(BROKER_NAME)).thenReturn(true);
+        replayService.replay(BROKER_NAME, null, null, 0, Long.MAX_VALUE, -1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void captured(CapturedMessage... messages) {
+        final List<CapturedMessage> captured = Arrays.asList(messages);
+        doAnswer(invocation -> {
+            final Predicate<CapturedMessage> handler = invocation.getArgument(3);
+            for (CapturedMessage message : captured) {
+                if (!handler.test(message)) break;
+            }
+            return null;
+        }).when(captureLog).read(anyLong(), anyLong(), any(), any());
+    }
+
+    private static void awaitFinished(Replay replay) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            if (replay.getState() != Replay.State.RUNNING) return;
+            Thread.sleep(10);
+        }
+        fail("Replay did not finish");
+    }
+
+    private static ActiveMQTextMessage textMessage(String text) throws JMSException {
+        final ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setText(text);
+        return message;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.queues.consumer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BatchAcknowledgingListenerTest {
+
+    private static final int BATCH_SIZE = 3;
+
+    @Mock
+    private MessageListener delegate;
+
+    @Mock
+    private TrackedMessageListener trackedDelegate;
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private Message message1;
+
+    @Mock
+    private Message message2;
+
+    @Mock
+    private Message message3;
+
+    private BatchAcknowledgingListener listener;
+
+    @Before
+    public void setup() {
+        listener = new BatchAcknowledgingListener(delegate, session, BATCH_SIZE, 60000);
+    }
+
+    @Test
+    public void shouldAcknowledgeLastMessageOnceBatchIsComplete() throws JMSException {
+        listener.onMessage(message1);
+        listener.onMessage(message2);
+        verify(message2, never()).acknowledge();
+        assertEquals(2, listener.getPending());
+
+        listener.onMessage(message3);
+        verify(message3).acknowledge();
+        verify(message1, never()).acknowledge();
+        assertEquals(0, listener.getPending());
+    }
+
+    @Test
+    public void shouldAcknowledgePendingMessagesWhenIntervalPassed() throws JMSException {
+        listener = new BatchAcknowledgingListener(delegate, session, BATCH_SIZE, 0);
+        listener.onMessage(message1);
+        verify(message1).acknowledge();
+    }
+
+    @Test
+    public void shouldNotFlushBeforeIntervalPassed() throws JMSException {
+        listener.onMessage(message1);
+        listener.flushIfDue();
+        verify(message1, never()).acknowledge();
+        assertEquals(1, listener.getPending());
+    }
+
+    @Test
+    public void shouldRecoverSessionAndDropBatchWhenProcessingFails() throws JMSException {
+        listener.onMessage(message1);
+        doThrow(new IllegalStateException("failed")).when(delegate).onMessage(message2);
+
+        listener.onMessage(message2);
+
+        verify(session).recover();
+        verify(message1, never()).acknowledge();
+        assertEquals(0, listener.getPending());
+    }
+
+    @Test
+    public void shouldNotProcessMessagesAnsweredBeforeRecoveryAgain() throws JMSException {
+        when(message1.getJMSMessageID()).thenReturn("id1");
+        when(message2.getJMSMessageID()).thenReturn("id2");
+        doThrow(new IllegalStateException("failed")).doNothing().when(delegate).onMessage(message2);
+
+        listener.onMessage(message1);
+        listener.onMessage(message2);
+        verify(session).recover();
+
+        listener.onMessage(message1);
+        listener.onMessage(message2);
+
+        verify(delegate, times(1)).onMessage(message1);
+        verify(delegate, times(2)).onMessage(message2);
+        assertEquals(2, listener.getPending());
+    }
+
+    @Test
+    public void shouldAcknowledgeOnlyOnceHandedOverMessagesCompleted() throws JMSException {
+        final CompletableFuture<Void> processing = new CompletableFuture<>();
+        when(trackedDelegate.process(any(Message.class))).thenReturn(completedFuture(null)).thenReturn(completedFuture(null)).thenReturn(processing);
+        listener = new BatchAcknowledgingListener(trackedDelegate, session, BATCH_SIZE, 60000);
+        Executors.newSingleThreadScheduledExecutor().schedule(() -> processing.complete(null), 200, MILLISECONDS);
+
+        listener.onMessage(message1);
+        listener.onMessage(message2);
+        listener.onMessage(message3);
+
+        assertTrue(processing.isDone());
+        verify(message3).acknowledge();
+        verify(trackedDelegate, never()).onMessage(any());
+    }
+
+    @Test
+    public void shouldRecoverSessionWhenHandedOverMessageFails() throws JMSException {
+        final CompletableFuture<Void> failure = new CompletableFuture<>();
+        failure.completeExceptionally(new IllegalStateException("failed"));
+        when(trackedDelegate.process(any(Message.class))).thenReturn(failure).thenReturn(completedFuture(null)).thenReturn(completedFuture(null));
+        listener = new BatchAcknowledgingListener(trackedDelegate, session, BATCH_SIZE, 60000);
+
+        listener.onMessage(message1);
+        listener.onMessage(message2);
+        listener.onMessage(message3);
+
+        verify(session).recover();
+        verify(message3, never()).acknowledge();
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.consumer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.tkeburia.testRest.exception.DetailedValidationException;
+import com.tkeburia.testRest.exception.ScriptExecutionException;
+import com.tkeburia.testRest.queues.MessageBody;
+import com.tkeburia.testRest.queues.capture.CaptureLog;
+import com.tkeburia.testRest.queues.producer.PayloadFormat;
+import com.tkeburia.testRest.queues.producer.ProducerProperties;
+import com.tkeburia.testRest.script.ScriptExecutionService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BatchMessageProcessorTest {
+
+    private static final String BROKER_URI = "tcp://uri1";
+    private static final String DESTINATION = "queue1";
+    private static final String RESPONSE_BROKER = "responseBroker";
+    private static final String RESPONSE_QUEUE = "responseQueue";
+    private static final String VALID_MESSAGE = "{\"firstName\" : \"Peter\", \"lastName\" : \"Griffin\"}";
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    @Mock
+    private ConsumerResponseService consumerResponseService;
+
+    @Mock
+    private ScriptExecutionService.Execution execution;
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private MessageProducer producer;
+
+    @Mock
+    private TextMessage responseMessage;
+
+    @Mock
+    private BytesMessage bytesResponseMessage;
+
+    @Mock
+    private ActiveMQTextMessage message1;
+
+    @Mock
+    private ActiveMQTextMessage message2;
+
+    @Mock
+    private CaptureLog captureLog;
+
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ProducerProperties producerProperties = new ProducerProperties();
+    private DedupProperties dedupProperties = new DedupProperties();
+    private BatchMessageProcessor batchMessageProcessor;
+
+    @Before
+    public void setup() throws JMSException {
+        producerProperties.setQueueNames(ImmutableMap.of(RESPONSE_BROKER, RESPONSE_QUEUE));
+        batchMessageProcessor = new BatchMessageProcessor("./src/test/resources", ImmutableMap.of(DESTINATION, "schema.json"),
+                consumerResponseService, producerProperties, new ConsumerMetrics(meterRegistry), new DuplicateDetector(dedupProperties),
+                captureLog);
+        when(message1.getDestination()).thenReturn(new ActiveMQQueue(DESTINATION));
+        when(message2.getDestination()).thenReturn(new ActiveMQQueue(DESTINATION));
+    }
+
+    @Test
+    public void shouldSendResponsesForSameBrokerThroughBatchSession() throws JMSException {
+        producerProperties.setUris(ImmutableMap.of(RESPONSE_BROKER, BROKER_URI));
+        when(message1.getText()).thenReturn(VALID_MESSAGE);
+        when(message2.getText()).thenReturn(VALID_MESSAGE);
+        when(consumerResponseService.startBuildingResponse(eq(VALID_MESSAGE), eq(DESTINATION), any())).thenAnswer(validatingAndReturning(execution));
+        when(execution.get()).thenReturn("response");
+        when(consumerResponseService.responseBrokerFor(DESTINATION)).thenReturn(RESPONSE_BROKER);
+        when(consumerResponseService.messageConverterFor(DESTINATION)).thenReturn(new SimpleMessageConverter());
+        final Queue responseQueue = new ActiveMQQueue(RESPONSE_QUEUE);
+        when(session.createQueue(RESPONSE_QUEUE)).thenReturn(responseQueue);
+        when(session.createProducer(responseQueue)).thenReturn(producer);
+        when(session.createTextMessage("response")).thenReturn(responseMessage);
+
+        final Map<String, MessageProducer> producers = new HashMap<>();
+        batchMessageProcessor.process(session, BROKER_URI, ImmutableList.of(message1, message2), producers);
+
+        verify(producer, times(2)).send(responseMessage);
+        verify(session).createProducer(responseQueue);
+        verify(consumerResponseService, never()).sendResponse(any(), anyString(), any());
+        assertEquals(2, meterRegistry.get("consumer.processing").tag("destination", DESTINATION).tag("stage", "send").timer().count());
+    }
+
+    @Test
+    public void shouldSendResponsesForOtherBrokersThroughResponseService() throws JMSException {
+        producerProperties.setUris(ImmutableMap.of(RESPONSE_BROKER, "tcp://uri2"));
+        when(message1.getText()).thenReturn(VALID_MESSAGE);
+        when(message2.getText()).thenReturn(VALID_MESSAGE);
+        when(consumerResponseService.startBuildingResponse(eq(VALID_MESSAGE), eq(DESTINATION), any())).thenAnswer(validatingAndReturning(execution));
+        when(execution.get()).thenReturn("response");
+        when(consumerResponseService.responseBrokerFor(DESTINATION)).thenReturn(RESPONSE_BROKER);
+
+        final Runnable afterCommit = batchMessageProcessor.process(session, BROKER_URI, ImmutableList.of(message1, message2), new HashMap<>());
+
+        verify(consumerResponseService, never()).sendResponse(any(), anyString(), any());
+        afterCommit.run();
+        verify(consumerResponseService).sendResponse(message1, DESTINATION, "response");
+        verify(consumerResponseService).sendResponse(message2, DESTINATION, "response");
+        verify(session, never()).createProducer(any());
+    }
+
+    @Test
+    public void shouldNotSendResponsesOutsideTransactionWhenBatchFails() throws JMSException {
+        when(message1.getText()).thenReturn(VALID_MESSAGE);
+        when(message2.getText()).thenReturn(VALID_MESSAGE);
+        when(consumerResponseService.startBuildingResponse(eq(VALID_MESSAGE), eq(DESTINATION), any())).thenAnswer(validatingAndReturning(execution));
+        when(execution.get()).thenReturn("response").thenThrow(new ScriptExecutionException("timed out"));
+
+        try {
+            batchMessageProcessor.process(session, BROKER_URI, ImmutableList.of(message1, message2), new HashMap<>());
+            fail("Expected ScriptExecutionException");
+        }
+        catch (ScriptExecutionException e) {
+            verify(consumerResponseService, never()).sendResponse(any(), anyString(), any());
+        }
+    }
+
+    @Test
+    public void shouldKeepSendingCommittedResponsesWhenOneFails() throws JMSException {
+        when(message1.getText()).thenReturn(VALID_MESSAGE);
+        when(message2.getText()).thenReturn(VALID_MESSAGE);
+        when(consumerResponseService.startBuildingResponse(eq(VALID_MESSAGE), eq(DESTINATION), any())).thenAnswer(validatingAndReturning(execution));
+        when(execution.get()).thenReturn("response");
+        doThrow(new IllegalStateException("broker down")).when(consumerResponseService).sendResponse(message1, DESTINATION, "response");
+
+        batchMessageProcessor.process(session, BROKER_URI, ImmutableList.of(message1, message2), new HashMap<>()).run();
+
+        verify(consumerResponseService).sendResponse(message2, DESTINATION, "response");
+        verify(captureLog).capture(eq(DESTINATION), eq(message2), any(MessageBody.class));
+    }
+
+    @Test
+    public void shouldSendRepliesToReplyToDestinationThroughBatchSession() throws JMSException {
+        final Queue replyTo = new ActiveMQQueue("replyQueue");
+        when(message1.getText()).thenReturn(VALID_MESSAGE);
+        when(message1.getJMSReplyTo()).thenReturn(replyTo);
+        when(message1.getJMSCorrelationID()).thenReturn("correlation1");
+        when(consumerResponseService.startBuildingResponse(eq(VALID_MESSAGE), eq(DESTINATION), any())).thenAnswer(validatingAndReturning(execution));
+        when(execution.get()).thenReturn("response");
+        when(consumerResponseService.messageConverterFor(DESTINATION)).thenReturn(new SimpleMessageConverter());
+        when(session.createProducer(null)).thenReturn(producer);
+        when(session.createTextMessage("response")).thenReturn(responseMessage);
+
+        batchMessageProcessor.process(session, BROKER_URI, ImmutableList.of(message1), new HashMap<>());
+
+        verify(responseMessage).setJMSCorrelationID("correlation1");
+        verify(producer).send(replyTo, responseMessage);
+        verify(consumerResponseService, never()).sendResponse(any(), anyString(), any());
+    }
+
+    @Test
+    public void shouldWriteResponsesInFormatOfResponseBroker() throws JMSException {
+        final Queue replyTo = new ActiveMQQueue("replyQueue");
+        when(message1.getText()).thenReturn(VALID_MESSAGE);
+        when(message1.getJMSReplyTo()).thenReturn(replyTo);
+        when(consumerResponseService.startBuildingResponse(eq(VALID_MESSAGE), eq(DESTINATION), any())).thenAnswer(validatingAndReturning(execution));
+        when(execution.get()).thenReturn("{}");
+        when(consumerResponseService.messageConverterFor(DESTINATION)).thenReturn(PayloadFormat.BYTES.createConverter());
+        when(session.createProducer(null)).thenReturn(producer);
+        when(session.createBytesMessage()).thenReturn(bytesResponseMessage);
+
+        batchMessageProcessor.process(session, BROKER_URI, ImmutableList.of(message1), new HashMap<>());
+
+        verify(bytesResponseMessage).writeBytes("{}".getBytes(UTF_8));
+        verify(producer).send(replyTo, bytesResponseMessage);
+    }
+
+    @Test
+    public void shouldFailWholeBatchWhenAnyMessageIsInvalid() throws JMSException {
+        exception.expect(DetailedValidationException.class);
+        when(message1.getText()).thenReturn(VALID_MESSAGE);
+        when(message2.getText()).thenReturn("{\"firstName\" : \"Peter\", \"surName\" : \"Griffin\"}");
+        when(consumerResponseService.startBuildingResponse(anyString(), eq(DESTINATION), any())).thenAnswer(validatingAndReturning(execution));
+
+        batchMessageProcessor.process(session, BROKER_URI, ImmutableList.of(message1, message2), new HashMap<>());
+    }
+
+    @Test
+    public void shouldSkipDuplicatesWithinDedupWindow() throws JMSException {
+        dedupProperties.setWindowMillis(ImmutableMap.of(DESTINATION, 60000L));
+        when(message1.getText()).thenReturn(VALID_MESSAGE);
+        when(message2.getText()).thenReturn(VALID_MESSAGE);
+        when(message1.getJMSMessageID()).thenReturn("ID:1");
+        when(message2.getJMSMessageID()).thenReturn("ID:1");
+        when(consumerResponseService.startBuildingResponse(eq(VALID_MESSAGE), eq(DESTINATION), any())).thenAnswer(validatingAndReturning(execution));
+        when(execution.get()).thenReturn("response");
+
+        final Runnable afterCommit = batchMessageProcessor.process(session, BROKER_URI, ImmutableList.of(message1, message2), new HashMap<>());
+
+        verify(captureLog, never()).capture(any(), any(), any());
+        afterCommit.run();
+        verify(consumerResponseService).sendResponse(message1, DESTINATION, "response");
+        verify(consumerResponseService, never()).sendResponse(message2, DESTINATION, "response");
+        verify(captureLog).capture(eq(DESTINATION), eq(message1), any(MessageBody.class));
+        verify(captureLog, never()).capture(any(), eq(message2), any());
+    }
+
+    @Test
+    public void shouldNotTreatRedeliveryOfFailedBatchAsDuplicate() throws JMSException {
+        dedupProperties.setWindowMillis(ImmutableMap.of(DESTINATION, 60000L));
+        when(message1.getText()).thenReturn(VALID_MESSAGE);
+        when(message1.getJMSMessageID()).thenReturn("ID:1");
+        when(consumerResponseService.startBuildingResponse(eq(VALID_MESSAGE), eq(DESTINATION), any())).thenThrow(new IllegalStateException("failed"))
+                .thenAnswer(validatingAndReturning(execution));
+        when(execution.get()).thenReturn("response");
+
+        try {
+            batchMessageProcessor.process(session, BROKER_URI, ImmutableList.of(message1), new HashMap<>());
+            fail("Expected IllegalStateException");
+        }
+        catch (IllegalStateException e) {
+            batchMessageProcessor.process(session, BROKER_URI, ImmutableList.of(message1), new HashMap<>()).run();
+        }
+
+        verify(consumerResponseService).sendResponse(message1, DESTINATION, "response");
+    }
+
+    @Test
+    public void shouldFailBatchWhenScriptFails() throws JMSException {
+        when(message1.getText()).thenReturn(VALID_MESSAGE);
+        when(message2.getText()).thenReturn(VALID_MESSAGE);
+        when(consumerResponseService.startBuildingResponse(eq(VALID_MESSAGE), eq(DESTINATION), any())).thenAnswer(validatingAndReturning(execution));
+        when(execution.get()).thenReturn("response").thenThrow(new ScriptExecutionException("timed out"));
+        exception.expect(ScriptExecutionException.class);
+
+        try {
+            batchMessageProcessor.process(session, BROKER_URI, ImmutableList.of(message1, message2), new HashMap<>());
+        }
+        finally {
+            verify(execution, times(2)).cancel();
+        }
+    }
+
+    /**
+     * Runs the validation handed to the response service, as the script executor does before the script
+     */
+    private static Answer<ScriptExecutionService.Execution> validatingAndReturning(ScriptExecutionService.Execution execution) {
+        return invocation -> {
+            invocation.<Runnable>getArgument(2).run();
+            return execution;
+        };
+    }
+}
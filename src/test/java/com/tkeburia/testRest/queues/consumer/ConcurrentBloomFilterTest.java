@@ -0,0 +1,55 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.consumer;
+
+import org.junit.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentBloomFilterTest {
+
+    @Test
+    public void shouldContainEveryValuePutConcurrently() {
+        final ConcurrentBloomFilter filter = new ConcurrentBloomFilter(100_000, 0.01);
+        IntStream.range(0, 100_000).parallel().forEach(i -> filter.put("ID:" + i));
+
+        IntStream.range(0, 100_000).forEach(i -> assertTrue(filter.mightContain("ID:" + i)));
+    }
+
+    @Test
+    public void shouldKeepFalsePositiveRateNearConfiguredRate() {
+        final ConcurrentBloomFilter filter = new ConcurrentBloomFilter(10_000, 0.01);
+        IntStream.range(0, 10_000).forEach(i -> filter.put("ID:" + i));
+
+        final long falsePositives = IntStream.range(10_000, 110_000).filter(i -> filter.mightContain("ID:" + i)).count();
+        assertTrue("False positives: " + falsePositives, falsePositives < 2_000);
+    }
+
+    @Test
+    public void shouldNotContainValuesOfEmptyFilter() {
+        assertFalse(new ConcurrentBloomFilter(1000, 0.01).mightContain("ID:1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidFalsePositiveRate() {
+        new ConcurrentBloomFilter(1000, 0);
+    }
+}
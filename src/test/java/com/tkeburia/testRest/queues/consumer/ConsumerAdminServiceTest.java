@@ -0,0 +1,152 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.consumer;
+
+import com.tkeburia.testRest.dto.ConsumerRegistrationRequest;
+import com.tkeburia.testRest.exception.ConsumerConflictException;
+import com.tkeburia.testRest.script.ScriptExecutionService;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import javax.jms.JMSException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConsumerAdminServiceTest {
+
+    @Mock
+    private ConsumerService consumerService;
+
+    @Mock
+    private ScriptExecutionService scriptExecutionService;
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private final Map<String, String> schemaMappings = new HashMap<>();
+    private final Map<String, String> scriptMappings = new HashMap<>();
+    private final Map<String, String> destinationMappings = new HashMap<>();
+
+    private ConsumerAdminService consumerAdminService;
+
+    @Before
+    public void setup() {
+        consumerAdminService = new ConsumerAdminService(consumerService, scriptExecutionService, schemaMappings, scriptMappings, destinationMappings);
+    }
+
+    @Test
+    public void shouldUpdateMappingsAndRegisterConsumer() throws JMSException {
+        final ConsumerRegistration registration = mock(ConsumerRegistration.class);
+        when(consumerService.register(eq("broker1"), eq("queue1"), eq(false), eq(2), any())).thenAnswer(invocation -> {
+            invocation.<Runnable>getArgument(4).run();
+            return registration;
+        });
+        schemaMappings.put("queue1", "old.json");
+
+        final ConsumerRegistrationRequest request = request("broker1", "queue1");
+        request.setResponseScript("response.groovy");
+        request.setResponseBroker("broker2");
+        request.setConcurrency(2);
+
+        assertEquals(registration, consumerAdminService.register(request));
+        verify(scriptExecutionService).replaceScript("queue1", "response.groovy");
+        assertFalse(schemaMappings.containsKey("queue1"));
+        assertEquals("response.groovy", scriptMappings.get("queue1"));
+        assertEquals("broker2", destinationMappings.get("queue1"));
+    }
+
+    @Test
+    public void shouldRejectRequestWithoutDestination() throws JMSException {
+        exception.expect(IllegalArgumentException.class);
+        consumerAdminService.register(request("broker1", null));
+    }
+
+    @Test
+    public void shouldNotTouchMappingsWhenRegistrationFails() throws JMSException {
+        when(consumerService.register(eq("broker1"), eq("queue1"), eq(false), anyInt(), any()))
+                .thenThrow(new ConsumerConflictException("registered"));
+        scriptMappings.put("queue1", "response.groovy");
+        try {
+            consumerAdminService.register(request("broker1", "queue1"));
+            fail("Expected ConsumerConflictException");
+        }
+        catch (ConsumerConflictException e) {
+            assertEquals("response.groovy", scriptMappings.get("queue1"));
+            verify(scriptExecutionService, never()).replaceScript(anyString(), any());
+        }
+    }
+
+    @Test
+    public void shouldRefuseToChangeMappingsOfDestinationConsumedFromAnotherBroker() throws JMSException {
+        final ConsumerRegistration other = mock(ConsumerRegistration.class);
+        when(other.getBrokerName()).thenReturn("broker2");
+        when(other.getDestination()).thenReturn("queue1");
+        when(consumerService.getRegistrations()).thenReturn(singletonList(other));
+        scriptMappings.put("queue1", "response.groovy");
+        try {
+            consumerAdminService.register(request("broker1", "queue1"));
+            fail("Expected ConsumerConflictException");
+        }
+        catch (ConsumerConflictException e) {
+            assertEquals("response.groovy", scriptMappings.get("queue1"));
+            verify(consumerService, never()).register(anyString(), anyString(), anyBoolean(), anyInt(), any());
+        }
+    }
+
+    @Test
+    public void shouldRegisterDestinationConsumedFromAnotherBrokerWithSameMappings() throws JMSException {
+        final ConsumerRegistration other = mock(ConsumerRegistration.class);
+        when(other.getBrokerName()).thenReturn("broker2");
+        when(other.getDestination()).thenReturn("queue1");
+        when(consumerService.getRegistrations()).thenReturn(singletonList(other));
+        scriptMappings.put("queue1", "response.groovy");
+        final ConsumerRegistrationRequest request = request("broker1", "queue1");
+        request.setResponseScript("response.groovy");
+
+        consumerAdminService.register(request);
+
+        verify(consumerService).register(eq("broker1"), eq("queue1"), eq(false), anyInt(), any());
+    }
+
+    private static ConsumerRegistrationRequest request(String brokerName, String destination) {
+        final ConsumerRegistrationRequest request = new ConsumerRegistrationRequest();
+        request.setBrokerName(brokerName);
+        request.setDestination(destination);
+        return request;
+    }
+}
@@ -17,6 +17,8 @@
 package com.tkeburia.testRest.queues.consumer;
 
 import com.google.common.collect.ImmutableMap;
+import com.tkeburia.testRest.queues.BrokerTuning;
+import com.tkeburia.testRest.queues.embedded.EmbeddedBroker;
 import lombok.AllArgsConstructor;
 import org.apache.activemq.ActiveMQConnection;
 import org.apache.activemq.ActiveMQConnectionFactory;
@@ -24,6 +26,8 @@ import org.apache.activemq.ActiveMQMessageConsumer;
 import org.apache.activemq.ActiveMQSession;
 import org.apache.activemq.command.ActiveMQDestination;
 import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.jms.pool.PooledConnection;
 import org.apache.activemq.jms.pool.PooledConnectionFactory;
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
@@ -36,6 +40,7 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.Spy;
 import org.mockito.internal.matchers.Equals;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -46,8 +51,12 @@ import java.util.List;
 import java.util.Map;
 
 import static javax.jms.Session.AUTO_ACKNOWLEDGE;
+import static javax.jms.Session.CLIENT_ACKNOWLEDGE;
+import static javax.jms.Session.SESSION_TRANSACTED;
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -80,10 +89,14 @@ public class ConsumerConfigTest {
     @Mock
     private ActiveMQMessageConsumer consumer;
 
+    @Mock
+    private ObjectProvider<EmbeddedBroker> embeddedBroker;
+
     @Before
     public void setup() {
         consumerProperties = new ConsumerProperties();
-        consumerConfig = new ConsumerConfig(consumerProperties, pooledConnectionFactory);
+        consumerConfig = spy(new ConsumerConfig(consumerProperties, embeddedBroker));
+        doReturn(pooledConnectionFactory).when(consumerConfig).newPooledConnectionFactory();
     }
 
     @Test
@@ -109,8 +122,116 @@ public class ConsumerConfigTest {
         when(connection.createSession(false, AUTO_ACKNOWLEDGE)).thenReturn(session);
         when(session.createQueue(QUEUE_NAME_1)).thenReturn(new ActiveMQQueue(QUEUE_NAME_1));
         when(session.createConsumer(argThat(isDestinationWithName(QUEUE_NAME_1)))).thenReturn(consumer);
-        final List<MessageConsumer> messageConsumers = consumerConfig.messageConsumerList();
-        assertEquals(consumer, messageConsumers.get(0));
+        final List<BrokerConsumer> messageConsumers = consumerConfig.messageConsumerList();
+        assertEquals(consumer, messageConsumers.get(0).getConsumer());
+        assertEquals(AckMode.AUTO, messageConsumers.get(0).getAckMode());
+    }
+
+    @Test
+    public void shouldCreateClientAcknowledgedSessionForConfiguredAckMode() throws JMSException {
+        consumerProperties.setUris(ImmutableMap.of(BROKER_NAME_1, URI_1));
+        consumerProperties.setUserNames(ImmutableMap.of(BROKER_NAME_1, USER_NAME_1));
+        consumerProperties.setPasswords(ImmutableMap.of(BROKER_NAME_1, PASSWORD_1));
+        consumerProperties.setQueueNames(ImmutableMap.of(BROKER_NAME_1, QUEUE_NAME_1));
+        consumerProperties.setAckModes(ImmutableMap.of(BROKER_NAME_1, AckMode.CLIENT));
+        when(pooledConnectionFactory.createConnection()).thenReturn(connection);
+        when(connection.createSession(false, CLIENT_ACKNOWLEDGE)).thenReturn(session);
+        when(session.createQueue(QUEUE_NAME_1)).thenReturn(new ActiveMQQueue(QUEUE_NAME_1));
+        when(session.createConsumer(argThat(isDestinationWithName(QUEUE_NAME_1)))).thenReturn(consumer);
+        final List<BrokerConsumer> messageConsumers = consumerConfig.messageConsumerList();
+        assertEquals(AckMode.CLIENT, messageConsumers.get(0).getAckMode());
+        assertEquals(session, messageConsumers.get(0).getSession());
+    }
+
+    @Test
+    public void shouldCreateConsumersForEveryQueueSessionAndTopicOfBroker() throws JMSException {
+        consumerProperties.setUris(ImmutableMap.of(BROKER_NAME_1, URI_1));
+        consumerProperties.setUserNames(ImmutableMap.of(BROKER_NAME_1, USER_NAME_1));
+        consumerProperties.setPasswords(ImmutableMap.of(BROKER_NAME_1, PASSWORD_1));
+        consumerProperties.setQueueNames(ImmutableMap.of(BROKER_NAME_1, QUEUE_NAME_1 + ", " + QUEUE_NAME_2));
+        consumerProperties.setTopicNames(ImmutableMap.of(BROKER_NAME_1, "topic1"));
+        consumerProperties.setSessions(ImmutableMap.of(BROKER_NAME_1, 2));
+        when(pooledConnectionFactory.createConnection()).thenReturn(connection);
+        when(connection.createSession(false, AUTO_ACKNOWLEDGE)).thenReturn(session);
+        when(session.createQueue(QUEUE_NAME_1)).thenReturn(new ActiveMQQueue(QUEUE_NAME_1));
+        when(session.createQueue(QUEUE_NAME_2)).thenReturn(new ActiveMQQueue(QUEUE_NAME_2));
+        when(session.createTopic("topic1")).thenReturn(new ActiveMQTopic("topic1"));
+        when(session.createConsumer(Mockito.any())).thenReturn(consumer);
+
+        final List<BrokerConsumer> messageConsumers = consumerConfig.messageConsumerList();
+
+        assertEquals(5, messageConsumers.size());
+        verify(connection, times(5)).createSession(false, AUTO_ACKNOWLEDGE);
+        verify(session, times(2)).createConsumer(argThat(isDestinationWithName(QUEUE_NAME_1)));
+        verify(session, times(2)).createConsumer(argThat(isDestinationWithName(QUEUE_NAME_2)));
+        verify(session).createConsumer(argThat(isDestinationWithName("topic1")));
+        verify(pooledConnectionFactory, times(1)).createConnection();
+    }
+
+    @Test
+    public void shouldCreateTransactedSessionForTransactedAckMode() throws JMSException {
+        consumerProperties.setUris(ImmutableMap.of(BROKER_NAME_1, URI_1));
+        consumerProperties.setUserNames(ImmutableMap.of(BROKER_NAME_1, USER_NAME_1));
+        consumerProperties.setPasswords(ImmutableMap.of(BROKER_NAME_1, PASSWORD_1));
+        consumerProperties.setQueueNames(ImmutableMap.of(BROKER_NAME_1, QUEUE_NAME_1));
+        consumerProperties.setAckModes(ImmutableMap.of(BROKER_NAME_1, AckMode.TRANSACTED));
+        when(pooledConnectionFactory.createConnection()).thenReturn(connection);
+        when(connection.createSession(true, SESSION_TRANSACTED)).thenReturn(session);
+        when(session.createQueue(QUEUE_NAME_1)).thenReturn(new ActiveMQQueue(QUEUE_NAME_1));
+        when(session.createConsumer(argThat(isDestinationWithName(QUEUE_NAME_1)))).thenReturn(consumer);
+        final List<BrokerConsumer> messageConsumers = consumerConfig.messageConsumerList();
+        assertEquals(AckMode.TRANSACTED, messageConsumers.get(0).getAckMode());
+        assertEquals(session, messageConsumers.get(0).getSession());
+    }
+
+    @Test
+    public void shouldApplyBrokerTuningToConnectionFactory() throws JMSException {
+        consumerProperties.setUris(ImmutableMap.of(BROKER_NAME_1, URI_1));
+        consumerProperties.setUserNames(ImmutableMap.of(BROKER_NAME_1, USER_NAME_1));
+        consumerProperties.setPasswords(ImmutableMap.of(BROKER_NAME_1, PASSWORD_1));
+        consumerProperties.setQueueNames(ImmutableMap.of(BROKER_NAME_1, QUEUE_NAME_1));
+        final BrokerTuning tuning = new BrokerTuning();
+        tuning.setQueuePrefetch(10);
+        tuning.setMaximumRedeliveries(3);
+        consumerProperties.setTuning(ImmutableMap.of(BROKER_NAME_1, tuning));
+        consumerProperties.setAckModes(ImmutableMap.of(BROKER_NAME_1, AckMode.OPTIMIZED));
+        consumerConfig.consumerConnectionMap();
+        verify(pooledConnectionFactory).setConnectionFactory(argThat(factory -> {
+            final ActiveMQConnectionFactory activeMQFactory = (ActiveMQConnectionFactory) factory;
+            return activeMQFactory.getPrefetchPolicy().getQueuePrefetch() == 10
+                    && activeMQFactory.getRedeliveryPolicy().getMaximumRedeliveries() == 3
+                    && activeMQFactory.isOptimizeAcknowledge();
+        }));
+    }
+
+    @Test
+    public void shouldConnectEveryBrokerWithItsOwnUriAndTuning() throws JMSException {
+        final String uri1 = "vm://consumer-config-test-1?broker.persistent=false&broker.useJmx=false";
+        final String uri2 = "vm://consumer-config-test-2?broker.persistent=false&broker.useJmx=false";
+        consumerProperties.setUris(ImmutableMap.of(BROKER_NAME_1, uri1, BROKER_NAME_2, uri2));
+        consumerProperties.setUserNames(ImmutableMap.of(BROKER_NAME_1, USER_NAME_1, BROKER_NAME_2, USER_NAME_2));
+        consumerProperties.setPasswords(ImmutableMap.of(BROKER_NAME_1, PASSWORD_1, BROKER_NAME_2, PASSWORD_2));
+        consumerProperties.setQueueNames(ImmutableMap.of(BROKER_NAME_1, QUEUE_NAME_1, BROKER_NAME_2, QUEUE_NAME_2));
+        final BrokerTuning tuning1 = new BrokerTuning();
+        tuning1.setQueuePrefetch(10);
+        final BrokerTuning tuning2 = new BrokerTuning();
+        tuning2.setQueuePrefetch(20);
+        consumerProperties.setTuning(ImmutableMap.of(BROKER_NAME_1, tuning1, BROKER_NAME_2, tuning2));
+        final ConsumerConfig config = new ConsumerConfig(consumerProperties, embeddedBroker);
+        try {
+            final Map<String, Connection> connectionMap = config.consumerConnectionMap();
+
+            final ActiveMQConnection connection1 = (ActiveMQConnection) ((PooledConnection) connectionMap.get(BROKER_NAME_1)).getConnection();
+            final ActiveMQConnection connection2 = (ActiveMQConnection) ((PooledConnection) connectionMap.get(BROKER_NAME_2)).getConnection();
+            assertNotSame(connection1, connection2);
+            assertTrue(connection1.getTransport().getRemoteAddress().startsWith("vm://consumer-config-test-1"));
+            assertTrue(connection2.getTransport().getRemoteAddress().startsWith("vm://consumer-config-test-2"));
+            assertEquals(10, connection1.getPrefetchPolicy().getQueuePrefetch());
+            assertEquals(20, connection2.getPrefetchPolicy().getQueuePrefetch());
+        }
+        finally {
+            config.stopConnectionFactories();
+        }
     }
 
     private ArgumentMatcher<ConnectionFactory> isConnectionFactoryWithDetails(String brokerUrl, String userName, String password) {
@@ -17,7 +17,14 @@
 package com.tkeburia.testRest.queues.consumer;
 
 import com.google.common.collect.ImmutableMap;
+import com.tkeburia.testRest.aspect.MessageLogger;
 import com.tkeburia.testRest.exception.DetailedValidationException;
+import com.tkeburia.testRest.queues.MessageBody;
+import com.tkeburia.testRest.queues.capture.CaptureLog;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.command.ActiveMQMapMessage;
 import org.apache.activemq.command.ActiveMQQueue;
 import org.apache.activemq.command.ActiveMQTextMessage;
 import org.junit.Before;
@@ -33,8 +40,16 @@ import uk.org.lidalia.slf4jtest.TestLoggerFactory;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageNotWriteableException;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static uk.org.lidalia.slf4jext.Level.ERROR;
@@ -43,6 +58,7 @@ import static uk.org.lidalia.slf4jext.Level.WARN;
 @RunWith(MockitoJUnitRunner.class)
 public class ConsumerListenerTest {
 
+    private static final String PETER_GRIFFIN = "{\"firstName\" : \"Peter\", \"lastName\" : \"Griffin\"}";
     private TestLogger TLOG = TestLoggerFactory.getTestLogger(ConsumerListener.class);
 
     @Mock
@@ -57,11 +73,28 @@ public class ConsumerListenerTest {
     @Mock
     ConsumerResponseService consumerResponseService;
 
+    @Mock
+    ConsumerPipeline consumerPipeline;
+
+    @Mock
+    CaptureLog captureLog;
+
+    @Mock
+    MessageLogger messageLogger;
+
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ConsumerMetrics consumerMetrics = new ConsumerMetrics(meterRegistry);
+
+    private DedupProperties dedupProperties = new DedupProperties();
+
+    private DuplicateDetector duplicateDetector = new DuplicateDetector(dedupProperties);
+
     private ConsumerListener consumerListener;
 
     @Before
     public void setup() throws MessageNotWriteableException {
-        consumerListener = new ConsumerListener("./src/test/resources", ImmutableMap.of("queue1", "schema.json"), consumerResponseService);
+        consumerListener = new ConsumerListener("./src/test/resources", ImmutableMap.of("queue1", "schema.json"), consumerResponseService, consumerPipeline, consumerMetrics, duplicateDetector, captureLog, messageLogger);
         when(message.getDestination()).thenReturn(new ActiveMQQueue("queue1"));
         TLOG.clearAll();
     }
@@ -74,6 +107,108 @@ public class ConsumerListenerTest {
         verify(message).getDestination();
     }
 
+    @Test
+    public void shouldLogDecodedBody() throws JMSException {
+        when(message.getText()).thenReturn(PETER_GRIFFIN);
+        consumerListener.onMessage(message);
+        verify(messageLogger).received(eq(message), any(MessageBody.class));
+        verify(message).getText();
+    }
+
+    @Test
+    public void shouldRecordMetricsOfProcessedMessage() throws JMSException {
+        when(message.getText()).thenReturn("{\"firstName\" : \"Peter\", \"lastName\" : \"Griffin\"}");
+        when(message.getJMSTimestamp()).thenReturn(System.currentTimeMillis());
+        when(consumerResponseService.buildResponse(anyString(), eq("queue1"))).thenReturn("response");
+        consumerListener.onMessage(message);
+
+        verify(consumerResponseService).sendResponse(message, "queue1", "response");
+        assertEquals(1.0, meterRegistry.get("consumer.messages.received").tag("destination", "queue1").counter().count(), 0.0);
+        assertEquals(1, meterRegistry.get("consumer.latency.endToEnd").tag("destination", "queue1").timer().count());
+        for (String stage : new String[]{"decode", "validate", "script", "send"}) {
+            assertEquals(1, meterRegistry.get("consumer.processing").tag("destination", "queue1").tag("stage", stage).timer().count());
+        }
+    }
+
+    @Test
+    public void shouldCaptureConsumedMessage() throws JMSException {
+        when(message.getText()).thenReturn("{\"firstName\" : \"Peter\", \"lastName\" : \"Griffin\"}");
+        consumerListener.onMessage(message);
+        verify(captureLog).capture(eq("queue1"), eq(message), any(MessageBody.class));
+    }
+
+    @Test
+    public void shouldCountValidationErrors() throws JMSException {
+        when(message.getText()).thenReturn("{\"firstName\" : \"Peter\", \"surName\" : \"Griffin\"}");
+        try {
+            consumerListener.onMessage(message);
+            fail("Expected DetailedValidationException");
+        }
+        catch (DetailedValidationException e) {
+            assertEquals(1.0, meterRegistry.get("consumer.errors").tag("destination", "queue1")
+                                            .tag("type", "DetailedValidationException").counter().count(), 0.0);
+        }
+    }
+
+    @Test
+    public void shouldIgnoreDuplicateWithinDedupWindow() throws JMSException {
+        dedupProperties.setWindowMillis(ImmutableMap.of("queue1", 60000L));
+        when(message.getText()).thenReturn("{\"firstName\" : \"Peter\", \"lastName\" : \"Griffin\"}");
+        when(message.getJMSMessageID()).thenReturn("ID:1");
+        when(consumerResponseService.buildResponse(anyString(), eq("queue1"))).thenReturn("response");
+
+        consumerListener.onMessage(message);
+        consumerListener.onMessage(message);
+
+        verify(consumerResponseService).sendResponse(message, "queue1", "response");
+        verify(captureLog).capture(eq("queue1"), eq(message), any(MessageBody.class));
+        assertEquals(1.0, meterRegistry.get("consumer.messages.duplicate").tag("destination", "queue1").counter().count(), 0.0);
+    }
+
+    @Test
+    public void shouldProcessRedeliveryOfFailedMessage() throws JMSException {
+        dedupProperties.setWindowMillis(ImmutableMap.of("queue1", 60000L));
+        when(message.getText()).thenReturn("{\"firstName\" : \"Peter\", \"lastName\" : \"Griffin\"}");
+        when(message.getJMSMessageID()).thenReturn("ID:1");
+        when(consumerResponseService.buildResponse(anyString(), eq("queue1"))).thenThrow(new IllegalStateException("failed")).thenReturn("response");
+
+        try {
+            consumerListener.onMessage(message);
+            fail("Expected IllegalStateException");
+        }
+        catch (IllegalStateException e) {
+            consumerListener.onMessage(message);
+        }
+
+        verify(consumerResponseService).sendResponse(message, "queue1", "response");
+    }
+
+    @Test
+    public void shouldProcessRedeliveryOfMessageFailedInPipeline() throws JMSException {
+        dedupProperties.setWindowMillis(ImmutableMap.of("queue1", 60000L));
+        when(consumerPipeline.isEnabled()).thenReturn(true);
+        final CompletableFuture<Void> failed = new CompletableFuture<>();
+        when(consumerPipeline.submit(eq("queue1"), any(), any(), any())).thenReturn(failed).thenReturn(new CompletableFuture<>());
+        when(message.getText()).thenReturn("{\"firstName\" : \"Peter\", \"lastName\" : \"Griffin\"}");
+        when(message.getJMSMessageID()).thenReturn("ID:1");
+
+        consumerListener.onMessage(message);
+        failed.completeExceptionally(new IllegalStateException("failed"));
+        consumerListener.onMessage(message);
+
+        verify(consumerPipeline, times(2)).submit(eq("queue1"), any(), any(), any());
+    }
+
+    @Test
+    public void shouldHandMessageToPipelineWhenEnabled() throws JMSException, IOException {
+        when(consumerPipeline.isEnabled()).thenReturn(true);
+        when(consumerPipeline.submit(eq("queue1"), any(), any(), any())).thenReturn(new CompletableFuture<>());
+        when(message.getText()).thenReturn("{\"firstName\" : \"Peter\", \"surName\" : \"Griffin\"}");
+        consumerListener.onMessage(message);
+        verify(consumerPipeline).submit(eq("queue1"), any(), any(), any());
+        verify(consumerResponseService, never()).sendResponse(any(), anyString(), any());
+    }
+
     @Test
     public void shouldFailValidationWithIncorrectData() throws JMSException {
         exception.expect(DetailedValidationException.class);
@@ -82,11 +217,48 @@ public class ConsumerListenerTest {
     }
 
     @Test
-    public void shouldLogAndReturnWhenMessageNotActiveMQTextMessage() {
+    public void shouldLogAndReturnWhenMessageNotActiveMQMessage() {
         TLOG.setEnabledLevels(WARN);
         consumerListener.onMessage(nonMqMessage);
         assertEquals(1, TLOG.getAllLoggingEvents().size());
-        assertTrue(TLOG.getLoggingEvents().get(0).getMessage().contains("Expected message of class ActiveMQTextMessage but got codegen.javax.jms.Message"));
+        assertTrue(TLOG.getLoggingEvents().get(0).getMessage().contains("Expected an ActiveMQ text, bytes, map or object message but got codegen.javax.jms.Message"));
+    }
+
+    @Test
+    public void shouldValidateBytesMessageAndPassItsTextToScript() throws JMSException {
+        final ActiveMQBytesMessage bytesMessage = new ActiveMQBytesMessage();
+        bytesMessage.setDestination(new ActiveMQQueue("queue1"));
+        bytesMessage.writeBytes(PETER_GRIFFIN.getBytes(UTF_8));
+        bytesMessage.reset();
+        when(consumerResponseService.buildResponse(PETER_GRIFFIN, "queue1")).thenReturn("response");
+
+        consumerListener.onMessage(bytesMessage);
+
+        verify(consumerResponseService).sendResponse(bytesMessage, "queue1", "response");
+    }
+
+    @Test
+    public void shouldFailValidationOfBytesMessageWithIncorrectData() throws JMSException {
+        exception.expect(DetailedValidationException.class);
+        final ActiveMQBytesMessage bytesMessage = new ActiveMQBytesMessage();
+        bytesMessage.setDestination(new ActiveMQQueue("queue1"));
+        bytesMessage.writeBytes("{\"firstName\" : \"Peter\", \"surName\" : \"Griffin\"}".getBytes(UTF_8));
+        bytesMessage.reset();
+
+        consumerListener.onMessage(bytesMessage);
+    }
+
+    @Test
+    public void shouldValidateMapMessage() throws JMSException {
+        final ActiveMQMapMessage mapMessage = new ActiveMQMapMessage();
+        mapMessage.setDestination(new ActiveMQQueue("queue1"));
+        mapMessage.setString("firstName", "Peter");
+        mapMessage.setString("lastName", "Griffin");
+        when(consumerResponseService.buildResponse(anyString(), eq("queue1"))).thenReturn("response");
+
+        consumerListener.onMessage(mapMessage);
+
+        verify(consumerResponseService).sendResponse(mapMessage, "queue1", "response");
     }
 
     @Test
@@ -102,10 +274,25 @@ public class ConsumerListenerTest {
     public void shouldLogIOException() throws JMSException {
         TLOG.setEnabledLevels(ERROR);
         // invalid file name will cause an IOException that we need for the test
-        consumerListener = new ConsumerListener("./src/test/resources", ImmutableMap.of("queue1", "\0"), consumerResponseService);
+        consumerListener = new ConsumerListener("./src/test/resources", ImmutableMap.of("queue1", "\0"), consumerResponseService, consumerPipeline, consumerMetrics, duplicateDetector, captureLog, messageLogger);
         when(message.getText()).thenReturn("{\"firstName\" : \"Peter\", \"surName\" : \"Griffin\"}");
         consumerListener.onMessage(message);
         assertEquals(1, TLOG.getAllLoggingEvents().size());
         assertTrue(TLOG.getAllLoggingEvents().get(0).getMessage().contains("Error processing message:"));
     }
+
+    @Test
+    public void shouldProcessRedeliveryOfMessageFailedWithIOException() throws JMSException {
+        TLOG.setEnabledLevels(ERROR);
+        dedupProperties.setWindowMillis(ImmutableMap.of("queue1", 60000L));
+        consumerListener = new ConsumerListener("./src/test/resources", ImmutableMap.of("queue1", "\0"), consumerResponseService, consumerPipeline, consumerMetrics, duplicateDetector, captureLog, messageLogger);
+        when(message.getText()).thenReturn("{\"firstName\" : \"Peter\", \"surName\" : \"Griffin\"}");
+        when(message.getJMSMessageID()).thenReturn("ID:1");
+
+        consumerListener.onMessage(message);
+        consumerListener.onMessage(message);
+
+        assertEquals(2, TLOG.getAllLoggingEvents().size());
+        assertEquals(0.0, meterRegistry.get("consumer.messages.duplicate").tag("destination", "queue1").counter().count(), 0.0);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.consumer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static com.tkeburia.testRest.queues.consumer.ConsumerMetrics.Stage.SCRIPT;
+import static com.tkeburia.testRest.queues.consumer.ConsumerMetrics.Stage.VALIDATE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConsumerMetricsTest {
+
+    private static final String DESTINATION = "queue1";
+
+    private MeterRegistry meterRegistry;
+    private ConsumerMetrics consumerMetrics;
+
+    @Before
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        consumerMetrics = new ConsumerMetrics(meterRegistry);
+    }
+
+    @Test
+    public void shouldCountReceivedMessagesPerDestination() {
+        consumerMetrics.received(DESTINATION, 0);
+        consumerMetrics.received(DESTINATION, 0);
+        consumerMetrics.received("queue2", 0);
+
+        assertEquals(2.0, meterRegistry.get("consumer.messages.received").tag("destination", DESTINATION).counter().count(), 0.0);
+        assertEquals(1.0, meterRegistry.get("consumer.messages.received").tag("destination", "queue2").counter().count(), 0.0);
+    }
+
+    @Test
+    public void shouldRecordEndToEndLatencyFromJmsTimestamp() {
+        consumerMetrics.received(DESTINATION, System.currentTimeMillis() - 1000);
+
+        assertEquals(1, meterRegistry.get("consumer.latency.endToEnd").timer().count());
+        assertTrue(meterRegistry.get("consumer.latency.endToEnd").timer().totalTime(MILLISECONDS) >= 1000);
+    }
+
+    @Test
+    public void shouldNotRecordEndToEndLatencyWithoutJmsTimestamp() {
+        consumerMetrics.received(DESTINATION, 0);
+
+        assertEquals(0, meterRegistry.get("consumer.latency.endToEnd").timer().count());
+    }
+
+    @Test
+    public void shouldRecordStageTimes() throws Exception {
+        final long start = System.nanoTime();
+        final long validated = consumerMetrics.recordStage(DESTINATION, VALIDATE, start);
+        assertEquals("response", consumerMetrics.timed(DESTINATION, SCRIPT, () -> "response"));
+
+        assertTrue(validated >= start);
+        assertEquals(1, meterRegistry.get("consumer.processing").tag("stage", "validate").timer().count());
+        assertEquals(1, meterRegistry.get("consumer.processing").tag("stage", "script").timer().count());
+        assertEquals(0, meterRegistry.get("consumer.processing").tag("stage", "send").timer().count());
+    }
+
+    @Test
+    public void shouldCountErrorsByTypeAndStillRecordStageTime() {
+        try {
+            consumerMetrics.timed(DESTINATION, VALIDATE, () -> {
+                throw new IOException("invalid");
+            });
+            fail("Expected IOException");
+        }
+        catch (Exception e) {
+            assertTrue(e instanceof IOException);
+        }
+        consumerMetrics.error(DESTINATION, new IllegalStateException());
+
+        assertEquals(1.0, meterRegistry.get("consumer.errors").tag("type", "IOException").counter().count(), 0.0);
+        assertEquals(1.0, meterRegistry.get("consumer.errors").tag("type", "IllegalStateException").counter().count(), 0.0);
+        assertEquals(1, meterRegistry.get("consumer.processing").tag("stage", "validate").timer().count());
+    }
+}
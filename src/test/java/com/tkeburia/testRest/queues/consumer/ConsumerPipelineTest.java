@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.queues.consumer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConsumerPipelineTest {
+
+    private static final String DESTINATION = "queue1";
+
+    private MeterRegistry meterRegistry;
+    private ConsumerPipeline consumerPipeline;
+
+    @Before
+    public void setup() {
+        PipelineProperties pipelineProperties = new PipelineProperties();
+        pipelineProperties.setEnabled(true);
+        meterRegistry = new SimpleMeterRegistry();
+        consumerPipeline = new ConsumerPipeline(pipelineProperties, meterRegistry);
+    }
+
+    @After
+    public void cleanup() throws InterruptedException {
+        consumerPipeline.shutdown();
+    }
+
+    @Test
+    public void shouldPublishTransformedMessage() throws InterruptedException {
+        final CountDownLatch published = new CountDownLatch(1);
+        final AtomicReference<Object> result = new AtomicReference<>();
+
+        consumerPipeline.submit(DESTINATION, () -> null, () -> "response", response -> {
+            result.set(response);
+            published.countDown();
+        });
+
+        assertTrue(published.await(5, SECONDS));
+        assertEquals("response", result.get());
+    }
+
+    @Test
+    public void shouldStopProcessingAndCountErrorWhenValidationFails() throws InterruptedException {
+        final CountDownLatch transformed = new CountDownLatch(1);
+
+        consumerPipeline.submit(DESTINATION, () -> {
+            throw new IllegalArgumentException("invalid");
+        }, () -> {
+            transformed.countDown();
+            return "response";
+        }, response -> {});
+
+        assertFalse(transformed.await(500, MILLISECONDS));
+        assertEquals(1.0, meterRegistry.get("consumer.pipeline.stage.errors").tag("stage", "validate").counter().count(), 0.0);
+    }
+
+    @Test
+    public void shouldRecordStageLatencies() throws InterruptedException {
+        final CountDownLatch published = new CountDownLatch(1);
+
+        consumerPipeline.submit(DESTINATION, () -> null, () -> "response", response -> published.countDown());
+
+        assertTrue(published.await(5, SECONDS));
+        consumerPipeline.shutdown();
+        for (String stage : new String[]{"receive", "validate", "transform", "publish"}) {
+            assertEquals(1, meterRegistry.get("consumer.pipeline.stage.processing").tag("stage", stage).timer().count());
+        }
+    }
+
+    @Test
+    public void shouldReportEmptyQueueDepth() {
+        assertEquals(0.0, meterRegistry.get("consumer.pipeline.stage.depth").tag("stage", "validate").gauge().value(), 0.0);
+    }
+}
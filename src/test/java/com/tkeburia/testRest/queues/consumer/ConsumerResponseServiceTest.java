@@ -17,22 +17,43 @@
 package com.tkeburia.testRest.queues.consumer;
 
 import com.google.common.collect.ImmutableMap;
+import com.tkeburia.testRest.exception.ScriptExecutionException;
+import com.tkeburia.testRest.queues.producer.PayloadFormat;
 import com.tkeburia.testRest.queues.producer.ProducerService;
+import com.tkeburia.testRest.queues.schedule.PublishScheduler;
+import com.tkeburia.testRest.script.ScriptExecutionService;
+import com.tkeburia.testRest.script.ScriptProperties;
+import org.apache.activemq.ActiveMQConnection;
+import org.apache.activemq.command.ActiveMQQueue;
 import org.apache.activemq.command.ActiveMQTextMessage;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import uk.org.lidalia.slf4jtest.TestLogger;
 import uk.org.lidalia.slf4jtest.TestLoggerFactory;
 
+import javax.jms.BytesMessage;
+import javax.jms.Destination;
 import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
 
+import static com.tkeburia.testRest.queues.producer.JacksonMessageConverter.CONTENT_TYPE_PROPERTY;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static javax.jms.Session.AUTO_ACKNOWLEDGE;
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static uk.org.lidalia.slf4jext.Level.ERROR;
 import static uk.org.lidalia.slf4jext.Level.WARN;
@@ -49,16 +70,39 @@ public class ConsumerResponseServiceTest {
     @Mock
     private ProducerService producerService;
 
+    @Mock
+    private PublishScheduler publishScheduler;
+
+    @Mock
+    private ResponseFanOut responseFanOut;
+
     @Mock
     private ActiveMQTextMessage message;
 
+    @Mock
+    private ActiveMQConnection connection;
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private MessageProducer producer;
+
+    @Mock
+    private TextMessage replyMessage;
+
+    @Mock
+    private BytesMessage bytesReplyMessage;
+
     @Before
     public void setup() {
         consumerResponseService = new ConsumerResponseService(
-                "src/test/resources",
+                new ScriptExecutionService("src/test/resources", new ScriptProperties(), ImmutableMap.of()),
                 ImmutableMap.of("testDestination", "testScript.groovy", "exceptionDestination", "exceptionScript.groovy"),
-                ImmutableMap.of("testDestination", "responseBroker"),
-                producerService
+                ImmutableMap.of("testDestination", "responseBroker", "fanOutDestination", "broker1, broker2"),
+                producerService,
+                publishScheduler,
+                responseFanOut
                 );
 
         TLOG.clearAll();
@@ -66,29 +110,179 @@ public class ConsumerResponseServiceTest {
 
 
     @Test
-    public void shouldRespondToQueueMessageSuccessfully() throws IOException, JMSException {
-        when(message.getText()).thenReturn(MESSAGE_TEXT);
-        consumerResponseService.respondToQueueMessage(message, "testDestination");
-        verify(producerService).sendToQueue("responseBroker", MESSAGE_TEXT + "-processed");
+    public void shouldBuildAndSendResponseSuccessfully() throws IOException, JMSException {
+        consumerResponseService.sendResponse(message, "testDestination", consumerResponseService.buildResponse(MESSAGE_TEXT, "testDestination"));
+        verify(producerService).sendToQueue("responseBroker", null, MESSAGE_TEXT + "-processed", null);
     }
 
     @Test
     public void shouldNotSendResponseAndLogErrorWhenResponseObjectNull() throws IOException, JMSException {
         TLOG.setEnabledLevels(WARN);
-        when(message.getText()).thenReturn(FAILING_MESSAGE_TEXT);
-        consumerResponseService.respondToQueueMessage(message, "testDestination");
-        verify(producerService, never()).sendToQueue(anyString(), any());
+        consumerResponseService.sendResponse(message, "testDestination", consumerResponseService.buildResponse(FAILING_MESSAGE_TEXT, "testDestination"));
+        verify(producerService, never()).sendToQueue(anyString(), any(), any(), any());
         assertEquals(1, TLOG.getAllLoggingEvents().size());
         assertEquals("Queue response script returned a null value and will be ignored", TLOG.getAllLoggingEvents().get(0).getMessage());
     }
 
     @Test
-    public void shouldLogScriptExceptionAndReturnNull() throws IOException, JMSException {
-        TLOG.setEnabledLevels(WARN);
-        when(message.getText()).thenReturn(FAILING_MESSAGE_TEXT);
-        consumerResponseService.respondToQueueMessage(message, "exceptionDestination");
-        verify(producerService, never()).sendToQueue(anyString(), any());
-        assertEquals(1, TLOG.getAllLoggingEvents().size());
-        assertEquals("Queue response script returned a null value and will be ignored", TLOG.getAllLoggingEvents().get(0).getMessage());
+    public void shouldReportScriptExceptionWithoutResponding() throws IOException, JMSException {
+        try {
+            consumerResponseService.sendResponse(message, "exceptionDestination", consumerResponseService.buildResponse(FAILING_MESSAGE_TEXT, "exceptionDestination"));
+            fail("Expected the script failure to be reported");
+        } catch (ScriptExecutionException e) {
+            verify(producerService, never()).sendToQueue(anyString(), any(), any(), any());
+        }
+    }
+
+    @Test
+    public void shouldPropagateMessageIdAsCorrelationIdWhenRespondingToMappedBroker() throws IOException, JMSException {
+        when(message.getJMSMessageID()).thenReturn("ID:message1");
+        consumerResponseService.sendResponse(message, "testDestination", consumerResponseService.buildResponse(MESSAGE_TEXT, "testDestination"));
+        verify(producerService).sendToQueue("responseBroker", null, MESSAGE_TEXT + "-processed", "ID:message1");
+    }
+
+    @Test
+    public void shouldReplyToJMSReplyToDestinationReusingReplyProducer() throws IOException, JMSException {
+        final Destination replyTo = new ActiveMQQueue("replyQueue");
+        when(message.getJMSReplyTo()).thenReturn(replyTo);
+        when(message.getJMSCorrelationID()).thenReturn("correlation1");
+        when(message.getConnection()).thenReturn(connection);
+        when(connection.createSession(false, AUTO_ACKNOWLEDGE)).thenReturn(session);
+        when(session.createProducer(null)).thenReturn(producer);
+        when(session.createTextMessage(MESSAGE_TEXT + "-processed")).thenReturn(replyMessage);
+
+        consumerResponseService.sendResponse(message, "testDestination", consumerResponseService.buildResponse(MESSAGE_TEXT, "testDestination"));
+        consumerResponseService.sendResponse(message, "testDestination", consumerResponseService.buildResponse(MESSAGE_TEXT, "testDestination"));
+
+        verify(connection, times(1)).createSession(false, AUTO_ACKNOWLEDGE);
+        verify(replyMessage, times(2)).setJMSCorrelationID("correlation1");
+        verify(producer, times(2)).send(replyTo, replyMessage);
+        verify(producerService, never()).sendToQueue(anyString(), any(), any(), any());
+    }
+
+    @Test
+    public void shouldWriteReplyInFormatOfResponseBroker() throws IOException, JMSException {
+        final Destination replyTo = new ActiveMQQueue("replyQueue");
+        when(message.getJMSReplyTo()).thenReturn(replyTo);
+        when(message.getConnection()).thenReturn(connection);
+        when(connection.createSession(false, AUTO_ACKNOWLEDGE)).thenReturn(session);
+        when(session.createProducer(null)).thenReturn(producer);
+        when(session.createBytesMessage()).thenReturn(bytesReplyMessage);
+        when(producerService.isConfigured("responseBroker")).thenReturn(true);
+        when(producerService.messageConverterFor("responseBroker")).thenReturn(PayloadFormat.BYTES.createConverter());
+
+        consumerResponseService.sendResponse(message, "testDestination", "{}");
+
+        verify(bytesReplyMessage).writeBytes("{}".getBytes(UTF_8));
+        verify(bytesReplyMessage).setStringProperty(CONTENT_TYPE_PROPERTY, "application/json");
+        verify(producer).send(replyTo, bytesReplyMessage);
+    }
+
+    @Test
+    public void shouldScheduleDelayedResponseForMappedBroker() throws IOException, JMSException {
+        when(message.getJMSMessageID()).thenReturn("ID:message1");
+        when(publishScheduler.responseDelayFor("testDestination")).thenReturn(500L);
+
+        consumerResponseService.sendResponse(message, "testDestination", consumerResponseService.buildResponse(MESSAGE_TEXT, "testDestination"));
+
+        verify(publishScheduler).schedule("responseBroker", null, MESSAGE_TEXT + "-processed", "ID:message1", 500L);
+        verify(producerService, never()).sendToQueue(anyString(), any(), any(), any());
+    }
+
+    @Test
+    public void shouldScheduleDelayedReplyToJMSReplyToDestination() throws IOException, JMSException {
+        final Destination replyTo = new ActiveMQQueue("replyQueue");
+        when(message.getJMSReplyTo()).thenReturn(replyTo);
+        when(message.getConnection()).thenReturn(connection);
+        when(connection.createSession(false, AUTO_ACKNOWLEDGE)).thenReturn(session);
+        when(session.createProducer(null)).thenReturn(producer);
+        when(session.createTextMessage(MESSAGE_TEXT + "-processed")).thenReturn(replyMessage);
+        when(publishScheduler.responseDelayFor("testDestination")).thenReturn(500L);
+
+        consumerResponseService.sendResponse(message, "testDestination", consumerResponseService.buildResponse(MESSAGE_TEXT, "testDestination"));
+
+        final ArgumentCaptor<Runnable> reply = ArgumentCaptor.forClass(Runnable.class);
+        verify(publishScheduler).schedule(reply.capture(), eq(500L));
+        verify(producer, never()).send(replyTo, replyMessage);
+        reply.getValue().run();
+        verify(producer).send(replyTo, replyMessage);
+    }
+
+    @Test
+    public void shouldFanOutResponseToAllMappedBrokers() throws JMSException {
+        when(message.getJMSMessageID()).thenReturn("ID:message1");
+
+        consumerResponseService.sendResponse(message, "fanOutDestination", "response");
+
+        verify(responseFanOut).send("fanOutDestination", asList("broker1", "broker2"), singletonList("response"), "ID:message1");
+        verify(producerService, never()).sendToQueue(anyString(), any(), any(), any());
+    }
+
+    @Test
+    public void shouldSendEachNonNullElementOfCollectionResponse() {
+        consumerResponseService.sendResponse(message, "testDestination", asList("first", null, "second"));
+
+        verify(responseFanOut).send("testDestination", singletonList("responseBroker"), asList("first", "second"), null);
+    }
+
+    @Test
+    public void shouldScheduleEveryFannedOutResponseWhenDelayed() {
+        when(publishScheduler.responseDelayFor("fanOutDestination")).thenReturn(500L);
+
+        consumerResponseService.sendResponse(message, "fanOutDestination", asList("first", "second"));
+
+        verify(publishScheduler).schedule("broker1", null, "first", null, 500L);
+        verify(publishScheduler).schedule("broker1", null, "second", null, 500L);
+        verify(publishScheduler).schedule("broker2", null, "first", null, 500L);
+        verify(publishScheduler).schedule("broker2", null, "second", null, 500L);
+        verifyZeroInteractions(responseFanOut);
+    }
+
+    @Test
+    public void shouldReplyWithEachElementOfCollectionResponse() throws JMSException {
+        final Destination replyTo = new ActiveMQQueue("replyQueue");
+        when(message.getJMSReplyTo()).thenReturn(replyTo);
+        when(message.getConnection()).thenReturn(connection);
+        when(connection.createSession(false, AUTO_ACKNOWLEDGE)).thenReturn(session);
+        when(session.createProducer(null)).thenReturn(producer);
+        when(session.createTextMessage(anyString())).thenReturn(replyMessage);
+
+        consumerResponseService.sendResponse(message, "testDestination", asList("first", "second"));
+
+        verify(session).createTextMessage("first");
+        verify(session).createTextMessage("second");
+        verify(producer, times(2)).send(replyTo, replyMessage);
+        verifyZeroInteractions(responseFanOut);
+    }
+
+    @Test
+    public void shouldReplyOnSeparateSessionsWhileAnotherReplyIsBeingSent() throws Exception {
+        final Destination replyTo = new ActiveMQQueue("replyQueue");
+        final Session otherSession = mock(Session.class);
+        final MessageProducer otherProducer = mock(MessageProducer.class);
+        when(message.getJMSReplyTo()).thenReturn(replyTo);
+        when(message.getConnection()).thenReturn(connection);
+        when(connection.createSession(false, AUTO_ACKNOWLEDGE)).thenReturn(session, otherSession);
+        when(session.createProducer(null)).thenReturn(producer);
+        when(otherSession.createProducer(null)).thenReturn(otherProducer);
+        when(session.createTextMessage(anyString())).thenReturn(replyMessage);
+        when(otherSession.createTextMessage(anyString())).thenReturn(replyMessage);
+        final CountDownLatch sending = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            sending.countDown();
+            release.await();
+            return null;
+        }).when(producer).send(replyTo, replyMessage);
+
+        final Thread first = new Thread(() -> consumerResponseService.sendResponse(message, "testDestination", "first"));
+        first.start();
+        assertTrue(sending.await(5, SECONDS));
+        consumerResponseService.sendResponse(message, "testDestination", "second");
+        release.countDown();
+        first.join(5000);
+
+        verify(otherProducer).send(replyTo, replyMessage);
+        verify(connection, times(2)).createSession(false, AUTO_ACKNOWLEDGE);
     }
-}
\ No newline at end of file
+}
@@ -18,12 +18,18 @@ package com.tkeburia.testRest.queues.consumer;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.tkeburia.testRest.exception.ConsumerConflictException;
+import com.tkeburia.testRest.exception.MissingPropertyException;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import uk.org.lidalia.slf4jext.Level;
@@ -32,12 +38,25 @@ import uk.org.lidalia.slf4jtest.TestLoggerFactory;
 
 import javax.jms.Connection;
 import javax.jms.JMSException;
+import javax.jms.Message;
 import javax.jms.MessageConsumer;
 import javax.jms.MessageListener;
+import javax.jms.Queue;
+import javax.jms.Session;
 
+import static javax.jms.Session.AUTO_ACKNOWLEDGE;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static uk.org.lidalia.slf4jext.Level.ERROR;
@@ -64,6 +83,12 @@ public class ConsumerServiceTest {
     @Mock
     private MessageConsumer messageConsumer2;
 
+    @Mock
+    private Session session;
+
+    @Mock
+    private BatchMessageProcessor batchMessageProcessor;
+
     @Rule
     public ExpectedException exception = ExpectedException.none();
 
@@ -73,7 +98,14 @@ public class ConsumerServiceTest {
         TLOG.clearAll();
         consumerService = new ConsumerService(messageListener, ImmutableMap
                 .of("broker1", connection1, "broker2", connection2), ImmutableList
-                .of(messageConsumer1, messageConsumer2));
+                .of(new BrokerConsumer("broker1", "queue1", session, messageConsumer1, AckMode.AUTO),
+                        new BrokerConsumer("broker2", "queue2", session, messageConsumer2, AckMode.DUPS_OK)), new ConsumerProperties(),
+                batchMessageProcessor);
+    }
+
+    @After
+    public void cleanup() {
+        consumerService.shutdown();
     }
 
     @Test
@@ -83,6 +115,44 @@ public class ConsumerServiceTest {
         verify(messageConsumer2).setMessageListener(messageListener);
     }
 
+    @Test
+    public void shouldWrapMessageListenerForClientAcknowledgedConsumers() throws JMSException {
+        consumerService = new ConsumerService(messageListener, ImmutableMap.of("broker1", connection1), ImmutableList
+                .of(new BrokerConsumer("broker1", "queue1", session, messageConsumer1, AckMode.CLIENT)), new ConsumerProperties(), batchMessageProcessor);
+        consumerService.consume();
+        verify(messageConsumer1).setMessageListener(any(BatchAcknowledgingListener.class));
+    }
+
+    @Test
+    public void shouldAcknowledgePendingMessagesBeforeClosingStoppedClientAcknowledgedConsumer() throws JMSException {
+        consumerService = new ConsumerService(messageListener, ImmutableMap.of("broker1", connection1), ImmutableList
+                .of(new BrokerConsumer("broker1", "queue1", session, messageConsumer1, AckMode.CLIENT)), new ConsumerProperties(), batchMessageProcessor);
+        consumerService.consume();
+        final ArgumentCaptor<BatchAcknowledgingListener> listener = ArgumentCaptor.forClass(BatchAcknowledgingListener.class);
+        verify(messageConsumer1).setMessageListener(listener.capture());
+        final Message message = mock(Message.class);
+        listener.getValue().onMessage(message);
+
+        consumerService.stop(consumerService.getRegistration("broker1", "queue1"));
+
+        final InOrder inOrder = inOrder(message, messageConsumer1, session);
+        inOrder.verify(message).acknowledge();
+        inOrder.verify(messageConsumer1).close();
+        inOrder.verify(session).close();
+    }
+
+    @Test
+    public void shouldPollTransactedConsumersInsteadOfSettingListener() throws JMSException {
+        final ConsumerProperties consumerProperties = new ConsumerProperties();
+        consumerProperties.setUris(ImmutableMap.of("broker1", "tcp://uri1"));
+        consumerService = new ConsumerService(messageListener, ImmutableMap.of("broker1", connection1), ImmutableList
+                .of(new BrokerConsumer("broker1", "queue1", session, messageConsumer1, AckMode.TRANSACTED)), consumerProperties, batchMessageProcessor);
+        consumerService.consume();
+        verify(messageConsumer1, timeout(1000).atLeastOnce()).receive(anyLong());
+        verify(messageConsumer1, never()).setMessageListener(any());
+        verify(connection1).start();
+    }
+
     @Test
     public void shouldStartAllConnections() throws JMSException {
         consumerService.consume();
@@ -98,4 +168,92 @@ public class ConsumerServiceTest {
         assertEquals(1, TLOG.getAllLoggingEvents().size());
         assertTrue(TLOG.getAllLoggingEvents().get(0).getMessage().contains("Queue consumer error : "));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldRegisterStartedConsumersByBrokerAndDestination() {
+        consumerService.consume();
+        assertEquals(2, consumerService.getRegistrations().size());
+        assertEquals(ConsumerRegistration.State.RUNNING, consumerService.getRegistration("broker1", "queue1").getState());
+        assertEquals(1, consumerService.getRegistration("broker2", "queue2").getConsumerCount());
+        assertNull(consumerService.getRegistration("broker1", "queue2"));
+    }
+
+    @Test
+    public void shouldPauseAndResumeConsumer() throws JMSException {
+        consumerService.consume();
+        final ConsumerRegistration registration = consumerService.getRegistration("broker1", "queue1");
+
+        consumerService.pause(registration);
+        verify(messageConsumer1).setMessageListener(null);
+        assertEquals(ConsumerRegistration.State.PAUSED, registration.getState());
+
+        consumerService.resume(registration);
+        verify(messageConsumer1, times(2)).setMessageListener(messageListener);
+        assertEquals(ConsumerRegistration.State.RUNNING, registration.getState());
+    }
+
+    @Test
+    public void shouldCloseAndRemoveStoppedConsumer() throws JMSException {
+        consumerService.consume();
+        final ConsumerRegistration registration = consumerService.getRegistration("broker1", "queue1");
+
+        consumerService.stop(registration);
+
+        verify(messageConsumer1).close();
+        verify(session).close();
+        assertEquals(ConsumerRegistration.State.STOPPED, registration.getState());
+        assertNull(consumerService.getRegistration("broker1", "queue1"));
+    }
+
+    @Test
+    public void shouldRegisterNewConsumerAtRuntime() throws JMSException {
+        final Queue queue = new ActiveMQQueue("newQueue");
+        when(connection1.createSession(false, AUTO_ACKNOWLEDGE)).thenReturn(session);
+        when(session.createQueue("newQueue")).thenReturn(queue);
+        when(session.createConsumer(queue)).thenReturn(messageConsumer1);
+
+        final Runnable beforeStart = mock(Runnable.class);
+
+        final ConsumerRegistration registration = consumerService.register("broker1", "newQueue", false, 3, beforeStart);
+
+        assertEquals(3, registration.getConsumerCount());
+        final InOrder inOrder = inOrder(beforeStart, messageConsumer1);
+        inOrder.verify(beforeStart).run();
+        inOrder.verify(messageConsumer1, times(3)).setMessageListener(messageListener);
+        assertEquals(registration, consumerService.getRegistration("broker1", "newQueue"));
+    }
+
+    @Test
+    public void shouldUndoRegistrationWhenFailingBeforeStart() throws JMSException {
+        final Queue queue = new ActiveMQQueue("newQueue");
+        when(connection1.createSession(false, AUTO_ACKNOWLEDGE)).thenReturn(session);
+        when(session.createQueue("newQueue")).thenReturn(queue);
+        when(session.createConsumer(queue)).thenReturn(messageConsumer1);
+
+        try {
+            consumerService.register("broker1", "newQueue", false, 1, () -> {
+                throw new IllegalArgumentException("invalid");
+            });
+            fail("Expected the failure before start to be thrown");
+        }
+        catch (IllegalArgumentException e) {
+            assertNull(consumerService.getRegistration("broker1", "newQueue"));
+            verify(messageConsumer1, never()).setMessageListener(messageListener);
+            verify(messageConsumer1).close();
+            verify(session).close();
+        }
+    }
+
+    @Test
+    public void shouldNotRegisterConsumerForUnknownBroker() throws JMSException {
+        exception.expect(MissingPropertyException.class);
+        consumerService.register("unknown", "newQueue", false, 1, () -> {});
+    }
+
+    @Test
+    public void shouldNotRegisterSameDestinationTwice() throws JMSException {
+        exception.expect(ConsumerConflictException.class);
+        consumerService.consume();
+        consumerService.register("broker1", "queue1", false, 1, () -> {});
+    }
+}
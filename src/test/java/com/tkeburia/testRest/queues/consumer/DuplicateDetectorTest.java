@@ -0,0 +1,142 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.consumer;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.jms.JMSException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DuplicateDetectorTest {
+
+    private static final String DESTINATION = "queue1";
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    };
+
+    private DedupProperties dedupProperties;
+    private DuplicateDetector duplicateDetector;
+
+    @Before
+    public void setup() {
+        dedupProperties = new DedupProperties();
+        dedupProperties.setWindowMillis(ImmutableMap.of(DESTINATION, 1000L));
+        duplicateDetector = new DuplicateDetector(dedupProperties, ticker);
+    }
+
+    @Test
+    public void shouldDetectDuplicateMessageIdWithinWindow() throws JMSException {
+        assertFalse(duplicateDetector.isDuplicate(DESTINATION, message("ID:1", null)));
+        assertTrue(duplicateDetector.isDuplicate(DESTINATION, message("ID:1", null)));
+        assertFalse(duplicateDetector.isDuplicate(DESTINATION, message("ID:2", null)));
+    }
+
+    @Test
+    public void shouldNotCheckQueuesWithoutWindow() throws JMSException {
+        assertFalse(duplicateDetector.isDuplicate("queue2", message("ID:1", null)));
+        assertFalse(duplicateDetector.isDuplicate("queue2", message("ID:1", null)));
+    }
+
+    @Test
+    public void shouldUseConfiguredKeyProperty() throws JMSException {
+        dedupProperties.setKeyProperties(ImmutableMap.of(DESTINATION, "orderId"));
+
+        assertFalse(duplicateDetector.isDuplicate(DESTINATION, message("ID:1", "order1")));
+        assertTrue(duplicateDetector.isDuplicate(DESTINATION, message("ID:2", "order1")));
+        assertFalse(duplicateDetector.isDuplicate(DESTINATION, message("ID:3", "order2")));
+    }
+
+    @Test
+    public void shouldForgetKeysAfterWindow() throws JMSException {
+        assertFalse(duplicateDetector.isDuplicate(DESTINATION, message("ID:1", null)));
+        nanos.addAndGet(MILLISECONDS.toNanos(1500));
+        assertFalse(duplicateDetector.isDuplicate(DESTINATION, message("ID:1", null)));
+    }
+
+    @Test
+    public void shouldNotReportForgottenMessageAsDuplicate() throws JMSException {
+        assertFalse(duplicateDetector.isDuplicate(DESTINATION, message("ID:1", null)));
+        duplicateDetector.forget(DESTINATION, message("ID:1", null));
+        assertFalse(duplicateDetector.isDuplicate(DESTINATION, message("ID:1", null)));
+    }
+
+    @Test
+    public void shouldFallBackToBloomFilterWhenExactSetIsFull() throws JMSException {
+        dedupProperties.setMaxExactEntries(10);
+        for (int i = 0; i < 100; i++) {
+            assertFalse(duplicateDetector.isDuplicate(DESTINATION, message("ID:" + i, null)));
+        }
+        assertTrue(duplicateDetector.isDuplicate(DESTINATION, message("ID:0", null)));
+    }
+
+    @Test
+    public void shouldKeepPreviousGenerationForOneMoreWindow() throws JMSException {
+        dedupProperties.setMaxExactEntries(1);
+        assertFalse(duplicateDetector.isDuplicate(DESTINATION, message("ID:1", null)));
+        nanos.addAndGet(MILLISECONDS.toNanos(600));
+        assertFalse(duplicateDetector.isDuplicate(DESTINATION, message("ID:2", null)));
+        nanos.addAndGet(MILLISECONDS.toNanos(600));
+        assertTrue(duplicateDetector.isDuplicate(DESTINATION, message("ID:1", null)));
+        nanos.addAndGet(MILLISECONDS.toNanos(2000));
+        assertFalse(duplicateDetector.isDuplicate(DESTINATION, message("ID:3", null)));
+        assertFalse(duplicateDetector.isDuplicate(DESTINATION, message("ID:1", null)));
+    }
+
+    @Test
+    public void shouldNotReportForgottenMessageEvictedFromExactSetAsDuplicate() throws JMSException {
+        dedupProperties.setMaxExactEntries(1);
+        assertFalse(duplicateDetector.isDuplicate(DESTINATION, message("ID:1", null)));
+        assertFalse(duplicateDetector.isDuplicate(DESTINATION, message("ID:2", null)));
+        duplicateDetector.forget(DESTINATION, message("ID:1", null));
+
+        assertFalse(duplicateDetector.isDuplicate(DESTINATION, message("ID:1", null)));
+        assertTrue(duplicateDetector.isDuplicate(DESTINATION, message("ID:1", null)));
+    }
+
+    @Test
+    public void shouldNotConsultBloomFilterWhileNoKeyWasEvicted() throws JMSException {
+        // a filter this small reports nearly every key as seen
+        dedupProperties.setExpectedMessages(1);
+        dedupProperties.setFalsePositiveRate(0.5);
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(duplicateDetector.isDuplicate(DESTINATION, message("ID:" + i, null)));
+        }
+    }
+
+    private static ActiveMQTextMessage message(String messageId, String orderId) throws JMSException {
+        final ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setJMSMessageID(messageId);
+        if (orderId != null) {
+            message.setStringProperty("orderId", orderId);
+        }
+        return message;
+    }
+}
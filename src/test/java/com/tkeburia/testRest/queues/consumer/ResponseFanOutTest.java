@@ -0,0 +1,142 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.queues.consumer;
+
+import com.google.common.collect.ImmutableMap;
+import com.tkeburia.testRest.queues.producer.ProducerService;
+import com.tkeburia.testRest.queues.producer.ProducerTransaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.jms.UncategorizedJmsException;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ResponseFanOutTest {
+
+    private static final String DESTINATION = "queue1";
+
+    private ResponseFanOut responseFanOut;
+
+    @Mock
+    private ProducerService producerService;
+
+    @Mock
+    private ProducerTransaction transaction1;
+
+    @Mock
+    private ProducerTransaction transaction2;
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    @Before
+    public void setup() {
+        final FanOutProperties fanOutProperties = new FanOutProperties();
+        fanOutProperties.setTransactional(ImmutableMap.of("transactionalQueue", true));
+        responseFanOut = new ResponseFanOut(producerService, fanOutProperties);
+    }
+
+    @After
+    public void cleanup() {
+        responseFanOut.shutdown();
+    }
+
+    @Test
+    public void shouldSendEveryResponseToEveryBrokerInParallel() {
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+        doAnswer(invocation -> threads.add(Thread.currentThread().getName()))
+                .when(producerService).sendToQueue(anyString(), isNull(), any(), eq("correlation1"));
+
+        responseFanOut.send(DESTINATION, asList("broker1", "broker2"), asList("first", "second"), "correlation1");
+
+        verify(producerService).sendToQueue("broker1", null, "first", "correlation1");
+        verify(producerService).sendToQueue("broker1", null, "second", "correlation1");
+        verify(producerService).sendToQueue("broker2", null, "first", "correlation1");
+        verify(producerService).sendToQueue("broker2", null, "second", "correlation1");
+        assertTrue(threads.contains(Thread.currentThread().getName()));
+    }
+
+    @Test
+    public void shouldRethrowFailedSendAfterAllSendsCompleted() {
+        doThrow(new UncategorizedJmsException("failed")).when(producerService).sendToQueue("broker1", null, "response", null);
+
+        try {
+            responseFanOut.send(DESTINATION, asList("broker1", "broker2"), singletonList("response"), null);
+            fail("expected the failed send to be rethrown");
+        }
+        catch (UncategorizedJmsException e) {
+            verify(producerService).sendToQueue("broker2", null, "response", null);
+        }
+    }
+
+    @Test
+    public void shouldCommitTransactionsOnceAllBrokersTookTheirResponses() {
+        when(producerService.beginTransaction("broker1")).thenReturn(transaction1);
+        when(producerService.beginTransaction("broker2")).thenReturn(transaction2);
+
+        responseFanOut.send("transactionalQueue", asList("broker1", "broker2"), asList("first", "second"), "correlation1");
+
+        verify(transaction1).send(null, "first", "correlation1");
+        verify(transaction2).send(null, "second", "correlation1");
+        verify(transaction1).commit();
+        verify(transaction2).commit();
+        verify(transaction1).close();
+        verify(transaction2).close();
+    }
+
+    @Test
+    public void shouldRollBackAllTransactionsWhenOneBrokerFails() {
+        exception.expect(UncategorizedJmsException.class);
+        when(producerService.beginTransaction("broker1")).thenReturn(transaction1);
+        when(producerService.beginTransaction("broker2")).thenReturn(transaction2);
+        doThrow(new UncategorizedJmsException("failed")).when(transaction2).send(null, "response", null);
+
+        try {
+            responseFanOut.send("transactionalQueue", asList("broker1", "broker2"), singletonList("response"), null);
+        }
+        finally {
+            verify(transaction1).rollback();
+            verify(transaction2).rollback();
+            verify(transaction1, never()).commit();
+            verify(transaction2, never()).commit();
+            verify(transaction1).close();
+            verify(transaction2).close();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.consumer;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TransactedBatchConsumerTest {
+
+    private static final String BROKER_URI = "tcp://uri1";
+    private static final int BATCH_SIZE = 2;
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private MessageConsumer messageConsumer;
+
+    @Mock
+    private BatchMessageProcessor batchMessageProcessor;
+
+    @Mock
+    private Message message1;
+
+    @Mock
+    private Message message2;
+
+    @Mock
+    private Message message3;
+
+    @Mock
+    private Runnable afterCommit;
+
+    private TransactedBatchConsumer batchConsumer;
+
+    @Before
+    public void setup() {
+        batchConsumer = new TransactedBatchConsumer(new BrokerConsumer("broker1", "queue1", session, messageConsumer, AckMode.TRANSACTED),
+                BROKER_URI, BATCH_SIZE, 1000, batchMessageProcessor);
+    }
+
+    @Test
+    public void shouldProcessAndCommitReceivedMessagesOnce() throws JMSException {
+        when(messageConsumer.receive(anyLong())).thenReturn(message1, (Message) null);
+        when(batchMessageProcessor.process(eq(session), eq(BROKER_URI), eq(ImmutableList.of(message1)), anyMap())).thenReturn(afterCommit);
+        assertEquals(1, batchConsumer.processNextBatch());
+        final InOrder inOrder = inOrder(session, afterCommit);
+        inOrder.verify(session).commit();
+        inOrder.verify(afterCommit).run();
+        verify(session, never()).rollback();
+    }
+
+    @Test
+    public void shouldLimitBatchToBatchSize() throws JMSException {
+        when(messageConsumer.receive(anyLong())).thenReturn(message1, message2, message3);
+        when(batchMessageProcessor.process(any(), anyString(), anyList(), anyMap())).thenReturn(afterCommit);
+        assertEquals(BATCH_SIZE, batchConsumer.processNextBatch());
+        verify(batchMessageProcessor).process(eq(session), eq(BROKER_URI), eq(ImmutableList.of(message1, message2)), anyMap());
+        verify(session).commit();
+    }
+
+    @Test
+    public void shouldRollbackBatchWhenProcessingFails() throws JMSException {
+        when(messageConsumer.receive(anyLong())).thenReturn(message1, (Message) null);
+        doThrow(new IllegalStateException("failed")).when(batchMessageProcessor).process(any(), anyString(), anyList(), anyMap());
+        assertEquals(1, batchConsumer.processNextBatch());
+        verify(session).rollback();
+        verify(session, never()).commit();
+    }
+
+    @Test
+    public void shouldNotProcessAnythingWhenNoMessageArrives() throws JMSException {
+        assertEquals(0, batchConsumer.processNextBatch());
+        verifyZeroInteractions(batchMessageProcessor, session);
+    }
+}
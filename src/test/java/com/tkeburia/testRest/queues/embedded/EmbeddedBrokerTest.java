@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.embedded;
+
+import com.google.common.collect.ImmutableMap;
+import com.tkeburia.testRest.queues.producer.ProducerConfig;
+import com.tkeburia.testRest.queues.producer.ProducerProperties;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jms.core.JmsTemplate;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.io.File;
+import java.util.Map;
+
+import static com.tkeburia.testRest.queues.embedded.EmbeddedBrokerProperties.Persistence.KAHADB;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class EmbeddedBrokerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private EmbeddedBroker embeddedBroker;
+
+    @After
+    public void cleanup() throws Exception {
+        if (embeddedBroker != null) embeddedBroker.stop();
+    }
+
+    @Test
+    public void shouldPointBrokersWithoutUriToEmbeddedBroker() {
+        embeddedBroker = new EmbeddedBroker(new EmbeddedBrokerProperties());
+        final ProducerProperties producerProperties = new ProducerProperties();
+        producerProperties.setQueueNames(ImmutableMap.of("embedded", "queue1", "external", "queue2"));
+        producerProperties.setUris(ImmutableMap.of("external", "tcp://uri1"));
+        producerProperties.setUserNames(ImmutableMap.of("external", "userName1"));
+
+        embeddedBroker.applyDefaults(producerProperties);
+
+        assertEquals("vm://test-rest?create=false", producerProperties.getUris().get("embedded"));
+        assertEquals("", producerProperties.getUserNames().get("embedded"));
+        assertEquals("", producerProperties.getPasswords().get("embedded"));
+        assertEquals("tcp://uri1", producerProperties.getUris().get("external"));
+        assertEquals("userName1", producerProperties.getUserNames().get("external"));
+    }
+
+    @Test
+    public void shouldDeliverMessagesProducedThroughProducerConfig() throws Exception {
+        embeddedBroker = new EmbeddedBroker(new EmbeddedBrokerProperties());
+        embeddedBroker.start();
+        final ProducerProperties producerProperties = new ProducerProperties();
+        producerProperties.setQueueNames(ImmutableMap.of("embedded", "queue1"));
+        final ProducerConfig producerConfig = new ProducerConfig(producerProperties, providerOf(embeddedBroker));
+
+        final Map<String, JmsTemplate> templates = producerConfig.jmsTemplateMap();
+        templates.get("embedded").convertAndSend("message");
+
+        assertEquals("message", receive(embeddedBroker.getVmUri(), "queue1"));
+        producerConfig.stopConnectionFactories();
+    }
+
+    @Test
+    public void shouldKeepPersistentMessagesInKahaDbAcrossRestarts() throws Exception {
+        final File dataDirectory = temporaryFolder.newFolder();
+        final EmbeddedBrokerProperties properties = new EmbeddedBrokerProperties();
+        properties.setPersistence(KAHADB);
+        properties.setDataDirectory(dataDirectory.getAbsolutePath());
+        embeddedBroker = new EmbeddedBroker(properties);
+        embeddedBroker.start();
+        final JmsTemplate template = new JmsTemplate(new ActiveMQConnectionFactory(embeddedBroker.getVmUri()));
+        template.convertAndSend("queue1", "persisted");
+        embeddedBroker.stop();
+
+        assertTrue(new File(dataDirectory, "kahadb").isDirectory());
+        embeddedBroker = new EmbeddedBroker(properties);
+        embeddedBroker.start();
+        assertEquals("persisted", receive(embeddedBroker.getVmUri(), "queue1"));
+    }
+
+    private static String receive(String uri, String queueName) throws JMSException {
+        final Connection connection = new ActiveMQConnectionFactory(uri).createConnection();
+        try {
+            connection.start();
+            final Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            final MessageConsumer consumer = session.createConsumer(session.createQueue(queueName));
+            return ((TextMessage) consumer.receive(5000)).getText();
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ObjectProvider<EmbeddedBroker> providerOf(EmbeddedBroker embeddedBroker) {
+        final ObjectProvider<EmbeddedBroker> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(embeddedBroker);
+        doCallRealMethod().when(provider).ifAvailable(any());
+        return provider;
+    }
+}
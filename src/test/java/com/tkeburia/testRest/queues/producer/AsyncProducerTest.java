@@ -0,0 +1,143 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.queues.producer;
+
+import com.tkeburia.testRest.exception.ProducerBackpressureException;
+import org.apache.activemq.ActiveMQConnection;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.ActiveMQMessageProducer;
+import org.apache.activemq.AsyncCallback;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static javax.jms.Session.AUTO_ACKNOWLEDGE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncProducerTest {
+
+    private static final String QUEUE_NAME = "queue1";
+
+    @Mock
+    private ActiveMQConnectionFactory connectionFactory;
+
+    @Mock
+    private ActiveMQConnection connection;
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private ActiveMQMessageProducer producer;
+
+    @Mock
+    private TextMessage message;
+
+    private AsyncProducer asyncProducer;
+
+    @Before
+    public void setup() throws JMSException {
+        when(connectionFactory.createConnection()).thenReturn(connection);
+        when(connection.createSession(false, AUTO_ACKNOWLEDGE)).thenReturn(session);
+        when(session.createProducer(null)).thenReturn(producer);
+        when(session.createTextMessage("payload")).thenReturn(message);
+    }
+
+    @After
+    public void cleanup() {
+        asyncProducer.shutdown();
+    }
+
+    @Test
+    public void shouldRejectSendsWhileWindowIsFull() throws JMSException {
+        asyncProducer = new AsyncProducer(connectionFactory, new SimpleMessageConverter(), 1, 30000, DeliveryMode.PERSISTENT, 0);
+
+        final CompletableFuture<Void> first = asyncProducer.send(QUEUE_NAME, "payload", null);
+        final CompletableFuture<Void> second = asyncProducer.send(QUEUE_NAME, "payload", null);
+
+        assertTrue(isRejected(second));
+        assertEquals(1, asyncProducer.getInFlight());
+
+        acknowledge(0);
+        assertTrue(first.isDone() && !first.isCompletedExceptionally());
+        assertEquals(0, asyncProducer.getInFlight());
+        asyncProducer.send(QUEUE_NAME, "payload", null);
+        assertEquals(1, asyncProducer.getInFlight());
+    }
+
+    @Test
+    public void shouldFreePlaceOfMessageThatIsNeverAcknowledged() throws Exception {
+        asyncProducer = new AsyncProducer(connectionFactory, new SimpleMessageConverter(), 1, 50, DeliveryMode.PERSISTENT, 0);
+
+        final CompletableFuture<Void> first = asyncProducer.send(QUEUE_NAME, "payload", null);
+        try {
+            first.get(5, SECONDS);
+            fail("Expected the send to time out");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+
+        assertEquals(0, asyncProducer.getInFlight());
+        final CompletableFuture<Void> second = asyncProducer.send(QUEUE_NAME, "payload", null);
+        // an acknowledgement arriving after the timeout must not free another place
+        acknowledge(0);
+        assertEquals(1, asyncProducer.getInFlight());
+        assertFalse(second.isDone());
+    }
+
+    private void acknowledge(int send) throws JMSException {
+        final ArgumentCaptor<AsyncCallback> callback = ArgumentCaptor.forClass(AsyncCallback.class);
+        verify(producer, atLeastOnce()).send(any(), any(Message.class), anyInt(), anyInt(), anyLong(), callback.capture());
+        callback.getAllValues().get(send).onSuccess();
+    }
+
+    private static boolean isRejected(CompletableFuture<Void> send) {
+        try {
+            send.getNow(null);
+            return false;
+        }
+        catch (RuntimeException e) {
+            return e.getCause() instanceof ProducerBackpressureException;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.producer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.collect.ImmutableMap;
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import javax.jms.JMSException;
+import javax.jms.Session;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class JacksonMessageConverterTest {
+
+    private static final Map<String, Object> PAYLOAD = ImmutableMap.of("firstName", "Peter", "age", 42);
+    private static final String JSON = "{\"firstName\":\"Peter\",\"age\":42}";
+
+    @Mock
+    private Session session;
+
+    @Before
+    public void setup() throws JMSException {
+        when(session.createTextMessage(JSON)).thenAnswer(invocation -> {
+            final ActiveMQTextMessage message = new ActiveMQTextMessage();
+            message.setText(invocation.getArgument(0));
+            return message;
+        });
+    }
+
+    @Test
+    public void shouldWriteJsonTextMessage() throws JMSException {
+        final ActiveMQTextMessage message = (ActiveMQTextMessage) PayloadFormat.JSON.createConverter().toMessage(PAYLOAD, session);
+
+        assertEquals(JSON, message.getText());
+        assertEquals("application/json", message.getStringProperty(JacksonMessageConverter.CONTENT_TYPE_PROPERTY));
+    }
+
+    @Test
+    public void shouldSendStringsAsTheyAre() throws JMSException {
+        final ActiveMQTextMessage message = (ActiveMQTextMessage) PayloadFormat.JSON.createConverter().toMessage(JSON, session);
+
+        assertEquals(JSON, message.getText());
+    }
+
+    @Test
+    public void shouldWriteJsonBytesMessage() throws JMSException {
+        when(session.createBytesMessage()).thenReturn(new ActiveMQBytesMessage());
+
+        final ActiveMQBytesMessage message = (ActiveMQBytesMessage) PayloadFormat.BYTES.createConverter().toMessage(PAYLOAD, session);
+
+        assertArrayEquals(JSON.getBytes(UTF_8), bodyOf(message));
+    }
+
+    @Test
+    public void shouldReuseBufferBetweenMessages() throws JMSException {
+        when(session.createBytesMessage()).thenReturn(new ActiveMQBytesMessage(), new ActiveMQBytesMessage());
+        final MessageConverter converter = PayloadFormat.CBOR.createConverter();
+
+        final ActiveMQBytesMessage first = (ActiveMQBytesMessage) converter.toMessage(ImmutableMap.of("a", "longer value"), session);
+        final ActiveMQBytesMessage second = (ActiveMQBytesMessage) converter.toMessage(ImmutableMap.of("b", 1), session);
+
+        first.reset();
+        second.reset();
+        assertEquals(ImmutableMap.of("a", "longer value"), converter.fromMessage(first));
+        assertEquals(ImmutableMap.of("b", 1), converter.fromMessage(second));
+    }
+
+    @Test
+    public void shouldReencodeJsonStringsForBinaryFormats() throws Exception {
+        when(session.createBytesMessage()).thenReturn(new ActiveMQBytesMessage());
+
+        final ActiveMQBytesMessage message = (ActiveMQBytesMessage) PayloadFormat.SMILE.createConverter().toMessage(JSON, session);
+
+        assertEquals("application/x-jackson-smile", message.getStringProperty(JacksonMessageConverter.CONTENT_TYPE_PROPERTY));
+        assertEquals(PAYLOAD, new ObjectMapper(new SmileFactory()).readValue(bodyOf(message), Map.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotSendBinaryFormatAsText() {
+        new JacksonMessageConverter(new ObjectMapper(new SmileFactory()), true, "application/x-jackson-smile");
+    }
+
+    private static byte[] bodyOf(ActiveMQBytesMessage message) throws JMSException {
+        message.reset();
+        final byte[] body = new byte[(int) message.getBodyLength()];
+        message.readBytes(body);
+        return body;
+    }
+}
@@ -17,12 +17,17 @@
 package com.tkeburia.testRest.queues.producer;
 
 import com.google.common.collect.ImmutableMap;
+import com.tkeburia.testRest.queues.embedded.EmbeddedBroker;
 import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.jms.pool.PooledConnectionFactory;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
 
 import java.util.Map;
 
@@ -43,15 +48,20 @@ public class ProducerConfigTest {
     private static final String PASSWORD_2 = "password2";
     private ProducerConfig producerConfig;
 
+    private ProducerProperties producerProperties;
+
+    @Mock
+    private ObjectProvider<EmbeddedBroker> embeddedBroker;
+
     @Before
     public void setup() {
-        ProducerProperties producerProperties = new ProducerProperties();
+        producerProperties = new ProducerProperties();
         producerProperties.setQueueNames(ImmutableMap.of(BROKER_NAME_1, QUEUE_NAME_1, BROKER_NAME_2, QUEUE_NAME_2));
         producerProperties.setUris(ImmutableMap.of(BROKER_NAME_1, BROKER_URI_1, BROKER_NAME_2, BROKER_URI_2));
         producerProperties.setUserNames(ImmutableMap.of(BROKER_NAME_1, USER_NAME_1, BROKER_NAME_2, USER_NAME_2));
         producerProperties.setPasswords(ImmutableMap.of(BROKER_NAME_1, PASSWORD_1, BROKER_NAME_2, PASSWORD_2));
 
-        producerConfig = new ProducerConfig(producerProperties);
+        producerConfig = new ProducerConfig(producerProperties, embeddedBroker);
     }
 
     @Test
@@ -60,13 +70,35 @@ public class ProducerConfigTest {
 
         assertEquals(2, templateMap.entrySet().size());
         assertEquals(QUEUE_NAME_2, templateMap.get(BROKER_NAME_2).getDefaultDestinationName());
-        assertEquals(USER_NAME_2, ((ActiveMQConnectionFactory)templateMap.get(BROKER_NAME_2).getConnectionFactory()).getUserName());
-        assertEquals(PASSWORD_2, ((ActiveMQConnectionFactory)templateMap.get(BROKER_NAME_2).getConnectionFactory()).getPassword());
-        assertEquals(BROKER_URI_2, ((ActiveMQConnectionFactory)templateMap.get(BROKER_NAME_2).getConnectionFactory()).getBrokerURL());
+        assertEquals(USER_NAME_2, connectionFactoryOf(templateMap, BROKER_NAME_2).getUserName());
+        assertEquals(PASSWORD_2, connectionFactoryOf(templateMap, BROKER_NAME_2).getPassword());
+        assertEquals(BROKER_URI_2, connectionFactoryOf(templateMap, BROKER_NAME_2).getBrokerURL());
 
         assertEquals(QUEUE_NAME_1, templateMap.get(BROKER_NAME_1).getDefaultDestinationName());
-        assertEquals(USER_NAME_1, ((ActiveMQConnectionFactory)templateMap.get(BROKER_NAME_1).getConnectionFactory()).getUserName());
-        assertEquals(PASSWORD_1, ((ActiveMQConnectionFactory)templateMap.get(BROKER_NAME_1).getConnectionFactory()).getPassword());
-        assertEquals(BROKER_URI_1, ((ActiveMQConnectionFactory)templateMap.get(BROKER_NAME_1).getConnectionFactory()).getBrokerURL());
+        assertEquals(USER_NAME_1, connectionFactoryOf(templateMap, BROKER_NAME_1).getUserName());
+        assertEquals(PASSWORD_1, connectionFactoryOf(templateMap, BROKER_NAME_1).getPassword());
+        assertEquals(BROKER_URI_1, connectionFactoryOf(templateMap, BROKER_NAME_1).getBrokerURL());
+    }
+
+    @Test
+    public void shouldPoolConnectionsPerBroker() {
+        final Map<String, JmsTemplate> templateMap = producerConfig.jmsTemplateMap();
+
+        assertTrue(templateMap.get(BROKER_NAME_1).getConnectionFactory() instanceof PooledConnectionFactory);
+        assertNotSame(templateMap.get(BROKER_NAME_1).getConnectionFactory(), templateMap.get(BROKER_NAME_2).getConnectionFactory());
+        producerConfig.stopConnectionFactories();
+    }
+
+    @Test
+    public void shouldUseConverterOfConfiguredPayloadFormat() {
+        producerProperties.setFormats(ImmutableMap.of(BROKER_NAME_1, PayloadFormat.SMILE));
+        final Map<String, JmsTemplate> templateMap = producerConfig.jmsTemplateMap();
+
+        assertTrue(templateMap.get(BROKER_NAME_1).getMessageConverter() instanceof JacksonMessageConverter);
+        assertTrue(templateMap.get(BROKER_NAME_2).getMessageConverter() instanceof SimpleMessageConverter);
+    }
+
+    private static ActiveMQConnectionFactory connectionFactoryOf(Map<String, JmsTemplate> templateMap, String brokerName) {
+        return (ActiveMQConnectionFactory) ((PooledConnectionFactory) templateMap.get(brokerName).getConnectionFactory()).getConnectionFactory();
     }
-}
\ No newline at end of file
+}
@@ -18,6 +18,10 @@ package com.tkeburia.testRest.queues.producer;
 
 import com.google.common.collect.ImmutableMap;
 import com.tkeburia.testRest.exception.MissingPropertyException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.command.ActiveMQQueue;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -26,8 +30,32 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.UncategorizedJmsException;
+import org.springframework.jms.core.MessagePostProcessor;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
 
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
 public class ProducerServiceTest {
@@ -35,11 +63,14 @@ public class ProducerServiceTest {
     private static final String BROKER_NAME = "broker1";
     private static final String QUEUE_NAME = "queue1";
     private static final String PAYLOAD = "Payload";
+    private static final String BROKER_URI = "vm://producer-service-test?broker.persistent=false&broker.useJmx=false";
     private ProducerService producerService;
 
     @Mock
     private JmsTemplate jmsTemplate;
 
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @Rule
     public ExpectedException exception = ExpectedException.none();
 
@@ -47,7 +78,7 @@ public class ProducerServiceTest {
     public void setup() {
         ProducerProperties producerProperties = new ProducerProperties();
         producerProperties.setQueueNames(ImmutableMap.of(BROKER_NAME, QUEUE_NAME));
-        producerService = new ProducerService(ImmutableMap.of(BROKER_NAME, jmsTemplate), producerProperties);
+        producerService = new ProducerService(ImmutableMap.of(BROKER_NAME, jmsTemplate), producerProperties, meterRegistry);
     }
 
     @Test
@@ -56,11 +87,168 @@ public class ProducerServiceTest {
         verify(jmsTemplate).convertAndSend(QUEUE_NAME, PAYLOAD);
     }
 
+    @Test
+    public void shouldSendToExplicitDestination() {
+        ProducerProperties producerProperties = new ProducerProperties();
+        producerProperties.setQueueNames(ImmutableMap.of(BROKER_NAME, QUEUE_NAME + ", orders.>"));
+        producerService = new ProducerService(ImmutableMap.of(BROKER_NAME, jmsTemplate), producerProperties, meterRegistry);
+        producerService.sendToQueue(BROKER_NAME, "orders.priority", PAYLOAD);
+        verify(jmsTemplate).convertAndSend("orders.priority", PAYLOAD);
+    }
+
+    @Test
+    public void shouldRejectDestinationNotConfiguredForBroker() {
+        exception.expect(IllegalArgumentException.class);
+        producerService.sendToQueue(BROKER_NAME, "otherQueue", PAYLOAD);
+    }
+
+    @Test
+    public void shouldSendToFirstConfiguredQueueByDefault() {
+        ProducerProperties producerProperties = new ProducerProperties();
+        producerProperties.setQueueNames(ImmutableMap.of(BROKER_NAME, QUEUE_NAME + ", otherQueue"));
+        producerService = new ProducerService(ImmutableMap.of(BROKER_NAME, jmsTemplate), producerProperties, meterRegistry);
+        producerService.sendToQueue(BROKER_NAME, PAYLOAD);
+        verify(jmsTemplate).convertAndSend(QUEUE_NAME, PAYLOAD);
+    }
+
+    @Test
+    public void shouldSetCorrelationIdWhenGiven() {
+        producerService.sendToQueue(BROKER_NAME, null, PAYLOAD, "correlation1");
+        verify(jmsTemplate).convertAndSend(eq(QUEUE_NAME), eq(PAYLOAD), any(MessagePostProcessor.class));
+    }
+
+    @Test
+    public void shouldSendRequestWithReplyDestination() {
+        producerService.sendRequest(BROKER_NAME, PAYLOAD, "correlation1", new ActiveMQQueue("replyQueue"));
+        verify(jmsTemplate).convertAndSend(eq(QUEUE_NAME), eq(PAYLOAD), any(MessagePostProcessor.class));
+    }
+
     @Test
     public void shouldThrowMissingPropertyExceptionWhenNoConfiguredJmsTemplateForBroker() {
         exception.expect(MissingPropertyException.class);
         producerService.sendToQueue("other", PAYLOAD);
     }
 
+    @Test
+    public void shouldSendSynchronouslyForBrokerWithoutAsyncSends() {
+        final CompletableFuture<Void> result = producerService.sendToQueueAsync(BROKER_NAME, null, PAYLOAD, null);
+
+        assertTrue(result.isDone());
+        verify(jmsTemplate).convertAndSend(QUEUE_NAME, PAYLOAD);
+    }
+
+    @Test
+    public void shouldCountFailedSends() {
+        doThrow(new UncategorizedJmsException("failed")).when(jmsTemplate).convertAndSend(QUEUE_NAME, PAYLOAD);
+
+        final CompletableFuture<Void> result = producerService.sendToQueueAsync(BROKER_NAME, null, PAYLOAD, null);
+
+        assertTrue(result.isCompletedExceptionally());
+        assertEquals(1.0, meterRegistry.get("producer.sends.failed").tag("broker", BROKER_NAME).counter().count(), 0.0);
+    }
+
+    @Test
+    public void shouldSendWithoutBlockingForBrokerWithAsyncSends() throws Exception {
+        final ProducerProperties producerProperties = new ProducerProperties();
+        producerProperties.setQueueNames(ImmutableMap.of(BROKER_NAME, QUEUE_NAME));
+        producerProperties.setUris(ImmutableMap.of(BROKER_NAME, BROKER_URI));
+        producerProperties.setUserNames(ImmutableMap.of(BROKER_NAME, ""));
+        producerProperties.setPasswords(ImmutableMap.of(BROKER_NAME, ""));
+        producerProperties.setAsyncSends(ImmutableMap.of(BROKER_NAME, true));
+        producerProperties.setTimeToLive(ImmutableMap.of(BROKER_NAME, 60000L));
+        when(jmsTemplate.getMessageConverter()).thenReturn(new SimpleMessageConverter());
+        producerService = new ProducerService(ImmutableMap.of(BROKER_NAME, jmsTemplate), producerProperties, meterRegistry);
+
+        final Connection connection = new ActiveMQConnectionFactory(BROKER_URI).createConnection();
+        try {
+            connection.start();
+            final MessageConsumer consumer = connection.createSession(false, Session.AUTO_ACKNOWLEDGE).createConsumer(new ActiveMQQueue(QUEUE_NAME));
+
+            final List<CompletableFuture<Void>> sends = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                sends.add(producerService.sendToQueueAsync(BROKER_NAME, null, PAYLOAD + i, "correlation" + i));
+            }
+            producerService.sendToQueue(BROKER_NAME, PAYLOAD);
+            CompletableFuture.allOf(sends.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+            final TextMessage first = (TextMessage) consumer.receive(5000);
+            assertEquals(PAYLOAD + 0, first.getText());
+            assertEquals("correlation0", first.getJMSCorrelationID());
+            assertTrue(first.getJMSExpiration() > 0);
+            for (int i = 1; i <= 100; i++) {
+                assertNotNull(consumer.receive(5000));
+            }
+            verify(jmsTemplate, never()).convertAndSend(QUEUE_NAME, PAYLOAD);
+            assertEquals(0.0, meterRegistry.get("producer.sends.inflight").tag("broker", BROKER_NAME).gauge().value(), 0.0);
+        }
+        finally {
+            connection.close();
+            producerService.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldSendContentAsIsRepeatedly() throws Exception {
+        final ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(BROKER_URI);
+        producerService = new ProducerService(ImmutableMap.of(BROKER_NAME, new JmsTemplate(connectionFactory)), producerProperties(), meterRegistry);
+        final byte[] content = "{ \"key\" : \"value\" }".getBytes(UTF_8);
+
+        final Connection connection = connectionFactory.createConnection();
+        try {
+            connection.start();
+            final MessageConsumer consumer = connection.createSession(false, Session.AUTO_ACKNOWLEDGE).createConsumer(new ActiveMQQueue(QUEUE_NAME));
+
+            assertTrue(producerService.sendContentToQueue(BROKER_NAME, null, content, false, 3).isDone());
+            producerService.sendContentToQueue(BROKER_NAME, QUEUE_NAME, content, true, 1);
 
-}
\ No newline at end of file
+            for (int i = 0; i < 3; i++) {
+                final BytesMessage message = (BytesMessage) consumer.receive(5000);
+                final byte[] received = new byte[(int) message.getBodyLength()];
+                message.readBytes(received);
+                assertArrayEquals(content, received);
+            }
+            assertEquals("{ \"key\" : \"value\" }", ((TextMessage) consumer.receive(5000)).getText());
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void shouldNotSendContentLessThanOnce() {
+        exception.expect(IllegalArgumentException.class);
+        producerService.sendContentToQueue(BROKER_NAME, null, new byte[0], false, 0);
+    }
+
+    @Test
+    public void shouldOnlyDeliverTransactedSendsOnCommit() throws Exception {
+        final ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(BROKER_URI);
+        producerService = new ProducerService(ImmutableMap.of(BROKER_NAME, new JmsTemplate(connectionFactory)), producerProperties(), meterRegistry);
+
+        final Connection connection = connectionFactory.createConnection();
+        try (ProducerTransaction transaction = producerService.beginTransaction(BROKER_NAME)) {
+            connection.start();
+            final MessageConsumer consumer = connection.createSession(false, Session.AUTO_ACKNOWLEDGE).createConsumer(new ActiveMQQueue(QUEUE_NAME));
+
+            transaction.send(null, "rolledBack", null);
+            transaction.rollback();
+            transaction.send(null, PAYLOAD, "correlation1");
+            assertNull(consumer.receive(200));
+
+            transaction.commit();
+            final TextMessage message = (TextMessage) consumer.receive(5000);
+            assertEquals(PAYLOAD, message.getText());
+            assertEquals("correlation1", message.getJMSCorrelationID());
+            assertNull(consumer.receive(200));
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    private static ProducerProperties producerProperties() {
+        final ProducerProperties producerProperties = new ProducerProperties();
+        producerProperties.setQueueNames(ImmutableMap.of(BROKER_NAME, QUEUE_NAME));
+        return producerProperties;
+    }
+}
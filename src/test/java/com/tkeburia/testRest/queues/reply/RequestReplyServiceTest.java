@@ -0,0 +1,174 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.reply;
+
+import com.tkeburia.testRest.exception.MissingPropertyException;
+import com.tkeburia.testRest.queues.producer.ProducerService;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import static javax.jms.Session.AUTO_ACKNOWLEDGE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RequestReplyServiceTest {
+
+    private static final String PRODUCER_BROKER = "producerBroker";
+    private static final String REPLY_QUEUE = "replyQueue";
+    private static final String PAYLOAD = "payload";
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    @Mock
+    private ProducerService producerService;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private MessageConsumer replyConsumer;
+
+    @Mock
+    private TextMessage reply;
+
+    private RequestReplyProperties properties = new RequestReplyProperties();
+    private RequestReplyService requestReplyService;
+
+    @Before
+    public void setup() {
+        properties.setQueueName(REPLY_QUEUE);
+        requestReplyService = new RequestReplyService(producerService, properties);
+    }
+
+    @Test
+    public void shouldCompleteRequestWithCorrelatedReply() throws JMSException {
+        startReplyConsumer();
+
+        final DeferredResult<ResponseEntity<?>> result = requestReplyService.request(PRODUCER_BROKER, PAYLOAD, null);
+        final ArgumentCaptor<String> correlationId = ArgumentCaptor.forClass(String.class);
+        verify(producerService).sendRequest(eq(PRODUCER_BROKER), eq(PAYLOAD), correlationId.capture(), eq(new ActiveMQQueue(REPLY_QUEUE)));
+        assertFalse(result.hasResult());
+        assertEquals(1, requestReplyService.getPendingCount());
+
+        when(reply.getJMSCorrelationID()).thenReturn(correlationId.getValue());
+        when(reply.getText()).thenReturn("replyPayload");
+        requestReplyService.onMessage(reply);
+
+        final ResponseEntity<?> response = (ResponseEntity<?>) result.getResult();
+        assertEquals(OK, response.getStatusCode());
+        assertEquals("replyPayload", response.getBody());
+        assertEquals(0, requestReplyService.getPendingCount());
+    }
+
+    @Test
+    public void shouldIgnoreReplyWithUnknownCorrelationId() throws JMSException {
+        startReplyConsumer();
+        final DeferredResult<ResponseEntity<?>> result = requestReplyService.request(PRODUCER_BROKER, PAYLOAD, null);
+
+        when(reply.getJMSCorrelationID()).thenReturn("unknown");
+        requestReplyService.onMessage(reply);
+
+        assertFalse(result.hasResult());
+        assertEquals(1, requestReplyService.getPendingCount());
+    }
+
+    @Test
+    public void shouldRejectRequestsOverMaxInFlight() throws JMSException {
+        properties.setMaxInFlight(1);
+        startReplyConsumer();
+        requestReplyService.request(PRODUCER_BROKER, PAYLOAD, null);
+
+        final DeferredResult<ResponseEntity<?>> rejected = requestReplyService.request(PRODUCER_BROKER, PAYLOAD, null);
+
+        assertEquals(SERVICE_UNAVAILABLE, ((ResponseEntity<?>) rejected.getResult()).getStatusCode());
+    }
+
+    @Test
+    public void shouldConsumeRepliesOnTheBrokerRequestsAreSentTo() throws JMSException {
+        startReplyConsumer();
+        requestReplyService.request(PRODUCER_BROKER, PAYLOAD, null);
+        requestReplyService.request(PRODUCER_BROKER, PAYLOAD, null);
+
+        verify(producerService).createConnection(PRODUCER_BROKER);
+        verify(session).createConsumer(new ActiveMQQueue(REPLY_QUEUE));
+        verify(replyConsumer).setMessageListener(requestReplyService);
+        verify(connection).start();
+    }
+
+    @Test
+    public void shouldReleaseInFlightPermitOfRequestThatFailedToSend() throws JMSException {
+        properties.setMaxInFlight(1);
+        startReplyConsumer();
+        doThrow(new IllegalStateException("send failed")).doNothing()
+                .when(producerService).sendRequest(eq(PRODUCER_BROKER), eq(PAYLOAD), any(), any());
+        try {
+            requestReplyService.request(PRODUCER_BROKER, PAYLOAD, null);
+            fail("Expected the send failure to be thrown");
+        }
+        catch (IllegalStateException e) {
+            assertEquals(0, requestReplyService.getPendingCount());
+        }
+
+        final DeferredResult<ResponseEntity<?>> result = requestReplyService.request(PRODUCER_BROKER, PAYLOAD, null);
+
+        assertFalse(result.hasResult());
+    }
+
+    @Test
+    public void shouldThrowExceptionWhenReplyQueueNotConfigured() throws JMSException {
+        exception.expect(MissingPropertyException.class);
+        properties.setQueueName(null);
+        requestReplyService.start();
+        requestReplyService.request(PRODUCER_BROKER, PAYLOAD, null);
+    }
+
+    private void startReplyConsumer() throws JMSException {
+        when(producerService.createConnection(PRODUCER_BROKER)).thenReturn(connection);
+        when(connection.createSession(false, AUTO_ACKNOWLEDGE)).thenReturn(session);
+        when(session.createConsumer(any())).thenReturn(replyConsumer);
+        requestReplyService.start();
+    }
+}
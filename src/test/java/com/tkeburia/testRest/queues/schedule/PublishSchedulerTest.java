@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.schedule;
+
+import com.tkeburia.testRest.exception.MissingPropertyException;
+import com.tkeburia.testRest.queues.producer.ProducerService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PublishSchedulerTest {
+
+    private static final String BROKER_NAME = "broker1";
+    private static final String PAYLOAD = "{\"key\":\"value\"}";
+
+    @Mock
+    private ProducerService producerService;
+
+    private SimpleMeterRegistry meterRegistry;
+    private PublishScheduler publishScheduler;
+
+    @Before
+    public void setup() {
+        final ScheduleProperties scheduleProperties = new ScheduleProperties();
+        scheduleProperties.setTickMillis(1);
+        scheduleProperties.setMaxInMemory(0);
+        meterRegistry = new SimpleMeterRegistry();
+        publishScheduler = new PublishScheduler(producerService, scheduleProperties);
+        publishScheduler.bindTo(meterRegistry);
+    }
+
+    @After
+    public void cleanup() {
+        publishScheduler.shutdown();
+    }
+
+    @Test
+    public void shouldSendRightAwayWithoutDelay() {
+        publishScheduler.schedule(BROKER_NAME, "queue1", PAYLOAD, "correlation1", 0);
+        verify(producerService).sendToQueue(BROKER_NAME, "queue1", PAYLOAD, "correlation1");
+    }
+
+    @Test
+    public void shouldSendAfterDelay() {
+        when(producerService.isConfigured(BROKER_NAME)).thenReturn(true);
+
+        publishScheduler.schedule(BROKER_NAME, "queue1", PAYLOAD, "correlation1", 100);
+
+        assertEquals(1, publishScheduler.getPendingCount());
+        assertEquals(1.0, meterRegistry.get("publish.scheduled.pending").gauge().value(), 0);
+        verify(producerService, never()).sendToQueue(BROKER_NAME, "queue1", PAYLOAD, "correlation1");
+        verify(producerService, timeout(2000)).sendToQueue(BROKER_NAME, "queue1", PAYLOAD, "correlation1");
+        assertEquals(0, publishScheduler.getPendingCount());
+    }
+
+    @Test
+    public void shouldRunDelayedAction() {
+        final Runnable send = mock(Runnable.class);
+        publishScheduler.schedule(send, 50);
+        verify(send, timeout(2000)).run();
+    }
+
+    @Test(expected = MissingPropertyException.class)
+    public void shouldNotScheduleForUnknownBroker() {
+        publishScheduler.schedule("unknown", null, PAYLOAD, null, 100);
+    }
+
+    @Test
+    public void shouldPublishOnCronScheduleUntilCancelled() {
+        when(producerService.isConfigured(BROKER_NAME)).thenReturn(true);
+
+        final RecurringPublication publication = publishScheduler.scheduleRecurring(BROKER_NAME, null, PAYLOAD, "* * * * * *");
+
+        assertTrue(publication.getNextRun() > System.currentTimeMillis() - 1000);
+        assertEquals(1, publishScheduler.getRecurringPublications().size());
+        verify(producerService, timeout(3000).times(2)).sendToQueue(BROKER_NAME, null, PAYLOAD);
+
+        assertTrue(publishScheduler.cancelRecurring(publication.getId()));
+        assertFalse(publishScheduler.cancelRecurring(publication.getId()));
+        assertTrue(publishScheduler.getRecurringPublications().isEmpty());
+        verify(producerService, after(1500).atMost(3)).sendToQueue(BROKER_NAME, null, PAYLOAD);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidCronExpression() {
+        when(producerService.isConfigured(BROKER_NAME)).thenReturn(true);
+        publishScheduler.scheduleRecurring(BROKER_NAME, null, PAYLOAD, "not a cron");
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.queues.schedule;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimerWheelTest {
+
+    private static final TimerWheel.Codec<String> CODEC = new TimerWheel.Codec<String>() {
+        @Override
+        public void write(String task, DataOutput out) throws IOException {
+            out.writeUTF(task);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final List<String> handled = new CopyOnWriteArrayList<>();
+    private TimerWheel<String> timerWheel;
+
+    @After
+    public void cleanup() {
+        if (timerWheel != null) timerWheel.stop();
+    }
+
+    @Test
+    public void shouldHandleTasksInDeadlineOrder() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(3);
+        timerWheel = new TimerWheel<>("test-wheel", 1, 8, task -> { handled.add(task); latch.countDown(); }, null, null, 0);
+
+        final long start = System.nanoTime();
+        timerWheel.schedule("third", 90, MILLISECONDS);
+        timerWheel.schedule("first", 10, MILLISECONDS);
+        timerWheel.schedule("second", 50, MILLISECONDS);
+
+        assertTrue(latch.await(5, SECONDS));
+        assertTrue(System.nanoTime() - start >= MILLISECONDS.toNanos(90));
+        assertEquals(asList("first", "second", "third"), handled);
+        assertEquals(0, timerWheel.getPending());
+    }
+
+    @Test
+    public void shouldSpillTasksBeyondInMemoryLimitAndReloadThem() throws IOException, InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(3);
+        timerWheel = new TimerWheel<>("test-wheel", 1, 8, task -> { handled.add(task); latch.countDown(); },
+                CODEC, temporaryFolder.newFolder("spill"), 1);
+
+        timerWheel.schedule("in memory", 200, MILLISECONDS);
+        timerWheel.schedule("spilled", 300, MILLISECONDS);
+        timerWheel.schedule("also spilled", 400, MILLISECONDS);
+
+        assertEquals(2, timerWheel.getSpilled());
+        assertEquals(3, timerWheel.getPending());
+        assertTrue(latch.await(5, SECONDS));
+        assertEquals(asList("in memory", "spilled", "also spilled"), handled);
+        assertEquals(0, timerWheel.getSpilled());
+    }
+
+    @Test
+    public void shouldReturnDroppedTasksOnStop() {
+        timerWheel = new TimerWheel<>("test-wheel", 1, 8, handled::add, null, null, 0);
+        timerWheel.schedule("dropped", 1, SECONDS);
+        timerWheel.schedule("also dropped", 2, SECONDS);
+
+        assertEquals(2, timerWheel.stop());
+        assertTrue(handled.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectTasksAfterStop() {
+        timerWheel = new TimerWheel<>("test-wheel", 1, 8, handled::add, null, null, 0);
+        timerWheel.stop();
+        timerWheel.schedule("rejected", 1, SECONDS);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.script;
+
+import com.tkeburia.testRest.exception.ScriptCompilationException;
+import groovy.lang.Script;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+
+public class ScriptCompilerTest {
+
+    private static final String SCRIPT_DIR = "src/test/resources";
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private final ScriptCompiler scriptCompiler = new ScriptCompiler();
+
+    @Test
+    public void shouldCompileAndRunScriptDynamically() {
+        final Class<? extends Script> scriptClass = scriptCompiler.compile(new File(SCRIPT_DIR, "testScript.groovy"), false);
+        assertEquals("message-processed", ScriptCompiler.run(scriptClass, "message"));
+    }
+
+    @Test
+    public void shouldCompileAndRunScriptStatically() {
+        final Class<? extends Script> scriptClass = scriptCompiler.compile(new File(SCRIPT_DIR, "testScript.groovy"), true);
+        assertEquals("message-processed", ScriptCompiler.run(scriptClass, "message"));
+    }
+
+    @Test
+    public void shouldCompileDynamicScriptWithUnknownMethodCalls() {
+        scriptCompiler.compile(new File(SCRIPT_DIR, "dynamicOnlyScript.groovy"), false);
+    }
+
+    @Test
+    public void shouldThrowScriptCompilationExceptionWhenScriptCanNotBeCompiledStatically() {
+        exception.expect(ScriptCompilationException.class);
+        exception.expectMessage("could not be statically compiled");
+        exception.expectMessage("notAStringMethod");
+        scriptCompiler.compile(new File(SCRIPT_DIR, "dynamicOnlyScript.groovy"), true);
+    }
+
+    @Test
+    public void shouldThrowScriptCompilationExceptionWhenScriptDoesNotExist() {
+        exception.expect(ScriptCompilationException.class);
+        exception.expectMessage("could not be read");
+        scriptCompiler.compile(new File(SCRIPT_DIR, "missing.groovy"), false);
+    }
+}
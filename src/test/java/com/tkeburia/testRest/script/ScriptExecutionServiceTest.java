@@ -0,0 +1,258 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.script;
+
+import com.google.common.collect.ImmutableMap;
+import com.tkeburia.testRest.exception.ScriptExecutionException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.commons.io.FileUtils.writeStringToFile;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ScriptExecutionServiceTest {
+
+    private static final String SCRIPT_DIR = "src/test/resources";
+    private static final String TEST_QUEUE = "testQueue";
+    private static final String EXCEPTION_QUEUE = "exceptionQueue";
+    private static final String LOOP_QUEUE = "loopQueue";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ScriptProperties scriptProperties;
+    private ScriptExecutionService scriptExecutionService;
+
+    @Before
+    public void setup() {
+        scriptProperties = new ScriptProperties();
+        scriptExecutionService = new ScriptExecutionService(SCRIPT_DIR, scriptProperties, ImmutableMap.of(
+                TEST_QUEUE, "testScript.groovy",
+                EXCEPTION_QUEUE, "exceptionScript.groovy",
+                LOOP_QUEUE, "infiniteLoopScript.groovy"
+        ));
+    }
+
+    @After
+    public void cleanup() {
+        scriptExecutionService.shutdown();
+    }
+
+    @Test
+    public void shouldReturnScriptResult() {
+        assertEquals("message-processed", scriptExecutionService.execute(TEST_QUEUE, "testScript.groovy", "message"));
+    }
+
+    @Test
+    public void shouldReturnScriptResultWhenCompiledStatically() {
+        scriptProperties.setCompileStatic(true);
+        scriptExecutionService.compileMappedScripts();
+        assertEquals("message-processed", scriptExecutionService.execute(TEST_QUEUE, "testScript.groovy", "message"));
+    }
+
+    @Test
+    public void shouldRecompileScriptChangedOnDisk() throws Exception {
+        final File script = temporaryFolder.newFile("editedScript.groovy");
+        writeStringToFile(script, "return inputMessage + '-v1'", UTF_8);
+        scriptExecutionService = new ScriptExecutionService(temporaryFolder.getRoot().getPath(), scriptProperties,
+                ImmutableMap.of(TEST_QUEUE, "editedScript.groovy"));
+        scriptExecutionService.compileMappedScripts();
+        assertEquals("message-v1", scriptExecutionService.execute(TEST_QUEUE, "editedScript.groovy", "message"));
+
+        writeStringToFile(script, "return inputMessage + '-v2'", UTF_8);
+        script.setLastModified(script.lastModified() + 2000);
+        assertEquals("message-v2", scriptExecutionService.execute(TEST_QUEUE, "editedScript.groovy", "message"));
+    }
+
+    @Test
+    public void shouldNotServeCachedResultsOfScriptChangedOnDisk() throws Exception {
+        final File script = temporaryFolder.newFile("cachedScript.groovy");
+        writeStringToFile(script, "return inputMessage + '-v1'", UTF_8);
+        scriptProperties.setCacheSizes(ImmutableMap.of(TEST_QUEUE, 10L));
+        scriptExecutionService = new ScriptExecutionService(temporaryFolder.getRoot().getPath(), scriptProperties,
+                ImmutableMap.of(TEST_QUEUE, "cachedScript.groovy"));
+        assertEquals("message-v1", scriptExecutionService.execute(TEST_QUEUE, "cachedScript.groovy", "message"));
+
+        writeStringToFile(script, "return inputMessage + '-v2'", UTF_8);
+        script.setLastModified(script.lastModified() + 2000);
+        assertEquals("message-v2", scriptExecutionService.execute(TEST_QUEUE, "cachedScript.groovy", "message"));
+    }
+
+    @Test
+    public void shouldThrowAndCountFailureWhenScriptThrowsException() {
+        assertFails(() -> scriptExecutionService.execute(EXCEPTION_QUEUE, "exceptionScript.groovy", "message"));
+        assertEquals(1, scriptExecutionService.getFailureCount());
+        assertEquals(0, scriptExecutionService.getTimeoutCount());
+    }
+
+    @Test
+    public void shouldCancelAndCountTimeoutWhenScriptRunsTooLong() {
+        scriptProperties.setTimeouts(ImmutableMap.of(LOOP_QUEUE, 500L));
+        scriptProperties.setConcurrency(ImmutableMap.of(LOOP_QUEUE, 1));
+        assertFails(() -> scriptExecutionService.execute(LOOP_QUEUE, "infiniteLoopScript.groovy", "message"));
+        assertEquals(1, scriptExecutionService.getTimeoutCount());
+    }
+
+    @Test
+    public void shouldReleasePermitOfCancelledScript() {
+        scriptProperties.setTimeouts(ImmutableMap.of(LOOP_QUEUE, 500L));
+        scriptProperties.setConcurrency(ImmutableMap.of(LOOP_QUEUE, 1));
+        assertFails(() -> scriptExecutionService.execute(LOOP_QUEUE, "infiniteLoopScript.groovy", "message"));
+        assertFails(() -> scriptExecutionService.execute(LOOP_QUEUE, "infiniteLoopScript.groovy", "message"));
+        // the second execution must have obtained the permit released by the interrupted first one and timed out itself
+        assertEquals(2, scriptExecutionService.getTimeoutCount());
+        assertEquals(0, scriptExecutionService.getRejectedCount());
+    }
+
+    @Test
+    public void shouldReleasePermitOfScriptCancelledBeforeItStarted() throws Exception {
+        scriptProperties.setExecutorThreads(1);
+        scriptProperties.setTimeouts(ImmutableMap.of(LOOP_QUEUE, 1500L, TEST_QUEUE, 100L));
+        scriptProperties.setConcurrency(ImmutableMap.of(TEST_QUEUE, 1));
+        scriptExecutionService.shutdown();
+        scriptExecutionService = new ScriptExecutionService(SCRIPT_DIR, scriptProperties, ImmutableMap.of(
+                TEST_QUEUE, "testScript.groovy", LOOP_QUEUE, "infiniteLoopScript.groovy"));
+
+        // occupies the only executor thread, so the next executions time out while still queued
+        final CompletableFuture<Void> loop = CompletableFuture.runAsync(
+                () -> assertFails(() -> scriptExecutionService.execute(LOOP_QUEUE, "infiniteLoopScript.groovy", "message")));
+        Thread.sleep(200);
+
+        assertFails(() -> scriptExecutionService.execute(TEST_QUEUE, "testScript.groovy", "message"));
+        assertFails(() -> scriptExecutionService.execute(TEST_QUEUE, "testScript.groovy", "message"));
+        assertEquals(2, scriptExecutionService.getTimeoutCount());
+        assertEquals(0, scriptExecutionService.getRejectedCount());
+
+        loop.get();
+        assertEquals("message-processed", scriptExecutionService.execute(TEST_QUEUE, "testScript.groovy", "message"));
+    }
+
+    @Test
+    public void shouldRejectExecutionWhenConcurrencyLimitReached() {
+        scriptProperties.setTimeouts(ImmutableMap.of(TEST_QUEUE, 50L));
+        scriptProperties.setConcurrency(ImmutableMap.of(TEST_QUEUE, 0));
+        assertFails(() -> scriptExecutionService.execute(TEST_QUEUE, "testScript.groovy", "message"));
+        assertEquals(1, scriptExecutionService.getRejectedCount());
+    }
+
+    @Test
+    public void shouldThrowAndCountFailureWhenScriptCanNotBeCompiled() {
+        scriptProperties.setCompileStatic(true);
+        assertFails(() -> scriptExecutionService.execute("otherQueue", "dynamicOnlyScript.groovy", "message"));
+        assertEquals(1, scriptExecutionService.getFailureCount());
+    }
+
+    @Test
+    public void shouldPublishPoolUsageFailuresAndCacheSizes() throws InterruptedException {
+        scriptProperties.setCacheSizes(ImmutableMap.of(TEST_QUEUE, 10L));
+        final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        scriptExecutionService.bindTo(meterRegistry);
+
+        scriptExecutionService.execute(TEST_QUEUE, "testScript.groovy", "message");
+        assertFails(() -> scriptExecutionService.execute(EXCEPTION_QUEUE, "exceptionScript.groovy", "message"));
+
+        assertEquals(1.0, meterRegistry.get("script.cache.size").tag("queue", TEST_QUEUE).gauge().value(), 0.0);
+        assertEquals(1.0, meterRegistry.get("script.executions.failed").functionCounter().count(), 0.0);
+        assertEquals(2.0, meterRegistry.get("script.compiled").gauge().value(), 0.0);
+        assertEquals(0.0, awaitIdle(meterRegistry), 0.0);
+    }
+
+    @Test
+    public void shouldPublishCacheSizeOfQueueCachedAfterBinding() {
+        final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        scriptExecutionService.bindTo(meterRegistry);
+        scriptProperties.setCacheSizes(ImmutableMap.of(TEST_QUEUE, 10L));
+
+        scriptExecutionService.execute(TEST_QUEUE, "testScript.groovy", "message");
+
+        assertEquals(1.0, meterRegistry.get("script.cache.size").tag("queue", TEST_QUEUE).gauge().value(), 0.0);
+    }
+
+    @Test
+    public void shouldFailWithExceptionOfInputCheckWithoutRunningScript() {
+        try {
+            scriptExecutionService.submit(TEST_QUEUE, "testScript.groovy", "message", () -> {
+                throw new IllegalArgumentException("invalid");
+            }).get();
+            fail("Expected an IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals("invalid", e.getMessage());
+        }
+        assertEquals(0, scriptExecutionService.getFailureCount());
+    }
+
+    @Test
+    public void shouldRunInputCheckForCachedResults() {
+        scriptProperties.setCacheSizes(ImmutableMap.of(TEST_QUEUE, 10L));
+        final AtomicInteger checks = new AtomicInteger();
+        assertEquals("message-processed", scriptExecutionService.submit(TEST_QUEUE, "testScript.groovy", "message", checks::incrementAndGet).get());
+        assertEquals("message-processed", scriptExecutionService.submit(TEST_QUEUE, "testScript.groovy", "message", checks::incrementAndGet).get());
+
+        assertEquals(2, checks.get());
+        assertEquals(1, scriptExecutionService.getResultCache().getStats().get(TEST_QUEUE).hitCount());
+    }
+
+    @Test
+    public void shouldReturnNullResultOfScript() {
+        assertNull(scriptExecutionService.execute(TEST_QUEUE, "testScript.groovy", "failMe"));
+    }
+
+    @Test
+    public void shouldRunScriptOnceForRepeatedInputWhenCacheEnabled() {
+        scriptProperties.setCacheSizes(ImmutableMap.of(TEST_QUEUE, 10L));
+        scriptExecutionService.execute(TEST_QUEUE, "testScript.groovy", "message");
+        scriptExecutionService.execute(TEST_QUEUE, "testScript.groovy", "message");
+
+        assertEquals(1, scriptExecutionService.getResultCache().getStats().get(TEST_QUEUE).hitCount());
+    }
+
+    /**
+     * The worker leaves the active count only after the execution's future has completed
+     */
+    private static double awaitIdle(MeterRegistry meterRegistry) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        double active = meterRegistry.get("executor.active").tag("name", "response-script").gauge().value();
+        while (active > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            active = meterRegistry.get("executor.active").tag("name", "response-script").gauge().value();
+        }
+        return active;
+    }
+
+    private static void assertFails(Runnable execution) {
+        try {
+            execution.run();
+            fail("Expected a ScriptExecutionException");
+        }
+        catch (ScriptExecutionException e) {
+            // expected
+        }
+    }
+}
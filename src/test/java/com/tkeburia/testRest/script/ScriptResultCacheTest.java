@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tkeburia.testRest.script;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ScriptResultCacheTest {
+
+    private static final String CACHED_QUEUE = "cachedQueue";
+    private static final String OTHER_QUEUE = "otherQueue";
+    private static final String SCRIPT = "script.groovy";
+    private static final String MESSAGE = "{\"id\" : 1}";
+    private static final long MODIFIED = 1000L;
+    private static final long LENGTH = 100L;
+
+    private ScriptResultCache scriptResultCache;
+
+    @Before
+    public void setup() {
+        ScriptProperties scriptProperties = new ScriptProperties();
+        scriptProperties.setCacheSizes(ImmutableMap.of(CACHED_QUEUE, 10L));
+        scriptResultCache = new ScriptResultCache(scriptProperties);
+    }
+
+    @Test
+    public void shouldReturnCachedResultForRepeatedInputWhenCacheEnabled() {
+        assertNull(scriptResultCache.getIfPresent(CACHED_QUEUE, SCRIPT, MODIFIED, LENGTH, MESSAGE));
+        scriptResultCache.put(CACHED_QUEUE, SCRIPT, MODIFIED, LENGTH, MESSAGE, "result");
+
+        assertEquals("result", scriptResultCache.getIfPresent(CACHED_QUEUE, SCRIPT, MODIFIED, LENGTH, MESSAGE));
+        assertEquals(1, scriptResultCache.getStats().get(CACHED_QUEUE).hitCount());
+        assertEquals(0.5, scriptResultCache.getStats().get(CACHED_QUEUE).hitRate(), 0.001);
+    }
+
+    @Test
+    public void shouldNotCacheWhenCacheNotConfiguredForQueue() {
+        scriptResultCache.put(OTHER_QUEUE, SCRIPT, MODIFIED, LENGTH, MESSAGE, "result");
+
+        assertNull(scriptResultCache.getIfPresent(OTHER_QUEUE, SCRIPT, MODIFIED, LENGTH, MESSAGE));
+        assertTrue(scriptResultCache.getStats().isEmpty());
+    }
+
+    @Test
+    public void shouldNotServeResultsOfAnotherScript() {
+        scriptResultCache.put(CACHED_QUEUE, SCRIPT, MODIFIED, LENGTH, MESSAGE, "result");
+
+        assertNull(scriptResultCache.getIfPresent(CACHED_QUEUE, "otherScript.groovy", MODIFIED, LENGTH, MESSAGE));
+        assertEquals("result", scriptResultCache.getIfPresent(CACHED_QUEUE, SCRIPT, MODIFIED, LENGTH, MESSAGE));
+    }
+
+    @Test
+    public void shouldNotServeResultsOfEditedScript() {
+        scriptResultCache.put(CACHED_QUEUE, SCRIPT, MODIFIED, LENGTH, MESSAGE, "result");
+
+        assertNull(scriptResultCache.getIfPresent(CACHED_QUEUE, SCRIPT, MODIFIED + 1, LENGTH, MESSAGE));
+        assertNull(scriptResultCache.getIfPresent(CACHED_QUEUE, SCRIPT, MODIFIED, LENGTH + 1, MESSAGE));
+    }
+
+    @Test
+    public void shouldNotCacheNullResults() {
+        scriptResultCache.put(CACHED_QUEUE, SCRIPT, MODIFIED, LENGTH, MESSAGE, null);
+        assertEquals(0, scriptResultCache.size(CACHED_QUEUE));
+    }
+}
@@ -24,13 +24,17 @@ import org.mockito.junit.MockitoJUnitRunner;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.NoSuchFileException;
 import java.util.List;
+import java.util.Random;
 import java.util.stream.Stream;
 
 import static com.tkeburia.testRest.util.FileUtils.getFileAsString;
 import static com.tkeburia.testRest.util.FileUtils.getFilesList;
+import static com.tkeburia.testRest.util.FileUtils.readFileToBytes;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.stream.Collectors.toList;
+import static org.apache.commons.io.FileUtils.writeByteArrayToFile;
 import static org.apache.commons.io.FileUtils.writeStringToFile;
 import static org.junit.Assert.*;
 
@@ -86,4 +90,29 @@ public class FileUtilsTest {
 
 
 
-}
\ No newline at end of file
+
+    @Test
+    public void shouldReadFileContentToBytes() throws IOException {
+        assertArrayEquals("{ \"response\" : \"as_expected\" }".getBytes(UTF_8), readFileToBytes(TEMP_DIR, FILE_1));
+        assertEquals(0, readFileToBytes(TEMP_DIR, FILE_2).length);
+    }
+
+    @Test
+    public void shouldReadFileLargerThanReadBuffer() throws IOException {
+        final byte[] content = new byte[200 * 1024 + 7];
+        new Random(1).nextBytes(content);
+        writeByteArrayToFile(new File(TEMP_DIR, FILE_2), content);
+
+        assertArrayEquals(content, readFileToBytes(TEMP_DIR, FILE_2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotReadFileOutsideOfDirectory() throws IOException {
+        readFileToBytes(TEMP_DIR, "../pom.xml");
+    }
+
+    @Test(expected = NoSuchFileException.class)
+    public void shouldThrowForMissingFile() throws IOException {
+        readFileToBytes(TEMP_DIR, "file3");
+    }
+}
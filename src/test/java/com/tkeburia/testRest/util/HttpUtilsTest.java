@@ -31,6 +31,10 @@ import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.*;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 
@@ -60,11 +64,56 @@ public class HttpUtilsTest {
         when(request.getHeader("x-header-c")).thenReturn("value-3");
         when(request.getHeader("authorization")).thenReturn("Basic dXNlcjpwYXNzd29yZA==");
 
-        final Map<String, String> headerMap = HttpUtils.getHeaderMap(request, exceptHeaders);
+        final Map<String, String> headerMap = HttpUtils.captureHeaders(request, new HeaderFilter(exceptHeaders));
 
         assertEquals(2, headerMap.keySet().size());
         assertEquals("value-3", headerMap.get("x-header-c"));
         assertEquals("Basic dXNlcjpwYXNzd29yZA== (user:password)", headerMap.get("authorization"));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldSuppressHeadersRegardlessOfCase() {
+        when(request.getHeaderNames()).thenReturn(Collections.enumeration(asList("X-Header-A", "x-header-c")));
+        when(request.getHeader("x-header-c")).thenReturn("value-3");
+
+        final Map<String, String> headerMap = HttpUtils.captureHeaders(request, new HeaderFilter(asList(" x-header-a", "")));
+
+        assertEquals(ImmutableMap.of("x-header-c", "value-3"), headerMap);
+        verify(request, never()).getHeader("X-Header-A");
+    }
+
+    @Test
+    public void shouldReuseSnapshotAndDecodeAuthorizationOnlyWhenRead() {
+        when(request.getHeaderNames()).thenReturn(Collections.enumeration(singletonList("Authorization")))
+                                       .thenReturn(Collections.enumeration(singletonList("x-header-c")));
+        when(request.getHeader("Authorization")).thenReturn("Basic dXNlcjpwYXNzd29yZA==");
+        when(request.getHeader("x-header-c")).thenReturn("value-3");
+        final HeaderFilter headerFilter = new HeaderFilter(exceptHeaders);
+
+        final HeaderSnapshot first = HttpUtils.captureHeaders(request, headerFilter);
+        assertEquals("Basic dXNlcjpwYXNzd29yZA== (user:password)", first.get("Authorization"));
+
+        final HeaderSnapshot second = HttpUtils.captureHeaders(request, headerFilter);
+        assertSame(first, second);
+        assertEquals(ImmutableMap.of("x-header-c", "value-3"), second);
+    }
+
+    @Test
+    public void shouldKeepMalformedBasicAuthorizationAsIs() {
+        when(request.getHeaderNames()).thenReturn(Collections.enumeration(singletonList("authorization")));
+        when(request.getHeader("authorization")).thenReturn("Basic not-base64!");
+
+        assertEquals("Basic not-base64!", HttpUtils.captureHeaders(request, new HeaderFilter(exceptHeaders)).get("authorization"));
+    }
+
+    @Test
+    public void shouldEmptySnapshotWhenReleased() {
+        when(request.getHeaderNames()).thenReturn(Collections.enumeration(singletonList("x-header-c")));
+        when(request.getHeader("x-header-c")).thenReturn("value-3");
+
+        final HeaderSnapshot snapshot = HttpUtils.captureHeaders(request, new HeaderFilter(exceptHeaders));
+        HttpUtils.releaseHeaders();
+
+        assertTrue(snapshot.isEmpty());
+    }
+}
@@ -17,10 +17,13 @@
 package com.tkeburia.testRest.util;
 
 import com.google.common.collect.ImmutableMap;
+import com.tkeburia.testRest.exception.InvalidPropertyException;
 import com.tkeburia.testRest.exception.MissingPropertyException;
 import com.tkeburia.testRest.queues.BrokerProperties;
+import com.tkeburia.testRest.queues.BrokerTuning;
 import com.tkeburia.testRest.queues.consumer.ConsumerProperties;
 import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.command.ActiveMQBytesMessage;
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
 import org.hamcrest.TypeSafeMatcher;
@@ -32,11 +35,20 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import java.util.Map;
 
 import static com.tkeburia.testRest.constants.Constants.BROKER_CONSUMER;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Collections.emptyMap;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -111,6 +123,13 @@ public class QueueUtilsTest {
         QueueUtils.verifyProperties(properties, BROKER_CONSUMER);
     }
 
+    @Test
+    public void shouldNotThrowExceptionForConsumerBrokerWithTopicsOnly() {
+        ((ConsumerProperties) properties).setTopicNames(ImmutableMap.of(BROKER_NAME_2, "topic2"));
+        properties.setQueueNames(ImmutableMap.of(BROKER_NAME_1, QUEUE_NAME_1));
+        QueueUtils.verifyProperties(properties, BROKER_CONSUMER);
+    }
+
     @Test
     public void shouldBuildConnectionFactoryWithCorrectConfiguration() {
         final ConnectionFactory connectionFactory = QueueUtils
@@ -123,6 +142,77 @@ public class QueueUtilsTest {
 
     }
 
+    @Test
+    public void shouldThrowExceptionWhenTuningIsInvalid() {
+        exception.expect(InvalidPropertyException.class);
+        exception.expectMessage("broker.consumer.tuning.broker1.queuePrefetch must not be negative");
+        final BrokerTuning tuning = new BrokerTuning();
+        tuning.setQueuePrefetch(-1);
+        properties.setTuning(ImmutableMap.of(BROKER_NAME_1, tuning));
+        QueueUtils.verifyProperties(properties, BROKER_CONSUMER);
+    }
+
+    @Test
+    public void shouldThrowExceptionWhenTuningIsForUnknownBroker() {
+        exception.expect(InvalidPropertyException.class);
+        exception.expectMessage("broker.consumer.tuning.broker3.* configured for unknown broker");
+        properties.setTuning(ImmutableMap.of("broker3", new BrokerTuning()));
+        QueueUtils.verifyProperties(properties, BROKER_CONSUMER);
+    }
+
+    @Test
+    public void shouldApplyOnlyConfiguredTuning() {
+        final BrokerTuning tuning = new BrokerTuning();
+        tuning.setQueuePrefetch(1);
+        tuning.setDispatchAsync(false);
+        tuning.setUseExponentialBackOff(true);
+        tuning.setBackOffMultiplier(2d);
+        properties.setTuning(ImmutableMap.of(BROKER_NAME_1, tuning));
+
+        final ActiveMQConnectionFactory connectionFactory = QueueUtils.buildConnectionFactory(properties, BROKER_NAME_1);
+
+        assertEquals(BROKER_URI_1, connectionFactory.getBrokerURL());
+        assertEquals(1, connectionFactory.getPrefetchPolicy().getQueuePrefetch());
+        assertEquals(new ActiveMQConnectionFactory().getPrefetchPolicy().getTopicPrefetch(), connectionFactory.getPrefetchPolicy().getTopicPrefetch());
+        assertFalse(connectionFactory.isDispatchAsync());
+        assertTrue(connectionFactory.getRedeliveryPolicy().isUseExponentialBackOff());
+        assertEquals(2d, connectionFactory.getRedeliveryPolicy().getBackOffMultiplier(), 0);
+    }
+
+    @Test
+    public void shouldDescribeEffectiveConnectionFactorySettings() {
+        final ActiveMQConnectionFactory connectionFactory = QueueUtils.buildConnectionFactory(BROKER_URI_1, USER_NAME_1, PASSWORD_1);
+        connectionFactory.getPrefetchPolicy().setQueuePrefetch(5);
+
+        final Map<String, Object> settings = QueueUtils.describeConnectionFactory(connectionFactory);
+
+        assertEquals(BROKER_URI_1, settings.get("brokerUrl"));
+        assertEquals(5, settings.get("queuePrefetch"));
+        assertFalse(settings.containsKey("password"));
+    }
+
+    @Test
+    public void shouldCompressBytesMessageOnConnectionConfiguredForCompression() throws JMSException {
+        final Connection connection = new ActiveMQConnectionFactory(
+                "vm://queue-utils-test?broker.persistent=false&broker.useJmx=false&jms.useCompression=true").createConnection();
+        try {
+            connection.start();
+            final Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            final Queue queue = session.createQueue("compressed");
+            final MessageConsumer consumer = session.createConsumer(queue);
+            session.createProducer(queue).send(QueueUtils.createBytesMessage(session, "{\"key\":\"value\"}".getBytes(UTF_8)));
+
+            final BytesMessage received = (BytesMessage) consumer.receive(5000);
+            assertTrue(((ActiveMQBytesMessage) received).isCompressed());
+            final byte[] content = new byte[(int) received.getBodyLength()];
+            received.readBytes(content);
+            assertEquals("{\"key\":\"value\"}", new String(content, UTF_8));
+        }
+        finally {
+            connection.close();
+        }
+    }
+
     private Matcher<RuntimeException> missingPropertyExceptionWithMessageContaining(String expected) {
         return new MissingPropertyExceptionMessageMatcher(expected);
     }
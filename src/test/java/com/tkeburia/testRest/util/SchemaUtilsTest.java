@@ -0,0 +1,50 @@
+/*
+ * Copyright 2018 Tornike Keburia <tornike.keburia@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tkeburia.testRest.util;
+
+import com.tkeburia.testRest.exception.DetailedValidationException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static com.tkeburia.testRest.util.SchemaUtils.validateAgainstSchema;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.commons.io.FileUtils.writeStringToFile;
+
+public class SchemaUtilsTest {
+
+    private static final String MESSAGE = "{\"name\" : \"Peter\"}";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test(expected = DetailedValidationException.class)
+    public void shouldReloadSchemaReplacedWithinTheSameModificationTime() throws IOException {
+        final File schemaFile = temporaryFolder.newFile("schema.json");
+        writeStringToFile(schemaFile, "{\"type\" : \"object\"}", UTF_8);
+        final long lastModified = schemaFile.lastModified();
+        validateAgainstSchema(MESSAGE, temporaryFolder.getRoot().getPath(), "schema.json");
+
+        writeStringToFile(schemaFile, "{\"type\" : \"object\", \"required\" : [\"age\"]}", UTF_8);
+        schemaFile.setLastModified(lastModified);
+        validateAgainstSchema(MESSAGE, temporaryFolder.getRoot().getPath(), "schema.json");
+    }
+}
@@ -0,0 +1 @@
+return inputMessage.notAStringMethod()